@@ -0,0 +1,82 @@
+package com.fyber.weather.benchmark;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fyber.weather.domain.WeatherResponse;
+import com.fyber.weather.helper.ClientConfig;
+import com.fyber.weather.helper.WeatherClient;
+import com.fyber.weather.helper.WeatherClientException;
+import com.fyber.weather.stub.StubWeatherServer;
+
+/**
+ * End-to-end calls through {@link WeatherClient} against a local {@link StubWeatherServer}: request
+ * building, connection pooling, HTTP exchange and decoding. Rate limiting is lifted so the client
+ * is measured, not the token bucket. The stub latency can be set with -p latencyMillis=...
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+// without TCP_NODELAY the stub's separate header and body writes meet the client's delayed ACK
+@Fork(value = 1, jvmArgsAppend = "-Dsun.net.httpserver.nodelay=true")
+@Threads(8)
+@State(Scope.Benchmark)
+public class ClientBenchmark {
+
+	private static final int[] GROUP_IDS = { 2950159, 2911288, 2886241, 2922582 };
+
+	@Param({ "0" })
+	public long latencyMillis;
+
+	private StubWeatherServer stubServer;
+	private WeatherClient weatherClient;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		ClientConfig clientConfig = new ClientConfig();
+		clientConfig.setRateLimitPerMinute(Integer.MAX_VALUE);
+		clientConfig.setRateLimitBurst(Integer.MAX_VALUE);
+		stubServer = StubWeatherServer.start(clientConfig);
+		stubServer.setLatency(latencyMillis, 0);
+		weatherClient = new WeatherClient(clientConfig);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		weatherClient.close();
+		stubServer.close();
+	}
+
+	@Benchmark
+	public WeatherResponse currentBlocking() throws WeatherClientException {
+		return weatherClient.current(2950159);
+	}
+
+	@Benchmark
+	public WeatherResponse currentAsync() {
+		return weatherClient.currentAsync(2950159).join();
+	}
+
+	@Benchmark
+	public List<WeatherResponse> groupBlocking() throws WeatherClientException {
+		return weatherClient.group(GROUP_IDS);
+	}
+
+}
@@ -0,0 +1,85 @@
+package com.fyber.weather.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fyber.weather.domain.GroupResponse;
+import com.fyber.weather.domain.WeatherResponse;
+import com.fyber.weather.helper.WeatherJson;
+import com.google.gson.Gson;
+import com.mashape.unirest.http.JsonNode;
+
+/**
+ * Decoding cost of /weather and /group bodies:
+ * <ul>
+ * <li>reflective: a plain {@code new Gson()} with {@code fromJson(String)}, the original test code path</li>
+ * <li>jsonNode: Unirest's JsonNode followed by {@code Gson.fromJson(node.toString())}, which parses every body twice</li>
+ * <li>streaming: {@link WeatherJson} reading the byte stream with the hand-written adapters, as WeatherClient does;
+ * the bodies are encoded to bytes once in setup, as they arrive from the network</li>
+ * </ul>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParseBenchmark {
+
+	private final Gson reflectiveGson = new Gson();
+	private byte[] singleBytes;
+	private byte[] groupBytes;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		singleBytes = Payloads.SINGLE.getBytes(StandardCharsets.UTF_8);
+		groupBytes = Payloads.GROUP.getBytes(StandardCharsets.UTF_8);
+	}
+
+	@Benchmark
+	public WeatherResponse singleReflective() {
+		return reflectiveGson.fromJson(Payloads.SINGLE, WeatherResponse.class);
+	}
+
+	@Benchmark
+	public WeatherResponse singleJsonNode() {
+		JsonNode node = new JsonNode(Payloads.SINGLE);
+		return reflectiveGson.fromJson(node.toString(), WeatherResponse.class);
+	}
+
+	@Benchmark
+	public WeatherResponse singleStreaming() throws IOException {
+		return WeatherJson.read(new ByteArrayInputStream(singleBytes), WeatherResponse.class);
+	}
+
+	@Benchmark
+	public GroupResponse groupReflective() {
+		return reflectiveGson.fromJson(Payloads.GROUP, GroupResponse.class);
+	}
+
+	@Benchmark
+	public GroupResponse groupJsonNode() {
+		JsonNode node = new JsonNode(Payloads.GROUP);
+		return reflectiveGson.fromJson(node.toString(), GroupResponse.class);
+	}
+
+	@Benchmark
+	public GroupResponse groupStreaming() throws IOException {
+		return WeatherJson.read(new ByteArrayInputStream(groupBytes), GroupResponse.class);
+	}
+
+}
@@ -0,0 +1,50 @@
+package com.fyber.weather.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Scanner;
+
+import com.fyber.weather.domain.GroupResponse;
+import com.fyber.weather.helper.WeatherJson;
+
+/**
+ * JSON bodies used by the parsing benchmarks, taken from the stub server's recorded fixtures so both
+ * sides measure the same payloads.
+ */
+final class Payloads {
+
+	/**
+	 * /group answer for four German cities, as recorded from the API
+	 */
+	static final String GROUP = resource("/stub/cities.json");
+
+	/**
+	 * /weather answer for Berlin
+	 */
+	static final String SINGLE;
+
+	static {
+		try {
+			GroupResponse group = WeatherJson.read(stream(GROUP), GroupResponse.class);
+			group.getList().get(0).setCod(200);
+			SINGLE = WeatherJson.gson().toJson(group.getList().get(0));
+		} catch (Exception e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	private Payloads() {
+	}
+
+	static InputStream stream(String json) {
+		return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static String resource(String name) {
+		try (Scanner scanner = new Scanner(Payloads.class.getResourceAsStream(name), "UTF-8")) {
+			return scanner.useDelimiter("\\A").next();
+		}
+	}
+
+}
@@ -0,0 +1,80 @@
+package com.fyber.weather.benchmark.load;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fyber.weather.helper.ClientConfig;
+import com.fyber.weather.helper.WeatherClient;
+
+/**
+ * The request shapes exercised by APITest, as load scenarios. The bad key and bad header
+ * scenarios get clients of their own, configured the way the corresponding tests set up their requests.
+ */
+public class ApiTestScenarios implements Closeable {
+
+	private static final int BERLIN = 2950159;
+	private static final int[] GERMAN_CITIES = { 2950159, 2911288, 2886241, 2922582 };
+
+	private final ClientConfig clientConfig;
+	private final WeatherClient weatherClient;
+	private final WeatherClient badKeyClient;
+	private final WeatherClient badHeaderClient;
+
+	public ApiTestScenarios(ClientConfig clientConfig) {
+		this.clientConfig = clientConfig;
+		this.weatherClient = new WeatherClient(clientConfig);
+		this.badKeyClient = new WeatherClient(copy(clientConfig, clientConfig.getBadApiKey(), clientConfig.getAuthHeader()));
+		this.badHeaderClient = new WeatherClient(copy(clientConfig, clientConfig.getApiKey(), clientConfig.getBadAuthHeader()));
+	}
+
+	/**
+	 * Shares the pool, timeout and resilience settings but sends a different key or header.
+	 * The copy gets its own rate limiter, which is fine for scenarios that only draw 401s.
+	 */
+	private static ClientConfig copy(ClientConfig clientConfig, String apiKey, String authHeader) {
+		ClientConfig copy = new ClientConfig();
+		copy.setBaseURL(clientConfig.getBaseURL());
+		copy.setApiKey(apiKey);
+		copy.setAuthHeader(authHeader);
+		copy.setMaxTotalConnections(clientConfig.getMaxTotalConnections());
+		copy.setMaxConnectionsPerRoute(clientConfig.getMaxConnectionsPerRoute());
+		copy.setConnectTimeout(clientConfig.getConnectTimeout());
+		copy.setSocketTimeout(clientConfig.getSocketTimeout());
+		copy.setTotalTimeoutMillis(clientConfig.getTotalTimeoutMillis());
+		copy.setMaxRetries(clientConfig.getMaxRetries());
+		copy.setRateLimitPerMinute(clientConfig.getRateLimitPerMinute());
+		copy.setRateLimitBurst(clientConfig.getRateLimitBurst());
+		copy.setRateLimitMaxWaitMillis(clientConfig.getRateLimitMaxWaitMillis());
+		copy.setBulkheadMaxConcurrent(clientConfig.getBulkheadMaxConcurrent());
+		return copy;
+	}
+
+	/**
+	 * @return every scenario with its default weight; lookups by ID dominate as they do in production use
+	 */
+	public List<Scenario> all() {
+		List<Scenario> scenarios = new ArrayList<Scenario>();
+		scenarios.add(new Scenario("badKey", 1, 401, () -> badKeyClient.currentAsync("Germany", null)));
+		scenarios.add(new Scenario("badHeader", 1, 401, () -> badHeaderClient.currentAsync("Germany", null)));
+		scenarios.add(new Scenario("cityNotFound", 1, 502, () -> weatherClient.currentAsync("InvalidCity", null)));
+		scenarios.add(new Scenario("country", 2, 200, () -> weatherClient.currentAsync("Germany", null)));
+		scenarios.add(new Scenario("cityName", 4, 200, () -> weatherClient.currentAsync("Berlin", null)));
+		scenarios.add(new Scenario("cityCountry", 4, 200, () -> weatherClient.currentAsync("Berlin", "DE")));
+		scenarios.add(new Scenario("cityId", 10, 200, () -> weatherClient.currentAsync(BERLIN)));
+		scenarios.add(new Scenario("group", 5, 200, () -> weatherClient.groupAsync(GERMAN_CITIES)));
+		scenarios.add(new Scenario("standard", 3, 200, () -> weatherClient.currentAsync(BERLIN, null)));
+		scenarios.add(new Scenario("metric", 3, 200, () -> weatherClient.currentAsync(BERLIN, clientConfig.getMetricUnit())));
+		scenarios.add(new Scenario("imperial", 3, 200, () -> weatherClient.currentAsync(BERLIN, clientConfig.getImperialUnit())));
+		return scenarios;
+	}
+
+	@Override
+	public void close() throws IOException {
+		weatherClient.close();
+		badKeyClient.close();
+		badHeaderClient.close();
+	}
+
+}
@@ -0,0 +1,286 @@
+package com.fyber.weather.benchmark.load;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import org.HdrHistogram.Histogram;
+
+import com.fyber.weather.helper.ClientConfig;
+import com.fyber.weather.stub.StubWeatherServer;
+
+/**
+ * Replays the APITest scenarios as a weighted mix, either open-loop at a fixed request rate or
+ * closed-loop with a fixed number of concurrent callers, and reports latency percentiles, throughput
+ * and outcomes per scenario.
+ * <pre>
+ * java -cp benchmarks.jar com.fyber.weather.benchmark.load.LoadRunner --rps 500 --duration 60
+ * java -cp benchmarks.jar com.fyber.weather.benchmark.load.LoadRunner --concurrency 32 --mix cityId=8,group=2
+ * java -cp benchmarks.jar com.fyber.weather.benchmark.load.LoadRunner --base-url http://api.openweathermap.org/data/2.5/ --rps 1 --rate-limit 60
+ * </pre>
+ * Without --base-url a local {@link StubWeatherServer} is started, whose latency and error rate can be
+ * set with --stub-latency, --stub-jitter and --stub-error-rate. --histograms writes the full
+ * percentile distribution of each scenario as an .hgrm file.
+ */
+public class LoadRunner {
+
+	private final List<ScenarioStats> stats = new ArrayList<ScenarioStats>();
+	private final int[] cumulativeWeights;
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private volatile boolean measuring;
+
+	public LoadRunner(List<Scenario> scenarios) {
+		int total = 0;
+		List<Integer> cumulative = new ArrayList<Integer>();
+		for (Scenario scenario : scenarios) {
+			if (scenario.getWeight() > 0) {
+				total += scenario.getWeight();
+				cumulative.add(total);
+				stats.add(new ScenarioStats(scenario));
+			}
+		}
+		if (stats.isEmpty()) {
+			throw new IllegalArgumentException("No scenario with a positive weight");
+		}
+		cumulativeWeights = new int[cumulative.size()];
+		for (int i = 0; i < cumulativeWeights.length; i++) {
+			cumulativeWeights[i] = cumulative.get(i);
+		}
+	}
+
+	private ScenarioStats pick() {
+		int roll = ThreadLocalRandom.current().nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+		for (int i = 0; i < cumulativeWeights.length; i++) {
+			if (roll < cumulativeWeights[i]) {
+				return stats.get(i);
+			}
+		}
+		throw new IllegalStateException();
+	}
+
+	/**
+	 * Starts one call every 1/rps seconds regardless of how many are still outstanding. Latency is
+	 * measured from the scheduled start, so falling behind the schedule counts against the client.
+	 */
+	public void runOpenLoop(int requestsPerSecond, long durationNanos) {
+		long interval = TimeUnit.SECONDS.toNanos(1) / requestsPerSecond;
+		long next = System.nanoTime();
+		long end = next + durationNanos;
+		while (next < end) {
+			long wait = next - System.nanoTime();
+			if (wait > 0) {
+				LockSupport.parkNanos(wait);
+			}
+			fire(pick(), next);
+			next += interval;
+		}
+	}
+
+	private void fire(ScenarioStats scenarioStats, long intendedStart) {
+		boolean measured = measuring;
+		inFlight.incrementAndGet();
+		scenarioStats.getScenario().start().whenComplete((value, error) -> {
+			if (measured) {
+				scenarioStats.record(intendedStart, System.nanoTime(), error);
+			}
+			inFlight.decrementAndGet();
+		});
+	}
+
+	/**
+	 * Keeps the given number of callers busy, each starting its next call when the previous one ends.
+	 */
+	public void runClosedLoop(int concurrency, long durationNanos) throws InterruptedException {
+		long end = System.nanoTime() + durationNanos;
+		List<Thread> callers = new ArrayList<Thread>();
+		for (int i = 0; i < concurrency; i++) {
+			Thread caller = new Thread(() -> {
+				while (System.nanoTime() < end) {
+					ScenarioStats scenarioStats = pick();
+					boolean measured = measuring;
+					long start = System.nanoTime();
+					Throwable error = null;
+					try {
+						scenarioStats.getScenario().start().join();
+					} catch (RuntimeException e) {
+						error = e;
+					}
+					if (measured) {
+						scenarioStats.record(start, System.nanoTime(), error);
+					}
+				}
+			}, "load-caller-" + i);
+			caller.setDaemon(true);
+			caller.start();
+			callers.add(caller);
+		}
+		for (Thread caller : callers) {
+			caller.join();
+		}
+	}
+
+	/**
+	 * Waits for outstanding open-loop calls, at most the given time.
+	 */
+	public void drain(long timeoutMillis) throws InterruptedException {
+		long end = System.currentTimeMillis() + timeoutMillis;
+		while (inFlight.get() > 0 && System.currentTimeMillis() < end) {
+			Thread.sleep(10);
+		}
+	}
+
+	public void setMeasuring(boolean measuring) {
+		if (measuring) {
+			for (ScenarioStats scenarioStats : stats) {
+				scenarioStats.reset();
+			}
+		}
+		this.measuring = measuring;
+	}
+
+	public void report(PrintStream out, double seconds) {
+		ScenarioStats.printHeader(out);
+		Histogram total = new Histogram(3);
+		long count = 0;
+		long errors = 0;
+		for (ScenarioStats scenarioStats : stats) {
+			scenarioStats.print(out, seconds);
+			total.add(scenarioStats.getLatency());
+			count += scenarioStats.getCount();
+			errors += scenarioStats.getErrorCount();
+		}
+		out.printf("%-14s %8d %9.1f %8d %9.2f %9.2f %9.2f %9.2f %9.2f%n", "total", count, count / seconds, errors,
+				total.getValueAtPercentile(50) / 1000d, total.getValueAtPercentile(90) / 1000d,
+				total.getValueAtPercentile(99) / 1000d, total.getValueAtPercentile(99.9) / 1000d, total.getMaxValue() / 1000d);
+	}
+
+	public void writeHistograms(File directory) throws FileNotFoundException {
+		directory.mkdirs();
+		for (ScenarioStats scenarioStats : stats) {
+			try (PrintStream out = new PrintStream(new File(directory, scenarioStats.getScenario().getName() + ".hgrm"))) {
+				scenarioStats.getLatency().outputPercentileDistribution(out, 1000d);
+			}
+		}
+	}
+
+	public List<ScenarioStats> getStats() {
+		return stats;
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		Map<String, String> options = options(args);
+		int rps = Integer.parseInt(options.getOrDefault("rps", "0"));
+		int concurrency = Integer.parseInt(options.getOrDefault("concurrency", "0"));
+		if ((rps > 0) == (concurrency > 0)) {
+			System.err.println("Give exactly one of --rps <n> or --concurrency <n>");
+			System.exit(2);
+		}
+		long duration = TimeUnit.SECONDS.toNanos(Long.parseLong(options.getOrDefault("duration", "60")));
+		long warmup = TimeUnit.SECONDS.toNanos(Long.parseLong(options.getOrDefault("warmup", "10")));
+
+		ClientConfig clientConfig = new ClientConfig();
+		clientConfig.setMaxRetries(Integer.parseInt(options.getOrDefault("retries", "0")));
+		clientConfig.setMaxTotalConnections(Integer.parseInt(options.getOrDefault("connections", "200")));
+		clientConfig.setMaxConnectionsPerRoute(clientConfig.getMaxTotalConnections());
+		clientConfig.setBulkheadMaxConcurrent(Integer.parseInt(options.getOrDefault("max-in-flight", "10000")));
+		int rateLimit = Integer.parseInt(options.getOrDefault("rate-limit", String.valueOf(Integer.MAX_VALUE)));
+		clientConfig.setRateLimitPerMinute(rateLimit);
+		clientConfig.setRateLimitBurst(rateLimit);
+		if (options.containsKey("api-key")) {
+			clientConfig.setApiKey(options.get("api-key"));
+		}
+
+		StubWeatherServer stubServer = null;
+		if (options.containsKey("base-url")) {
+			clientConfig.setBaseURL(options.get("base-url"));
+		} else {
+			// must be set before the JDK HTTP server is loaded; adds ~40ms per answer otherwise
+			if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+				System.setProperty("sun.net.httpserver.nodelay", "true");
+			}
+			stubServer = StubWeatherServer.start(clientConfig);
+			stubServer.setLatency(Long.parseLong(options.getOrDefault("stub-latency", "0")),
+					Long.parseLong(options.getOrDefault("stub-jitter", "0")));
+			stubServer.setErrorRate(Double.parseDouble(options.getOrDefault("stub-error-rate", "0")), 503);
+		}
+
+		try (ApiTestScenarios scenarios = new ApiTestScenarios(clientConfig)) {
+			LoadRunner runner = new LoadRunner(weighted(scenarios.all(), options.get("mix")));
+			System.out.println("Target " + clientConfig.getBaseURL() + (rps > 0 ? ", open loop at " + rps + " req/s" : ", " + concurrency + " callers"));
+			runner.run(rps, concurrency, warmup);
+			runner.setMeasuring(true);
+			long start = System.nanoTime();
+			runner.run(rps, concurrency, duration);
+			runner.drain(clientConfig.getTotalTimeoutMillis());
+			runner.setMeasuring(false);
+			runner.report(System.out, Math.max(System.nanoTime() - start, 1) / 1e9);
+			if (options.containsKey("histograms")) {
+				runner.writeHistograms(new File(options.get("histograms")));
+			}
+		} finally {
+			if (stubServer != null) {
+				stubServer.close();
+			}
+		}
+	}
+
+	private void run(int rps, int concurrency, long durationNanos) throws InterruptedException {
+		if (durationNanos <= 0) {
+			return;
+		}
+		if (rps > 0) {
+			runOpenLoop(rps, durationNanos);
+		} else {
+			runClosedLoop(concurrency, durationNanos);
+		}
+	}
+
+	/**
+	 * Applies "name=weight,..." overrides; scenarios not listed keep their default weight, 0 drops one.
+	 */
+	static List<Scenario> weighted(List<Scenario> scenarios, String mix) {
+		if (mix == null || mix.isEmpty()) {
+			return scenarios;
+		}
+		Map<String, Integer> weights = new HashMap<String, Integer>();
+		for (String entry : mix.split(",")) {
+			String[] pair = entry.split("=");
+			if (pair.length != 2) {
+				throw new IllegalArgumentException("Bad mix entry " + entry + ", expected name=weight");
+			}
+			weights.put(pair[0].trim(), Integer.valueOf(pair[1].trim()));
+		}
+		List<Scenario> result = new ArrayList<Scenario>();
+		for (Scenario scenario : scenarios) {
+			Integer weight = weights.remove(scenario.getName());
+			result.add(weight == null ? scenario : scenario.withWeight(weight));
+		}
+		if (!weights.isEmpty()) {
+			throw new IllegalArgumentException("Unknown scenarios in mix: " + weights.keySet());
+		}
+		return result;
+	}
+
+	private static Map<String, String> options(String[] args) {
+		Map<String, String> options = new HashMap<String, String>();
+		for (int i = 0; i < args.length; i++) {
+			if (!args[i].startsWith("--")) {
+				throw new IllegalArgumentException("Unexpected argument " + args[i]);
+			}
+			String name = args[i].substring(2);
+			boolean flag = i + 1 == args.length || args[i + 1].startsWith("--");
+			options.put(name, flag ? "true" : args[++i]);
+		}
+		return options;
+	}
+
+}
@@ -0,0 +1,53 @@
+package com.fyber.weather.benchmark.load;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * One request shape of the load mix, with its relative weight and the HTTP status that counts as
+ * the expected answer, e.g. 401 for the bad key scenarios.
+ */
+public class Scenario {
+
+	private final String name;
+	private final int weight;
+	private final int expectedStatus;
+	private final Supplier<CompletableFuture<?>> call;
+
+	public Scenario(String name, int weight, int expectedStatus, Supplier<CompletableFuture<?>> call) {
+		this.name = name;
+		this.weight = weight;
+		this.expectedStatus = expectedStatus;
+		this.call = call;
+	}
+
+	public Scenario withWeight(int weight) {
+		return new Scenario(name, weight, expectedStatus, call);
+	}
+
+	/**
+	 * Starts one call. Failures are reported through the returned future.
+	 */
+	public CompletableFuture<?> start() {
+		try {
+			return call.get();
+		} catch (RuntimeException e) {
+			CompletableFuture<?> failed = new CompletableFuture<Object>();
+			failed.completeExceptionally(e);
+			return failed;
+		}
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getWeight() {
+		return weight;
+	}
+
+	public int getExpectedStatus() {
+		return expectedStatus;
+	}
+
+}
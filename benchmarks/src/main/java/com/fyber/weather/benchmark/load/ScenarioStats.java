@@ -0,0 +1,125 @@
+package com.fyber.weather.benchmark.load;
+
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import com.fyber.weather.helper.CallRejectedException;
+import com.fyber.weather.helper.WeatherClientException;
+
+/**
+ * Latency histogram and outcome counts of one scenario. Latencies are recorded in microseconds
+ * from the intended start of a call, so a stalled client shows up in the percentiles instead of
+ * silently lowering the offered load.
+ */
+public class ScenarioStats {
+
+	private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(5);
+
+	private final Scenario scenario;
+	private final Histogram latency = new ConcurrentHistogram(HIGHEST_TRACKABLE_MICROS, 3);
+	private final Map<String, AtomicLong> outcomes = new ConcurrentHashMap<String, AtomicLong>();
+	private final AtomicLong expected = new AtomicLong();
+
+	public ScenarioStats(Scenario scenario) {
+		this.scenario = scenario;
+	}
+
+	public void record(long intendedStartNanos, long endNanos, Throwable error) {
+		long micros = Math.min(TimeUnit.NANOSECONDS.toMicros(endNanos - intendedStartNanos), HIGHEST_TRACKABLE_MICROS);
+		latency.recordValue(Math.max(micros, 0));
+		String outcome = outcome(error);
+		if (outcome.equals(String.valueOf(scenario.getExpectedStatus()))) {
+			expected.incrementAndGet();
+		}
+		outcomes.computeIfAbsent(outcome, key -> new AtomicLong()).incrementAndGet();
+	}
+
+	/**
+	 * @return the HTTP status for answers, otherwise a short name of the failure
+	 */
+	static String outcome(Throwable error) {
+		Throwable cause = error;
+		while ((cause instanceof CompletionException || cause instanceof ExecutionException) && cause.getCause() != null) {
+			cause = cause.getCause();
+		}
+		if (cause == null) {
+			return "200";
+		}
+		if (cause instanceof CallRejectedException) {
+			return "rejected";
+		}
+		if (cause instanceof WeatherClientException && ((WeatherClientException) cause).getStatusCode() > 0) {
+			return String.valueOf(((WeatherClientException) cause).getStatusCode());
+		}
+		if (cause instanceof TimeoutException) {
+			return "timeout";
+		}
+		if (cause instanceof CancellationException) {
+			return "cancelled";
+		}
+		Throwable root = cause.getCause() != null ? cause.getCause() : cause;
+		return root.getClass().getSimpleName();
+	}
+
+	public void reset() {
+		latency.reset();
+		outcomes.clear();
+		expected.set(0);
+	}
+
+	public long getCount() {
+		return latency.getTotalCount();
+	}
+
+	/**
+	 * @return calls whose outcome was not the scenario's expected status
+	 */
+	public long getErrorCount() {
+		return getCount() - expected.get();
+	}
+
+	public Map<String, Long> getOutcomes() {
+		Map<String, Long> counts = new TreeMap<String, Long>();
+		for (Map.Entry<String, AtomicLong> entry : outcomes.entrySet()) {
+			counts.put(entry.getKey(), entry.getValue().get());
+		}
+		return counts;
+	}
+
+	public Histogram getLatency() {
+		return latency;
+	}
+
+	public Scenario getScenario() {
+		return scenario;
+	}
+
+	public void print(PrintStream out, double seconds) {
+		out.printf("%-14s %8d %9.1f %8d %9.2f %9.2f %9.2f %9.2f %9.2f  %s%n",
+				scenario.getName(), getCount(), getCount() / seconds, getErrorCount(),
+				millis(latency.getValueAtPercentile(50)), millis(latency.getValueAtPercentile(90)),
+				millis(latency.getValueAtPercentile(99)), millis(latency.getValueAtPercentile(99.9)),
+				millis(latency.getMaxValue()), getOutcomes());
+	}
+
+	static void printHeader(PrintStream out) {
+		out.printf("%-14s %8s %9s %8s %9s %9s %9s %9s %9s  %s%n",
+				"scenario", "count", "req/s", "errors", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms", "outcomes");
+	}
+
+	private static double millis(long micros) {
+		return micros / 1000d;
+	}
+
+}
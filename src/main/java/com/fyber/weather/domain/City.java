@@ -0,0 +1,69 @@
+package com.fyber.weather.domain;
+
+/**
+ * Entry of the OpenWeatherMap city catalogue (city.list.json.gz): the ID to query the API with,
+ * plus name, country code and coordinates.
+ */
+public final class City {
+
+	private final int id;
+	private final String name;
+	private final String country;
+	private final double lon;
+	private final double lat;
+
+	public City(int id, String name, String country, double lon, double lat) {
+		this.id = id;
+		this.name = name;
+		this.country = country;
+		this.lon = lon;
+		this.lat = lat;
+	}
+
+	public int getId() {
+		return id;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return ISO 3166 alpha-2 code, empty for entries without a country
+	 */
+	public String getCountry() {
+		return country;
+	}
+
+	public double getLon() {
+		return lon;
+	}
+
+	public double getLat() {
+		return lat;
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if (this == other) {
+			return true;
+		}
+		if (!(other instanceof City)) {
+			return false;
+		}
+		City that = (City) other;
+		return id == that.id && name.equals(that.name) && country.equals(that.country)
+				&& Double.compare(lon, that.lon) == 0 && Double.compare(lat, that.lat) == 0;
+	}
+
+	@Override
+	public int hashCode() {
+		return id;
+	}
+
+	@Override
+	public String toString() {
+		return id + " " + name + (country.isEmpty() ? "" : "," + country);
+	}
+
+}
@@ -0,0 +1,310 @@
+package com.fyber.weather.domain;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Allocation-light, primitive-only copy of a {@link WeatherResponse}, meant for large in-memory stores.
+ * Optional values are tracked with one presence bit each instead of boxed nulls.
+ */
+public final class CompactWeather {
+
+	public static final int COORD_LON		= 1;
+	public static final int COORD_LAT		= 1 << 1;
+	public static final int TEMP			= 1 << 2;
+	public static final int PRESSURE		= 1 << 3;
+	public static final int HUMIDITY		= 1 << 4;
+	public static final int TEMP_MIN		= 1 << 5;
+	public static final int TEMP_MAX		= 1 << 6;
+	public static final int VISIBILITY		= 1 << 7;
+	public static final int WIND_SPEED		= 1 << 8;
+	public static final int WIND_DEG		= 1 << 9;
+	public static final int CLOUDS_ALL		= 1 << 10;
+	public static final int DT				= 1 << 11;
+	public static final int SYS_TYPE		= 1 << 12;
+	public static final int SYS_ID			= 1 << 13;
+	public static final int SYS_MESSAGE		= 1 << 14;
+	public static final int SUNRISE			= 1 << 15;
+	public static final int SUNSET			= 1 << 16;
+	public static final int ID				= 1 << 17;
+	public static final int COD				= 1 << 18;
+
+	/** Presence bits of the nested objects themselves, so empty and absent objects convert back faithfully */
+	public static final int HAS_COORD		= 1 << 24;
+	public static final int HAS_MAIN		= 1 << 25;
+	public static final int HAS_WIND		= 1 << 26;
+	public static final int HAS_CLOUDS		= 1 << 27;
+	public static final int HAS_SYS			= 1 << 28;
+
+	private static final Weather[] NO_WEATHER = new Weather[0];
+
+	private int present;
+
+	private double lon;
+	private double lat;
+	private double temp;
+	private double tempMin;
+	private double tempMax;
+	private double windSpeed;
+	private double sysMessage;
+	private int pressure;
+	private int humidity;
+	private int visibility;
+	private int windDeg;
+	private int cloudsAll;
+	private int dt;
+	private int sysType;
+	private int sysId;
+	private int sunrise;
+	private int sunset;
+	private int id;
+	private int cod;
+
+	private String base;
+	private String name;
+	private String country;
+	private Weather[] weather;
+
+	private CompactWeather() {
+	}
+
+	/**
+	 * Copies every field of the response; nested {@link Weather} entries are shared, not copied.
+	 */
+	public static CompactWeather from(WeatherResponse response) {
+		CompactWeather compact = new CompactWeather();
+		compact.base = response.getBase();
+		compact.name = response.getName();
+		compact.weather = response.getWeather() == null ? null : response.getWeather().toArray(NO_WEATHER);
+		compact.visibility = compact.put(VISIBILITY, response.getVisibility());
+		compact.dt = compact.put(DT, response.getDt());
+		compact.id = compact.put(ID, response.getId());
+		compact.cod = compact.put(COD, response.getCod());
+
+		Coord coord = response.getCoord();
+		if (coord != null) {
+			compact.present |= HAS_COORD;
+			compact.lon = compact.put(COORD_LON, coord.getLon());
+			compact.lat = compact.put(COORD_LAT, coord.getLat());
+		}
+		Main main = response.getMain();
+		if (main != null) {
+			compact.present |= HAS_MAIN;
+			compact.temp = compact.put(TEMP, main.getTemp());
+			compact.tempMin = compact.put(TEMP_MIN, main.getTempMin());
+			compact.tempMax = compact.put(TEMP_MAX, main.getTempMax());
+			compact.pressure = compact.put(PRESSURE, main.getPressure());
+			compact.humidity = compact.put(HUMIDITY, main.getHumidity());
+		}
+		Wind wind = response.getWind();
+		if (wind != null) {
+			compact.present |= HAS_WIND;
+			compact.windSpeed = compact.put(WIND_SPEED, wind.getSpeed());
+			compact.windDeg = compact.put(WIND_DEG, wind.getDeg());
+		}
+		Clouds clouds = response.getClouds();
+		if (clouds != null) {
+			compact.present |= HAS_CLOUDS;
+			compact.cloudsAll = compact.put(CLOUDS_ALL, clouds.getAll());
+		}
+		Sys sys = response.getSys();
+		if (sys != null) {
+			compact.present |= HAS_SYS;
+			compact.country = sys.getCountry();
+			compact.sysType = compact.put(SYS_TYPE, sys.getType());
+			compact.sysId = compact.put(SYS_ID, sys.getId());
+			compact.sysMessage = compact.put(SYS_MESSAGE, sys.getMessage());
+			compact.sunrise = compact.put(SUNRISE, sys.getSunrise());
+			compact.sunset = compact.put(SUNSET, sys.getSunset());
+		}
+		return compact;
+	}
+
+	/**
+	 * @return a fresh POJO graph equal to the one this instance was built from
+	 */
+	public WeatherResponse toResponse() {
+		WeatherResponse response = new WeatherResponse();
+		response.setBase(base);
+		response.setName(name);
+		if (weather != null) {
+			response.setWeather(new ArrayList<Weather>(Arrays.asList(weather)));
+		}
+		response.setVisibility(integer(VISIBILITY, visibility));
+		response.setDt(integer(DT, dt));
+		response.setId(integer(ID, id));
+		response.setCod(integer(COD, cod));
+
+		if (has(HAS_COORD)) {
+			Coord coord = new Coord();
+			coord.setLon(decimal(COORD_LON, lon));
+			coord.setLat(decimal(COORD_LAT, lat));
+			response.setCoord(coord);
+		}
+		if (has(HAS_MAIN)) {
+			Main main = new Main();
+			main.setTemp(decimal(TEMP, temp));
+			main.setTempMin(decimal(TEMP_MIN, tempMin));
+			main.setTempMax(decimal(TEMP_MAX, tempMax));
+			main.setPressure(integer(PRESSURE, pressure));
+			main.setHumidity(integer(HUMIDITY, humidity));
+			response.setMain(main);
+		}
+		if (has(HAS_WIND)) {
+			Wind wind = new Wind();
+			wind.setSpeed(decimal(WIND_SPEED, windSpeed));
+			wind.setDeg(integer(WIND_DEG, windDeg));
+			response.setWind(wind);
+		}
+		if (has(HAS_CLOUDS)) {
+			Clouds clouds = new Clouds();
+			clouds.setAll(integer(CLOUDS_ALL, cloudsAll));
+			response.setClouds(clouds);
+		}
+		if (has(HAS_SYS)) {
+			Sys sys = new Sys();
+			sys.setCountry(country);
+			sys.setType(integer(SYS_TYPE, sysType));
+			sys.setId(integer(SYS_ID, sysId));
+			sys.setMessage(decimal(SYS_MESSAGE, sysMessage));
+			sys.setSunrise(integer(SUNRISE, sunrise));
+			sys.setSunset(integer(SUNSET, sunset));
+			response.setSys(sys);
+		}
+		return response;
+	}
+
+	private int put(int bit, Integer value) {
+		if (value == null) {
+			return 0;
+		}
+		present |= bit;
+		return value;
+	}
+
+	private double put(int bit, Double value) {
+		if (value == null) {
+			return 0d;
+		}
+		present |= bit;
+		return value;
+	}
+
+	private Integer integer(int bit, int value) {
+		return has(bit) ? Integer.valueOf(value) : null;
+	}
+
+	private Double decimal(int bit, double value) {
+		return has(bit) ? Double.valueOf(value) : null;
+	}
+
+	/**
+	 * @param bits one or more of the presence constants of this class
+	 * @return true when all the given values are present
+	 */
+	public boolean has(int bits) {
+		return (present & bits) == bits;
+	}
+
+	public int getPresence() {
+		return present;
+	}
+
+	public double getLon() {
+		return lon;
+	}
+
+	public double getLat() {
+		return lat;
+	}
+
+	public double getTemp() {
+		return temp;
+	}
+
+	public double getTempMin() {
+		return tempMin;
+	}
+
+	public double getTempMax() {
+		return tempMax;
+	}
+
+	public int getPressure() {
+		return pressure;
+	}
+
+	public int getHumidity() {
+		return humidity;
+	}
+
+	public int getVisibility() {
+		return visibility;
+	}
+
+	public double getWindSpeed() {
+		return windSpeed;
+	}
+
+	public int getWindDeg() {
+		return windDeg;
+	}
+
+	public int getCloudsAll() {
+		return cloudsAll;
+	}
+
+	public int getDt() {
+		return dt;
+	}
+
+	public int getSysType() {
+		return sysType;
+	}
+
+	public int getSysId() {
+		return sysId;
+	}
+
+	public double getSysMessage() {
+		return sysMessage;
+	}
+
+	public int getSunrise() {
+		return sunrise;
+	}
+
+	public int getSunset() {
+		return sunset;
+	}
+
+	public int getId() {
+		return id;
+	}
+
+	public int getCod() {
+		return cod;
+	}
+
+	public String getBase() {
+		return base;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getCountry() {
+		return country;
+	}
+
+	/**
+	 * @return the weather conditions, or null when the response had none
+	 */
+	public List<Weather> getWeather() {
+		return weather == null ? null : Collections.unmodifiableList(Arrays.asList(weather));
+	}
+
+}
@@ -0,0 +1,52 @@
+package com.fyber.weather.domain;
+
+import java.util.List;
+import com.google.gson.annotations.Expose;
+import com.google.gson.annotations.SerializedName;
+
+public class GroupResponse {
+
+@SerializedName("cnt")
+@Expose
+private Integer cnt;
+@SerializedName("list")
+@Expose
+private List<WeatherResponse> list = null;
+
+/**
+* 
+* @return
+* The cnt
+*/
+public Integer getCnt() {
+return cnt;
+}
+
+/**
+* 
+* @param cnt
+* The cnt
+*/
+public void setCnt(Integer cnt) {
+this.cnt = cnt;
+}
+
+/**
+* 
+* @return
+* The list
+*/
+public List<WeatherResponse> getList() {
+return list;
+}
+
+/**
+* 
+* @param list
+* The list
+*/
+public void setList(List<WeatherResponse> list) {
+this.list = list;
+}
+
+}
@@ -0,0 +1,116 @@
+package com.fyber.weather.domain;
+
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * Change of one observed field of a city between two observations, as emitted by change detection.
+ * The first observation of a city reports every present field with a null previous value.
+ */
+public final class WeatherDelta {
+
+	/**
+	 * Observed fields, with how to read them from a response in the unit system it was fetched in.
+	 */
+	public enum Field {
+
+		TEMP(response -> response.getMain() == null ? null : response.getMain().getTemp()),
+		TEMP_MIN(response -> response.getMain() == null ? null : response.getMain().getTempMin()),
+		TEMP_MAX(response -> response.getMain() == null ? null : response.getMain().getTempMax()),
+		PRESSURE(response -> response.getMain() == null ? null : response.getMain().getPressure()),
+		HUMIDITY(response -> response.getMain() == null ? null : response.getMain().getHumidity()),
+		WIND_SPEED(response -> response.getWind() == null ? null : response.getWind().getSpeed()),
+		WIND_DEG(response -> response.getWind() == null ? null : response.getWind().getDeg()),
+		CLOUDS(response -> response.getClouds() == null ? null : response.getClouds().getAll()),
+		VISIBILITY(WeatherResponse::getVisibility),
+		/** weather condition code, see https://openweathermap.org/weather-conditions */
+		CONDITION(response -> response.getWeather() == null || response.getWeather().isEmpty() ? null : response.getWeather().get(0).getId());
+
+		private final Function<WeatherResponse, Object> reader;
+
+		Field(Function<WeatherResponse, Object> reader) {
+			this.reader = reader;
+		}
+
+		public Object read(WeatherResponse response) {
+			return reader.apply(response);
+		}
+	}
+
+	private final int cityId;
+	private final Integer dt;
+	private final Field field;
+	private final Object previous;
+	private final Object current;
+
+	public WeatherDelta(int cityId, Integer dt, Field field, Object previous, Object current) {
+		this.cityId = cityId;
+		this.dt = dt;
+		this.field = field;
+		this.previous = previous;
+		this.current = current;
+	}
+
+	public int getCityId() {
+		return cityId;
+	}
+
+	/**
+	 * @return observation time of the current value, unix seconds
+	 */
+	public Integer getDt() {
+		return dt;
+	}
+
+	public Field getField() {
+		return field;
+	}
+
+	/**
+	 * @return the value before, null on the first observation or when the field was missing
+	 */
+	public Object getPrevious() {
+		return previous;
+	}
+
+	/**
+	 * @return the value now, null when the field is no longer reported
+	 */
+	public Object getCurrent() {
+		return current;
+	}
+
+	/**
+	 * @return current minus previous for numeric fields, null when either side is missing
+	 */
+	public Double getChange() {
+		if (previous instanceof Number && current instanceof Number && field != Field.CONDITION) {
+			return ((Number) current).doubleValue() - ((Number) previous).doubleValue();
+		}
+		return null;
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if (this == other) {
+			return true;
+		}
+		if (!(other instanceof WeatherDelta)) {
+			return false;
+		}
+		WeatherDelta that = (WeatherDelta) other;
+		return cityId == that.cityId && Objects.equals(dt, that.dt) && field == that.field
+				&& Objects.equals(previous, that.previous) && Objects.equals(current, that.current);
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(cityId, dt, field, previous, current);
+	}
+
+	@Override
+	public String toString() {
+		return "WeatherDelta[" + cityId + " " + field + " " + previous + " -> " + current + " at " + dt + "]";
+	}
+
+}
@@ -0,0 +1,197 @@
+package com.fyber.weather.helper;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.fyber.weather.domain.WeatherResponse;
+
+/**
+ * Coalesces concurrent single-city lookups by ID into /group requests. A batch is sent once it
+ * reaches the upstream ID limit or when its time window closes, whichever comes first, and each
+ * caller's future is completed with its own city from the group response.
+ * Lookups by name and explicit group queries are passed through unchanged.
+ */
+public class BatchingWeatherClient implements WeatherSource {
+
+	/** OpenWeatherMap accepts at most 20 IDs per /group call */
+	public static final int UPSTREAM_ID_LIMIT = 20;
+
+	private final WeatherSource delegate;
+	private final int maxBatchSize;
+	private final long maxDelayMillis;
+	private final Map<String, Batch> open = new HashMap<String, Batch>();
+
+	private final AtomicLong batches	= new AtomicLong();
+	private final AtomicLong lookups	= new AtomicLong();
+
+	public BatchingWeatherClient(WeatherSource delegate, ClientConfig clientConfig) {
+		this(delegate, clientConfig.getBatchMaxSize(), clientConfig.getBatchMaxDelayMillis());
+	}
+
+	public BatchingWeatherClient(WeatherSource delegate, int maxBatchSize, long maxDelayMillis) {
+		if (maxBatchSize <= 0 || maxBatchSize > UPSTREAM_ID_LIMIT) {
+			throw new IllegalArgumentException("maxBatchSize must be between 1 and " + UPSTREAM_ID_LIMIT);
+		}
+		this.delegate = delegate;
+		this.maxBatchSize = maxBatchSize;
+		this.maxDelayMillis = maxDelayMillis;
+	}
+
+	public CompletableFuture<WeatherResponse> currentAsync(int cityId) {
+		return currentAsync(WeatherQuery.byId(cityId));
+	}
+
+	@Override
+	public CompletableFuture<WeatherResponse> currentAsync(WeatherQuery query) {
+		int[] cityIds = query.getCityIds();
+		if (query.isGroup()) {
+			throw new IllegalArgumentException("Use groupAsync for " + query);
+		}
+		if (cityIds == null) {
+			return delegate.currentAsync(query);
+		}
+		lookups.incrementAndGet();
+
+		CompletableFuture<WeatherResponse> result = new CompletableFuture<WeatherResponse>();
+		Batch full = null;
+		synchronized (open) {
+			Batch batch = open.get(query.getUnits());
+			if (batch == null) {
+				batch = new Batch(query.getUnits());
+				open.put(query.getUnits(), batch);
+				Batch scheduled = batch;
+				Futures.schedule(() -> flush(scheduled), maxDelayMillis, TimeUnit.MILLISECONDS);
+			}
+			batch.add(cityIds[0], result);
+			if (batch.size() >= maxBatchSize) {
+				open.remove(query.getUnits());
+				full = batch;
+			}
+		}
+		if (full != null) {
+			send(full);
+		}
+		return result;
+	}
+
+	@Override
+	public CompletableFuture<List<WeatherResponse>> groupAsync(WeatherQuery query) {
+		return delegate.groupAsync(query);
+	}
+
+	private void flush(Batch batch) {
+		synchronized (open) {
+			if (open.get(batch.units) != batch) {
+				// already sent because it filled up
+				return;
+			}
+			open.remove(batch.units);
+		}
+		send(batch);
+	}
+
+	private void send(Batch batch) {
+		batches.incrementAndGet();
+		int[] cityIds = batch.cityIds();
+		CompletableFuture<List<WeatherResponse>> group;
+		try {
+			group = delegate.groupAsync(WeatherQuery.group(cityIds).withUnits(batch.units));
+		} catch (RuntimeException e) {
+			group = failed(e);
+		}
+		group.whenComplete((responses, error) -> {
+			if (error != null) {
+				batch.fail(error);
+				return;
+			}
+			Map<Integer, WeatherResponse> byId = new HashMap<Integer, WeatherResponse>();
+			for (WeatherResponse response : responses) {
+				if (response.getId() != null) {
+					byId.put(response.getId(), response);
+				}
+			}
+			batch.complete(byId);
+		});
+	}
+
+	private static <T> CompletableFuture<T> failed(Throwable error) {
+		CompletableFuture<T> future = new CompletableFuture<T>();
+		future.completeExceptionally(error);
+		return future;
+	}
+
+	/**
+	 * @return number of /group requests sent on behalf of single-city lookups
+	 */
+	public long getBatchCount() {
+		return batches.get();
+	}
+
+	public long getLookupCount() {
+		return lookups.get();
+	}
+
+	private static final class Batch {
+
+		private final String units;
+		private final Map<Integer, List<CompletableFuture<WeatherResponse>>> waiters = new LinkedHashMap<Integer, List<CompletableFuture<WeatherResponse>>>();
+
+		private Batch(String units) {
+			this.units = units;
+		}
+
+		private void add(int cityId, CompletableFuture<WeatherResponse> future) {
+			List<CompletableFuture<WeatherResponse>> futures = waiters.get(cityId);
+			if (futures == null) {
+				futures = new ArrayList<CompletableFuture<WeatherResponse>>(1);
+				waiters.put(cityId, futures);
+			}
+			futures.add(future);
+		}
+
+		/**
+		 * @return distinct city IDs, which is what counts against the upstream limit
+		 */
+		private int size() {
+			return waiters.size();
+		}
+
+		private int[] cityIds() {
+			int[] cityIds = new int[waiters.size()];
+			int i = 0;
+			for (Integer cityId : waiters.keySet()) {
+				cityIds[i++] = cityId;
+			}
+			return cityIds;
+		}
+
+		private void complete(Map<Integer, WeatherResponse> byId) {
+			for (Map.Entry<Integer, List<CompletableFuture<WeatherResponse>>> entry : waiters.entrySet()) {
+				WeatherResponse response = byId.get(entry.getKey());
+				for (CompletableFuture<WeatherResponse> future : entry.getValue()) {
+					if (response != null) {
+						future.complete(response);
+					} else {
+						// same status and message the single-city endpoint answers with
+						future.completeExceptionally(new WeatherClientException(502, "Not found city " + entry.getKey()));
+					}
+				}
+			}
+		}
+
+		private void fail(Throwable error) {
+			for (List<CompletableFuture<WeatherResponse>> futures : waiters.values()) {
+				for (CompletableFuture<WeatherResponse> future : futures) {
+					future.completeExceptionally(error);
+				}
+			}
+		}
+	}
+
+}
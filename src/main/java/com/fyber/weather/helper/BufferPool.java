@@ -0,0 +1,94 @@
+package com.fyber.weather.helper;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of equally sized direct buffers for response bodies. Direct buffers are read into by the
+ * socket without an intermediate copy, but are costly to allocate and only freed by the GC much
+ * later, so they are recycled instead of dropped. Up to maxPooled idle buffers are kept; beyond that,
+ * released buffers are left to the GC. Thread-safe.
+ */
+public class BufferPool {
+
+	private final int bufferSize;
+	private final int maxPooled;
+	private final ArrayDeque<ByteBuffer> idle;
+
+	private final AtomicLong allocated	= new AtomicLong();
+	private final AtomicLong reused		= new AtomicLong();
+
+	public BufferPool(ClientConfig clientConfig) {
+		this(clientConfig.getBodyBufferSize(), clientConfig.getBodyBufferPoolSize());
+	}
+
+	public BufferPool(int bufferSize, int maxPooled) {
+		if (bufferSize <= 0) {
+			throw new IllegalArgumentException("bufferSize must be positive");
+		}
+		if (maxPooled < 0) {
+			throw new IllegalArgumentException("maxPooled must not be negative");
+		}
+		this.bufferSize = bufferSize;
+		this.maxPooled = maxPooled;
+		this.idle = new ArrayDeque<ByteBuffer>(Math.min(maxPooled, 1024));
+	}
+
+	/**
+	 * @return a cleared buffer of {@link #getBufferSize()} bytes, to be handed back through {@link #release}
+	 */
+	public ByteBuffer acquire() {
+		ByteBuffer buffer;
+		synchronized (idle) {
+			buffer = idle.pollFirst();
+		}
+		if (buffer == null) {
+			allocated.incrementAndGet();
+			return ByteBuffer.allocateDirect(bufferSize);
+		}
+		reused.incrementAndGet();
+		buffer.clear();
+		return buffer;
+	}
+
+	/**
+	 * Takes a buffer back; it must not be used by the caller afterwards. Buffers not from this pool are ignored.
+	 */
+	public void release(ByteBuffer buffer) {
+		if (buffer == null || !buffer.isDirect() || buffer.capacity() != bufferSize) {
+			return;
+		}
+		synchronized (idle) {
+			if (idle.size() < maxPooled) {
+				// most recently used first, while it is still in the CPU cache
+				idle.offerFirst(buffer);
+			}
+		}
+	}
+
+	public int getBufferSize() {
+		return bufferSize;
+	}
+
+	/**
+	 * @return idle buffers waiting to be reused
+	 */
+	public int getPooledCount() {
+		synchronized (idle) {
+			return idle.size();
+		}
+	}
+
+	/**
+	 * @return buffers allocated because none was idle
+	 */
+	public long getAllocatedCount() {
+		return allocated.get();
+	}
+
+	public long getReusedCount() {
+		return reused.get();
+	}
+
+}
@@ -0,0 +1,50 @@
+package com.fyber.weather.helper;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caps the number of concurrent calls to one endpoint. Calls over the limit are rejected immediately
+ * instead of queueing, so a degraded upstream cannot absorb every caller thread.
+ */
+public class Bulkhead {
+
+	private final String name;
+	private final int maxConcurrent;
+	private final Semaphore permits;
+	private final AtomicLong rejected = new AtomicLong();
+
+	/**
+	 * @param maxConcurrent calls allowed at once, 0 or less for unbounded
+	 */
+	public Bulkhead(String name, int maxConcurrent) {
+		this.name = name;
+		this.maxConcurrent = maxConcurrent;
+		this.permits = maxConcurrent > 0 ? new Semaphore(maxConcurrent) : null;
+	}
+
+	/**
+	 * @throws CallRejectedException when all permits are in use
+	 */
+	public void acquire() throws CallRejectedException {
+		if (permits != null && !permits.tryAcquire()) {
+			rejected.incrementAndGet();
+			throw new CallRejectedException("Bulkhead full for " + name + " (" + maxConcurrent + " calls in flight)");
+		}
+	}
+
+	public void release() {
+		if (permits != null) {
+			permits.release();
+		}
+	}
+
+	public int getInFlight() {
+		return permits == null ? 0 : maxConcurrent - permits.availablePermits();
+	}
+
+	public long getRejectedCount() {
+		return rejected.get();
+	}
+
+}
@@ -0,0 +1,460 @@
+package com.fyber.weather.helper;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+import com.fyber.weather.domain.WeatherResponse;
+
+/**
+ * Persists a {@link ResponseCache} to local disk, so a restarted process starts warm instead of
+ * refilling the cache from upstream.
+ * <p>
+ * Every put, invalidation and clear is appended to a write-ahead log as it happens. Periodically a
+ * snapshot of all live entries is written and the log starts over. On open, the snapshot and the logs
+ * written since are each mapped and read once, front to back, and every entry that has not expired yet
+ * is restored with its original expiry.
+ * <p>
+ * Logs are numbered by generation, and a snapshot covers every log older than its own generation.
+ * A checkpoint first switches to a new log, then writes the snapshot to a temporary file and renames
+ * it atomically, and only then deletes the old log. A crash at any point therefore leaves a snapshot
+ * plus the logs that complete it. Records carry a length and a CRC32; a torn record at the end of
+ * a log ends the replay and is cut off.
+ * <p>
+ * Record layout, big-endian: int length, int CRC32 of the body, then the body: a type byte and, for
+ * puts, the expiry in epoch milliseconds, the key and the length-prefixed {@link WeatherCodec} form of
+ * the value. Log writes go to the OS without fsync, which survives a crash of the process; checkpoints
+ * and close force them to the device.
+ */
+public class CachePersistence implements Closeable {
+
+	private static final int MAGIC = 0x4F574353;
+	private static final int VERSION = 2;
+	private static final int HEADER_SIZE = 16;
+	private static final String SNAPSHOT = "cache.snapshot";
+	private static final String LOG_PREFIX = "cache-";
+	private static final String LOG_SUFFIX = ".wal";
+
+	private static final byte PUT		= 1;
+	private static final byte REMOVE	= 2;
+	private static final byte CLEAR		= 3;
+
+	private final ResponseCache<WeatherResponse> cache;
+	private final Path directory;
+	private final ScheduledExecutorService scheduler;
+	private FileChannel log;
+	private long generation;
+
+	private final AtomicLong restored		= new AtomicLong();
+	private final AtomicLong records		= new AtomicLong();
+	private final AtomicLong writeErrors	= new AtomicLong();
+	private final AtomicLong checkpoints	= new AtomicLong();
+
+	private CachePersistence(ResponseCache<WeatherResponse> cache, Path directory) {
+		this.cache = cache;
+		this.directory = directory;
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "weather-cache-snapshot");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Restores the cache from the directory and logs its changes from then on, with a checkpoint at the
+	 * configured snapshot interval.
+	 */
+	public static CachePersistence open(ResponseCache<WeatherResponse> cache, Path directory, ClientConfig clientConfig) throws IOException {
+		CachePersistence persistence = open(cache, directory);
+		persistence.scheduleCheckpoints(clientConfig.getCacheSnapshotIntervalMillis());
+		return persistence;
+	}
+
+	/**
+	 * Restores the cache from the directory and logs its changes from then on; checkpoints are up to
+	 * the caller.
+	 */
+	public static CachePersistence open(ResponseCache<WeatherResponse> cache, Path directory) throws IOException {
+		Files.createDirectories(directory);
+		CachePersistence persistence = new CachePersistence(cache, directory);
+		persistence.restore();
+		cache.setListener(persistence.new LogWriter());
+		return persistence;
+	}
+
+	private void restore() throws IOException {
+		long snapshotGeneration = 0;
+		Path snapshot = directory.resolve(SNAPSHOT);
+		if (Files.exists(snapshot)) {
+			snapshotGeneration = replay(snapshot, false);
+		}
+		List<Long> generations = logGenerations();
+		long last = snapshotGeneration;
+		for (long logGeneration : generations) {
+			if (logGeneration < snapshotGeneration) {
+				Files.delete(logPath(logGeneration));
+				continue;
+			}
+			Path path = logPath(logGeneration);
+			// a crash while a log was created can leave it without a complete header, and so without records
+			if (Files.size(path) >= HEADER_SIZE) {
+				replay(path, true);
+			} else {
+				Files.delete(path);
+			}
+			last = logGeneration;
+		}
+		generation = last;
+		log = openLog(generation);
+	}
+
+	/**
+	 * Reads a snapshot or log in one pass over its mapping and applies its records to the cache.
+	 * @param truncate cut off a torn record at the end instead of failing
+	 * @return the generation in the file header
+	 */
+	private long replay(Path file, boolean truncate) throws IOException {
+		long fileGeneration;
+		long valid;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			if (channel.size() < HEADER_SIZE) {
+				throw new IOException("Truncated cache file " + file);
+			}
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (buffer.getInt() != MAGIC) {
+				throw new IOException("Not a cache file " + file);
+			}
+			if (buffer.getInt() != VERSION) {
+				throw new IOException("Unsupported cache file version in " + file);
+			}
+			fileGeneration = buffer.getLong();
+			valid = buffer.position();
+			CRC32 crc = new CRC32();
+			while (buffer.remaining() >= 8) {
+				int length = buffer.getInt();
+				int checksum = buffer.getInt();
+				if (length < 0 || length > buffer.remaining()) {
+					break;
+				}
+				byte[] body = new byte[length];
+				buffer.get(body);
+				crc.reset();
+				crc.update(body, 0, length);
+				if ((int) crc.getValue() != checksum) {
+					break;
+				}
+				apply(body);
+				valid = buffer.position();
+			}
+			if (valid < channel.size() && !truncate) {
+				throw new IOException("Corrupt record at " + valid + " of " + file);
+			}
+		}
+		if (truncate && valid < Files.size(file)) {
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+				channel.truncate(valid);
+			}
+		}
+		return fileGeneration;
+	}
+
+	private void apply(byte[] body) throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+		byte type = in.readByte();
+		if (type == CLEAR) {
+			cache.clear();
+			return;
+		}
+		if (type == REMOVE) {
+			cache.invalidate(readKey(in));
+			return;
+		}
+		if (type != PUT) {
+			throw new IOException("Unknown cache record type " + type);
+		}
+		long expiresAt = in.readLong();
+		WeatherQuery key = readKey(in);
+		byte[] value = new byte[in.readInt()];
+		in.readFully(value);
+		if (cache.restore(key, WeatherCodec.decode(value), expiresAt)) {
+			restored.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Starts a new log, writes a snapshot of the live entries and deletes the logs it covers.
+	 */
+	public void checkpoint() throws IOException {
+		long covered;
+		synchronized (this) {
+			covered = generation;
+			FileChannel next = openLog(covered + 1);
+			log.force(true);
+			log.close();
+			log = next;
+			generation = covered + 1;
+		}
+
+		Path temp = Files.createTempFile(directory, SNAPSHOT, ".tmp");
+		try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+			write(channel, header(covered + 1));
+			long now = cache.getClock().getAsLong();
+			IOException[] failure = new IOException[1];
+			cache.forEachEntry((key, value, expiresAt) -> {
+				if (expiresAt > now && failure[0] == null) {
+					try {
+						write(channel, record(put(key, value, expiresAt)));
+					} catch (IOException e) {
+						failure[0] = e;
+					}
+				}
+			});
+			if (failure[0] != null) {
+				throw failure[0];
+			}
+			channel.force(true);
+		} catch (IOException e) {
+			Files.deleteIfExists(temp);
+			throw e;
+		}
+		Files.move(temp, directory.resolve(SNAPSHOT), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		for (long logGeneration : logGenerations()) {
+			if (logGeneration <= covered) {
+				Files.deleteIfExists(logPath(logGeneration));
+			}
+		}
+		checkpoints.incrementAndGet();
+	}
+
+	/**
+	 * Runs {@link #checkpoint()} at a fixed delay; failures are counted and retried next time.
+	 */
+	public void scheduleCheckpoints(long intervalMillis) {
+		scheduler.scheduleWithFixedDelay(() -> {
+			try {
+				checkpoint();
+			} catch (IOException | RuntimeException e) {
+				writeErrors.incrementAndGet();
+			}
+		}, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	private synchronized void append(byte[] body) {
+		try {
+			write(log, record(body));
+			records.incrementAndGet();
+		} catch (IOException e) {
+			// the cache keeps working, it just restores less after a restart
+			writeErrors.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Opens a log for appending. A new log only appears under its name once its header is complete.
+	 */
+	private FileChannel openLog(long logGeneration) throws IOException {
+		Path path = logPath(logGeneration);
+		if (!Files.exists(path)) {
+			Path temp = Files.createTempFile(directory, LOG_PREFIX, ".tmp");
+			try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+				write(channel, header(logGeneration));
+				channel.force(true);
+			} catch (IOException e) {
+				Files.deleteIfExists(temp);
+				throw e;
+			}
+			Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE);
+		}
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE);
+		channel.position(channel.size());
+		return channel;
+	}
+
+	private Path logPath(long logGeneration) {
+		return directory.resolve(LOG_PREFIX + logGeneration + LOG_SUFFIX);
+	}
+
+	private List<Long> logGenerations() throws IOException {
+		List<Long> generations = new ArrayList<Long>();
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, LOG_PREFIX + "*" + LOG_SUFFIX)) {
+			for (Path file : files) {
+				String name = file.getFileName().toString();
+				generations.add(Long.valueOf(name.substring(LOG_PREFIX.length(), name.length() - LOG_SUFFIX.length())));
+			}
+		}
+		Collections.sort(generations);
+		return generations;
+	}
+
+	private static ByteBuffer header(long generation) {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		header.putInt(MAGIC).putInt(VERSION).putLong(generation);
+		header.flip();
+		return header;
+	}
+
+	private static ByteBuffer record(byte[] body) {
+		CRC32 crc = new CRC32();
+		crc.update(body, 0, body.length);
+		ByteBuffer record = ByteBuffer.allocate(8 + body.length);
+		record.putInt(body.length).putInt((int) crc.getValue()).put(body);
+		record.flip();
+		return record;
+	}
+
+	private static void write(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+
+	private static byte[] put(WeatherQuery key, WeatherResponse value, long expiresAt) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeByte(PUT);
+		out.writeLong(expiresAt);
+		writeKey(out, key);
+		byte[] encoded = WeatherCodec.encode(value);
+		out.writeInt(encoded.length);
+		out.write(encoded);
+		return bytes.toByteArray();
+	}
+
+	private static byte[] remove(WeatherQuery key) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeByte(REMOVE);
+		writeKey(out, key);
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Key as path flag, city IDs, name and units, each optional part behind a presence flag.
+	 */
+	private static void writeKey(DataOutputStream out, WeatherQuery key) throws IOException {
+		out.writeBoolean(key.isGroup());
+		int[] cityIds = key.getCityIds();
+		out.writeInt(cityIds == null ? -1 : cityIds.length);
+		if (cityIds != null) {
+			for (int cityId : cityIds) {
+				out.writeInt(cityId);
+			}
+		}
+		writeOptional(out, key.getName());
+		writeOptional(out, key.getUnits());
+	}
+
+	private static WeatherQuery readKey(DataInputStream in) throws IOException {
+		boolean group = in.readBoolean();
+		int count = in.readInt();
+		int[] cityIds = count < 0 ? null : new int[count];
+		for (int i = 0; i < count; i++) {
+			cityIds[i] = in.readInt();
+		}
+		String name = readOptional(in);
+		String units = readOptional(in);
+		WeatherQuery key;
+		if (name != null) {
+			key = WeatherQuery.byName(name, null);
+		} else if (group) {
+			key = WeatherQuery.group(cityIds);
+		} else if (cityIds != null && cityIds.length == 1) {
+			key = WeatherQuery.byId(cityIds[0]);
+		} else {
+			throw new IOException("Unreadable cache key");
+		}
+		return key.withUnits(units);
+	}
+
+	private static void writeOptional(DataOutputStream out, String value) throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null) {
+			out.writeUTF(value);
+		}
+	}
+
+	private static String readOptional(DataInputStream in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+
+	/**
+	 * Stops logging and checkpointing; the files stay for the next {@link #open}.
+	 */
+	@Override
+	public void close() throws IOException {
+		scheduler.shutdownNow();
+		cache.setListener(null);
+		synchronized (this) {
+			log.force(true);
+			log.close();
+		}
+	}
+
+	/**
+	 * @return entries put back into the cache when it was opened
+	 */
+	public long getRestoredCount() {
+		return restored.get();
+	}
+
+	public long getRecordCount() {
+		return records.get();
+	}
+
+	public long getWriteErrorCount() {
+		return writeErrors.get();
+	}
+
+	public long getCheckpointCount() {
+		return checkpoints.get();
+	}
+
+	/**
+	 * Appends the cache's changes to the current log.
+	 */
+	private final class LogWriter implements ResponseCache.Listener<WeatherResponse> {
+
+		@Override
+		public void onPut(WeatherQuery key, WeatherResponse value, long expiresAt) {
+			try {
+				append(put(key, value, expiresAt));
+			} catch (IOException e) {
+				writeErrors.incrementAndGet();
+			}
+		}
+
+		@Override
+		public void onRemove(WeatherQuery key) {
+			try {
+				append(remove(key));
+			} catch (IOException e) {
+				writeErrors.incrementAndGet();
+			}
+		}
+
+		@Override
+		public void onClear() {
+			append(new byte[] { CLEAR });
+		}
+	}
+
+}
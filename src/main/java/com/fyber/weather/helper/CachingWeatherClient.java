@@ -0,0 +1,247 @@
+package com.fyber.weather.helper;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.fyber.weather.domain.WeatherResponse;
+
+/**
+ * Serves /weather and /group lookups from a {@link ResponseCache} and only goes upstream on a miss.
+ * Group queries are split per city, so a /group call only fetches the IDs that are not cached yet
+ * and its results also warm the single-city entries. Those IDs go through the cache's in-flight
+ * loads like single-city misses, so concurrent lookups of a city share one fetch, and are sent in
+ * /group calls of at most {@link BatchingWeatherClient#UPSTREAM_ID_LIMIT} IDs.
+ * When the upstream call fails, for instance because the circuit breaker is open, an expired entry
+ * is served instead if one is still cached.
+ * <p>
+ * Metric and imperial lookups are fetched and cached in standard units and converted locally by
+ * {@link UnitConverter}, so one entry per city serves every unit system. Unknown unit systems are
+ * passed through and cached on their own.
+ */
+public class CachingWeatherClient implements WeatherSource {
+
+	private final WeatherSource delegate;
+	private final ResponseCache<WeatherResponse> cache;
+	private final AtomicLong staleServed = new AtomicLong();
+	private volatile boolean serveStaleOnError = true;
+	private volatile boolean convertUnitsLocally = true;
+
+	public CachingWeatherClient(WeatherSource delegate, ResponseCache<WeatherResponse> cache) {
+		this.delegate = delegate;
+		this.cache = cache;
+	}
+
+	public CompletableFuture<WeatherResponse> currentAsync(int cityId) {
+		return currentAsync(WeatherQuery.byId(cityId));
+	}
+
+	public CompletableFuture<WeatherResponse> currentAsync(int cityId, String units) {
+		return currentAsync(WeatherQuery.byId(cityId).withUnits(units));
+	}
+
+	public CompletableFuture<List<WeatherResponse>> groupAsync(int... cityIds) {
+		return groupAsync(WeatherQuery.group(cityIds));
+	}
+
+	@Override
+	public CompletableFuture<WeatherResponse> currentAsync(WeatherQuery query) {
+		if (query.isGroup()) {
+			throw new IllegalArgumentException("Use groupAsync for " + query);
+		}
+		String units = query.getUnits();
+		WeatherQuery key = query.withUnits(fetchUnits(units));
+		CompletableFuture<WeatherResponse> result = new CompletableFuture<WeatherResponse>();
+		cache.get(key, delegate::currentAsync).whenComplete((response, error) -> {
+			if (error == null) {
+				result.complete(convert(response, units));
+				return;
+			}
+			WeatherResponse stale = staleFor(error, key);
+			if (stale != null) {
+				result.complete(convert(stale, units));
+			} else {
+				result.completeExceptionally(unwrap(error));
+			}
+		});
+		return result;
+	}
+
+	@Override
+	public CompletableFuture<List<WeatherResponse>> groupAsync(WeatherQuery query) {
+		int[] cityIds = query.getCityIds();
+		String units = query.getUnits();
+		String fetchUnits = fetchUnits(units);
+		Map<Integer, WeatherResponse> found = new HashMap<Integer, WeatherResponse>();
+		Set<Integer> missing = new LinkedHashSet<Integer>();
+		for (int cityId : cityIds) {
+			WeatherResponse cached = cache.getCounted(cityKey(cityId, fetchUnits));
+			if (cached != null) {
+				found.put(cityId, cached);
+			} else {
+				missing.add(cityId);
+			}
+		}
+		if (missing.isEmpty()) {
+			return CompletableFuture.completedFuture(ordered(cityIds, found, units));
+		}
+
+		// cities already loading for another caller are joined; the rest are left to this call to fetch
+		Map<Integer, CompletableFuture<WeatherResponse>> loads = new LinkedHashMap<Integer, CompletableFuture<WeatherResponse>>();
+		Map<Integer, CompletableFuture<WeatherResponse>> lookups = new LinkedHashMap<Integer, CompletableFuture<WeatherResponse>>();
+		for (int cityId : missing) {
+			WeatherQuery key = cityKey(cityId, fetchUnits);
+			lookups.put(cityId, cache.load(key, loadKey -> {
+				CompletableFuture<WeatherResponse> load = new CompletableFuture<WeatherResponse>();
+				loads.put(cityId, load);
+				return load;
+			}).handle((response, error) -> {
+				if (error == null) {
+					return response;
+				}
+				WeatherResponse stale = staleFor(error, key);
+				if (stale == null) {
+					throw new CompletionException(unwrap(error));
+				}
+				return stale;
+			}));
+		}
+		fetch(new ArrayList<Integer>(loads.keySet()), fetchUnits, loads);
+
+		CompletableFuture<List<WeatherResponse>> result = new CompletableFuture<List<WeatherResponse>>();
+		CompletableFuture.allOf(lookups.values().toArray(new CompletableFuture<?>[lookups.size()])).whenComplete((ignored, error) -> {
+			if (error != null) {
+				result.completeExceptionally(unwrap(error));
+				return;
+			}
+			for (Map.Entry<Integer, CompletableFuture<WeatherResponse>> lookup : lookups.entrySet()) {
+				WeatherResponse response = lookup.getValue().join();
+				if (response != null) {
+					found.put(lookup.getKey(), response);
+				}
+			}
+			result.complete(ordered(cityIds, found, units));
+		});
+		return result;
+	}
+
+	/**
+	 * Fetches the cities in /group calls of at most {@link BatchingWeatherClient#UPSTREAM_ID_LIMIT} IDs and
+	 * completes their loads; unknown IDs complete with null, so nothing is cached for them.
+	 */
+	private void fetch(List<Integer> cities, String fetchUnits, Map<Integer, CompletableFuture<WeatherResponse>> loads) {
+		for (int from = 0; from < cities.size(); from += BatchingWeatherClient.UPSTREAM_ID_LIMIT) {
+			List<Integer> batch = cities.subList(from, Math.min(cities.size(), from + BatchingWeatherClient.UPSTREAM_ID_LIMIT));
+			int[] batchIds = new int[batch.size()];
+			for (int i = 0; i < batchIds.length; i++) {
+				batchIds[i] = batch.get(i);
+			}
+			CompletableFuture<List<WeatherResponse>> fetched;
+			try {
+				fetched = delegate.groupAsync(WeatherQuery.group(batchIds).withUnits(fetchUnits));
+			} catch (RuntimeException e) {
+				fetched = new CompletableFuture<List<WeatherResponse>>();
+				fetched.completeExceptionally(e);
+			}
+			fetched.whenComplete((responses, error) -> {
+				Map<Integer, WeatherResponse> byId = new HashMap<Integer, WeatherResponse>();
+				if (error == null) {
+					for (WeatherResponse response : responses) {
+						if (response.getId() != null) {
+							byId.put(response.getId(), response);
+						}
+					}
+				}
+				for (int cityId : batchIds) {
+					if (error != null) {
+						loads.get(cityId).completeExceptionally(error);
+					} else {
+						loads.get(cityId).complete(byId.get(cityId));
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * Client errors such as an invalid key are real answers and are passed on; outages, rejections and
+	 * upstream rate limiting are bridged with stale data when available.
+	 */
+	private WeatherResponse staleFor(Throwable error, WeatherQuery key) {
+		if (!serveStaleOnError) {
+			return null;
+		}
+		Throwable cause = unwrap(error);
+		if (cause instanceof WeatherClientException) {
+			int status = ((WeatherClientException) cause).getStatusCode();
+			if (status >= 400 && status < 500 && status != 429) {
+				return null;
+			}
+		}
+		WeatherResponse stale = cache.getStale(key);
+		if (stale != null) {
+			staleServed.incrementAndGet();
+		}
+		return stale;
+	}
+
+	private static Throwable unwrap(Throwable error) {
+		return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+	}
+
+	/**
+	 * @return the unit system to fetch and cache the requested one in
+	 */
+	private String fetchUnits(String units) {
+		return convertUnitsLocally && UnitConverter.isConvertible(units) ? null : units;
+	}
+
+	private WeatherResponse convert(WeatherResponse response, String units) {
+		return convertUnitsLocally ? UnitConverter.convert(response, units) : response;
+	}
+
+	private static WeatherQuery cityKey(int cityId, String units) {
+		return WeatherQuery.byId(cityId).withUnits(units);
+	}
+
+	/**
+	 * Unknown IDs are left out, the same way the upstream /group endpoint skips them.
+	 */
+	private List<WeatherResponse> ordered(int[] cityIds, Map<Integer, WeatherResponse> found, String units) {
+		List<WeatherResponse> result = new ArrayList<WeatherResponse>(cityIds.length);
+		for (int cityId : cityIds) {
+			WeatherResponse response = found.get(cityId);
+			if (response != null) {
+				result.add(convert(response, units));
+			}
+		}
+		return result;
+	}
+
+	public void setServeStaleOnError(boolean serveStaleOnError) {
+		this.serveStaleOnError = serveStaleOnError;
+	}
+
+	/**
+	 * @param convertUnitsLocally false to fetch and cache every unit system separately
+	 */
+	public void setConvertUnitsLocally(boolean convertUnitsLocally) {
+		this.convertUnitsLocally = convertUnitsLocally;
+	}
+
+	public long getStaleServedCount() {
+		return staleServed.get();
+	}
+
+	public ResponseCache<WeatherResponse> getCache() {
+		return cache;
+	}
+
+}
@@ -0,0 +1,14 @@
+package com.fyber.weather.helper;
+
+/**
+ * Raised without contacting the API because the endpoint's circuit is open or its bulkhead is full.
+ */
+public class CallRejectedException extends WeatherClientException {
+
+	private static final long serialVersionUID = 1L;
+
+	public CallRejectedException(String message) {
+		super(503, message);
+	}
+
+}
@@ -0,0 +1,175 @@
+package com.fyber.weather.helper;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Count-based circuit breaker. It opens when, over the last calls of its window, the share of failed
+ * or slow calls crosses the configured rate. While open every call is rejected; after the open period
+ * a few probe calls are let through and their outcome closes or re-opens the circuit.
+ */
+public class CircuitBreaker {
+
+	public enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	private static final byte OK		= 0;
+	private static final byte FAILED	= 1;
+	private static final byte SLOW		= 2;
+
+	private final String name;
+	private final int minimumCalls;
+	private final int failureRatePercent;
+	private final long slowCallMillis;
+	private final int slowCallRatePercent;
+	private final long openMillis;
+	private final int halfOpenProbes;
+	private final LongSupplier clock;
+
+	private final byte[] window;
+	private int recorded;
+	private int next;
+	private int failures;
+	private int slowCalls;
+
+	private State state = State.CLOSED;
+	private long openedAt;
+	private int probesInFlight;
+	private int probeSuccesses;
+	private long rejected;
+
+	public CircuitBreaker(String name, ClientConfig clientConfig) {
+		this(name, clientConfig.getBreakerWindowSize(), clientConfig.getBreakerMinimumCalls(),
+				clientConfig.getBreakerFailureRatePercent(), clientConfig.getBreakerSlowCallMillis(),
+				clientConfig.getBreakerSlowCallRatePercent(), clientConfig.getBreakerOpenMillis(),
+				clientConfig.getBreakerHalfOpenProbes(), System::currentTimeMillis);
+	}
+
+	public CircuitBreaker(String name, int windowSize, int minimumCalls, int failureRatePercent, long slowCallMillis,
+			int slowCallRatePercent, long openMillis, int halfOpenProbes, LongSupplier clock) {
+		this.name = name;
+		this.window = new byte[windowSize];
+		this.minimumCalls = Math.min(minimumCalls, windowSize);
+		this.failureRatePercent = failureRatePercent;
+		this.slowCallMillis = slowCallMillis;
+		this.slowCallRatePercent = slowCallRatePercent;
+		this.openMillis = openMillis;
+		this.halfOpenProbes = halfOpenProbes;
+		this.clock = clock;
+	}
+
+	/**
+	 * Asks for permission to call. Every permitted call must be followed by {@link #onSuccess} or {@link #onFailure},
+	 * or by {@link #onIgnored} when its outcome says nothing about upstream health.
+	 * @throws CallRejectedException when the circuit is open or all half-open probes are taken
+	 */
+	public synchronized void acquire() throws CallRejectedException {
+		if (state == State.OPEN) {
+			if (clock.getAsLong() - openedAt < openMillis) {
+				rejected++;
+				throw new CallRejectedException("Circuit open for " + name);
+			}
+			state = State.HALF_OPEN;
+			probesInFlight = 0;
+			probeSuccesses = 0;
+		}
+		if (state == State.HALF_OPEN) {
+			if (probesInFlight >= halfOpenProbes) {
+				rejected++;
+				throw new CallRejectedException("Circuit half-open for " + name + ", probes in flight");
+			}
+			probesInFlight++;
+		}
+	}
+
+	public synchronized void onSuccess(long latencyMillis) {
+		if (state == State.HALF_OPEN) {
+			probesInFlight--;
+			if (latencyMillis >= slowCallMillis) {
+				open();
+			} else if (++probeSuccesses >= halfOpenProbes) {
+				close();
+			}
+			return;
+		}
+		record(latencyMillis >= slowCallMillis ? SLOW : OK);
+	}
+
+	public synchronized void onFailure() {
+		if (state == State.HALF_OPEN) {
+			probesInFlight--;
+			open();
+			return;
+		}
+		record(FAILED);
+	}
+
+	/**
+	 * Releases a permitted call whose outcome is not counted, such as a 4xx answer or a cancellation.
+	 */
+	public synchronized void onIgnored() {
+		if (state == State.HALF_OPEN) {
+			probesInFlight--;
+		}
+	}
+
+	private void record(byte outcome) {
+		if (state != State.CLOSED) {
+			// late outcome of a call sent before the circuit opened
+			return;
+		}
+		if (recorded == window.length) {
+			forget(window[next]);
+		} else {
+			recorded++;
+		}
+		window[next] = outcome;
+		next = (next + 1) % window.length;
+		if (outcome == FAILED) {
+			failures++;
+		} else if (outcome == SLOW) {
+			slowCalls++;
+		}
+		if (recorded >= minimumCalls
+				&& (failures * 100 >= failureRatePercent * recorded || slowCalls * 100 >= slowCallRatePercent * recorded)) {
+			open();
+		}
+	}
+
+	private void forget(byte outcome) {
+		if (outcome == FAILED) {
+			failures--;
+		} else if (outcome == SLOW) {
+			slowCalls--;
+		}
+	}
+
+	private void open() {
+		state = State.OPEN;
+		openedAt = clock.getAsLong();
+	}
+
+	private void close() {
+		state = State.CLOSED;
+		recorded = 0;
+		next = 0;
+		failures = 0;
+		slowCalls = 0;
+	}
+
+	public synchronized State getState() {
+		if (state == State.OPEN && clock.getAsLong() - openedAt >= openMillis) {
+			return State.HALF_OPEN;
+		}
+		return state;
+	}
+
+	public synchronized long getRejectedCount() {
+		return rejected;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+}
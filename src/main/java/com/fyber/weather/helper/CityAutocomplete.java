@@ -0,0 +1,508 @@
+package com.fyber.weather.helper;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import com.fyber.weather.domain.City;
+
+/**
+ * Prefix and fuzzy autocomplete over city names, answering keystrokes locally instead of sending
+ * every partial name to /weather?q=.
+ * <p>
+ * Names are folded to lower case without diacritics and with punctuation turned into single blanks,
+ * so "Garching bei München", "garching-bei-munchen" and "MUNCHEN" meet. Every name is indexed from
+ * each word on, so "munch" finds "Garching bei München" too. The indexed terms are kept sorted in one
+ * char pool, which makes every prefix a contiguous range and the array itself an implicit trie:
+ * prefix lookups are two binary searches, and fuzzy lookups walk that trie with a Levenshtein row
+ * per level, allowing one edit from four characters on and two from eight on.
+ * <p>
+ * Candidates are ranked by edit distance, then exact term over longer completion, whole name over
+ * later word and shorter name. A query may end in ", CC" to keep one ISO 3166 country only.
+ * <p>
+ * The index is immutable and shared; lookups go through a {@link Lookup} that holds all working
+ * buffers, so they do not allocate. A Lookup is not thread-safe, keep one per thread.
+ */
+public class CityAutocomplete {
+
+	public static final int MAX_TERM_LENGTH = 64;
+
+	private static final char DROP = '\0';
+	private static final char[] FOLD = new char[0x3000];
+
+	static {
+		for (char c = 0; c < FOLD.length; c++) {
+			if (Character.isLetterOrDigit(c)) {
+				char base = Normalizer.normalize(String.valueOf(c), Normalizer.Form.NFD).charAt(0);
+				FOLD[c] = Character.toLowerCase(base);
+			} else if (Character.getType(c) == Character.NON_SPACING_MARK || Character.getType(c) == Character.ENCLOSING_MARK
+					|| Character.getType(c) == Character.COMBINING_SPACING_MARK) {
+				FOLD[c] = DROP;
+			} else {
+				FOLD[c] = ' ';
+			}
+		}
+		// letters without a canonical decomposition
+		FOLD['ø'] = 'o';
+		FOLD['Ø'] = 'o';
+		FOLD['đ'] = 'd';
+		FOLD['Đ'] = 'd';
+		FOLD['ł'] = 'l';
+		FOLD['Ł'] = 'l';
+		FOLD['ı'] = 'i';
+		FOLD['ħ'] = 'h';
+		FOLD['Ħ'] = 'h';
+	}
+
+	private final char[] pool;
+	private final int[] termOffsets;
+	private final int[] termLengths;
+	private final int[] termCities;
+	private final boolean[] wholeName;
+	private final int[] ids;
+	private final int[] nameLengths;
+	private final char[] countries;
+
+	private CityAutocomplete(List<City> cities) {
+		int size = cities.size();
+		ids = new int[size];
+		nameLengths = new int[size];
+		countries = new char[size * 2];
+		StringBuilder folded = new StringBuilder();
+		List<Term> terms = new ArrayList<Term>();
+		char[] buffer = new char[MAX_TERM_LENGTH];
+		for (int city = 0; city < size; city++) {
+			City entry = cities.get(city);
+			ids[city] = entry.getId();
+			if (entry.getCountry().length() == 2) {
+				countries[city * 2] = Character.toUpperCase(entry.getCountry().charAt(0));
+				countries[city * 2 + 1] = Character.toUpperCase(entry.getCountry().charAt(1));
+			}
+			int length = fold(entry.getName(), 0, entry.getName().length(), buffer);
+			nameLengths[city] = length;
+			int offset = folded.length();
+			folded.append(buffer, 0, length);
+			for (int start = 0; start < length; start++) {
+				if (start == 0 || buffer[start - 1] == ' ') {
+					terms.add(new Term(new String(buffer, start, length - start), offset + start, city, start == 0));
+				}
+			}
+		}
+		terms.sort((a, b) -> {
+			int order = a.text.compareTo(b.text);
+			return order != 0 ? order : Integer.compare(a.city, b.city);
+		});
+
+		pool = new char[folded.length()];
+		folded.getChars(0, pool.length, pool, 0);
+		termOffsets = new int[terms.size()];
+		termLengths = new int[terms.size()];
+		termCities = new int[terms.size()];
+		wholeName = new boolean[terms.size()];
+		for (int i = 0; i < terms.size(); i++) {
+			Term term = terms.get(i);
+			termOffsets[i] = term.offset;
+			termLengths[i] = term.text.length();
+			termCities[i] = term.city;
+			wholeName[i] = term.wholeName;
+		}
+	}
+
+	/**
+	 * Indexes every city of the catalogue; building reads each record once.
+	 */
+	public static CityAutocomplete of(CityCatalog catalog) {
+		List<City> cities = new ArrayList<City>(catalog.size());
+		for (int record = 0; record < catalog.size(); record++) {
+			cities.add(catalog.city(record));
+		}
+		return new CityAutocomplete(cities);
+	}
+
+	public static CityAutocomplete of(Collection<City> cities) {
+		return new CityAutocomplete(new ArrayList<City>(cities));
+	}
+
+	/**
+	 * @param limit largest number of candidates a lookup returns
+	 */
+	public Lookup newLookup(int limit) {
+		return new Lookup(limit);
+	}
+
+	/**
+	 * Convenience form of {@link #complete(CharSequence, Lookup)} that allocates its own buffers.
+	 * @return the IDs of the best candidates, best first
+	 */
+	public int[] complete(CharSequence query, int limit) {
+		Lookup lookup = newLookup(limit);
+		int[] result = new int[complete(query, lookup)];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = lookup.cityId(i);
+		}
+		return result;
+	}
+
+	/**
+	 * Fills the lookup with the best candidates for the typed text, without allocating.
+	 * Exact prefix matches always rank first; fuzzy matches only fill the places they leave.
+	 * @return the number of candidates found, at most the lookup's limit
+	 */
+	public int complete(CharSequence query, Lookup lookup) {
+		lookup.reset();
+		int end = query.length();
+		for (int i = end - 1; i >= 0; i--) {
+			if (query.charAt(i) == ',') {
+				lookup.setCountry(query, i + 1, end);
+				end = i;
+				break;
+			}
+		}
+		int length = fold(query, 0, end, lookup.query);
+		lookup.length = length;
+		if (length == 0) {
+			return 0;
+		}
+
+		int from = lowerBound(lookup.query, length);
+		int to = upperBound(lookup.query, length, from);
+		collect(from, to, 0, length, lookup);
+
+		int maxEdits = length >= 8 ? 2 : length >= 4 ? 1 : 0;
+		if (maxEdits > 0 && !lookup.isFull()) {
+			int[] first = lookup.rows[0];
+			for (int j = 0; j <= length; j++) {
+				first[j] = j;
+			}
+			fuzzy(0, termOffsets.length, 0, maxEdits, lookup);
+		}
+		lookup.sort();
+		return lookup.size;
+	}
+
+	/**
+	 * Walks the children of the implicit trie node made of the terms in [from, to) sharing their first
+	 * depth characters; rows[depth] holds the edit distances of that prefix to each query prefix.
+	 */
+	private void fuzzy(int from, int to, int depth, int maxEdits, Lookup lookup) {
+		if (depth == MAX_TERM_LENGTH) {
+			return;
+		}
+		int length = lookup.length;
+		int i = from;
+		while (i < to && termLengths[i] == depth) {
+			i++;
+		}
+		while (i < to) {
+			char c = charAt(i, depth);
+			int groupEnd = groupEnd(i, to, depth, c);
+
+			int[] previous = lookup.rows[depth];
+			int[] row = lookup.rows[depth + 1];
+			row[0] = depth + 1;
+			int best = row[0];
+			for (int j = 1; j <= length; j++) {
+				int cost = lookup.query[j - 1] == c ? 0 : 1;
+				int value = Math.min(Math.min(row[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+				// adjacent transposition, "muenchen" for "munechen"
+				if (j > 1 && depth > 0 && lookup.query[j - 1] == charAt(i, depth - 1) && lookup.query[j - 2] == c) {
+					value = Math.min(value, lookup.rows[depth - 1][j - 2] + 1);
+				}
+				row[j] = value;
+				best = Math.min(best, value);
+			}
+
+			if (row[length] <= maxEdits && row[length] > 0) {
+				collect(i, groupEnd, row[length], depth + 1, lookup);
+			}
+			// deeper prefixes can only do better while some query prefix is still closer
+			if (best <= maxEdits && best < row[length]) {
+				fuzzy(i, groupEnd, depth + 1, maxEdits, lookup);
+			}
+			i = groupEnd;
+		}
+	}
+
+	private void collect(int from, int to, int distance, int matched, Lookup lookup) {
+		for (int i = from; i < to; i++) {
+			int city = termCities[i];
+			if (!lookup.accepts(countries, city)) {
+				continue;
+			}
+			long score = (long) distance << 52
+					| (termLengths[i] == matched ? 0L : 1L) << 51
+					| (wholeName[i] ? 0L : 1L) << 50
+					| (long) nameLengths[city] << 32
+					| city;
+			lookup.offer(city, ids[city], score);
+		}
+	}
+
+	private char charAt(int term, int index) {
+		return pool[termOffsets[term] + index];
+	}
+
+	/**
+	 * @return the first term not smaller than the query
+	 */
+	private int lowerBound(char[] query, int length) {
+		int low = 0;
+		int high = termOffsets.length;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (compare(middle, query, length, false) < 0) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * @return the first term from the lower bound on that does not start with the query
+	 */
+	private int upperBound(char[] query, int length, int from) {
+		int low = from;
+		int high = termOffsets.length;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (compare(middle, query, length, true) <= 0) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * @param prefixOnly compare only the first length characters of the term
+	 */
+	private int compare(int term, char[] query, int length, boolean prefixOnly) {
+		int termLength = termLengths[term];
+		int common = Math.min(termLength, length);
+		int offset = termOffsets[term];
+		for (int i = 0; i < common; i++) {
+			int order = pool[offset + i] - query[i];
+			if (order != 0) {
+				return order;
+			}
+		}
+		if (termLength >= length) {
+			return prefixOnly || termLength == length ? 0 : 1;
+		}
+		return -1;
+	}
+
+	private int groupEnd(int from, int to, int depth, char c) {
+		int low = from;
+		int high = to;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (charAt(middle, depth) <= c) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Folds the text into the buffer: lower case, diacritics stripped, ß/æ/œ/þ expanded, anything but
+	 * letters and digits turned into single blanks and surrounding blanks trimmed.
+	 * @return the folded length, at most the buffer length
+	 */
+	static int fold(CharSequence text, int from, int to, char[] out) {
+		int length = 0;
+		boolean blank = true;
+		for (int i = from; i < to && length < out.length; i++) {
+			char c = text.charAt(i);
+			char folded = c < FOLD.length ? FOLD[c] : Character.isLetterOrDigit(c) || Character.isSurrogate(c) ? Character.toLowerCase(c) : ' ';
+			if (folded == DROP) {
+				continue;
+			}
+			if (folded == ' ') {
+				if (!blank) {
+					out[length++] = ' ';
+					blank = true;
+				}
+				continue;
+			}
+			blank = false;
+			char second = DROP;
+			switch (c) {
+			case 'ß':
+			case 'ẞ':
+				folded = 's';
+				second = 's';
+				break;
+			case 'æ':
+			case 'Æ':
+				folded = 'a';
+				second = 'e';
+				break;
+			case 'œ':
+			case 'Œ':
+				folded = 'o';
+				second = 'e';
+				break;
+			case 'þ':
+			case 'Þ':
+				folded = 't';
+				second = 'h';
+				break;
+			default:
+				break;
+			}
+			out[length++] = folded;
+			if (second != DROP && length < out.length) {
+				out[length++] = second;
+			}
+		}
+		if (length > 0 && out[length - 1] == ' ') {
+			length--;
+		}
+		return length;
+	}
+
+	public int size() {
+		return ids.length;
+	}
+
+	/**
+	 * Reusable working buffers and results of one lookup at a time, best candidate first.
+	 */
+	public static final class Lookup {
+
+		private final char[] query = new char[MAX_TERM_LENGTH];
+		private final int[][] rows = new int[MAX_TERM_LENGTH + 1][MAX_TERM_LENGTH + 1];
+		private final int[] cities;
+		private final int[] cityIds;
+		private final long[] scores;
+		private int length;
+		private int size;
+		private char country0;
+		private char country1;
+
+		private Lookup(int limit) {
+			if (limit <= 0) {
+				throw new IllegalArgumentException("limit must be positive");
+			}
+			cities = new int[limit];
+			cityIds = new int[limit];
+			scores = new long[limit];
+		}
+
+		public int size() {
+			return size;
+		}
+
+		public int cityId(int rank) {
+			if (rank >= size) {
+				throw new IndexOutOfBoundsException("rank " + rank + " of " + size);
+			}
+			return cityIds[rank];
+		}
+
+		/**
+		 * @return the number of edits the candidate needed, 0 for a plain prefix match
+		 */
+		public int editDistance(int rank) {
+			if (rank >= size) {
+				throw new IndexOutOfBoundsException("rank " + rank + " of " + size);
+			}
+			return (int) (scores[rank] >>> 52);
+		}
+
+		private void reset() {
+			size = 0;
+			length = 0;
+			country0 = DROP;
+			country1 = DROP;
+		}
+
+		private void setCountry(CharSequence text, int from, int to) {
+			while (from < to && Character.isWhitespace(text.charAt(from))) {
+				from++;
+			}
+			while (to > from && Character.isWhitespace(text.charAt(to - 1))) {
+				to--;
+			}
+			if (to - from == 2) {
+				country0 = Character.toUpperCase(text.charAt(from));
+				country1 = Character.toUpperCase(text.charAt(from + 1));
+			}
+		}
+
+		private boolean accepts(char[] countries, int city) {
+			return country0 == DROP || countries[city * 2] == country0 && countries[city * 2 + 1] == country1;
+		}
+
+		private boolean isFull() {
+			return size == scores.length;
+		}
+
+		/**
+		 * Keeps the limit best scores, unsorted, and one score per city, the best of its terms.
+		 */
+		private void offer(int city, int cityId, long score) {
+			int worst = -1;
+			for (int i = 0; i < size; i++) {
+				if (cities[i] == city) {
+					if (score < scores[i]) {
+						scores[i] = score;
+					}
+					return;
+				}
+				if (worst < 0 || scores[i] > scores[worst]) {
+					worst = i;
+				}
+			}
+			if (size < scores.length) {
+				worst = size++;
+			} else if (score >= scores[worst]) {
+				return;
+			}
+			cities[worst] = city;
+			cityIds[worst] = cityId;
+			scores[worst] = score;
+		}
+
+		private void sort() {
+			for (int i = 1; i < size; i++) {
+				int city = cities[i];
+				int cityId = cityIds[i];
+				long score = scores[i];
+				int j = i - 1;
+				while (j >= 0 && scores[j] > score) {
+					cities[j + 1] = cities[j];
+					cityIds[j + 1] = cityIds[j];
+					scores[j + 1] = scores[j];
+					j--;
+				}
+				cities[j + 1] = city;
+				cityIds[j + 1] = cityId;
+				scores[j + 1] = score;
+			}
+		}
+	}
+
+	private static final class Term {
+
+		private final String text;
+		private final int offset;
+		private final int city;
+		private final boolean wholeName;
+
+		private Term(String text, int offset, int city, boolean wholeName) {
+			this.text = text;
+			this.offset = offset;
+			this.city = city;
+			this.wholeName = wholeName;
+		}
+	}
+
+}
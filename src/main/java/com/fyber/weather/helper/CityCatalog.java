@@ -0,0 +1,465 @@
+package com.fyber.weather.helper;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+import com.fyber.weather.domain.City;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+/**
+ * Read-only view of the city catalogue (city.list.json.gz) backed by a memory-mapped binary index.
+ * The catalogue is stream-parsed once into the index file; opening the index afterwards only maps it,
+ * so startup takes milliseconds and the entries stay off the heap.
+ * IDs are found through an open-addressing hash table in O(1); names are folded to lower case without
+ * diacritics, so "Köln" and "koln" hit the same entries.
+ * <p>
+ * Index layout, big-endian: a 32 byte header, fixed-size city records, the ID hash table, the name
+ * hash table, the posting lists of record numbers per folded name, and a pool of UTF-8 strings.
+ */
+public class CityCatalog {
+
+	private static final int MAGIC = 0x4F574D43;
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 32;
+	private static final int RECORD_SIZE = 20;
+	private static final double COORD_SCALE = 1e6;
+	private static final int[] NO_IDS = new int[0];
+	private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+
+	private final ByteBuffer index;
+	private final int count;
+	private final int idSlots;
+	private final int nameSlots;
+	private final int idTable;
+	private final int nameTable;
+	private final int postings;
+	private final int strings;
+
+	private CityCatalog(ByteBuffer index) throws IOException {
+		this.index = index;
+		if (index.capacity() < HEADER_SIZE || index.getInt(0) != MAGIC) {
+			throw new IOException("Not a city catalogue index");
+		}
+		if (index.getInt(4) != VERSION) {
+			throw new IOException("Unsupported city catalogue index version " + index.getInt(4));
+		}
+		count = index.getInt(8);
+		idSlots = index.getInt(12);
+		nameSlots = index.getInt(16);
+		postings = index.getInt(20);
+		strings = index.getInt(24);
+		idTable = HEADER_SIZE + count * RECORD_SIZE;
+		nameTable = idTable + idSlots * 4;
+	}
+
+	/**
+	 * Opens the index, rebuilding it first when it is missing or older than the catalogue.
+	 */
+	public static CityCatalog load(Path catalogue, Path indexFile) throws IOException {
+		if (!Files.exists(indexFile) || Files.getLastModifiedTime(indexFile).compareTo(Files.getLastModifiedTime(catalogue)) < 0) {
+			try (InputStream in = Files.newInputStream(catalogue)) {
+				build(in, indexFile);
+			}
+		}
+		return open(indexFile);
+	}
+
+	/**
+	 * Maps an index written by {@link #build}.
+	 */
+	public static CityCatalog open(Path indexFile) throws IOException {
+		try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+			MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			return new CityCatalog(mapped);
+		}
+	}
+
+	/**
+	 * Stream-parses a catalogue, gzipped or plain, and writes its index. The file is replaced atomically,
+	 * so readers never map a half-written index.
+	 */
+	public static void build(InputStream catalogue, Path indexFile) throws IOException {
+		Builder builder = new Builder();
+		JsonReader reader = new JsonReader(new InputStreamReader(decompress(catalogue), StandardCharsets.UTF_8));
+		try {
+			reader.beginArray();
+			while (reader.hasNext()) {
+				builder.read(reader);
+			}
+			reader.endArray();
+		} catch (IllegalStateException e) {
+			throw new JsonParseException("Malformed city catalogue", e);
+		}
+
+		ByteBuffer buffer = builder.write();
+		Path parent = indexFile.toAbsolutePath().getParent();
+		Files.createDirectories(parent);
+		Path temp = Files.createTempFile(parent, indexFile.getFileName().toString(), ".tmp");
+		try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			channel.force(true);
+		}
+		Files.move(temp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private static InputStream decompress(InputStream in) throws IOException {
+		BufferedInputStream buffered = new BufferedInputStream(in, 1 << 16);
+		buffered.mark(2);
+		int first = buffered.read();
+		int second = buffered.read();
+		buffered.reset();
+		return first == 0x1f && second == 0x8b ? new GZIPInputStream(buffered, 1 << 16) : buffered;
+	}
+
+	/**
+	 * @return the city, or null when the ID is not in the catalogue
+	 */
+	public City get(int id) {
+		int record = find(id);
+		return record < 0 ? null : city(record);
+	}
+
+	public boolean contains(int id) {
+		return find(id) >= 0;
+	}
+
+	/**
+	 * @return IDs of all cities with that name in catalogue order, empty when unknown
+	 */
+	public int[] idsByName(String name) {
+		return idsByName(name, null);
+	}
+
+	/**
+	 * @param country ISO 3166 alpha-2 code, or null for any country
+	 */
+	public int[] idsByName(String name, String country) {
+		int posting = posting(fold(name));
+		if (posting < 0) {
+			return NO_IDS;
+		}
+		int size = index.getInt(posting + 8);
+		int[] ids = new int[size];
+		int found = 0;
+		for (int i = 0; i < size; i++) {
+			int record = index.getInt(posting + 12 + i * 4);
+			if (country == null || countryMatches(record, country)) {
+				ids[found++] = index.getInt(recordOffset(record));
+			}
+		}
+		return found == size ? ids : Arrays.copyOf(ids, found);
+	}
+
+	/**
+	 * Turns a by-name query into a by-ID one when the catalogue knows exactly one such city, sparing
+	 * the API the name lookup. Ambiguous and unknown names are returned unchanged for the API to decide.
+	 */
+	public WeatherQuery resolve(WeatherQuery query) {
+		String q = query.getName();
+		if (q == null) {
+			return query;
+		}
+		int comma = q.lastIndexOf(',');
+		int[] ids = comma < 0 ? idsByName(q) : idsByName(q.substring(0, comma), q.substring(comma + 1).trim());
+		return ids.length == 1 ? WeatherQuery.byId(ids[0]).withUnits(query.getUnits()) : query;
+	}
+
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * @param record position in the index, from 0 to {@link #size()} - 1
+	 */
+	public City city(int record) {
+		int offset = recordOffset(record);
+		int id = index.getInt(offset);
+		double lon = index.getInt(offset + 4) / COORD_SCALE;
+		double lat = index.getInt(offset + 8) / COORD_SCALE;
+		String name = string(index.getInt(offset + 12), index.getShort(offset + 16) & 0xffff);
+		char c0 = (char) index.get(offset + 18);
+		char c1 = (char) index.get(offset + 19);
+		String country = c0 == 0 ? "" : WeatherStrings.country(c0, c1);
+		return new City(id, name, country, lon, lat);
+	}
+
+	private int find(int id) {
+		int mask = idSlots - 1;
+		for (int slot = mix(id) & mask;; slot = (slot + 1) & mask) {
+			int entry = index.getInt(idTable + slot * 4);
+			if (entry == 0) {
+				return -1;
+			}
+			if (index.getInt(recordOffset(entry - 1)) == id) {
+				return entry - 1;
+			}
+		}
+	}
+
+	private int posting(byte[] key) {
+		int mask = nameSlots - 1;
+		for (int slot = fnv(key) & mask;; slot = (slot + 1) & mask) {
+			int entry = index.getInt(nameTable + slot * 4);
+			if (entry == 0) {
+				return -1;
+			}
+			int posting = postings + entry - 1;
+			if (keyEquals(index.getInt(posting), index.getInt(posting + 4), key)) {
+				return posting;
+			}
+		}
+	}
+
+	private boolean keyEquals(int offset, int length, byte[] key) {
+		if (length != key.length) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (index.get(strings + offset + i) != key[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private boolean countryMatches(int record, String country) {
+		int offset = recordOffset(record) + 18;
+		if (country.length() != 2) {
+			return false;
+		}
+		return Character.toUpperCase(country.charAt(0)) == index.get(offset)
+				&& Character.toUpperCase(country.charAt(1)) == index.get(offset + 1);
+	}
+
+	private String string(int offset, int length) {
+		byte[] bytes = new byte[length];
+		for (int i = 0; i < length; i++) {
+			bytes[i] = index.get(strings + offset + i);
+		}
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static int recordOffset(int record) {
+		return HEADER_SIZE + record * RECORD_SIZE;
+	}
+
+	/**
+	 * Lower case, accents stripped and surrounding blanks removed, as UTF-8.
+	 */
+	static byte[] fold(String name) {
+		String decomposed = Normalizer.normalize(name.trim(), Normalizer.Form.NFD);
+		return COMBINING_MARKS.matcher(decomposed).replaceAll("").toLowerCase(Locale.ROOT).getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static int mix(int id) {
+		int h = id * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	private static int fnv(byte[] key) {
+		int h = 0x811C9DC5;
+		for (byte b : key) {
+			h = (h ^ (b & 0xff)) * 0x01000193;
+		}
+		return h ^ (h >>> 16);
+	}
+
+	private static int tableSize(int entries) {
+		return Integer.highestOneBit(Math.max(entries, 1) * 2 - 1) << 1;
+	}
+
+	/**
+	 * Collects the catalogue in primitive arrays and lays out the index in one buffer.
+	 */
+	private static final class Builder {
+
+		private int[] ids = new int[1024];
+		private int[] lons = new int[1024];
+		private int[] lats = new int[1024];
+		private final List<String> names = new ArrayList<String>();
+		private final List<String> countries = new ArrayList<String>();
+		private final Set<Integer> seen = new HashSet<Integer>();
+		private int count;
+
+		private void read(JsonReader reader) throws IOException {
+			Integer id = null;
+			String name = "";
+			String country = "";
+			double lon = 0;
+			double lat = 0;
+			reader.beginObject();
+			while (reader.hasNext()) {
+				String field = reader.nextName();
+				if (reader.peek() == JsonToken.NULL) {
+					reader.skipValue();
+				} else if (field.equals("id") || field.equals("_id")) {
+					id = reader.nextInt();
+				} else if (field.equals("name")) {
+					name = reader.nextString();
+				} else if (field.equals("country")) {
+					country = reader.nextString().trim().toUpperCase(Locale.ROOT);
+				} else if (field.equals("coord")) {
+					reader.beginObject();
+					while (reader.hasNext()) {
+						String axis = reader.nextName();
+						if (axis.equals("lon")) {
+							lon = reader.nextDouble();
+						} else if (axis.equals("lat")) {
+							lat = reader.nextDouble();
+						} else {
+							reader.skipValue();
+						}
+					}
+					reader.endObject();
+				} else {
+					reader.skipValue();
+				}
+			}
+			reader.endObject();
+			// the catalogue has a few duplicate IDs; the first entry wins
+			if (id == null || !seen.add(id)) {
+				return;
+			}
+			if (count == ids.length) {
+				ids = Arrays.copyOf(ids, count * 2);
+				lons = Arrays.copyOf(lons, count * 2);
+				lats = Arrays.copyOf(lats, count * 2);
+			}
+			ids[count] = id;
+			lons[count] = (int) Math.round(lon * COORD_SCALE);
+			lats[count] = (int) Math.round(lat * COORD_SCALE);
+			names.add(name);
+			countries.add(country.length() == 2 ? country : "");
+			count++;
+		}
+
+		private ByteBuffer write() {
+			int idSlots = tableSize(count);
+			int[] idTable = new int[idSlots];
+			int mask = idSlots - 1;
+			for (int record = 0; record < count; record++) {
+				int slot = mix(ids[record]) & mask;
+				while (idTable[slot] != 0) {
+					slot = (slot + 1) & mask;
+				}
+				idTable[slot] = record + 1;
+			}
+
+			Map<String, List<Integer>> byName = new LinkedHashMap<String, List<Integer>>();
+			for (int record = 0; record < count; record++) {
+				byName.computeIfAbsent(new String(fold(names.get(record)), StandardCharsets.UTF_8),
+						key -> new ArrayList<Integer>()).add(record);
+			}
+
+			StringPool pool = new StringPool();
+			int[] nameOffsets = new int[count];
+			byte[][] nameBytes = new byte[count][];
+			for (int record = 0; record < count; record++) {
+				nameBytes[record] = utf8(names.get(record));
+				nameOffsets[record] = pool.add(nameBytes[record]);
+			}
+
+			int nameSlots = tableSize(byName.size());
+			int[] nameTable = new int[nameSlots];
+			int postingsSize = 0;
+			for (List<Integer> records : byName.values()) {
+				postingsSize += 12 + records.size() * 4;
+			}
+			ByteBuffer postingBuffer = ByteBuffer.allocate(postingsSize);
+			for (Map.Entry<String, List<Integer>> entry : byName.entrySet()) {
+				byte[] key = entry.getKey().getBytes(StandardCharsets.UTF_8);
+				int slot = fnv(key) & (nameSlots - 1);
+				while (nameTable[slot] != 0) {
+					slot = (slot + 1) & (nameSlots - 1);
+				}
+				nameTable[slot] = postingBuffer.position() + 1;
+				postingBuffer.putInt(pool.add(key)).putInt(key.length).putInt(entry.getValue().size());
+				for (int record : entry.getValue()) {
+					postingBuffer.putInt(record);
+				}
+			}
+
+			int postings = HEADER_SIZE + count * RECORD_SIZE + idSlots * 4 + nameSlots * 4;
+			int strings = postings + postingsSize;
+			ByteBuffer buffer = ByteBuffer.allocate(strings + pool.size());
+			buffer.putInt(MAGIC).putInt(VERSION).putInt(count).putInt(idSlots).putInt(nameSlots)
+					.putInt(postings).putInt(strings).putInt(0);
+			for (int record = 0; record < count; record++) {
+				String country = countries.get(record);
+				buffer.putInt(ids[record]).putInt(lons[record]).putInt(lats[record])
+						.putInt(nameOffsets[record]).putShort((short) Math.min(nameBytes[record].length, 0xffff))
+						.put(country.isEmpty() ? 0 : (byte) country.charAt(0))
+						.put(country.isEmpty() ? 0 : (byte) country.charAt(1));
+			}
+			for (int entry : idTable) {
+				buffer.putInt(entry);
+			}
+			for (int entry : nameTable) {
+				buffer.putInt(entry);
+			}
+			buffer.put(postingBuffer.array());
+			pool.writeTo(buffer);
+			buffer.flip();
+			return buffer;
+		}
+
+		private static byte[] utf8(String value) {
+			return value.getBytes(StandardCharsets.UTF_8);
+		}
+	}
+
+	/**
+	 * Appends strings once each; many catalogue names repeat.
+	 */
+	private static final class StringPool {
+
+		private final Map<String, Integer> offsets = new LinkedHashMap<String, Integer>();
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+		private int add(byte[] value) {
+			String key = new String(value, StandardCharsets.ISO_8859_1);
+			Integer offset = offsets.get(key);
+			if (offset == null) {
+				offset = bytes.size();
+				offsets.put(key, offset);
+				bytes.write(value, 0, value.length);
+			}
+			return offset;
+		}
+
+		private int size() {
+			return bytes.size();
+		}
+
+		private void writeTo(ByteBuffer buffer) {
+			buffer.put(bytes.toByteArray());
+		}
+	}
+
+}
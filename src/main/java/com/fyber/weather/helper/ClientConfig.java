@@ -12,6 +12,324 @@ public class ClientConfig {
 	private String notJSONContentType 	= "application/x-shockwave-flash"; 
 	private String imperialUnit			= "imperial";
 	private String metricUnit			= "metric";
+	private int maxTotalConnections		= 200;
+	private int maxConnectionsPerRoute	= 50;
+	private int connectTimeout			= 5000;
+	private int socketTimeout			= 10000;
+	private int connectionRequestTimeout	= 2000;
+	private long keepAliveMillis		= 30000;
+	private int ioThreadCount			= Runtime.getRuntime().availableProcessors();
+	private long cacheTtlMillis			= 600000;
+	private int cacheMaxEntries			= 10000;
+	private long cacheSnapshotIntervalMillis	= 300000;
+	private int batchMaxSize			= 20;
+	private long batchMaxDelayMillis	= 10;
+	private int rateLimitPerMinute		= 60;
+	private int rateLimitBurst			= 60;
+	private long rateLimitMaxWaitMillis	= 60000;
+	private long totalTimeoutMillis		= 30000;
+	private int maxRetries				= 2;
+	private long retryBackoffMillis		= 100;
+	private long retryMaxBackoffMillis	= 2000;
+	private int hedgePercentile			= 0;
+	private int hedgeBudgetPercent		= 10;
+	private int breakerWindowSize		= 50;
+	private int breakerMinimumCalls		= 20;
+	private int breakerFailureRatePercent	= 50;
+	private long breakerSlowCallMillis	= 5000;
+	private int breakerSlowCallRatePercent	= 80;
+	private long breakerOpenMillis		= 30000;
+	private int breakerHalfOpenProbes	= 3;
+	private int bulkheadMaxConcurrent	= 100;
+	private long pollIntervalMillis		= 480000;
+	private int pollJitterPercent		= 10;
+	private int bodyBufferSize			= 8192;
+	private int bodyBufferPoolSize		= 256;
+	
+	public int getMaxTotalConnections() {
+		return maxTotalConnections;
+	}
+
+	public void setMaxTotalConnections(int maxTotalConnections) {
+		this.maxTotalConnections = maxTotalConnections;
+	}
+
+	public int getMaxConnectionsPerRoute() {
+		return maxConnectionsPerRoute;
+	}
+
+	public void setMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+		this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+	}
+
+	public int getConnectTimeout() {
+		return connectTimeout;
+	}
+
+	public void setConnectTimeout(int connectTimeout) {
+		this.connectTimeout = connectTimeout;
+	}
+
+	public int getSocketTimeout() {
+		return socketTimeout;
+	}
+
+	public void setSocketTimeout(int socketTimeout) {
+		this.socketTimeout = socketTimeout;
+	}
+
+	public int getConnectionRequestTimeout() {
+		return connectionRequestTimeout;
+	}
+
+	public void setConnectionRequestTimeout(int connectionRequestTimeout) {
+		this.connectionRequestTimeout = connectionRequestTimeout;
+	}
+
+	public long getKeepAliveMillis() {
+		return keepAliveMillis;
+	}
+
+	public void setKeepAliveMillis(long keepAliveMillis) {
+		this.keepAliveMillis = keepAliveMillis;
+	}
+
+	public int getIoThreadCount() {
+		return ioThreadCount;
+	}
+
+	public void setIoThreadCount(int ioThreadCount) {
+		this.ioThreadCount = ioThreadCount;
+	}
+
+	public long getCacheTtlMillis() {
+		return cacheTtlMillis;
+	}
+
+	public void setCacheTtlMillis(long cacheTtlMillis) {
+		this.cacheTtlMillis = cacheTtlMillis;
+	}
+
+	public int getCacheMaxEntries() {
+		return cacheMaxEntries;
+	}
+
+	public void setCacheMaxEntries(int cacheMaxEntries) {
+		this.cacheMaxEntries = cacheMaxEntries;
+	}
+
+	/**
+	 * @return how often a persisted cache writes a snapshot and starts a new log
+	 */
+	public long getCacheSnapshotIntervalMillis() {
+		return cacheSnapshotIntervalMillis;
+	}
+
+	public void setCacheSnapshotIntervalMillis(long cacheSnapshotIntervalMillis) {
+		this.cacheSnapshotIntervalMillis = cacheSnapshotIntervalMillis;
+	}
+
+	public int getBatchMaxSize() {
+		return batchMaxSize;
+	}
+
+	public void setBatchMaxSize(int batchMaxSize) {
+		this.batchMaxSize = batchMaxSize;
+	}
+
+	public long getBatchMaxDelayMillis() {
+		return batchMaxDelayMillis;
+	}
+
+	public void setBatchMaxDelayMillis(long batchMaxDelayMillis) {
+		this.batchMaxDelayMillis = batchMaxDelayMillis;
+	}
+
+	/**
+	 * @return calls per minute allowed for the API key, 0 disables rate limiting
+	 */
+	public int getRateLimitPerMinute() {
+		return rateLimitPerMinute;
+	}
+
+	public void setRateLimitPerMinute(int rateLimitPerMinute) {
+		this.rateLimitPerMinute = rateLimitPerMinute;
+	}
+
+	public int getRateLimitBurst() {
+		return rateLimitBurst;
+	}
+
+	public void setRateLimitBurst(int rateLimitBurst) {
+		this.rateLimitBurst = rateLimitBurst;
+	}
+
+	/**
+	 * @return how long a call may queue for a permit, 0 fails fast when the bucket is empty
+	 */
+	public long getRateLimitMaxWaitMillis() {
+		return rateLimitMaxWaitMillis;
+	}
+
+	public void setRateLimitMaxWaitMillis(long rateLimitMaxWaitMillis) {
+		this.rateLimitMaxWaitMillis = rateLimitMaxWaitMillis;
+	}
+
+	public long getTotalTimeoutMillis() {
+		return totalTimeoutMillis;
+	}
+
+	public void setTotalTimeoutMillis(long totalTimeoutMillis) {
+		this.totalTimeoutMillis = totalTimeoutMillis;
+	}
+
+	public int getMaxRetries() {
+		return maxRetries;
+	}
+
+	public void setMaxRetries(int maxRetries) {
+		this.maxRetries = maxRetries;
+	}
+
+	public long getRetryBackoffMillis() {
+		return retryBackoffMillis;
+	}
+
+	public void setRetryBackoffMillis(long retryBackoffMillis) {
+		this.retryBackoffMillis = retryBackoffMillis;
+	}
+
+	public long getRetryMaxBackoffMillis() {
+		return retryMaxBackoffMillis;
+	}
+
+	public void setRetryMaxBackoffMillis(long retryMaxBackoffMillis) {
+		this.retryMaxBackoffMillis = retryMaxBackoffMillis;
+	}
+
+	/**
+	 * @return latency percentile after which an async call is hedged, 0 disables hedging
+	 */
+	public int getHedgePercentile() {
+		return hedgePercentile;
+	}
+
+	public void setHedgePercentile(int hedgePercentile) {
+		this.hedgePercentile = hedgePercentile;
+	}
+
+	public int getHedgeBudgetPercent() {
+		return hedgeBudgetPercent;
+	}
+
+	public void setHedgeBudgetPercent(int hedgeBudgetPercent) {
+		this.hedgeBudgetPercent = hedgeBudgetPercent;
+	}
+
+	public int getBreakerWindowSize() {
+		return breakerWindowSize;
+	}
+
+	public void setBreakerWindowSize(int breakerWindowSize) {
+		this.breakerWindowSize = breakerWindowSize;
+	}
+
+	public int getBreakerMinimumCalls() {
+		return breakerMinimumCalls;
+	}
+
+	public void setBreakerMinimumCalls(int breakerMinimumCalls) {
+		this.breakerMinimumCalls = breakerMinimumCalls;
+	}
+
+	public int getBreakerFailureRatePercent() {
+		return breakerFailureRatePercent;
+	}
+
+	public void setBreakerFailureRatePercent(int breakerFailureRatePercent) {
+		this.breakerFailureRatePercent = breakerFailureRatePercent;
+	}
+
+	public long getBreakerSlowCallMillis() {
+		return breakerSlowCallMillis;
+	}
+
+	public void setBreakerSlowCallMillis(long breakerSlowCallMillis) {
+		this.breakerSlowCallMillis = breakerSlowCallMillis;
+	}
+
+	public int getBreakerSlowCallRatePercent() {
+		return breakerSlowCallRatePercent;
+	}
+
+	public void setBreakerSlowCallRatePercent(int breakerSlowCallRatePercent) {
+		this.breakerSlowCallRatePercent = breakerSlowCallRatePercent;
+	}
+
+	public long getBreakerOpenMillis() {
+		return breakerOpenMillis;
+	}
+
+	public void setBreakerOpenMillis(long breakerOpenMillis) {
+		this.breakerOpenMillis = breakerOpenMillis;
+	}
+
+	public int getBreakerHalfOpenProbes() {
+		return breakerHalfOpenProbes;
+	}
+
+	public void setBreakerHalfOpenProbes(int breakerHalfOpenProbes) {
+		this.breakerHalfOpenProbes = breakerHalfOpenProbes;
+	}
+
+	/**
+	 * @return concurrent calls allowed per endpoint before new ones are rejected, 0 for unbounded
+	 */
+	public int getBulkheadMaxConcurrent() {
+		return bulkheadMaxConcurrent;
+	}
+
+	public void setBulkheadMaxConcurrent(int bulkheadMaxConcurrent) {
+		this.bulkheadMaxConcurrent = bulkheadMaxConcurrent;
+	}
+
+	/**
+	 * @return how often the poller refreshes each watched city; keep it below the cache TTL
+	 */
+	public long getPollIntervalMillis() {
+		return pollIntervalMillis;
+	}
+
+	public void setPollIntervalMillis(long pollIntervalMillis) {
+		this.pollIntervalMillis = pollIntervalMillis;
+	}
+
+	/**
+	 * @return random spread of each refresh around the poll interval, in percent of it
+	 */
+	public int getPollJitterPercent() {
+		return pollJitterPercent;
+	}
+
+	public void setPollJitterPercent(int pollJitterPercent) {
+		this.pollJitterPercent = pollJitterPercent;
+	}
+
+	public int getBodyBufferSize() {
+		return bodyBufferSize;
+	}
+
+	public void setBodyBufferSize(int bodyBufferSize) {
+		this.bodyBufferSize = bodyBufferSize;
+	}
+
+	public int getBodyBufferPoolSize() {
+		return bodyBufferPoolSize;
+	}
+
+	public void setBodyBufferPoolSize(int bodyBufferPoolSize) {
+		this.bodyBufferPoolSize = bodyBufferPoolSize;
+	}
 	
 	public String getImperialUnit() {
 		return imperialUnit;
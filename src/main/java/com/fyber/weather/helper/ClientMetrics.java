@@ -0,0 +1,120 @@
+package com.fyber.weather.helper;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import org.apache.http.pool.PoolStats;
+
+/**
+ * Meters of one {@link WeatherClient}, resolved once per endpoint and status so recording a request
+ * does not go through the registry lookup.
+ */
+final class ClientMetrics {
+
+	static final String REQUEST			= "weather.client.request";
+	static final String CONNECTION_ACQUIRE	= "weather.client.connection.acquire";
+	static final String TIME_TO_FIRST_BYTE	= "weather.client.ttfb";
+	static final String BODY_READ			= "weather.client.body.read";
+	static final String DESERIALIZATION	= "weather.client.deserialization";
+	static final String PAYLOAD_SIZE		= "weather.client.payload.size";
+
+	/**
+	 * Status tag of calls that failed without an answer
+	 */
+	static final String IO_ERROR = "IO_ERROR";
+
+	private final MetricsRegistry registry;
+	private final ConcurrentHashMap<String, Meters> meters = new ConcurrentHashMap<String, Meters>();
+
+	ClientMetrics(MetricsRegistry registry) {
+		this.registry = registry;
+	}
+
+	boolean isEnabled() {
+		return registry != MetricsRegistry.NOOP;
+	}
+
+	MetricsRegistry.Timer connectionAcquire(String pool) {
+		return registry.timer(CONNECTION_ACQUIRE, "pool", pool);
+	}
+
+	void registerPool(String pool, Supplier<PoolStats> stats) {
+		registry.gauge("weather.client.pool.leased", () -> stats.get().getLeased(), "pool", pool);
+		registry.gauge("weather.client.pool.available", () -> stats.get().getAvailable(), "pool", pool);
+		registry.gauge("weather.client.pool.pending", () -> stats.get().getPending(), "pool", pool);
+		registry.gauge("weather.client.pool.max", () -> stats.get().getMax(), "pool", pool);
+	}
+
+	void registerEndpoint(String path, Bulkhead bulkhead, CircuitBreaker breaker) {
+		registry.gauge("weather.client.bulkhead.in_flight", bulkhead::getInFlight, "endpoint", path);
+		registry.gauge("weather.client.breaker.open", () -> breaker.getState() == CircuitBreaker.State.OPEN ? 1 : 0, "endpoint", path);
+	}
+
+	/**
+	 * Negative values are callers queued for a permit. Nothing is registered without a bucket, when
+	 * the key is not limited.
+	 */
+	void registerRateLimit(TokenBucket bucket) {
+		if (bucket == null) {
+			return;
+		}
+		registry.gauge("weather.client.rate_limit.available", bucket::getAvailablePermits);
+	}
+
+	/**
+	 * Records the exchange under the given status, unless it has been recorded already: a body that fails
+	 * to arrive after a status was received stays counted under that status.
+	 */
+	void record(String path, String status, Exchange exchange) {
+		if (exchange.recorded) {
+			return;
+		}
+		exchange.recorded = true;
+		Meters endpointMeters = meters.computeIfAbsent(path + ' ' + status, key -> new Meters(registry, path, status));
+		endpointMeters.request.record(exchange.end - exchange.start);
+		if (exchange.firstByte > 0) {
+			endpointMeters.timeToFirstByte.record(exchange.firstByte - exchange.start);
+		}
+		if (exchange.bodyRead >= 0) {
+			endpointMeters.bodyRead.record(exchange.bodyRead);
+			endpointMeters.payloadSize.record(exchange.bytes);
+		}
+		if (exchange.deserialization >= 0) {
+			endpointMeters.deserialization.record(exchange.deserialization);
+		}
+	}
+
+	/**
+	 * Timestamps and sizes of one HTTP exchange, in System.nanoTime() terms; firstByte stays 0 and the
+	 * durations -1 for stages not reached.
+	 */
+	static final class Exchange {
+
+		final long start = System.nanoTime();
+		volatile long firstByte;
+		long end;
+		long buffered;
+		long bodyRead = -1;
+		long deserialization = -1;
+		long bytes;
+		boolean recorded;
+	}
+
+	private static final class Meters {
+
+		private final MetricsRegistry.Timer request;
+		private final MetricsRegistry.Timer timeToFirstByte;
+		private final MetricsRegistry.Timer bodyRead;
+		private final MetricsRegistry.Timer deserialization;
+		private final MetricsRegistry.DistributionSummary payloadSize;
+
+		private Meters(MetricsRegistry registry, String path, String status) {
+			request = registry.timer(REQUEST, "endpoint", path, "status", status);
+			timeToFirstByte = registry.timer(TIME_TO_FIRST_BYTE, "endpoint", path, "status", status);
+			bodyRead = registry.timer(BODY_READ, "endpoint", path, "status", status);
+			deserialization = registry.timer(DESERIALIZATION, "endpoint", path, "status", status);
+			payloadSize = registry.summary(PAYLOAD_SIZE, "endpoint", path, "status", status);
+		}
+	}
+
+}
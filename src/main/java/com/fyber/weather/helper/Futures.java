@@ -0,0 +1,46 @@
+package com.fyber.weather.helper;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Small helpers for time-bounding CompletableFutures on Java 8.
+ */
+public final class Futures {
+
+	private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "weather-client-timer");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private Futures() {
+	}
+
+	/**
+	 * Fails the given future with a {@link TimeoutException} if it has not completed within the timeout.
+	 * The future itself is returned, so an in-flight request bound to it is aborted as well.
+	 */
+	public static <T> CompletableFuture<T> within(CompletableFuture<T> future, long timeout, TimeUnit unit) {
+		if (future.isDone()) {
+			return future;
+		}
+		ScheduledFuture<?> timer = TIMER.schedule(
+				() -> future.completeExceptionally(new TimeoutException("No response within " + timeout + " " + unit)),
+				timeout, unit);
+		future.whenComplete((result, error) -> timer.cancel(false));
+		return future;
+	}
+
+	/**
+	 * Runs the task after the given delay on the shared timer thread.
+	 */
+	public static ScheduledFuture<?> schedule(Runnable task, long delay, TimeUnit unit) {
+		return TIMER.schedule(task, delay, unit);
+	}
+
+}
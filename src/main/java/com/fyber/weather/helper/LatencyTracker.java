@@ -0,0 +1,78 @@
+package com.fyber.weather.helper;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Rolling window of recent call latencies used to derive hedge delays. Percentiles are computed from
+ * a sorted snapshot that is refreshed every {@value #REFRESH_EVERY} samples once {@value #MIN_SAMPLES}
+ * exist, not on every call.
+ */
+public class LatencyTracker {
+
+	private static final int WINDOW			= 512;
+	private static final int MIN_SAMPLES	= 32;
+	private static final int REFRESH_EVERY	= 64;
+
+	private final long[] samples = new long[WINDOW];
+	private int count;
+	private int next;
+	private long[] sorted;
+	private int sinceRefresh;
+
+	private final AtomicLong requests	= new AtomicLong();
+	private final AtomicLong hedges		= new AtomicLong();
+
+	public synchronized void record(long latencyMillis) {
+		samples[next] = latencyMillis;
+		next = (next + 1) % WINDOW;
+		if (count < WINDOW) {
+			count++;
+		}
+		// refreshed on every sample until percentiles are available, so they are not held back by REFRESH_EVERY
+		if (++sinceRefresh >= REFRESH_EVERY || sorted == null || sorted.length < MIN_SAMPLES) {
+			sorted = Arrays.copyOf(samples, count);
+			Arrays.sort(sorted);
+			sinceRefresh = 0;
+		}
+	}
+
+	/**
+	 * @return the latency at the given percentile in milliseconds, or -1 while too few samples exist
+	 */
+	public synchronized long percentile(int percentile) {
+		if (sorted == null || sorted.length < MIN_SAMPLES) {
+			return -1;
+		}
+		int index = (int) Math.ceil(percentile / 100d * sorted.length) - 1;
+		return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+	}
+
+	void countRequest() {
+		requests.incrementAndGet();
+	}
+
+	/**
+	 * Claims a hedge if doing so keeps hedges within the given share of requests.
+	 */
+	boolean tryHedge(int budgetPercent) {
+		while (true) {
+			long sent = hedges.get();
+			if ((sent + 1) * 100 > requests.get() * budgetPercent) {
+				return false;
+			}
+			if (hedges.compareAndSet(sent, sent + 1)) {
+				return true;
+			}
+		}
+	}
+
+	public long getRequestCount() {
+		return requests.get();
+	}
+
+	public long getHedgeCount() {
+		return hedges.get();
+	}
+
+}
@@ -0,0 +1,57 @@
+package com.fyber.weather.helper;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Counts the bytes read from a response body and the time spent blocked in the underlying stream,
+ * which separates network reads from the parsing done by the caller in between.
+ */
+class MeteredInputStream extends FilterInputStream {
+
+	private long bytes;
+	private long readNanos;
+
+	MeteredInputStream(InputStream in) {
+		super(in);
+	}
+
+	@Override
+	public int read() throws IOException {
+		long start = System.nanoTime();
+		int value = super.read();
+		readNanos += System.nanoTime() - start;
+		if (value >= 0) {
+			bytes++;
+		}
+		return value;
+	}
+
+	@Override
+	public int read(byte[] buffer, int offset, int length) throws IOException {
+		long start = System.nanoTime();
+		int read = super.read(buffer, offset, length);
+		readNanos += System.nanoTime() - start;
+		if (read > 0) {
+			bytes += read;
+		}
+		return read;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		long skipped = super.skip(n);
+		bytes += skipped;
+		return skipped;
+	}
+
+	long getBytes() {
+		return bytes;
+	}
+
+	long getReadNanos() {
+		return readNanos;
+	}
+
+}
@@ -0,0 +1,55 @@
+package com.fyber.weather.helper;
+
+import java.util.function.DoubleSupplier;
+
+/**
+ * Minimal, Micrometer-shaped registry the client reports its timings and gauges to. Tags are given as
+ * alternating key/value pairs. Implement it on top of the monitoring system in use, or use
+ * {@link SimpleMetricsRegistry} for an in-process view; the default {@link #NOOP} records nothing.
+ */
+public interface MetricsRegistry {
+
+	MetricsRegistry NOOP = new MetricsRegistry() {
+
+		@Override
+		public Timer timer(String name, String... tags) {
+			return nanos -> {
+			};
+		}
+
+		@Override
+		public DistributionSummary summary(String name, String... tags) {
+			return amount -> {
+			};
+		}
+
+		@Override
+		public void gauge(String name, DoubleSupplier value, String... tags) {
+		}
+	};
+
+	/**
+	 * @return the timer for the name and tags; callers may cache it
+	 */
+	Timer timer(String name, String... tags);
+
+	DistributionSummary summary(String name, String... tags);
+
+	/**
+	 * Registers a gauge read on demand; the supplier must be cheap and thread-safe.
+	 */
+	void gauge(String name, DoubleSupplier value, String... tags);
+
+	@FunctionalInterface
+	interface Timer {
+
+		void record(long nanos);
+	}
+
+	@FunctionalInterface
+	interface DistributionSummary {
+
+		void record(long amount);
+	}
+
+}
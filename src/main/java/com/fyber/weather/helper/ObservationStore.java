@@ -0,0 +1,921 @@
+package com.fyber.weather.helper;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import com.fyber.weather.domain.WeatherResponse;
+
+/**
+ * Append-only, per-city columnar store of the numeric fields of polled observations, for range scans
+ * and downsampled aggregates over their history. Subscribe it to a {@link WeatherPoller}, or append
+ * responses directly; values are kept in the units they come in.
+ * <p>
+ * Each city has its own file, written through a memory-mapped buffer that grows by doubling. The file
+ * is a 24 byte header followed by blocks of up to {@link #BLOCK_POINTS} observations. A block holds a
+ * header with its point count, first and last dt, the byte length of each column and a count, min, max
+ * and sum per value column, followed by the columns themselves:
+ * <ul>
+ * <li>dt as delta-of-delta, so a steady poll cadence costs one bit per point</li>
+ * <li>temp and wind speed as the XOR with the previous value, Gorilla-style</li>
+ * <li>pressure, humidity, wind direction and clouds as deltas</li>
+ * </ul>
+ * Deltas go into variable-width buckets with a short prefix code. The last block stays open: every
+ * append writes its new image to whichever of two slots past the sealed blocks does not hold the
+ * current one, then commits it with a single 8 byte write of the end of the sealed blocks and the
+ * slot into the file header. A full block stays open until the next append, which copies it into the
+ * first slot if needed and commits it as sealed together with the first image of the new block. A
+ * crash of the process therefore loses at most the observation being written. Scans skip blocks
+ * outside the range by their header and only decode the columns they need; aggregates take the
+ * block summary instead of decoding whenever a block falls entirely in one bucket.
+ * <p>
+ * Observations must arrive in dt order per city; older or repeated ones are skipped and counted.
+ * Missing values are stored and skipped by scans and aggregates.
+ */
+public class ObservationStore implements Consumer<WeatherResponse>, Closeable {
+
+	public static final int BLOCK_POINTS = 1024;
+
+	private static final int FILE_MAGIC = 0x4F574D54;
+	private static final int BLOCK_MAGIC = 0x424C4B31;
+	private static final int VERSION = 2;
+	private static final int FILE_HEADER_SIZE = 24;
+	/** where the file header holds the end of the sealed blocks and the slot of the open block */
+	private static final int COMMIT = 16;
+	private static final int COLUMNS = 7;
+	private static final int SUMMARY_SIZE = 28;
+	private static final int BLOCK_HEADER_SIZE = 16 + COLUMNS * 4 + (COLUMNS - 1) * SUMMARY_SIZE;
+	/** distance of the second open block slot from the first, more than a block of worst-case points takes */
+	private static final int SLOT_SIZE = BLOCK_HEADER_SIZE + COLUMNS * ((BLOCK_POINTS * 78 + 7) / 8) + 8;
+	private static final int INITIAL_CAPACITY = 64 * 1024;
+	private static final long MISSING = Long.MIN_VALUE;
+	private static final String SUFFIX = ".obs";
+
+	/**
+	 * Numeric fields kept per observation; dt is always stored and not a column of its own here.
+	 */
+	public enum Column {
+
+		TEMP(true, response -> response.getMain() == null ? null : response.getMain().getTemp()),
+		PRESSURE(false, response -> response.getMain() == null ? null : response.getMain().getPressure()),
+		HUMIDITY(false, response -> response.getMain() == null ? null : response.getMain().getHumidity()),
+		WIND_SPEED(true, response -> response.getWind() == null ? null : response.getWind().getSpeed()),
+		WIND_DEG(false, response -> response.getWind() == null ? null : response.getWind().getDeg()),
+		CLOUDS(false, response -> response.getClouds() == null ? null : response.getClouds().getAll());
+
+		private final boolean floating;
+		private final Function<WeatherResponse, Number> reader;
+
+		Column(boolean floating, Function<WeatherResponse, Number> reader) {
+			this.floating = floating;
+			this.reader = reader;
+		}
+
+		private long encode(WeatherResponse response) {
+			Number value = reader.apply(response);
+			if (floating) {
+				return Double.doubleToLongBits(value == null ? Double.NaN : value.doubleValue());
+			}
+			return value == null ? MISSING : value.longValue();
+		}
+
+		private double decode(long value) {
+			return floating ? Double.longBitsToDouble(value) : value;
+		}
+
+		private boolean isMissing(long value) {
+			return floating ? Double.isNaN(Double.longBitsToDouble(value)) : value == MISSING;
+		}
+
+		private int index() {
+			return ordinal() + 1;
+		}
+	}
+
+	/**
+	 * Receives the points of a range scan in dt order.
+	 */
+	public interface Visitor {
+
+		void accept(int dt, double value);
+	}
+
+	/**
+	 * Count, min, max and sum of the values of one bucket, starting at the given dt.
+	 */
+	public static final class Aggregate {
+
+		private final long start;
+		private long count;
+		private double min = Double.POSITIVE_INFINITY;
+		private double max = Double.NEGATIVE_INFINITY;
+		private double sum;
+
+		private Aggregate(long start) {
+			this.start = start;
+		}
+
+		private void add(double value) {
+			count++;
+			min = Math.min(min, value);
+			max = Math.max(max, value);
+			sum += value;
+		}
+
+		private void add(long count, double min, double max, double sum) {
+			this.count += count;
+			this.min = Math.min(this.min, min);
+			this.max = Math.max(this.max, max);
+			this.sum += sum;
+		}
+
+		/**
+		 * @return start of the bucket, unix seconds
+		 */
+		public long getStart() {
+			return start;
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		public double getMin() {
+			return count == 0 ? Double.NaN : min;
+		}
+
+		public double getMax() {
+			return count == 0 ? Double.NaN : max;
+		}
+
+		public double getSum() {
+			return sum;
+		}
+
+		public double getMean() {
+			return count == 0 ? Double.NaN : sum / count;
+		}
+
+		@Override
+		public String toString() {
+			return "Aggregate[" + start + " count=" + count + " min=" + getMin() + " max=" + getMax() + " mean=" + getMean() + "]";
+		}
+	}
+
+	private final Path directory;
+	private final ConcurrentHashMap<Integer, Series> series = new ConcurrentHashMap<Integer, Series>();
+	private final AtomicLong appended	= new AtomicLong();
+	private final AtomicLong skipped	= new AtomicLong();
+
+	private ObservationStore(Path directory) {
+		this.directory = directory;
+	}
+
+	/**
+	 * Opens the store in the directory, creating it when needed. City files are mapped lazily.
+	 */
+	public static ObservationStore open(Path directory) throws IOException {
+		Files.createDirectories(directory);
+		return new ObservationStore(directory);
+	}
+
+	@Override
+	public void accept(WeatherResponse response) {
+		try {
+			append(response);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * @return false when the response has no ID or dt, or is not newer than the last one of its city
+	 */
+	public boolean append(WeatherResponse response) throws IOException {
+		if (response.getId() == null || response.getDt() == null) {
+			skipped.incrementAndGet();
+			return false;
+		}
+		long[] values = new long[COLUMNS];
+		values[0] = response.getDt();
+		for (Column column : Column.values()) {
+			values[column.index()] = column.encode(response);
+		}
+		boolean added = series(response.getId(), true).append(values);
+		(added ? appended : skipped).incrementAndGet();
+		return added;
+	}
+
+	/**
+	 * Visits the city's values of the column with from &lt;= dt &lt;= to, in dt order.
+	 * @return the number of points visited
+	 */
+	public long scan(int cityId, long from, long to, Column column, Visitor visitor) throws IOException {
+		Series city = series(cityId, false);
+		return city == null ? 0 : city.scan(from, to, column, visitor);
+	}
+
+	/**
+	 * @return the aggregate over from &lt;= dt &lt;= to, starting at from
+	 */
+	public Aggregate aggregate(int cityId, long from, long to, Column column) throws IOException {
+		List<Aggregate> buckets = downsample(cityId, from, to, to - from + 1, column);
+		return buckets.isEmpty() ? new Aggregate(from) : buckets.get(0);
+	}
+
+	/**
+	 * Splits from &lt;= dt &lt;= to into buckets of the given width, starting at from.
+	 * @return the aggregates of the buckets holding values, in dt order
+	 */
+	public List<Aggregate> downsample(int cityId, long from, long to, long bucketSeconds, Column column) throws IOException {
+		if (bucketSeconds <= 0) {
+			throw new IllegalArgumentException("bucketSeconds must be positive");
+		}
+		Series city = series(cityId, false);
+		return city == null ? new ArrayList<Aggregate>() : city.downsample(from, to, bucketSeconds, column);
+	}
+
+	/**
+	 * @return the number of observations stored for the city
+	 */
+	public long count(int cityId) throws IOException {
+		Series city = series(cityId, false);
+		return city == null ? 0 : city.count();
+	}
+
+	/**
+	 * @return bytes of observation data, without the unused tail of the mapped files
+	 */
+	public long getDataSize() {
+		long size = 0;
+		for (Series city : series.values()) {
+			size += city.dataSize();
+		}
+		return size;
+	}
+
+	public long getAppendedCount() {
+		return appended.get();
+	}
+
+	public long getSkippedCount() {
+		return skipped.get();
+	}
+
+	/**
+	 * @return IDs of all cities with a file in the store
+	 */
+	public int[] getCityIds() throws IOException {
+		List<Integer> ids = new ArrayList<Integer>();
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+			for (Path file : files) {
+				String name = file.getFileName().toString();
+				ids.add(Integer.valueOf(name.substring(0, name.length() - SUFFIX.length())));
+			}
+		}
+		int[] result = new int[ids.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = ids.get(i);
+		}
+		Arrays.sort(result);
+		return result;
+	}
+
+	/**
+	 * Forces the mapped data of every city to disk.
+	 */
+	public void flush() {
+		for (Series city : series.values()) {
+			city.flush();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		flush();
+		for (Series city : series.values()) {
+			city.close();
+		}
+		series.clear();
+	}
+
+	private Series series(int cityId, boolean create) throws IOException {
+		Series city = series.get(cityId);
+		if (city != null) {
+			return city;
+		}
+		Path file = directory.resolve(cityId + SUFFIX);
+		if (!create && !Files.exists(file)) {
+			return null;
+		}
+		try {
+			return series.computeIfAbsent(cityId, id -> {
+				try {
+					return new Series(id, file);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * The file of one city; appends and reads are serialized on it.
+	 */
+	private static final class Series implements Closeable {
+
+		private final int cityId;
+		private final FileChannel channel;
+		private MappedByteBuffer buffer;
+		/** end of the sealed blocks, where the first open block slot starts */
+		private int tail;
+		/** offset of the committed image of the open block, 0 for none */
+		private int open;
+		private long sealedPoints;
+		private final Encoder[] encoders = new Encoder[COLUMNS];
+		private final Summary[] summaries = new Summary[COLUMNS];
+		private int openPoints;
+		private long lastDt = Long.MIN_VALUE;
+
+		private Series(int cityId, Path file) throws IOException {
+			this.cityId = cityId;
+			this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			encoders[0] = new DeltaEncoder(true);
+			for (Column column : Column.values()) {
+				encoders[column.index()] = column.floating ? new XorEncoder() : new DeltaEncoder(false);
+				summaries[column.index()] = new Summary();
+			}
+			boolean created = channel.size() == 0;
+			map(Math.max(INITIAL_CAPACITY, (int) channel.size()));
+			if (created) {
+				buffer.putInt(0, FILE_MAGIC);
+				buffer.putInt(4, VERSION);
+				buffer.putInt(8, cityId);
+				tail = FILE_HEADER_SIZE;
+				commit();
+			} else {
+				recover();
+			}
+		}
+
+		private void map(int capacity) throws IOException {
+			buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+		}
+
+		/**
+		 * Finds the open block and replays it into the encoders.
+		 */
+		private void recover() throws IOException {
+			if (buffer.getInt(0) != FILE_MAGIC || buffer.getInt(8) != cityId) {
+				throw new IOException("Not an observation file of city " + cityId);
+			}
+			if (buffer.getInt(4) != VERSION) {
+				throw new IOException("Unsupported observation file version " + buffer.getInt(4));
+			}
+			long commit = buffer.getLong(COMMIT);
+			tail = (int) (commit >>> 32);
+			open = (int) commit;
+			if (tail < FILE_HEADER_SIZE || tail > buffer.capacity() || open != 0 && open != tail && open != tail + SLOT_SIZE
+					|| open != 0 && !isBlock(open)) {
+				throw new IOException("Corrupt observation file of city " + cityId);
+			}
+			for (int offset = FILE_HEADER_SIZE; offset < tail; offset = nextBlock(offset)) {
+				sealedPoints += buffer.getInt(offset + 4);
+				lastDt = buffer.getInt(offset + 12);
+			}
+			if (open != 0) {
+				long[][] columns = new long[COLUMNS][];
+				for (int column = 0; column < COLUMNS; column++) {
+					columns[column] = decode(open, column);
+				}
+				for (int point = 0; point < columns[0].length; point++) {
+					long[] values = new long[COLUMNS];
+					for (int column = 0; column < COLUMNS; column++) {
+						values[column] = columns[column][point];
+					}
+					add(values);
+				}
+			}
+		}
+
+		/**
+		 * Publishes the sealed end and open slot in one write, the only one a reader trusts.
+		 */
+		private void commit() {
+			buffer.putLong(COMMIT, (long) tail << 32 | open);
+		}
+
+		/**
+		 * @return offset of the first block, -1 when there is none
+		 */
+		private int firstBlock() {
+			return tail > FILE_HEADER_SIZE ? FILE_HEADER_SIZE : open == 0 ? -1 : open;
+		}
+
+		/**
+		 * @return offset of the block after the given one, the open block after the last sealed one, -1 at the end
+		 */
+		private int followingBlock(int offset) {
+			if (offset >= tail) {
+				return -1;
+			}
+			int next = nextBlock(offset);
+			return next < tail ? next : open == 0 ? -1 : open;
+		}
+
+		private boolean isBlock(int offset) {
+			return offset + BLOCK_HEADER_SIZE <= buffer.capacity() && buffer.getInt(offset) == BLOCK_MAGIC;
+		}
+
+		private int nextBlock(int offset) {
+			int end = offset + BLOCK_HEADER_SIZE;
+			for (int column = 0; column < COLUMNS; column++) {
+				end += buffer.getInt(offset + 16 + column * 4);
+			}
+			return end;
+		}
+
+		private synchronized boolean append(long[] values) throws IOException {
+			if (values[0] <= lastDt) {
+				return false;
+			}
+			int slot;
+			if (openPoints == BLOCK_POINTS) {
+				// seal the full block in the first slot; the commit below publishes it with the next one
+				if (open != tail) {
+					writeBlock(tail);
+				}
+				int sealed = tail;
+				tail = nextBlock(sealed);
+				// right after the sealed block, or right after the committed image still in the second slot
+				slot = open == sealed ? tail : tail + SLOT_SIZE;
+				sealedPoints += openPoints;
+				openPoints = 0;
+				for (int column = 0; column < COLUMNS; column++) {
+					encoders[column].reset();
+					if (summaries[column] != null) {
+						summaries[column].reset();
+					}
+				}
+			} else {
+				slot = open == tail ? tail + SLOT_SIZE : tail;
+			}
+			add(values);
+			open = writeBlock(slot);
+			commit();
+			return true;
+		}
+
+		private void add(long[] values) {
+			for (int column = 0; column < COLUMNS; column++) {
+				encoders[column].add(values[column]);
+			}
+			for (Column column : Column.values()) {
+				long value = values[column.index()];
+				if (!column.isMissing(value)) {
+					summaries[column.index()].add(column.decode(value));
+				}
+			}
+			openPoints++;
+			lastDt = values[0];
+		}
+
+		/**
+		 * Writes the image of the open block at the offset, which must not hold the committed one.
+		 * @return the offset
+		 */
+		private int writeBlock(int at) throws IOException {
+			int size = BLOCK_HEADER_SIZE;
+			for (Encoder encoder : encoders) {
+				size += encoder.length();
+			}
+			if (at + size > buffer.capacity()) {
+				map(Math.max(buffer.capacity() * 2, at + size));
+			}
+			int offset = at + BLOCK_HEADER_SIZE;
+			for (int column = 0; column < COLUMNS; column++) {
+				encoders[column].copyTo(buffer, offset);
+				buffer.putInt(at + 16 + column * 4, encoders[column].length());
+				offset += encoders[column].length();
+			}
+			int summary = at + 16 + COLUMNS * 4;
+			for (Column column : Column.values()) {
+				summaries[column.index()].writeTo(buffer, summary);
+				summary += SUMMARY_SIZE;
+			}
+			buffer.putInt(at + 8, (int) encoders[0].first());
+			buffer.putInt(at + 12, (int) lastDt);
+			buffer.putInt(at + 4, openPoints);
+			buffer.putInt(at, BLOCK_MAGIC);
+			return at;
+		}
+
+		private long[] decode(int offset, int column) {
+			int points = buffer.getInt(offset + 4);
+			int start = offset + BLOCK_HEADER_SIZE;
+			for (int previous = 0; previous < column; previous++) {
+				start += buffer.getInt(offset + 16 + previous * 4);
+			}
+			BitReader reader = new BitReader(buffer, start);
+			return column == 0 || !Column.values()[column - 1].floating
+					? DeltaEncoder.decode(reader, points, column == 0)
+					: XorEncoder.decode(reader, points);
+		}
+
+		private synchronized long scan(long from, long to, Column column, Visitor visitor) {
+			long visited = 0;
+			for (int offset = firstBlock(); offset != -1; offset = followingBlock(offset)) {
+				if (buffer.getInt(offset + 12) < from || buffer.getInt(offset + 8) > to) {
+					continue;
+				}
+				long[] dts = decode(offset, 0);
+				long[] values = decode(offset, column.index());
+				for (int point = 0; point < dts.length; point++) {
+					if (dts[point] >= from && dts[point] <= to && !column.isMissing(values[point])) {
+						visitor.accept((int) dts[point], column.decode(values[point]));
+						visited++;
+					}
+				}
+			}
+			return visited;
+		}
+
+		private synchronized List<Aggregate> downsample(long from, long to, long width, Column column) {
+			List<Aggregate> buckets = new ArrayList<Aggregate>();
+			for (int offset = firstBlock(); offset != -1; offset = followingBlock(offset)) {
+				long first = buffer.getInt(offset + 8);
+				long last = buffer.getInt(offset + 12);
+				if (last < from || first > to) {
+					continue;
+				}
+				if (first >= from && last <= to && (first - from) / width == (last - from) / width) {
+					int summary = offset + 16 + COLUMNS * 4 + column.ordinal() * SUMMARY_SIZE;
+					int count = buffer.getInt(summary);
+					if (count > 0) {
+						bucket(buckets, from + (first - from) / width * width).add(count,
+								buffer.getDouble(summary + 4), buffer.getDouble(summary + 12), buffer.getDouble(summary + 20));
+					}
+					continue;
+				}
+				long[] dts = decode(offset, 0);
+				long[] values = decode(offset, column.index());
+				for (int point = 0; point < dts.length; point++) {
+					if (dts[point] >= from && dts[point] <= to && !column.isMissing(values[point])) {
+						bucket(buckets, from + (dts[point] - from) / width * width).add(column.decode(values[point]));
+					}
+				}
+			}
+			return buckets;
+		}
+
+		/**
+		 * Buckets are visited in dt order, so the current one is always the last.
+		 */
+		private static Aggregate bucket(List<Aggregate> buckets, long start) {
+			Aggregate last = buckets.isEmpty() ? null : buckets.get(buckets.size() - 1);
+			if (last == null || last.start != start) {
+				last = new Aggregate(start);
+				buckets.add(last);
+			}
+			return last;
+		}
+
+		private synchronized long count() {
+			return sealedPoints + openPoints;
+		}
+
+		private synchronized long dataSize() {
+			return open == 0 ? tail : tail + nextBlock(open) - open;
+		}
+
+		private synchronized void flush() {
+			buffer.force();
+		}
+
+		@Override
+		public synchronized void close() throws IOException {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Running count, min, max and sum of a value column of the open block.
+	 */
+	private static final class Summary {
+
+		private int count;
+		private double min;
+		private double max;
+		private double sum;
+
+		private void add(double value) {
+			min = count == 0 ? value : Math.min(min, value);
+			max = count == 0 ? value : Math.max(max, value);
+			sum += value;
+			count++;
+		}
+
+		private void reset() {
+			count = 0;
+			min = 0;
+			max = 0;
+			sum = 0;
+		}
+
+		private void writeTo(MappedByteBuffer buffer, int offset) {
+			buffer.putInt(offset, count);
+			buffer.putDouble(offset + 4, min);
+			buffer.putDouble(offset + 12, max);
+			buffer.putDouble(offset + 20, sum);
+		}
+	}
+
+	private interface Encoder {
+
+		void add(long value);
+
+		/**
+		 * @return the first value of the block
+		 */
+		long first();
+
+		int length();
+
+		void copyTo(MappedByteBuffer buffer, int offset);
+
+		void reset();
+	}
+
+	/**
+	 * Integers as deltas, or deltas of deltas for timestamps, in prefix-coded buckets:
+	 * '0' for zero, then '10', '110', '1110', '11110' and '11111' followed by 7, 9, 12, 32 and 64 bits
+	 * of the zigzag-encoded value. The first value of a block is written in full.
+	 */
+	private static final class DeltaEncoder implements Encoder {
+
+		private static final int[] WIDTHS = { 7, 9, 12, 32 };
+
+		private final boolean ofDeltas;
+		private final BitWriter out = new BitWriter();
+		private int count;
+		private long first;
+		private long previous;
+		private long previousDelta;
+
+		private DeltaEncoder(boolean ofDeltas) {
+			this.ofDeltas = ofDeltas;
+		}
+
+		@Override
+		public void add(long value) {
+			if (count++ == 0) {
+				first = value;
+				out.write(value, 64);
+			} else {
+				long delta = value - previous;
+				write(ofDeltas ? delta - previousDelta : delta);
+				previousDelta = delta;
+			}
+			previous = value;
+		}
+
+		private void write(long value) {
+			if (value == 0) {
+				out.write(0, 1);
+				return;
+			}
+			long zigzag = value << 1 ^ value >> 63;
+			for (int bucket = 0; bucket < WIDTHS.length; bucket++) {
+				if (zigzag >>> WIDTHS[bucket] == 0) {
+					// bucket + 1 ones then a zero
+					out.write((1L << bucket + 2) - 2, bucket + 2);
+					out.write(zigzag, WIDTHS[bucket]);
+					return;
+				}
+			}
+			out.write(0x1f, 5);
+			out.write(zigzag, 64);
+		}
+
+		private static long[] decode(BitReader in, int count, boolean ofDeltas) {
+			long[] values = new long[count];
+			long previous = 0;
+			long previousDelta = 0;
+			for (int i = 0; i < count; i++) {
+				if (i == 0) {
+					previous = in.read(64);
+				} else {
+					long read = read(in);
+					long delta = ofDeltas ? previousDelta + read : read;
+					previous += delta;
+					previousDelta = delta;
+				}
+				values[i] = previous;
+			}
+			return values;
+		}
+
+		private static long read(BitReader in) {
+			int ones = 0;
+			while (ones < 5 && in.read(1) == 1) {
+				ones++;
+			}
+			if (ones == 0) {
+				return 0;
+			}
+			long zigzag = in.read(ones == 5 ? 64 : WIDTHS[ones - 1]);
+			return zigzag >>> 1 ^ -(zigzag & 1);
+		}
+
+		@Override
+		public long first() {
+			return first;
+		}
+
+		@Override
+		public int length() {
+			return out.length();
+		}
+
+		@Override
+		public void copyTo(MappedByteBuffer buffer, int offset) {
+			out.copyTo(buffer, offset);
+		}
+
+		@Override
+		public void reset() {
+			out.reset();
+			count = 0;
+			previousDelta = 0;
+		}
+	}
+
+	/**
+	 * Doubles as the XOR with the previous value: '0' when equal, '10' and the meaningful bits when
+	 * they fit the previous leading and trailing zeros, otherwise '11', 6 bits of leading zeros, 6 bits
+	 * of meaningful length minus one and the meaningful bits. The first value is written in full.
+	 */
+	private static final class XorEncoder implements Encoder {
+
+		private final BitWriter out = new BitWriter();
+		private int count;
+		private long first;
+		private long previous;
+		private int leading = -1;
+		private int trailing;
+
+		@Override
+		public void add(long value) {
+			if (count++ == 0) {
+				first = value;
+				out.write(value, 64);
+				previous = value;
+				return;
+			}
+			long xor = value ^ previous;
+			previous = value;
+			if (xor == 0) {
+				out.write(0, 1);
+				return;
+			}
+			int lead = Long.numberOfLeadingZeros(xor);
+			int trail = Long.numberOfTrailingZeros(xor);
+			if (leading >= 0 && lead >= leading && trail >= trailing) {
+				out.write(0b10, 2);
+				out.write(xor >>> trailing, 64 - leading - trailing);
+				return;
+			}
+			leading = lead;
+			trailing = trail;
+			int meaningful = 64 - lead - trail;
+			out.write(0b11, 2);
+			out.write(lead, 6);
+			out.write(meaningful - 1, 6);
+			out.write(xor >>> trail, meaningful);
+		}
+
+		private static long[] decode(BitReader in, int count) {
+			long[] values = new long[count];
+			long previous = 0;
+			int leading = 0;
+			int trailing = 0;
+			for (int i = 0; i < count; i++) {
+				if (i == 0) {
+					previous = in.read(64);
+				} else if (in.read(1) == 1) {
+					if (in.read(1) == 1) {
+						leading = (int) in.read(6);
+						int meaningful = (int) in.read(6) + 1;
+						trailing = 64 - leading - meaningful;
+					}
+					previous ^= in.read(64 - leading - trailing) << trailing;
+				}
+				values[i] = previous;
+			}
+			return values;
+		}
+
+		@Override
+		public long first() {
+			return first;
+		}
+
+		@Override
+		public int length() {
+			return out.length();
+		}
+
+		@Override
+		public void copyTo(MappedByteBuffer buffer, int offset) {
+			out.copyTo(buffer, offset);
+		}
+
+		@Override
+		public void reset() {
+			out.reset();
+			count = 0;
+			leading = -1;
+			trailing = 0;
+		}
+	}
+
+	/**
+	 * Growable bit buffer, most significant bit first.
+	 */
+	private static final class BitWriter {
+
+		private byte[] bytes = new byte[256];
+		private long bits;
+
+		private void write(long value, int width) {
+			while (width > 0) {
+				int index = (int) (bits >>> 3);
+				if (index == bytes.length) {
+					bytes = Arrays.copyOf(bytes, bytes.length * 2);
+				}
+				int free = 8 - (int) (bits & 7);
+				int take = Math.min(free, width);
+				int chunk = (int) (value >>> (width - take)) & ((1 << take) - 1);
+				bytes[index] |= chunk << (free - take);
+				bits += take;
+				width -= take;
+			}
+		}
+
+		private int length() {
+			return (int) ((bits + 7) >>> 3);
+		}
+
+		private void copyTo(MappedByteBuffer buffer, int offset) {
+			ByteBuffer target = buffer.duplicate();
+			target.position(offset);
+			target.put(bytes, 0, length());
+		}
+
+		private void reset() {
+			Arrays.fill(bytes, 0, length(), (byte) 0);
+			bits = 0;
+		}
+	}
+
+	private static final class BitReader {
+
+		private final MappedByteBuffer buffer;
+		private long position;
+
+		private BitReader(MappedByteBuffer buffer, int offset) {
+			this.buffer = buffer;
+			this.position = (long) offset << 3;
+		}
+
+		private long read(int width) {
+			long value = 0;
+			while (width > 0) {
+				int current = buffer.get((int) (position >>> 3)) & 0xff;
+				int available = 8 - (int) (position & 7);
+				int take = Math.min(available, width);
+				value = value << take | (current >>> (available - take)) & ((1 << take) - 1);
+				position += take;
+				width -= take;
+			}
+			return value;
+		}
+	}
+
+}
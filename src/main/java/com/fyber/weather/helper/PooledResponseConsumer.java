@@ -0,0 +1,308 @@
+package com.fyber.weather.helper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.nio.ContentDecoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.protocol.AbstractAsyncResponseConsumer;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * Async response consumer that reads the body into buffers borrowed from a {@link BufferPool} instead
+ * of a heap array grown per response. The response is handed over with a {@link PooledEntity} over
+ * those buffers, which go back to the pool once its content is closed; if the exchange fails before
+ * that, they go back right away.
+ */
+final class PooledResponseConsumer extends AbstractAsyncResponseConsumer<HttpResponse> {
+
+	private final BufferPool pool;
+	private HttpResponse response;
+	private HttpEntity enclosed;
+	private List<ByteBuffer> chunks;
+
+	PooledResponseConsumer(BufferPool pool) {
+		this.pool = pool;
+	}
+
+	@Override
+	protected void onResponseReceived(HttpResponse response) {
+		this.response = response;
+	}
+
+	@Override
+	protected void onEntityEnclosed(HttpEntity entity, ContentType contentType) {
+		this.enclosed = entity;
+		this.chunks = new ArrayList<ByteBuffer>(4);
+	}
+
+	@Override
+	protected void onContentReceived(ContentDecoder decoder, IOControl ioControl) throws IOException {
+		while (true) {
+			ByteBuffer chunk = chunks.isEmpty() ? null : chunks.get(chunks.size() - 1);
+			if (chunk == null || !chunk.hasRemaining()) {
+				chunk = pool.acquire();
+				chunks.add(chunk);
+			}
+			if (decoder.read(chunk) <= 0) {
+				return;
+			}
+		}
+	}
+
+	@Override
+	protected HttpResponse buildResult(HttpContext context) {
+		if (chunks != null) {
+			for (ByteBuffer chunk : chunks) {
+				chunk.flip();
+			}
+			PooledEntity entity = new PooledEntity(pool, chunks);
+			entity.setContentType(enclosed.getContentType());
+			entity.setContentEncoding(enclosed.getContentEncoding());
+			response.setEntity(entity);
+			// the entity owns the buffers from here on
+			chunks = null;
+		}
+		return response;
+	}
+
+	@Override
+	protected void releaseResources() {
+		if (chunks != null) {
+			for (ByteBuffer chunk : chunks) {
+				pool.release(chunk);
+			}
+			chunks = null;
+		}
+		response = null;
+		enclosed = null;
+	}
+
+	/**
+	 * Body held in pooled buffers, readable once, either as bytes or straight as UTF-8 text. Closing
+	 * either returns the buffers to the pool.
+	 */
+	static final class PooledEntity extends AbstractHttpEntity {
+
+		private final BufferPool pool;
+		private final List<ByteBuffer> chunks;
+		private final long length;
+		private int current;
+		private boolean released;
+
+		private PooledEntity(BufferPool pool, List<ByteBuffer> chunks) {
+			this.pool = pool;
+			this.chunks = chunks;
+			long total = 0;
+			for (ByteBuffer chunk : chunks) {
+				total += chunk.remaining();
+			}
+			this.length = total;
+		}
+
+		@Override
+		public boolean isRepeatable() {
+			return false;
+		}
+
+		@Override
+		public long getContentLength() {
+			return length;
+		}
+
+		@Override
+		public InputStream getContent() {
+			return new ChunkInputStream();
+		}
+
+		/**
+		 * Decodes the body as UTF-8 directly from the buffers, without copying it to a byte array first.
+		 * Malformed input becomes U+FFFD, like {@link java.io.InputStreamReader} does.
+		 */
+		Reader reader() {
+			return new Utf8Reader();
+		}
+
+		@Override
+		public void writeTo(OutputStream out) throws IOException {
+			try (InputStream in = getContent()) {
+				byte[] buffer = new byte[4096];
+				int read;
+				while ((read = in.read(buffer)) != -1) {
+					out.write(buffer, 0, read);
+				}
+			}
+		}
+
+		@Override
+		public boolean isStreaming() {
+			return !released;
+		}
+
+		private synchronized void release() {
+			if (released) {
+				return;
+			}
+			released = true;
+			for (ByteBuffer chunk : chunks) {
+				pool.release(chunk);
+			}
+		}
+
+		/**
+		 * @return the chunk holding the next unread byte, null at the end or once released
+		 */
+		private ByteBuffer chunk() {
+			if (released) {
+				return null;
+			}
+			while (current < chunks.size()) {
+				ByteBuffer chunk = chunks.get(current);
+				if (chunk.hasRemaining()) {
+					return chunk;
+				}
+				current++;
+			}
+			return null;
+		}
+
+		private int nextByte() {
+			ByteBuffer chunk = chunk();
+			return chunk == null ? -1 : chunk.get() & 0xFF;
+		}
+
+		private final class ChunkInputStream extends InputStream {
+
+			@Override
+			public int read() {
+				return nextByte();
+			}
+
+			@Override
+			public int read(byte[] buffer, int offset, int length) {
+				if (length == 0) {
+					return 0;
+				}
+				ByteBuffer chunk = chunk();
+				if (chunk == null) {
+					return -1;
+				}
+				int read = Math.min(length, chunk.remaining());
+				chunk.get(buffer, offset, read);
+				return read;
+			}
+
+			@Override
+			public int available() {
+				ByteBuffer chunk = chunk();
+				return chunk == null ? 0 : chunk.remaining();
+			}
+
+			@Override
+			public void close() {
+				release();
+			}
+		}
+
+		private final class Utf8Reader extends Reader {
+
+			private static final char REPLACEMENT = '\uFFFD';
+
+			/** low surrogate of a supplementary character that did not fit the last read */
+			private char pending;
+
+			@Override
+			public int read(char[] buffer, int offset, int length) {
+				if (length == 0) {
+					return 0;
+				}
+				int end = offset + length;
+				int i = offset;
+				if (pending != 0) {
+					buffer[i++] = pending;
+					pending = 0;
+				}
+				while (i < end) {
+					ByteBuffer chunk = chunk();
+					if (chunk == null) {
+						break;
+					}
+					// ASCII, by far the most of a JSON body, straight from the buffer
+					while (i < end && chunk.hasRemaining()) {
+						byte b = chunk.get(chunk.position());
+						if (b < 0) {
+							break;
+						}
+						chunk.position(chunk.position() + 1);
+						buffer[i++] = (char) b;
+					}
+					if (i < end && chunk.hasRemaining()) {
+						int codePoint = decode(chunk.get() & 0xFF);
+						if (Character.isBmpCodePoint(codePoint)) {
+							buffer[i++] = (char) codePoint;
+						} else {
+							buffer[i++] = Character.highSurrogate(codePoint);
+							if (i < end) {
+								buffer[i++] = Character.lowSurrogate(codePoint);
+							} else {
+								pending = Character.lowSurrogate(codePoint);
+							}
+						}
+					}
+				}
+				return i == offset ? -1 : i - offset;
+			}
+
+			/**
+			 * Completes a multi-byte sequence; continuation bytes may sit in the next chunk.
+			 */
+			private int decode(int lead) {
+				int continuations;
+				int codePoint;
+				int min;
+				if (lead >= 0xC2 && lead <= 0xDF) {
+					continuations = 1;
+					codePoint = lead & 0x1F;
+					min = 0x80;
+				} else if (lead >= 0xE0 && lead <= 0xEF) {
+					continuations = 2;
+					codePoint = lead & 0x0F;
+					min = 0x800;
+				} else if (lead >= 0xF0 && lead <= 0xF4) {
+					continuations = 3;
+					codePoint = lead & 0x07;
+					min = 0x10000;
+				} else {
+					return REPLACEMENT;
+				}
+				for (int n = 0; n < continuations; n++) {
+					ByteBuffer chunk = chunk();
+					if (chunk == null || (chunk.get(chunk.position()) & 0xC0) != 0x80) {
+						// leave the offending byte to be read on its own
+						return REPLACEMENT;
+					}
+					codePoint = codePoint << 6 | chunk.get() & 0x3F;
+				}
+				if (codePoint < min || codePoint > Character.MAX_CODE_POINT || Character.isSurrogate((char) codePoint) && codePoint < 0x10000) {
+					return REPLACEMENT;
+				}
+				return codePoint;
+			}
+
+			@Override
+			public void close() {
+				release();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,67 @@
+package com.fyber.weather.helper;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Client-side quota enforcement with one {@link TokenBucket} per API key. Keys without an explicit
+ * limit get the one from {@link ClientConfig}. Share one instance between every client using the
+ * same keys so they draw from the same buckets.
+ */
+public class RateLimiter {
+
+	private final int defaultPermitsPerMinute;
+	private final int defaultBurst;
+	private final long maxWaitNanos;
+	private final ConcurrentHashMap<String, TokenBucket> buckets = new ConcurrentHashMap<String, TokenBucket>();
+
+	public RateLimiter(ClientConfig clientConfig) {
+		this(clientConfig.getRateLimitPerMinute(), clientConfig.getRateLimitBurst(), clientConfig.getRateLimitMaxWaitMillis());
+	}
+
+	/**
+	 * @param permitsPerMinute default quota per key, 0 disables limiting for keys without an explicit bucket
+	 * @param maxWaitMillis how long a call may queue, 0 for fail-fast
+	 */
+	public RateLimiter(int permitsPerMinute, int burst, long maxWaitMillis) {
+		this.defaultPermitsPerMinute = permitsPerMinute;
+		this.defaultBurst = burst;
+		this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+	}
+
+	/**
+	 * Gives the key its own quota, replacing any bucket it had.
+	 */
+	public void configure(String apiKey, int permitsPerMinute, int burst) {
+		buckets.put(apiKey, new TokenBucket(permitsPerMinute, burst));
+	}
+
+	/**
+	 * @return the bucket of the key, or null when the key is not limited
+	 */
+	public TokenBucket bucket(String apiKey) {
+		TokenBucket bucket = buckets.get(apiKey);
+		if (bucket == null && defaultPermitsPerMinute > 0) {
+			bucket = buckets.computeIfAbsent(apiKey, key -> new TokenBucket(defaultPermitsPerMinute, defaultBurst));
+		}
+		return bucket;
+	}
+
+	/**
+	 * Reserves a permit for one call with the key.
+	 * @return nanoseconds to wait before sending the call
+	 * @throws WeatherClientException with status 429 when no permit is available within the allowed wait
+	 */
+	public long reserve(String apiKey) throws WeatherClientException {
+		TokenBucket bucket = bucket(apiKey);
+		if (bucket == null) {
+			return 0;
+		}
+		long wait = bucket.reserve(maxWaitNanos);
+		if (wait < 0) {
+			throw new WeatherClientException(429, "Client-side rate limit exceeded for API key");
+		}
+		return wait;
+	}
+
+}
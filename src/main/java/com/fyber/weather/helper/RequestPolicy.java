@@ -0,0 +1,168 @@
+package com.fyber.weather.helper;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Timeout, retry and hedging settings applied to one endpoint of {@link WeatherClient}.
+ * Only idempotent GETs are issued, so every call is safe to retry or hedge.
+ */
+public class RequestPolicy {
+
+	/**
+	 * 502 is left out on purpose: the API answers "Not found city" with it, which never succeeds on retry.
+	 */
+	public static final Set<Integer> DEFAULT_RETRYABLE_STATUSES = new HashSet<Integer>(Arrays.asList(500, 503, 504));
+
+	private int connectTimeout;
+	private int socketTimeout;
+	private long totalTimeoutMillis;
+	private int maxRetries;
+	private long backoffMillis;
+	private long maxBackoffMillis;
+	private int hedgePercentile;
+	private long hedgeMinDelayMillis		= 20;
+	private int hedgeBudgetPercent;
+	private Set<Integer> retryableStatuses	= DEFAULT_RETRYABLE_STATUSES;
+
+	public RequestPolicy() {
+	}
+
+	public RequestPolicy(ClientConfig clientConfig) {
+		connectTimeout = clientConfig.getConnectTimeout();
+		socketTimeout = clientConfig.getSocketTimeout();
+		totalTimeoutMillis = clientConfig.getTotalTimeoutMillis();
+		maxRetries = clientConfig.getMaxRetries();
+		backoffMillis = clientConfig.getRetryBackoffMillis();
+		maxBackoffMillis = clientConfig.getRetryMaxBackoffMillis();
+		hedgePercentile = clientConfig.getHedgePercentile();
+		hedgeBudgetPercent = clientConfig.getHedgeBudgetPercent();
+	}
+
+	/**
+	 * Full-jitter exponential backoff: a random delay up to min(maxBackoff, backoff * 2^attempt).
+	 * @param attempt zero based number of the attempt that just failed
+	 */
+	public long backoffMillis(int attempt) {
+		long ceiling = Math.min(maxBackoffMillis, backoffMillis << Math.min(attempt, 20));
+		return ceiling <= 0 ? 0 : ThreadLocalRandom.current().nextLong(ceiling + 1);
+	}
+
+	/**
+	 * Transport failures and the configured 5xx statuses are retried; 4xx, parse errors and calls
+	 * rejected by the circuit breaker or bulkhead are not.
+	 */
+	public boolean isRetryable(Throwable error) {
+		Throwable cause = error;
+		while ((cause instanceof CompletionException || cause instanceof ExecutionException) && cause.getCause() != null) {
+			cause = cause.getCause();
+		}
+		if (!(cause instanceof WeatherClientException) || cause instanceof CallRejectedException) {
+			return false;
+		}
+		WeatherClientException clientException = (WeatherClientException) cause;
+		if (clientException.getStatusCode() < 0) {
+			return clientException.getCause() instanceof IOException;
+		}
+		return retryableStatuses.contains(clientException.getStatusCode());
+	}
+
+	public boolean isHedging() {
+		return hedgePercentile > 0;
+	}
+
+	public int getConnectTimeout() {
+		return connectTimeout;
+	}
+
+	public void setConnectTimeout(int connectTimeout) {
+		this.connectTimeout = connectTimeout;
+	}
+
+	public int getSocketTimeout() {
+		return socketTimeout;
+	}
+
+	public void setSocketTimeout(int socketTimeout) {
+		this.socketTimeout = socketTimeout;
+	}
+
+	/**
+	 * @return deadline covering all attempts of one call, 0 for none
+	 */
+	public long getTotalTimeoutMillis() {
+		return totalTimeoutMillis;
+	}
+
+	public void setTotalTimeoutMillis(long totalTimeoutMillis) {
+		this.totalTimeoutMillis = totalTimeoutMillis;
+	}
+
+	public int getMaxRetries() {
+		return maxRetries;
+	}
+
+	public void setMaxRetries(int maxRetries) {
+		this.maxRetries = maxRetries;
+	}
+
+	public long getBackoffMillis() {
+		return backoffMillis;
+	}
+
+	public void setBackoffMillis(long backoffMillis) {
+		this.backoffMillis = backoffMillis;
+	}
+
+	public long getMaxBackoffMillis() {
+		return maxBackoffMillis;
+	}
+
+	public void setMaxBackoffMillis(long maxBackoffMillis) {
+		this.maxBackoffMillis = maxBackoffMillis;
+	}
+
+	public int getHedgePercentile() {
+		return hedgePercentile;
+	}
+
+	public void setHedgePercentile(int hedgePercentile) {
+		this.hedgePercentile = hedgePercentile;
+	}
+
+	/**
+	 * @return lower bound for the hedge delay, used until enough latencies have been observed
+	 */
+	public long getHedgeMinDelayMillis() {
+		return hedgeMinDelayMillis;
+	}
+
+	public void setHedgeMinDelayMillis(long hedgeMinDelayMillis) {
+		this.hedgeMinDelayMillis = hedgeMinDelayMillis;
+	}
+
+	/**
+	 * @return maximum share of calls, in percent, that may send a hedge
+	 */
+	public int getHedgeBudgetPercent() {
+		return hedgeBudgetPercent;
+	}
+
+	public void setHedgeBudgetPercent(int hedgeBudgetPercent) {
+		this.hedgeBudgetPercent = hedgeBudgetPercent;
+	}
+
+	public Set<Integer> getRetryableStatuses() {
+		return retryableStatuses;
+	}
+
+	public void setRetryableStatuses(Set<Integer> retryableStatuses) {
+		this.retryableStatuses = retryableStatuses;
+	}
+
+}
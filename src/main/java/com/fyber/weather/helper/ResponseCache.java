@@ -0,0 +1,349 @@
+package com.fyber.weather.helper;
+
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Bounded in-process cache keyed by normalized {@link WeatherQuery}. Entries expire after their
+ * TTL and the least recently used entry is evicted once the size bound is reached. Concurrent
+ * misses for the same key share a single upstream load.
+ */
+public class ResponseCache<V> {
+
+	private final int maxEntries;
+	private final long ttlMillis;
+	private final LongSupplier clock;
+	private final Map<WeatherQuery, Entry<V>> entries;
+	private final ConcurrentHashMap<WeatherQuery, CompletableFuture<V>> inFlight = new ConcurrentHashMap<WeatherQuery, CompletableFuture<V>>();
+
+	private final AtomicLong hits			= new AtomicLong();
+	private final AtomicLong misses			= new AtomicLong();
+	private final AtomicLong coalesced		= new AtomicLong();
+	private final AtomicLong evictions		= new AtomicLong();
+	private final AtomicLong expirations	= new AtomicLong();
+
+	private volatile Listener<V> listener;
+	/** changes not yet told to the listener, in the order they were made; guarded by the entries lock */
+	private final ArrayDeque<Consumer<Listener<V>>> changes = new ArrayDeque<Consumer<Listener<V>>>();
+	private final AtomicBoolean notifying = new AtomicBoolean();
+
+	/**
+	 * Told about every explicit change, in the order the changes were made, one call at a time and
+	 * outside the cache lock. The call may come from the thread of a later change.
+	 * Evictions and expirations are not reported.
+	 */
+	public interface Listener<V> {
+
+		void onPut(WeatherQuery key, V value, long expiresAt);
+
+		void onRemove(WeatherQuery key);
+
+		void onClear();
+	}
+
+	/**
+	 * Receives the entries of the cache, expired ones included.
+	 */
+	public interface EntryVisitor<V> {
+
+		void visit(WeatherQuery key, V value, long expiresAt);
+	}
+
+	public ResponseCache(ClientConfig clientConfig) {
+		this(clientConfig.getCacheMaxEntries(), clientConfig.getCacheTtlMillis());
+	}
+
+	public ResponseCache(int maxEntries, long ttlMillis) {
+		this(maxEntries, ttlMillis, System::currentTimeMillis);
+	}
+
+	/**
+	 * @param clock wall clock in milliseconds, replaceable for tests
+	 */
+	public ResponseCache(int maxEntries, long ttlMillis, LongSupplier clock) {
+		if (maxEntries <= 0) {
+			throw new IllegalArgumentException("maxEntries must be positive");
+		}
+		this.maxEntries = maxEntries;
+		this.ttlMillis = ttlMillis;
+		this.clock = clock;
+		this.entries = new LinkedHashMap<WeatherQuery, Entry<V>>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<WeatherQuery, Entry<V>> eldest) {
+				if (size() > ResponseCache.this.maxEntries) {
+					evictions.incrementAndGet();
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Returns the cached value when fresh, otherwise joins the load already in flight for the key
+	 * or starts one through the loader. Failed loads are not cached.
+	 * Each caller gets its own dependent future, so cancelling it does not affect other waiters.
+	 */
+	public CompletableFuture<V> get(WeatherQuery key, Function<WeatherQuery, CompletableFuture<V>> loader) {
+		V cached = getCounted(key);
+		if (cached != null) {
+			return CompletableFuture.completedFuture(cached);
+		}
+		return load(key, loader);
+	}
+
+	/**
+	 * Like {@link #get}, for a key that {@link #getCounted} has just found absent or expired, so the
+	 * lookup is not counted twice.
+	 */
+	public CompletableFuture<V> load(WeatherQuery key, Function<WeatherQuery, CompletableFuture<V>> loader) {
+		CompletableFuture<V> load = new CompletableFuture<V>();
+		CompletableFuture<V> existing = inFlight.putIfAbsent(key, load);
+		if (existing != null) {
+			coalesced.incrementAndGet();
+			return existing.thenApply(Function.identity());
+		}
+
+		// another caller may have completed its load between the lookup and the registration
+		V cached = lookup(key, false);
+		if (cached != null) {
+			hits.incrementAndGet();
+			inFlight.remove(key, load);
+			load.complete(cached);
+			return CompletableFuture.completedFuture(cached);
+		}
+
+		misses.incrementAndGet();
+		CompletableFuture<V> upstream;
+		try {
+			upstream = loader.apply(key);
+		} catch (RuntimeException e) {
+			upstream = new CompletableFuture<V>();
+			upstream.completeExceptionally(e);
+		}
+		upstream.whenComplete((value, error) -> {
+			if (error == null && value != null) {
+				put(key, value);
+			}
+			inFlight.remove(key, load);
+			if (error != null) {
+				load.completeExceptionally(error);
+			} else {
+				load.complete(value);
+			}
+		});
+		return load.thenApply(Function.identity());
+	}
+
+	/**
+	 * @return the cached value, or null when absent or expired
+	 */
+	public V getIfPresent(WeatherQuery key) {
+		return lookup(key, true);
+	}
+
+	/**
+	 * Like {@link #getIfPresent}, but also counts a fresh value as a hit. Meant for callers that load
+	 * the misses themselves through {@link #load}.
+	 */
+	public V getCounted(WeatherQuery key) {
+		V cached = lookup(key, true);
+		if (cached != null) {
+			hits.incrementAndGet();
+		}
+		return cached;
+	}
+
+	private V lookup(WeatherQuery key, boolean countExpiration) {
+		synchronized (entries) {
+			Entry<V> entry = entries.get(key);
+			if (entry == null) {
+				return null;
+			}
+			if (entry.expiresAt <= clock.getAsLong()) {
+				// kept until evicted or replaced, so it can still be served stale
+				if (countExpiration) {
+					expirations.incrementAndGet();
+				}
+				return null;
+			}
+			return entry.value;
+		}
+	}
+
+	/**
+	 * @return the cached value even when expired, or null when it was never cached or has been evicted
+	 */
+	public V getStale(WeatherQuery key) {
+		synchronized (entries) {
+			Entry<V> entry = entries.get(key);
+			return entry == null ? null : entry.value;
+		}
+	}
+
+	public void put(WeatherQuery key, V value) {
+		put(key, value, ttlMillis);
+	}
+
+	public void put(WeatherQuery key, V value, long ttlMillis) {
+		Entry<V> entry = new Entry<V>(value, clock.getAsLong() + ttlMillis);
+		synchronized (entries) {
+			entries.put(key, entry);
+			if (listener != null) {
+				changes.addLast(listener -> listener.onPut(key, value, entry.expiresAt));
+			}
+		}
+		notifyListener();
+	}
+
+	/**
+	 * Puts back a persisted entry with its original expiry, without telling the listener.
+	 * Entries that have expired meanwhile are ignored.
+	 * @return whether the entry was restored
+	 */
+	public boolean restore(WeatherQuery key, V value, long expiresAt) {
+		if (expiresAt <= clock.getAsLong()) {
+			return false;
+		}
+		synchronized (entries) {
+			entries.put(key, new Entry<V>(value, expiresAt));
+		}
+		return true;
+	}
+
+	public void invalidate(WeatherQuery key) {
+		synchronized (entries) {
+			entries.remove(key);
+			if (listener != null) {
+				changes.addLast(listener -> listener.onRemove(key));
+			}
+		}
+		notifyListener();
+	}
+
+	public void clear() {
+		synchronized (entries) {
+			entries.clear();
+			if (listener != null) {
+				changes.addLast(Listener::onClear);
+			}
+		}
+		notifyListener();
+	}
+
+	/**
+	 * Hands the queued changes to the listener. Only one thread does so at a time; the others leave
+	 * their changes to it, which it picks up before giving up the turn.
+	 */
+	private void notifyListener() {
+		while (notifying.compareAndSet(false, true)) {
+			try {
+				Consumer<Listener<V>> change;
+				while ((change = nextChange()) != null) {
+					Listener<V> current = listener;
+					if (current != null) {
+						change.accept(current);
+					}
+				}
+			} finally {
+				notifying.set(false);
+			}
+			// a change queued after the last poll but before the turn was given up has no one to tell it
+			synchronized (entries) {
+				if (changes.isEmpty()) {
+					return;
+				}
+			}
+		}
+	}
+
+	private Consumer<Listener<V>> nextChange() {
+		synchronized (entries) {
+			return changes.pollFirst();
+		}
+	}
+
+	/**
+	 * Visits a copy of the entries, from least to most recently used, outside the cache lock.
+	 */
+	public void forEachEntry(EntryVisitor<V> visitor) {
+		List<Map.Entry<WeatherQuery, Entry<V>>> copy;
+		synchronized (entries) {
+			copy = new ArrayList<Map.Entry<WeatherQuery, Entry<V>>>(entries.entrySet().size());
+			for (Map.Entry<WeatherQuery, Entry<V>> entry : entries.entrySet()) {
+				copy.add(new AbstractMap.SimpleImmutableEntry<WeatherQuery, Entry<V>>(entry));
+			}
+		}
+		for (Map.Entry<WeatherQuery, Entry<V>> entry : copy) {
+			visitor.visit(entry.getKey(), entry.getValue().value, entry.getValue().expiresAt);
+		}
+	}
+
+	public void setListener(Listener<V> listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * @return the clock entries expire by, in milliseconds
+	 */
+	public LongSupplier getClock() {
+		return clock;
+	}
+
+	public int size() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	/**
+	 * @return lookups that joined a load already in flight instead of going upstream
+	 */
+	public long getCoalescedCount() {
+		return coalesced.get();
+	}
+
+	public long getEvictionCount() {
+		return evictions.get();
+	}
+
+	/**
+	 * @return lookups that only found an expired entry
+	 */
+	public long getExpirationCount() {
+		return expirations.get();
+	}
+
+	private static final class Entry<V> {
+
+		private final V value;
+		private final long expiresAt;
+
+		private Entry(V value, long expiresAt) {
+			this.value = value;
+			this.expiresAt = expiresAt;
+		}
+	}
+
+}
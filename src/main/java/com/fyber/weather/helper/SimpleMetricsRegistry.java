@@ -0,0 +1,76 @@
+package com.fyber.weather.helper;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.DoubleSupplier;
+
+/**
+ * In-process {@link MetricsRegistry} keeping one {@link LogHistogram} per timer and summary.
+ * Meters are identified as name{key=value,...}, e.g. weather.client.ttfb{endpoint=weather,status=200}.
+ */
+public class SimpleMetricsRegistry implements MetricsRegistry {
+
+	private final ConcurrentHashMap<String, LogHistogram> histograms = new ConcurrentHashMap<String, LogHistogram>();
+	private final ConcurrentHashMap<String, DoubleSupplier> gauges = new ConcurrentHashMap<String, DoubleSupplier>();
+
+	@Override
+	public Timer timer(String name, String... tags) {
+		return histogram(name, tags)::record;
+	}
+
+	@Override
+	public DistributionSummary summary(String name, String... tags) {
+		return histogram(name, tags)::record;
+	}
+
+	@Override
+	public void gauge(String name, DoubleSupplier value, String... tags) {
+		gauges.put(id(name, tags), value);
+	}
+
+	/**
+	 * @return the histogram behind a timer, in nanoseconds, or a summary; created empty if absent
+	 */
+	public LogHistogram histogram(String name, String... tags) {
+		return histograms.computeIfAbsent(id(name, tags), key -> new LogHistogram());
+	}
+
+	/**
+	 * @return the current gauge value, or NaN when no such gauge is registered
+	 */
+	public double gaugeValue(String name, String... tags) {
+		DoubleSupplier gauge = gauges.get(id(name, tags));
+		return gauge == null ? Double.NaN : gauge.getAsDouble();
+	}
+
+	public Map<String, LogHistogram> getHistograms() {
+		return new TreeMap<String, LogHistogram>(histograms);
+	}
+
+	public Map<String, Double> getGaugeValues() {
+		Map<String, Double> values = new TreeMap<String, Double>();
+		for (Map.Entry<String, DoubleSupplier> gauge : gauges.entrySet()) {
+			values.put(gauge.getKey(), gauge.getValue().getAsDouble());
+		}
+		return values;
+	}
+
+	static String id(String name, String... tags) {
+		if (tags.length % 2 != 0) {
+			throw new IllegalArgumentException("Tags must be key/value pairs: " + name);
+		}
+		if (tags.length == 0) {
+			return name;
+		}
+		StringBuilder id = new StringBuilder(name).append('{');
+		for (int i = 0; i < tags.length; i += 2) {
+			if (i > 0) {
+				id.append(',');
+			}
+			id.append(tags[i]).append('=').append(tags[i + 1]);
+		}
+		return id.append('}').toString();
+	}
+
+}
@@ -0,0 +1,362 @@
+package com.fyber.weather.helper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import com.fyber.weather.domain.City;
+import com.fyber.weather.domain.Coord;
+import com.fyber.weather.domain.WeatherResponse;
+
+/**
+ * Immutable spatial index of city IDs for nearest-city and bounding-box queries.
+ * Nearest-neighbour search runs on a 3-d tree of points on the unit sphere, where chord length orders
+ * cities exactly like great-circle distance, so results stay correct near the poles and across the
+ * antimeridian. Bounding boxes run on a separate 2-d tree over latitude and longitude.
+ * Both trees are implicit, stored as permutations of primitive arrays, and queries do not allocate
+ * beyond their result.
+ */
+public class SpatialIndex {
+
+	private static final double EARTH_RADIUS_KM = 6371.0088d;
+
+	private final int[] ids;
+	private final double[] lats;
+	private final double[] lons;
+	private final KdTree sphere;
+	private final KdTree plane;
+
+	private SpatialIndex(int[] ids, double[] lats, double[] lons) {
+		this.ids = ids;
+		this.lats = lats;
+		this.lons = lons;
+		int size = ids.length;
+		double[] x = new double[size];
+		double[] y = new double[size];
+		double[] z = new double[size];
+		for (int i = 0; i < size; i++) {
+			double lat = Math.toRadians(lats[i]);
+			double lon = Math.toRadians(lons[i]);
+			x[i] = Math.cos(lat) * Math.cos(lon);
+			y[i] = Math.cos(lat) * Math.sin(lon);
+			z[i] = Math.sin(lat);
+		}
+		this.sphere = new KdTree(new double[][] { x, y, z });
+		this.plane = new KdTree(new double[][] { lats, lons });
+	}
+
+	/**
+	 * Indexes every city of the catalogue.
+	 */
+	public static SpatialIndex of(CityCatalog catalog) {
+		int size = catalog.size();
+		int[] ids = new int[size];
+		double[] lats = new double[size];
+		double[] lons = new double[size];
+		for (int record = 0; record < size; record++) {
+			City city = catalog.city(record);
+			ids[record] = city.getId();
+			lats[record] = city.getLat();
+			lons[record] = city.getLon();
+		}
+		return new SpatialIndex(ids, lats, lons);
+	}
+
+	/**
+	 * Indexes cached or fetched responses; those without an ID or coordinates are left out.
+	 */
+	public static SpatialIndex of(Collection<WeatherResponse> responses) {
+		int[] ids = new int[responses.size()];
+		double[] lats = new double[responses.size()];
+		double[] lons = new double[responses.size()];
+		int size = 0;
+		for (WeatherResponse response : responses) {
+			Coord coord = response.getCoord();
+			if (response.getId() != null && coord != null && coord.getLat() != null && coord.getLon() != null) {
+				ids[size] = response.getId();
+				lats[size] = coord.getLat();
+				lons[size] = coord.getLon();
+				size++;
+			}
+		}
+		return new SpatialIndex(Arrays.copyOf(ids, size), Arrays.copyOf(lats, size), Arrays.copyOf(lons, size));
+	}
+
+	/**
+	 * @return IDs of the k cities closest to the point by great-circle distance, nearest first
+	 */
+	public int[] nearest(double lat, double lon, int k) {
+		int count = Math.min(k, ids.length);
+		if (count <= 0) {
+			return new int[0];
+		}
+		double latRad = Math.toRadians(lat);
+		double lonRad = Math.toRadians(lon);
+		double[] target = { Math.cos(latRad) * Math.cos(lonRad), Math.cos(latRad) * Math.sin(lonRad), Math.sin(latRad) };
+		Neighbours neighbours = new Neighbours(count);
+		sphere.nearest(target, 0, ids.length, 0, neighbours);
+		int[] result = new int[count];
+		for (int i = count - 1; i >= 0; i--) {
+			result[i] = ids[neighbours.pop()];
+		}
+		return result;
+	}
+
+	/**
+	 * @return IDs of the cities inside the box, in no particular order; a box with west greater than
+	 * east wraps across the antimeridian
+	 */
+	public int[] within(double south, double west, double north, double east) {
+		IntList result = new IntList();
+		if (west <= east) {
+			plane.range(new double[] { south, west }, new double[] { north, east }, 0, ids.length, 0, result);
+		} else {
+			plane.range(new double[] { south, west }, new double[] { north, 180 }, 0, ids.length, 0, result);
+			plane.range(new double[] { south, -180 }, new double[] { north, east }, 0, ids.length, 0, result);
+		}
+		int[] found = result.toArray();
+		for (int i = 0; i < found.length; i++) {
+			found[i] = ids[found[i]];
+		}
+		return found;
+	}
+
+	/**
+	 * Fetches current weather for the IDs, typically the result of a spatial query, as /group requests
+	 * of at most {@link BatchingWeatherClient#UPSTREAM_ID_LIMIT} IDs each, sent concurrently.
+	 * Put a {@link CachingWeatherClient} in front to only fetch what is not cached yet.
+	 * @return the responses in ID order; unknown IDs are left out like the API does
+	 */
+	public static CompletableFuture<List<WeatherResponse>> fetch(WeatherSource source, int[] cityIds, String units) {
+		List<CompletableFuture<List<WeatherResponse>>> batches = new ArrayList<CompletableFuture<List<WeatherResponse>>>();
+		for (int from = 0; from < cityIds.length; from += BatchingWeatherClient.UPSTREAM_ID_LIMIT) {
+			int[] batch = Arrays.copyOfRange(cityIds, from, Math.min(cityIds.length, from + BatchingWeatherClient.UPSTREAM_ID_LIMIT));
+			batches.add(source.groupAsync(WeatherQuery.group(batch).withUnits(units)));
+		}
+		return CompletableFuture.allOf(batches.toArray(new CompletableFuture<?>[batches.size()])).thenApply(done -> {
+			List<WeatherResponse> responses = new ArrayList<WeatherResponse>(cityIds.length);
+			for (CompletableFuture<List<WeatherResponse>> batch : batches) {
+				responses.addAll(batch.join());
+			}
+			return responses;
+		});
+	}
+
+	/**
+	 * Haversine distance on the mean Earth radius.
+	 */
+	public static double distanceKm(double lat1, double lon1, double lat2, double lon2) {
+		double dLat = Math.toRadians(lat2 - lat1);
+		double dLon = Math.toRadians(lon2 - lon1);
+		double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+				+ Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+		return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+	}
+
+	public int size() {
+		return ids.length;
+	}
+
+	/**
+	 * Implicit k-d tree: the point at the middle of each range is the split node, points before it are
+	 * not greater on the split axis, points after it not smaller. The axis cycles with depth.
+	 */
+	private static final class KdTree {
+
+		private final double[][] axes;
+		private final int[] points;
+
+		private KdTree(double[][] coordinates) {
+			int size = coordinates[0].length;
+			axes = coordinates;
+			points = new int[size];
+			for (int i = 0; i < size; i++) {
+				points[i] = i;
+			}
+			build(0, size, 0);
+		}
+
+		private void build(int from, int to, int depth) {
+			if (to - from <= 1) {
+				return;
+			}
+			int middle = (from + to) >>> 1;
+			select(axes[depth % axes.length], from, to - 1, middle);
+			build(from, middle, depth + 1);
+			build(middle + 1, to, depth + 1);
+		}
+
+		/**
+		 * Quickselect: moves the point of rank k within [left, right] on the axis to position k.
+		 */
+		private void select(double[] axis, int left, int right, int k) {
+			while (right > left) {
+				double pivot = axis[points[(left + right) >>> 1]];
+				int i = left;
+				int j = right;
+				while (i <= j) {
+					while (axis[points[i]] < pivot) {
+						i++;
+					}
+					while (axis[points[j]] > pivot) {
+						j--;
+					}
+					if (i <= j) {
+						int swap = points[i];
+						points[i++] = points[j];
+						points[j--] = swap;
+					}
+				}
+				if (k <= j) {
+					right = j;
+				} else if (k >= i) {
+					left = i;
+				} else {
+					return;
+				}
+			}
+		}
+
+		private void nearest(double[] target, int from, int to, int depth, Neighbours neighbours) {
+			if (from >= to) {
+				return;
+			}
+			int middle = (from + to) >>> 1;
+			int point = points[middle];
+			double distance = 0;
+			for (int d = 0; d < axes.length; d++) {
+				double delta = axes[d][point] - target[d];
+				distance += delta * delta;
+			}
+			neighbours.offer(point, distance);
+
+			double[] axis = axes[depth % axes.length];
+			double delta = target[depth % axes.length] - axis[point];
+			if (delta < 0) {
+				nearest(target, from, middle, depth + 1, neighbours);
+				if (!neighbours.isFull() || delta * delta < neighbours.worst()) {
+					nearest(target, middle + 1, to, depth + 1, neighbours);
+				}
+			} else {
+				nearest(target, middle + 1, to, depth + 1, neighbours);
+				if (!neighbours.isFull() || delta * delta < neighbours.worst()) {
+					nearest(target, from, middle, depth + 1, neighbours);
+				}
+			}
+		}
+
+		private void range(double[] low, double[] high, int from, int to, int depth, IntList result) {
+			if (from >= to) {
+				return;
+			}
+			int middle = (from + to) >>> 1;
+			int point = points[middle];
+			boolean inside = true;
+			for (int d = 0; d < axes.length && inside; d++) {
+				inside = axes[d][point] >= low[d] && axes[d][point] <= high[d];
+			}
+			if (inside) {
+				result.add(point);
+			}
+			int split = depth % axes.length;
+			double value = axes[split][point];
+			if (low[split] <= value) {
+				range(low, high, from, middle, depth + 1, result);
+			}
+			if (high[split] >= value) {
+				range(low, high, middle + 1, to, depth + 1, result);
+			}
+		}
+	}
+
+	/**
+	 * Bounded max-heap of the closest points found so far.
+	 */
+	private static final class Neighbours {
+
+		private final int[] points;
+		private final double[] distances;
+		private int size;
+
+		private Neighbours(int capacity) {
+			points = new int[capacity];
+			distances = new double[capacity];
+		}
+
+		private boolean isFull() {
+			return size == points.length;
+		}
+
+		private double worst() {
+			return distances[0];
+		}
+
+		private void offer(int point, double distance) {
+			if (size < points.length) {
+				int i = size++;
+				while (i > 0 && distances[(i - 1) / 2] < distance) {
+					points[i] = points[(i - 1) / 2];
+					distances[i] = distances[(i - 1) / 2];
+					i = (i - 1) / 2;
+				}
+				points[i] = point;
+				distances[i] = distance;
+			} else if (distance < distances[0]) {
+				siftDown(point, distance);
+			}
+		}
+
+		/**
+		 * @return the farthest remaining point
+		 */
+		private int pop() {
+			int top = points[0];
+			size--;
+			if (size > 0) {
+				siftDown(points[size], distances[size]);
+			}
+			return top;
+		}
+
+		private void siftDown(int point, double distance) {
+			int i = 0;
+			while (true) {
+				int child = 2 * i + 1;
+				if (child >= size) {
+					break;
+				}
+				if (child + 1 < size && distances[child + 1] > distances[child]) {
+					child++;
+				}
+				if (distances[child] <= distance) {
+					break;
+				}
+				points[i] = points[child];
+				distances[i] = distances[child];
+				i = child;
+			}
+			points[i] = point;
+			distances[i] = distance;
+		}
+	}
+
+	private static final class IntList {
+
+		private int[] values = new int[16];
+		private int size;
+
+		private void add(int value) {
+			if (size == values.length) {
+				values = Arrays.copyOf(values, size * 2);
+			}
+			values[size++] = value;
+		}
+
+		private int[] toArray() {
+			return Arrays.copyOf(values, size);
+		}
+	}
+
+}
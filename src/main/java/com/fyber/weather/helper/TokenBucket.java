@@ -0,0 +1,92 @@
+package com.fyber.weather.helper;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Token bucket refilled at a constant rate up to its burst capacity. Callers reserve a permit and
+ * are told how long to wait for it, so waiting can happen on a timer instead of a blocked thread.
+ */
+public class TokenBucket {
+
+	private final double permitsPerNano;
+	private final double capacity;
+	private final LongSupplier nanoClock;
+
+	private double available;
+	private long lastRefill;
+
+	private final AtomicLong acquired		= new AtomicLong();
+	private final AtomicLong rejected		= new AtomicLong();
+	private final AtomicLong delayed		= new AtomicLong();
+	private final AtomicLong waitNanos		= new AtomicLong();
+
+	public TokenBucket(int permitsPerMinute, int burst) {
+		this(permitsPerMinute, burst, System::nanoTime);
+	}
+
+	public TokenBucket(int permitsPerMinute, int burst, LongSupplier nanoClock) {
+		if (permitsPerMinute <= 0 || burst <= 0) {
+			throw new IllegalArgumentException("permitsPerMinute and burst must be positive");
+		}
+		this.permitsPerNano = permitsPerMinute / (double) TimeUnit.MINUTES.toNanos(1);
+		this.capacity = burst;
+		this.nanoClock = nanoClock;
+		this.available = burst;
+		this.lastRefill = nanoClock.getAsLong();
+	}
+
+	/**
+	 * Reserves one permit.
+	 * @return nanoseconds the caller has to wait before using the permit, 0 when it is available
+	 * right away, or -1 when the wait would exceed maxWaitNanos and nothing was reserved
+	 */
+	public synchronized long reserve(long maxWaitNanos) {
+		refill();
+		available -= 1;
+		long wait = available >= 0 ? 0 : (long) Math.ceil(-available / permitsPerNano);
+		if (wait > maxWaitNanos) {
+			available += 1;
+			rejected.incrementAndGet();
+			return -1;
+		}
+		acquired.incrementAndGet();
+		if (wait > 0) {
+			delayed.incrementAndGet();
+			waitNanos.addAndGet(wait);
+		}
+		return wait;
+	}
+
+	private void refill() {
+		long now = nanoClock.getAsLong();
+		available = Math.min(capacity, available + (now - lastRefill) * permitsPerNano);
+		lastRefill = now;
+	}
+
+	/**
+	 * @return permits that can be taken without waiting; negative when callers are queued
+	 */
+	public synchronized double getAvailablePermits() {
+		refill();
+		return available;
+	}
+
+	public long getAcquiredCount() {
+		return acquired.get();
+	}
+
+	public long getRejectedCount() {
+		return rejected.get();
+	}
+
+	public long getDelayedCount() {
+		return delayed.get();
+	}
+
+	public long getTotalWaitNanos() {
+		return waitNanos.get();
+	}
+
+}
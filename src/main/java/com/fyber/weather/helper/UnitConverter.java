@@ -0,0 +1,117 @@
+package com.fyber.weather.helper;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+import com.fyber.weather.domain.Main;
+import com.fyber.weather.domain.WeatherResponse;
+import com.fyber.weather.domain.Wind;
+
+/**
+ * Converts responses fetched in standard units (Kelvin, m/s) into metric (Celsius, m/s) or imperial
+ * (Fahrenheit, mph), so one upstream answer serves every unit system.
+ * Arithmetic is decimal, from the printed value the API sent, and rounded half up to the two decimals
+ * the API answers with; 284.15 K is exactly 11 °C and 51.8 °F.
+ */
+public final class UnitConverter {
+
+	public static final String STANDARD	= "standard";
+	public static final String METRIC	= "metric";
+	public static final String IMPERIAL	= "imperial";
+
+	private static final BigDecimal KELVIN_OFFSET	= new BigDecimal("273.15");
+	private static final BigDecimal NINE			= BigDecimal.valueOf(9);
+	private static final BigDecimal FIVE			= BigDecimal.valueOf(5);
+	private static final BigDecimal THIRTY_TWO		= BigDecimal.valueOf(32);
+	private static final BigDecimal SECONDS_PER_HOUR	= BigDecimal.valueOf(3600);
+	private static final BigDecimal METRES_PER_MILE	= new BigDecimal("1609.344");
+	private static final int SCALE = 2;
+
+	private UnitConverter() {
+	}
+
+	/**
+	 * @return whether answers in these units can be derived from standard ones; null is the API default,
+	 * standard
+	 */
+	public static boolean isConvertible(String units) {
+		return units == null || STANDARD.equals(units) || METRIC.equals(units) || IMPERIAL.equals(units);
+	}
+
+	/**
+	 * @return a copy of the standard-unit response in the requested units, sharing everything but
+	 * main and wind with it; the response itself when no conversion is needed
+	 */
+	public static WeatherResponse convert(WeatherResponse standard, String units) {
+		boolean metric = METRIC.equals(units);
+		boolean imperial = IMPERIAL.equals(units);
+		if (standard == null || !metric && !imperial) {
+			return standard;
+		}
+		WeatherResponse copy = new WeatherResponse();
+		copy.setCoord(standard.getCoord());
+		copy.setWeather(standard.getWeather());
+		copy.setBase(standard.getBase());
+		copy.setVisibility(standard.getVisibility());
+		copy.setClouds(standard.getClouds());
+		copy.setDt(standard.getDt());
+		copy.setSys(standard.getSys());
+		copy.setId(standard.getId());
+		copy.setName(standard.getName());
+		copy.setCod(standard.getCod());
+
+		Main main = standard.getMain();
+		if (main != null) {
+			Main converted = new Main();
+			converted.setPressure(main.getPressure());
+			converted.setHumidity(main.getHumidity());
+			converted.setTemp(imperial ? fahrenheit(main.getTemp()) : celsius(main.getTemp()));
+			converted.setTempMin(imperial ? fahrenheit(main.getTempMin()) : celsius(main.getTempMin()));
+			converted.setTempMax(imperial ? fahrenheit(main.getTempMax()) : celsius(main.getTempMax()));
+			copy.setMain(converted);
+		}
+		Wind wind = standard.getWind();
+		if (wind != null) {
+			Wind converted = new Wind();
+			converted.setDeg(wind.getDeg());
+			converted.setSpeed(imperial ? milesPerHour(wind.getSpeed()) : wind.getSpeed());
+			copy.setWind(converted);
+		}
+		return copy;
+	}
+
+	public static Double celsius(Double kelvin) {
+		if (kelvin == null) {
+			return null;
+		}
+		return round(decimal(kelvin).subtract(KELVIN_OFFSET));
+	}
+
+	public static Double fahrenheit(Double kelvin) {
+		if (kelvin == null) {
+			return null;
+		}
+		BigDecimal celsius = decimal(kelvin).subtract(KELVIN_OFFSET);
+		return round(celsius.multiply(NINE).divide(FIVE).add(THIRTY_TWO));
+	}
+
+	public static Double milesPerHour(Double metresPerSecond) {
+		if (metresPerSecond == null) {
+			return null;
+		}
+		return decimal(metresPerSecond).multiply(SECONDS_PER_HOUR).divide(METRES_PER_MILE, SCALE, RoundingMode.HALF_UP).doubleValue();
+	}
+
+	/**
+	 * The shortest decimal that prints as the double, i.e. what the API sent rather than its binary
+	 * approximation.
+	 */
+	private static BigDecimal decimal(double value) {
+		return new BigDecimal(Double.toString(value));
+	}
+
+	private static Double round(BigDecimal value) {
+		return value.setScale(SCALE, RoundingMode.HALF_UP).doubleValue();
+	}
+
+}
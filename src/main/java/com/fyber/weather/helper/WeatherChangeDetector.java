@@ -0,0 +1,287 @@
+package com.fyber.weather.helper;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import com.fyber.weather.domain.WeatherDelta;
+import com.fyber.weather.domain.WeatherDelta.Field;
+import com.fyber.weather.domain.WeatherResponse;
+
+/**
+ * Turns a stream of observations into a stream of {@link WeatherDelta}s by comparing each response
+ * with the last one seen for its city. A response with the same dt as the previous one is dropped
+ * outright; otherwise one delta is emitted per field that changed by at least its threshold, measured
+ * from the last reported value so slow drifts are not lost. Subscribe it to a {@link WeatherPoller}, or
+ * feed it responses directly.
+ * <p>
+ * Subscribers pull: nothing is delivered beyond what they {@link Subscription#request(long) requested}.
+ * Undelivered deltas wait in a per-subscription buffer that conflates by city and field, so a slow
+ * subscriber gets the net change since it last looked rather than every step in between, and the
+ * buffer stays bounded by the number of watched cities. Past its capacity the oldest deltas are
+ * dropped and counted. Deltas are delivered on the thread that fed the response or requested more.
+ */
+public class WeatherChangeDetector implements Consumer<WeatherResponse> {
+
+	private static final Field[] FIELDS = Field.values();
+
+	private final Map<Integer, Observation> observations = new HashMap<Integer, Observation>();
+	private final Map<Field, Double> thresholds = new EnumMap<Field, Double>(Field.class);
+	private final List<Subscription> subscriptions = new CopyOnWriteArrayList<Subscription>();
+
+	private final AtomicLong received	= new AtomicLong();
+	private final AtomicLong unchanged	= new AtomicLong();
+	private final AtomicLong emitted	= new AtomicLong();
+
+	/**
+	 * Receives deltas after requesting them through the subscription handed to onSubscribe.
+	 */
+	public interface Subscriber {
+
+		void onSubscribe(Subscription subscription);
+
+		void onNext(WeatherDelta delta);
+	}
+
+	/**
+	 * Ignores numeric changes smaller than the threshold, in the units the responses come in.
+	 */
+	public WeatherChangeDetector withThreshold(Field field, double threshold) {
+		if (field == Field.CONDITION) {
+			throw new IllegalArgumentException("Conditions have no magnitude");
+		}
+		synchronized (observations) {
+			thresholds.put(field, threshold);
+		}
+		return this;
+	}
+
+	/**
+	 * @param capacity most deltas kept for the subscriber while it has no outstanding demand
+	 */
+	public Subscription subscribe(Subscriber subscriber, int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("capacity must be positive");
+		}
+		Subscription subscription = new Subscription(subscriber, capacity);
+		subscriptions.add(subscription);
+		subscriber.onSubscribe(subscription);
+		return subscription;
+	}
+
+	@Override
+	public void accept(WeatherResponse response) {
+		if (response.getId() == null) {
+			return;
+		}
+		received.incrementAndGet();
+		int cityId = response.getId();
+		List<WeatherDelta> deltas = new ArrayList<WeatherDelta>();
+		synchronized (observations) {
+			Observation seen = observations.get(cityId);
+			if (seen == null) {
+				seen = new Observation();
+				observations.put(cityId, seen);
+			} else if (response.getDt() != null && response.getDt().equals(seen.dt)) {
+				unchanged.incrementAndGet();
+				return;
+			}
+			for (Field field : FIELDS) {
+				Object reported = seen.values[field.ordinal()];
+				Object value = field.read(response);
+				if (changed(field, reported, value)) {
+					deltas.add(new WeatherDelta(cityId, response.getDt(), field, reported, value));
+					seen.values[field.ordinal()] = value;
+				}
+			}
+			seen.dt = response.getDt();
+		}
+		if (deltas.isEmpty()) {
+			unchanged.incrementAndGet();
+			return;
+		}
+		emitted.addAndGet(deltas.size());
+		for (Subscription subscription : subscriptions) {
+			subscription.offer(deltas);
+		}
+	}
+
+	private boolean changed(Field field, Object reported, Object value) {
+		if (Objects.equals(reported, value)) {
+			return false;
+		}
+		if (reported instanceof Number && value instanceof Number) {
+			Double threshold = thresholds.get(field);
+			double change = Math.abs(((Number) value).doubleValue() - ((Number) reported).doubleValue());
+			return threshold == null || change >= threshold;
+		}
+		return true;
+	}
+
+	/**
+	 * Forgets what was seen for the city, so its next observation is reported in full again.
+	 */
+	public void forget(int cityId) {
+		synchronized (observations) {
+			observations.remove(cityId);
+		}
+	}
+
+	public long getReceivedCount() {
+		return received.get();
+	}
+
+	/**
+	 * @return responses that produced no delta, repeated dt or changes below threshold
+	 */
+	public long getUnchangedCount() {
+		return unchanged.get();
+	}
+
+	public long getEmittedCount() {
+		return emitted.get();
+	}
+
+	private static final class Observation {
+
+		private final Object[] values = new Object[FIELDS.length];
+		private Integer dt;
+	}
+
+	/**
+	 * Demand and buffer of one subscriber.
+	 */
+	public final class Subscription {
+
+		private final Subscriber subscriber;
+		private final int capacity;
+		private final LinkedHashMap<Long, WeatherDelta> pending = new LinkedHashMap<Long, WeatherDelta>();
+		private final AtomicInteger work = new AtomicInteger();
+		private long requested;
+		private volatile boolean cancelled;
+		private long conflated;
+		private long dropped;
+
+		private Subscription(Subscriber subscriber, int capacity) {
+			this.subscriber = subscriber;
+			this.capacity = capacity;
+		}
+
+		/**
+		 * Asks for up to n more deltas; Long.MAX_VALUE for all of them.
+		 */
+		public void request(long n) {
+			if (n <= 0) {
+				throw new IllegalArgumentException("n must be positive");
+			}
+			synchronized (this) {
+				requested = requested + n < 0 ? Long.MAX_VALUE : requested + n;
+			}
+			drain();
+		}
+
+		public void cancel() {
+			cancelled = true;
+			subscriptions.remove(this);
+			synchronized (this) {
+				pending.clear();
+			}
+		}
+
+		private void offer(List<WeatherDelta> deltas) {
+			synchronized (this) {
+				if (cancelled) {
+					return;
+				}
+				for (WeatherDelta delta : deltas) {
+					Long key = (long) delta.getCityId() << 8 | delta.getField().ordinal();
+					WeatherDelta waiting = pending.get(key);
+					if (waiting != null) {
+						conflated++;
+						if (Objects.equals(waiting.getPrevious(), delta.getCurrent())) {
+							// changed back before the subscriber saw it
+							pending.remove(key);
+						} else {
+							pending.put(key, new WeatherDelta(delta.getCityId(), delta.getDt(), delta.getField(),
+									waiting.getPrevious(), delta.getCurrent()));
+						}
+						continue;
+					}
+					if (pending.size() == capacity) {
+						Iterator<WeatherDelta> oldest = pending.values().iterator();
+						oldest.next();
+						oldest.remove();
+						dropped++;
+					}
+					pending.put(key, delta);
+				}
+			}
+			drain();
+		}
+
+		/**
+		 * Delivers while there is demand; only one thread delivers at a time, the others leave their
+		 * work to it, so deltas of a subscriber are never delivered concurrently or out of order.
+		 */
+		private void drain() {
+			if (work.getAndIncrement() != 0) {
+				return;
+			}
+			int missed = 1;
+			while (true) {
+				while (true) {
+					WeatherDelta next;
+					synchronized (this) {
+						if (cancelled || requested == 0 || pending.isEmpty()) {
+							break;
+						}
+						Iterator<WeatherDelta> first = pending.values().iterator();
+						next = first.next();
+						first.remove();
+						if (requested != Long.MAX_VALUE) {
+							requested--;
+						}
+					}
+					try {
+						subscriber.onNext(next);
+					} catch (RuntimeException e) {
+						// a subscriber that throws is broken; stop feeding it rather than fail the producer
+						cancel();
+					}
+				}
+				missed = work.addAndGet(-missed);
+				if (missed == 0) {
+					return;
+				}
+			}
+		}
+
+		public synchronized int getPendingCount() {
+			return pending.size();
+		}
+
+		/**
+		 * @return deltas merged into one still waiting for the same city and field
+		 */
+		public synchronized long getConflatedCount() {
+			return conflated;
+		}
+
+		/**
+		 * @return deltas discarded because the buffer was full
+		 */
+		public synchronized long getDroppedCount() {
+			return dropped;
+		}
+	}
+
+}
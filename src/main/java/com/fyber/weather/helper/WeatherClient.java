@@ -0,0 +1,697 @@
+package com.fyber.weather.helper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.client.utils.URIBuilder;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.NHttpClientConnection;
+import org.apache.http.nio.client.methods.HttpAsyncMethods;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HttpContext;
+
+import com.fyber.weather.domain.GroupResponse;
+import com.fyber.weather.domain.WeatherResponse;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+
+/**
+ * Thread-safe client for the OpenWeatherMap API backed by a pooled, keep-alive connection manager.
+ * Every lookup is available blocking or as a CompletableFuture on the NIO reactor.
+ * One instance is meant to be shared by all callers and closed on shutdown.
+ * Given a {@link MetricsRegistry}, it reports per endpoint and status the total, time-to-first-byte,
+ * body read and deserialization times and the payload size, plus connection lease times and pool,
+ * bulkhead and rate limit gauges.
+ */
+public class WeatherClient implements WeatherSource, Closeable {
+
+	private static final String EXCHANGE = "weather.exchange";
+
+	private final ClientConfig clientConfig;
+	private final PoolingHttpClientConnectionManager connectionManager;
+	private final CloseableHttpClient httpClient;
+	private final RequestConfig requestConfig;
+	private final RateLimiter rateLimiter;
+	private final RequestPolicy defaultPolicy;
+	private final ConcurrentHashMap<String, Endpoint> endpoints = new ConcurrentHashMap<String, Endpoint>();
+	private final MetricsRegistry metricsRegistry;
+	private final ClientMetrics metrics;
+	private final BufferPool bufferPool;
+	private PoolingNHttpClientConnectionManager asyncConnectionManager;
+	private CloseableHttpAsyncClient asyncClient;
+
+	public WeatherClient(ClientConfig clientConfig) {
+		this(clientConfig, new RateLimiter(clientConfig));
+	}
+
+	/**
+	 * @param rateLimiter limiter shared with other clients drawing on the same API key quota
+	 */
+	public WeatherClient(ClientConfig clientConfig, RateLimiter rateLimiter) {
+		this(clientConfig, rateLimiter, MetricsRegistry.NOOP);
+	}
+
+	public WeatherClient(ClientConfig clientConfig, RateLimiter rateLimiter, MetricsRegistry metricsRegistry) {
+		this.clientConfig = clientConfig;
+		this.rateLimiter = rateLimiter;
+		this.defaultPolicy = new RequestPolicy(clientConfig);
+		this.metricsRegistry = metricsRegistry;
+		this.metrics = new ClientMetrics(metricsRegistry);
+		this.bufferPool = new BufferPool(clientConfig);
+
+		MetricsRegistry.Timer leaseTimer = metrics.connectionAcquire("sync");
+		connectionManager = new PoolingHttpClientConnectionManager() {
+			@Override
+			public ConnectionRequest requestConnection(HttpRoute route, Object state) {
+				ConnectionRequest request = super.requestConnection(route, state);
+				return new ConnectionRequest() {
+					@Override
+					public HttpClientConnection get(long timeout, TimeUnit unit)
+							throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException {
+						long start = System.nanoTime();
+						HttpClientConnection connection = request.get(timeout, unit);
+						leaseTimer.record(System.nanoTime() - start);
+						return connection;
+					}
+
+					@Override
+					public boolean cancel() {
+						return request.cancel();
+					}
+				};
+			}
+		};
+		connectionManager.setMaxTotal(clientConfig.getMaxTotalConnections());
+		connectionManager.setDefaultMaxPerRoute(clientConfig.getMaxConnectionsPerRoute());
+
+		requestConfig = RequestConfig.custom()
+				.setConnectTimeout(clientConfig.getConnectTimeout())
+				.setSocketTimeout(clientConfig.getSocketTimeout())
+				.setConnectionRequestTimeout(clientConfig.getConnectionRequestTimeout())
+				.build();
+
+		httpClient = HttpClients.custom()
+				.setConnectionManager(connectionManager)
+				.setDefaultRequestConfig(requestConfig)
+				.setKeepAliveStrategy(keepAliveStrategy(clientConfig.getKeepAliveMillis()))
+				.addInterceptorFirst(firstByteMarker())
+				.build();
+
+		metrics.registerPool("sync", connectionManager::getTotalStats);
+		metrics.registerRateLimit(rateLimiter.bucket(clientConfig.getApiKey()));
+	}
+
+	/**
+	 * Response interceptors run once the status line and headers are in, before the body is consumed.
+	 */
+	private static HttpResponseInterceptor firstByteMarker() {
+		return (response, context) -> {
+			ClientMetrics.Exchange exchange = (ClientMetrics.Exchange) context.getAttribute(EXCHANGE);
+			if (exchange != null) {
+				exchange.firstByte = System.nanoTime();
+			}
+		};
+	}
+
+	private static HttpContext context(ClientMetrics.Exchange exchange) {
+		HttpClientContext context = HttpClientContext.create();
+		context.setAttribute(EXCHANGE, exchange);
+		return context;
+	}
+
+	/**
+	 * Honours the server Keep-Alive header and falls back to the configured duration when it is absent.
+	 */
+	private static ConnectionKeepAliveStrategy keepAliveStrategy(long keepAliveMillis) {
+		return (response, context) -> {
+			long duration = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+			return duration > 0 ? duration : keepAliveMillis;
+		};
+	}
+
+	public WeatherResponse current(int cityId) throws WeatherClientException {
+		return execute(WeatherQuery.byId(cityId), WeatherResponse.class);
+	}
+
+	public WeatherResponse current(int cityId, String units) throws WeatherClientException {
+		return execute(WeatherQuery.byId(cityId).withUnits(units), WeatherResponse.class);
+	}
+
+	public WeatherResponse current(String city, String country) throws WeatherClientException {
+		return execute(WeatherQuery.byName(city, country), WeatherResponse.class);
+	}
+
+	public List<WeatherResponse> group(int... cityIds) throws WeatherClientException {
+		return execute(WeatherQuery.group(cityIds), GroupResponse.class).getList();
+	}
+
+	/**
+	 * Runs the query on a pooled connection and maps the JSON body onto the given type.
+	 * Retryable failures are retried with jittered backoff as long as the endpoint policy allows.
+	 * No attempt waits for a connection or for data beyond the policy's total timeout.
+	 * @throws WeatherClientException on I/O failure or any status other than 200
+	 */
+	public <T> T execute(WeatherQuery query, Class<T> type) throws WeatherClientException {
+		Endpoint endpoint = endpoint(query.getPath());
+		RequestPolicy policy = endpoint.policy;
+		endpoint.latency.countRequest();
+		long deadline = policy.getTotalTimeoutMillis() > 0 ? System.currentTimeMillis() + policy.getTotalTimeoutMillis() : Long.MAX_VALUE;
+		for (int attempt = 0;; attempt++) {
+			try {
+				return executeOnce(query, type, endpoint, policy, deadline);
+			} catch (WeatherClientException e) {
+				long backoff = policy.backoffMillis(attempt);
+				if (attempt >= policy.getMaxRetries() || !policy.isRetryable(e) || System.currentTimeMillis() + backoff >= deadline) {
+					throw e;
+				}
+				pause(TimeUnit.MILLISECONDS.toNanos(backoff));
+			}
+		}
+	}
+
+	/**
+	 * Waits for the rate limit permit first, so a caller queued behind the limit holds neither a bulkhead
+	 * permit nor the breaker's half-open trial.
+	 */
+	private <T> T executeOnce(WeatherQuery query, Class<T> type, Endpoint endpoint, RequestPolicy policy, long deadline)
+			throws WeatherClientException {
+		pause(rateLimiter.reserve(clientConfig.getApiKey()));
+		long left = deadline == Long.MAX_VALUE ? Long.MAX_VALUE : deadline - System.currentTimeMillis();
+		if (left <= 0) {
+			throw new WeatherClientException("Request to " + query + " failed",
+					new TimeoutException("No response within " + policy.getTotalTimeoutMillis() + " ms"));
+		}
+		endpoint.bulkhead.acquire();
+		try {
+			endpoint.breaker.acquire();
+			ClientMetrics.Exchange exchange = new ClientMetrics.Exchange();
+			try (CloseableHttpResponse response = httpClient.execute(request(query, policy, left), context(exchange))) {
+				T value = read(query, response, type, exchange);
+				endpoint.onSuccess(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - exchange.start));
+				return value;
+			} catch (IOException e) {
+				WeatherClientException failure = new WeatherClientException("Request to " + query + " failed", e);
+				recordFailure(query, exchange);
+				endpoint.onFailure(policy, failure);
+				throw failure;
+			} catch (WeatherClientException e) {
+				endpoint.onFailure(policy, e);
+				throw e;
+			}
+		} finally {
+			endpoint.bulkhead.release();
+		}
+	}
+
+	private static void pause(long nanos) throws WeatherClientException {
+		if (nanos <= 0) {
+			return;
+		}
+		try {
+			TimeUnit.NANOSECONDS.sleep(nanos);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new WeatherClientException("Interrupted while waiting to send the request", e);
+		}
+	}
+
+	@Override
+	public CompletableFuture<WeatherResponse> currentAsync(WeatherQuery query) {
+		return executeAsync(query, WeatherResponse.class);
+	}
+
+	@Override
+	public CompletableFuture<List<WeatherResponse>> groupAsync(WeatherQuery query) {
+		return executeAsync(query, GroupResponse.class).thenApply(GroupResponse::getList);
+	}
+
+	public CompletableFuture<WeatherResponse> currentAsync(int cityId) {
+		return executeAsync(WeatherQuery.byId(cityId), WeatherResponse.class);
+	}
+
+	public CompletableFuture<WeatherResponse> currentAsync(int cityId, String units) {
+		return executeAsync(WeatherQuery.byId(cityId).withUnits(units), WeatherResponse.class);
+	}
+
+	public CompletableFuture<WeatherResponse> currentAsync(String city, String country) {
+		return executeAsync(WeatherQuery.byName(city, country), WeatherResponse.class);
+	}
+
+	public CompletableFuture<List<WeatherResponse>> groupAsync(int... cityIds) {
+		return groupAsync(WeatherQuery.group(cityIds));
+	}
+
+	/**
+	 * Non-blocking variant of {@link #execute(WeatherQuery, Class)} running on the NIO reactor.
+	 * The returned future completes on an I/O dispatcher thread, so heavy work should be chained with the *Async stages.
+	 * With hedging enabled a second attempt is sent once the call outlives the endpoint's latency percentile;
+	 * the first success wins and the other exchange is aborted.
+	 * Cancelling the future, or failing it through {@link Futures#within}, aborts the in-flight exchanges.
+	 */
+	public <T> CompletableFuture<T> executeAsync(WeatherQuery query, Class<T> type) {
+		Endpoint endpoint = endpoint(query.getPath());
+		RequestPolicy policy = endpoint.policy;
+		endpoint.latency.countRequest();
+
+		CompletableFuture<T> result = new CompletableFuture<T>();
+		try {
+			endpoint.bulkhead.acquire();
+		} catch (CallRejectedException e) {
+			result.completeExceptionally(e);
+			return result;
+		}
+		result.whenComplete((value, error) -> endpoint.bulkhead.release());
+
+		AtomicInteger running = new AtomicInteger(1);
+		attempt(query, type, endpoint, policy, result, running, 0);
+
+		if (policy.isHedging()) {
+			long delay = Math.max(policy.getHedgeMinDelayMillis(), endpoint.latency.percentile(policy.getHedgePercentile()));
+			Futures.schedule(() -> {
+				if (!result.isDone() && endpoint.latency.tryHedge(policy.getHedgeBudgetPercent())) {
+					running.incrementAndGet();
+					attempt(query, type, endpoint, policy, result, running, 0);
+				}
+			}, delay, TimeUnit.MILLISECONDS);
+		}
+		if (policy.getTotalTimeoutMillis() > 0) {
+			Futures.within(result, policy.getTotalTimeoutMillis(), TimeUnit.MILLISECONDS);
+		}
+		return result;
+	}
+
+	/**
+	 * One chain of attempts; the result only fails once every chain (primary and hedge) has given up.
+	 */
+	private <T> void attempt(WeatherQuery query, Class<T> type, Endpoint endpoint, RequestPolicy policy,
+			CompletableFuture<T> result, AtomicInteger running, int attempt) {
+		sendOnce(query, type, endpoint, policy, result).whenComplete((value, error) -> {
+			if (error == null) {
+				result.complete(value);
+				return;
+			}
+			if (result.isDone()) {
+				return;
+			}
+			if (attempt < policy.getMaxRetries() && policy.isRetryable(error)) {
+				Futures.schedule(() -> attempt(query, type, endpoint, policy, result, running, attempt + 1),
+						policy.backoffMillis(attempt), TimeUnit.MILLISECONDS);
+			} else if (running.decrementAndGet() == 0) {
+				result.completeExceptionally(error);
+			}
+		});
+	}
+
+	private <T> CompletableFuture<T> sendOnce(WeatherQuery query, Class<T> type, Endpoint endpoint, RequestPolicy policy,
+			CompletableFuture<?> owner) {
+		CompletableFuture<T> call = new CompletableFuture<T>();
+		long waitNanos;
+		try {
+			waitNanos = rateLimiter.reserve(clientConfig.getApiKey());
+		} catch (WeatherClientException e) {
+			call.completeExceptionally(e);
+			return call;
+		}
+		if (waitNanos > 0) {
+			// queue on the timer rather than holding a thread until the permit is due
+			Futures.schedule(() -> send(query, type, endpoint, policy, call, owner), waitNanos, TimeUnit.NANOSECONDS);
+		} else {
+			send(query, type, endpoint, policy, call, owner);
+		}
+		return call;
+	}
+
+	/**
+	 * Asks the breaker only once the rate limit permit is due, so no half-open trial waits in the queue.
+	 */
+	private <T> void send(WeatherQuery query, Class<T> type, Endpoint endpoint, RequestPolicy policy,
+			CompletableFuture<T> call, CompletableFuture<?> owner) {
+		if (owner.isDone()) {
+			// cancelled, timed out or answered by another attempt while waiting
+			call.cancel(false);
+			return;
+		}
+		try {
+			endpoint.breaker.acquire();
+		} catch (CallRejectedException e) {
+			call.completeExceptionally(e);
+			return;
+		}
+		ClientMetrics.Exchange timing = new ClientMetrics.Exchange();
+		// the total timeout is enforced on the whole call by Futures.within
+		HttpGet request = request(query, policy, Long.MAX_VALUE);
+		Future<HttpResponse> exchange = asyncClient().execute(HttpAsyncMethods.create(request),
+				new PooledResponseConsumer(bufferPool), context(timing), new FutureCallback<HttpResponse>() {
+			@Override
+			public void completed(HttpResponse response) {
+				// the async client hands over the response once the whole body is buffered
+				timing.buffered = timing.firstByte > 0 ? System.nanoTime() - timing.firstByte : 0;
+				try {
+					T value = read(query, response, type, timing);
+					endpoint.onSuccess(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - timing.start));
+					call.complete(value);
+				} catch (WeatherClientException e) {
+					endpoint.onFailure(policy, e);
+					call.completeExceptionally(e);
+				} catch (IOException e) {
+					failed(e);
+				}
+			}
+
+			@Override
+			public void failed(Exception e) {
+				WeatherClientException failure = new WeatherClientException("Request to " + query + " failed", e);
+				recordFailure(query, timing);
+				endpoint.onFailure(policy, failure);
+				call.completeExceptionally(failure);
+			}
+
+			@Override
+			public void cancelled() {
+				endpoint.breaker.onIgnored();
+				call.cancel(false);
+			}
+		});
+		owner.whenComplete((value, error) -> {
+			if (!exchange.isDone()) {
+				// cancelling the future alone leaves the connection leased until the answer arrives;
+				// aborting the request discards it right away
+				request.abort();
+			}
+		});
+	}
+
+	/**
+	 * @param left milliseconds left until the call's deadline, Long.MAX_VALUE for none; no timeout of the
+	 * request exceeds them
+	 */
+	private HttpGet request(WeatherQuery query, RequestPolicy policy, long left) {
+		HttpGet request = new HttpGet(uri(query));
+		request.setConfig(RequestConfig.copy(requestConfig)
+				.setConnectionRequestTimeout(capped(requestConfig.getConnectionRequestTimeout(), left))
+				.setConnectTimeout(capped(policy.getConnectTimeout(), left))
+				.setSocketTimeout(capped(policy.getSocketTimeout(), left))
+				.build());
+		request.setHeader(clientConfig.getAuthHeader(), clientConfig.getApiKey());
+		request.setHeader("Accept", clientConfig.getContentType());
+		return request;
+	}
+
+	/**
+	 * @return the timeout, where 0 or less means none, limited to the given milliseconds
+	 */
+	private static int capped(int timeout, long left) {
+		if (left >= Integer.MAX_VALUE) {
+			return timeout;
+		}
+		return timeout > 0 && timeout < left ? timeout : (int) left;
+	}
+
+	private <T> T read(WeatherQuery query, HttpResponse response, Class<T> type, ClientMetrics.Exchange exchange)
+			throws WeatherClientException, IOException {
+		int status = response.getStatusLine().getStatusCode();
+		HttpEntity entity = response.getEntity();
+		MeteredInputStream content = null;
+		try {
+			if (entity == null) {
+				throw new WeatherClientException(status, status == 200 ? "Empty response for " + query : response.getStatusLine().getReasonPhrase());
+			}
+			content = new MeteredInputStream(entity.getContent());
+			if (status != 200) {
+				String body = readFully(content);
+				throw new WeatherClientException(status, errorMessage(body, response.getStatusLine().getReasonPhrase()));
+			}
+			long parseStart = System.nanoTime();
+			T value;
+			if (entity instanceof PooledResponseConsumer.PooledEntity) {
+				// already buffered by the async client, decode straight from the pooled buffers
+				value = WeatherJson.read(((PooledResponseConsumer.PooledEntity) entity).reader(), type);
+			} else {
+				value = WeatherJson.read(content, type);
+			}
+			exchange.deserialization = System.nanoTime() - parseStart - content.getReadNanos();
+			if (value == null) {
+				throw new WeatherClientException(status, "Empty response for " + query);
+			}
+			return value;
+		} catch (JsonParseException e) {
+			throw new WeatherClientException("Malformed response for " + query, e);
+		} finally {
+			if (content != null) {
+				content.close();
+				exchange.bodyRead = exchange.buffered + content.getReadNanos();
+				exchange.bytes = entity instanceof PooledResponseConsumer.PooledEntity ? entity.getContentLength() : content.getBytes();
+			}
+			if (metrics.isEnabled()) {
+				exchange.end = System.nanoTime();
+				metrics.record(query.getPath(), String.valueOf(status), exchange);
+			}
+		}
+	}
+
+	private static String readFully(InputStream in) throws IOException {
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		byte[] buffer = new byte[4096];
+		int read;
+		while ((read = in.read(buffer)) != -1) {
+			body.write(buffer, 0, read);
+		}
+		return new String(body.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	private void recordFailure(WeatherQuery query, ClientMetrics.Exchange exchange) {
+		if (metrics.isEnabled()) {
+			exchange.end = System.nanoTime();
+			metrics.record(query.getPath(), ClientMetrics.IO_ERROR, exchange);
+		}
+	}
+
+	/**
+	 * The reactor is only started on first async use, so purely blocking callers never pay for its threads.
+	 */
+	private synchronized CloseableHttpAsyncClient asyncClient() {
+		if (asyncClient == null) {
+			try {
+				IOReactorConfig reactorConfig = IOReactorConfig.custom()
+						.setIoThreadCount(clientConfig.getIoThreadCount())
+						.setConnectTimeout(clientConfig.getConnectTimeout())
+						.setSoTimeout(clientConfig.getSocketTimeout())
+						.setTcpNoDelay(true)
+						.build();
+				MetricsRegistry.Timer leaseTimer = metrics.connectionAcquire("async");
+				asyncConnectionManager = new PoolingNHttpClientConnectionManager(new DefaultConnectingIOReactor(reactorConfig)) {
+					@Override
+					public Future<NHttpClientConnection> requestConnection(HttpRoute route, Object state, long connectTimeout,
+							long leaseTimeout, TimeUnit unit, FutureCallback<NHttpClientConnection> callback) {
+						long start = System.nanoTime();
+						return super.requestConnection(route, state, connectTimeout, leaseTimeout, unit, new FutureCallback<NHttpClientConnection>() {
+							@Override
+							public void completed(NHttpClientConnection connection) {
+								leaseTimer.record(System.nanoTime() - start);
+								if (callback != null) {
+									callback.completed(connection);
+								}
+							}
+
+							@Override
+							public void failed(Exception e) {
+								if (callback != null) {
+									callback.failed(e);
+								}
+							}
+
+							@Override
+							public void cancelled() {
+								if (callback != null) {
+									callback.cancelled();
+								}
+							}
+						});
+					}
+				};
+			} catch (IOReactorException e) {
+				throw new IllegalStateException("Unable to start the I/O reactor", e);
+			}
+			asyncConnectionManager.setMaxTotal(clientConfig.getMaxTotalConnections());
+			asyncConnectionManager.setDefaultMaxPerRoute(clientConfig.getMaxConnectionsPerRoute());
+
+			asyncClient = HttpAsyncClients.custom()
+					.setConnectionManager(asyncConnectionManager)
+					.setDefaultRequestConfig(requestConfig)
+					.setKeepAliveStrategy(keepAliveStrategy(clientConfig.getKeepAliveMillis()))
+					.addInterceptorFirst(firstByteMarker())
+					.build();
+			asyncClient.start();
+			metrics.registerPool("async", asyncConnectionManager::getTotalStats);
+		}
+		return asyncClient;
+	}
+
+	URI uri(WeatherQuery query) {
+		String base = clientConfig.getBaseURL();
+		String url = base.endsWith("/") ? base + query.getPath() : base + "/" + query.getPath();
+		try {
+			URIBuilder builder = new URIBuilder(url);
+			for (Map.Entry<String, String> parameter : query.getParameters().entrySet()) {
+				builder.addParameter(parameter.getKey(), parameter.getValue());
+			}
+			return builder.build();
+		} catch (URISyntaxException e) {
+			throw new IllegalArgumentException("Invalid base URL " + base, e);
+		}
+	}
+
+	private String errorMessage(String body, String fallback) {
+		try {
+			JsonObject json = WeatherJson.gson().fromJson(body, JsonObject.class);
+			if (json != null && json.has("message")) {
+				return json.get("message").getAsString();
+			}
+		} catch (JsonParseException e) {
+			// not a JSON error document, fall through
+		}
+		return fallback;
+	}
+
+	/**
+	 * @return leased/available/pending connection counts of the shared pool
+	 */
+	public PoolStats getPoolStats() {
+		return connectionManager.getTotalStats();
+	}
+
+	/**
+	 * @return the policy of the endpoint, e.g. "weather" or "group"
+	 */
+	public RequestPolicy getPolicy(String path) {
+		return endpoint(path).policy;
+	}
+
+	public void setPolicy(String path, RequestPolicy policy) {
+		endpoint(path).policy = policy;
+	}
+
+	public LatencyTracker getLatencyTracker(String path) {
+		return endpoint(path).latency;
+	}
+
+	public CircuitBreaker getCircuitBreaker(String path) {
+		return endpoint(path).breaker;
+	}
+
+	public Bulkhead getBulkhead(String path) {
+		return endpoint(path).bulkhead;
+	}
+
+	private Endpoint endpoint(String path) {
+		Endpoint endpoint = endpoints.get(path);
+		if (endpoint == null) {
+			endpoint = endpoints.computeIfAbsent(path, key -> {
+				Endpoint created = new Endpoint(key, clientConfig, defaultPolicy);
+				metrics.registerEndpoint(key, created.bulkhead, created.breaker);
+				return created;
+			});
+		}
+		return endpoint;
+	}
+
+	public MetricsRegistry getMetricsRegistry() {
+		return metricsRegistry;
+	}
+
+	public RateLimiter getRateLimiter() {
+		return rateLimiter;
+	}
+
+	/**
+	 * @return direct buffers the async client reads response bodies into
+	 */
+	public BufferPool getBufferPool() {
+		return bufferPool;
+	}
+
+	public ClientConfig getClientConfig() {
+		return clientConfig;
+	}
+
+	@Override
+	public void close() throws IOException {
+		httpClient.close();
+		connectionManager.shutdown();
+		synchronized (this) {
+			if (asyncClient != null) {
+				asyncClient.close();
+			}
+		}
+	}
+
+	/**
+	 * Resilience state kept per API path.
+	 */
+	private static final class Endpoint {
+
+		private volatile RequestPolicy policy;
+		private final LatencyTracker latency = new LatencyTracker();
+		private final CircuitBreaker breaker;
+		private final Bulkhead bulkhead;
+
+		private Endpoint(String path, ClientConfig clientConfig, RequestPolicy policy) {
+			this.policy = policy;
+			this.breaker = new CircuitBreaker(path, clientConfig);
+			this.bulkhead = new Bulkhead(path, clientConfig.getBulkheadMaxConcurrent());
+		}
+
+		private void onSuccess(long latencyMillis) {
+			latency.record(latencyMillis);
+			breaker.onSuccess(latencyMillis);
+		}
+
+		/**
+		 * Only failures that say something about upstream health, the retryable ones, count against the circuit.
+		 */
+		private void onFailure(RequestPolicy policy, WeatherClientException failure) {
+			if (policy.isRetryable(failure)) {
+				breaker.onFailure();
+			} else {
+				breaker.onIgnored();
+			}
+		}
+	}
+
+}
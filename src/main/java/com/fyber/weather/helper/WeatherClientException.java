@@ -0,0 +1,29 @@
+package com.fyber.weather.helper;
+
+/**
+ * Raised when the weather API cannot be reached or answers with a non 200 status.
+ */
+public class WeatherClientException extends Exception {
+
+	private static final long serialVersionUID = 1L;
+
+	private final int statusCode;
+
+	public WeatherClientException(int statusCode, String message) {
+		super(message);
+		this.statusCode = statusCode;
+	}
+
+	public WeatherClientException(String message, Throwable cause) {
+		super(message, cause);
+		this.statusCode = -1;
+	}
+
+	/**
+	 * @return the HTTP status returned by the API, or -1 when no response was received
+	 */
+	public int getStatusCode() {
+		return statusCode;
+	}
+
+}
@@ -0,0 +1,503 @@
+package com.fyber.weather.helper;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fyber.weather.domain.Clouds;
+import com.fyber.weather.domain.Coord;
+import com.fyber.weather.domain.Main;
+import com.fyber.weather.domain.Sys;
+import com.fyber.weather.domain.Weather;
+import com.fyber.weather.domain.WeatherResponse;
+import com.fyber.weather.domain.Wind;
+
+/**
+ * Compact binary form of a {@link WeatherResponse}, for storing and shipping observations where JSON
+ * costs too much. Decodes back to exactly what Gson would have produced, nulls included.
+ * <p>
+ * Layout: a version byte, a varint presence mask with one bit per nested object and field, then the
+ * present values in mask order. Integers are zigzag varints, doubles are 8 bytes big-endian, strings a
+ * varint UTF-8 length followed by the bytes. Condition groups, icons and station bases are written as
+ * their index in a fixed table and country codes as two packed letters, falling back to a literal
+ * string for values outside the tables. The tables and the bit order only ever grow, with a version
+ * bump, so every older version keeps decoding.
+ * <p>
+ * Neither direction allocates beyond the decoded objects themselves: encoding writes straight into
+ * the caller's buffer, decoding can reuse an existing response graph, and table values decode to
+ * shared String instances; other values of those fields go through {@link WeatherStrings}.
+ */
+public final class WeatherCodec {
+
+	public static final byte VERSION = 1;
+
+	private static final int COORD			= 1;
+	private static final int COORD_LON		= 1 << 1;
+	private static final int COORD_LAT		= 1 << 2;
+	private static final int WEATHER		= 1 << 3;
+	private static final int BASE			= 1 << 4;
+	private static final int MAIN			= 1 << 5;
+	private static final int TEMP			= 1 << 6;
+	private static final int PRESSURE		= 1 << 7;
+	private static final int HUMIDITY		= 1 << 8;
+	private static final int TEMP_MIN		= 1 << 9;
+	private static final int TEMP_MAX		= 1 << 10;
+	private static final int VISIBILITY		= 1 << 11;
+	private static final int WIND			= 1 << 12;
+	private static final int WIND_SPEED		= 1 << 13;
+	private static final int WIND_DEG		= 1 << 14;
+	private static final int CLOUDS			= 1 << 15;
+	private static final int CLOUDS_ALL		= 1 << 16;
+	private static final int DT				= 1 << 17;
+	private static final int SYS			= 1 << 18;
+	private static final int SYS_TYPE		= 1 << 19;
+	private static final int SYS_ID			= 1 << 20;
+	private static final int SYS_MESSAGE	= 1 << 21;
+	private static final int COUNTRY		= 1 << 22;
+	private static final int SUNRISE		= 1 << 23;
+	private static final int SUNSET			= 1 << 24;
+	private static final int ID				= 1 << 25;
+	private static final int NAME			= 1 << 26;
+	private static final int COD			= 1 << 27;
+
+	/** Flags of one weather list entry; an entry without NOT_NULL is a null element */
+	private static final int NOT_NULL			= 1;
+	private static final int WEATHER_ID			= 1 << 1;
+	private static final int WEATHER_MAIN		= 1 << 2;
+	private static final int DESCRIPTION		= 1 << 3;
+	private static final int ICON				= 1 << 4;
+
+	/** Append only, the index is the wire code; see https://openweathermap.org/weather-conditions */
+	static final String[] MAINS = { "Thunderstorm", "Drizzle", "Rain", "Snow", "Mist", "Smoke", "Haze",
+			"Dust", "Fog", "Sand", "Ash", "Squall", "Tornado", "Clear", "Clouds" };
+	static final String[] ICONS = { "01d", "01n", "02d", "02n", "03d", "03n", "04d", "04n", "09d", "09n",
+			"10d", "10n", "11d", "11n", "13d", "13n", "50d", "50n" };
+	static final String[] BASES = { "stations", "cmc stations", "model" };
+
+	/** Every two-letter upper case code, so decoded countries are shared instances too */
+	static final String[] COUNTRIES = new String[26 * 26];
+
+	static {
+		for (int i = 0; i < COUNTRIES.length; i++) {
+			COUNTRIES[i] = new String(new char[] { (char) ('A' + i / 26), (char) ('A' + i % 26) }).intern();
+		}
+	}
+
+	private WeatherCodec() {
+	}
+
+	/**
+	 * Writes the response at the buffer's position and advances it.
+	 * @throws BufferOverflowException when the buffer has too little room left; what was written
+	 * before is then garbage, retry from the original position with a larger buffer
+	 */
+	public static void encode(WeatherResponse response, ByteBuffer out) {
+		Coord coord = response.getCoord();
+		Main main = response.getMain();
+		Wind wind = response.getWind();
+		Clouds clouds = response.getClouds();
+		Sys sys = response.getSys();
+
+		int mask = 0;
+		if (coord != null) {
+			mask |= COORD | bit(coord.getLon(), COORD_LON) | bit(coord.getLat(), COORD_LAT);
+		}
+		mask |= bit(response.getWeather(), WEATHER) | bit(response.getBase(), BASE);
+		if (main != null) {
+			mask |= MAIN | bit(main.getTemp(), TEMP) | bit(main.getPressure(), PRESSURE) | bit(main.getHumidity(), HUMIDITY)
+					| bit(main.getTempMin(), TEMP_MIN) | bit(main.getTempMax(), TEMP_MAX);
+		}
+		mask |= bit(response.getVisibility(), VISIBILITY);
+		if (wind != null) {
+			mask |= WIND | bit(wind.getSpeed(), WIND_SPEED) | bit(wind.getDeg(), WIND_DEG);
+		}
+		if (clouds != null) {
+			mask |= CLOUDS | bit(clouds.getAll(), CLOUDS_ALL);
+		}
+		mask |= bit(response.getDt(), DT);
+		if (sys != null) {
+			mask |= SYS | bit(sys.getType(), SYS_TYPE) | bit(sys.getId(), SYS_ID) | bit(sys.getMessage(), SYS_MESSAGE)
+					| bit(sys.getCountry(), COUNTRY) | bit(sys.getSunrise(), SUNRISE) | bit(sys.getSunset(), SUNSET);
+		}
+		mask |= bit(response.getId(), ID) | bit(response.getName(), NAME) | bit(response.getCod(), COD);
+
+		out.put(VERSION);
+		writeVarint(out, mask);
+		if ((mask & COORD_LON) != 0) {
+			writeDouble(out, coord.getLon());
+		}
+		if ((mask & COORD_LAT) != 0) {
+			writeDouble(out, coord.getLat());
+		}
+		if ((mask & WEATHER) != 0) {
+			writeWeather(out, response.getWeather());
+		}
+		if ((mask & BASE) != 0) {
+			writeCoded(out, response.getBase(), BASES);
+		}
+		if ((mask & TEMP) != 0) {
+			writeDouble(out, main.getTemp());
+		}
+		if ((mask & PRESSURE) != 0) {
+			writeInt(out, main.getPressure());
+		}
+		if ((mask & HUMIDITY) != 0) {
+			writeInt(out, main.getHumidity());
+		}
+		if ((mask & TEMP_MIN) != 0) {
+			writeDouble(out, main.getTempMin());
+		}
+		if ((mask & TEMP_MAX) != 0) {
+			writeDouble(out, main.getTempMax());
+		}
+		if ((mask & VISIBILITY) != 0) {
+			writeInt(out, response.getVisibility());
+		}
+		if ((mask & WIND_SPEED) != 0) {
+			writeDouble(out, wind.getSpeed());
+		}
+		if ((mask & WIND_DEG) != 0) {
+			writeInt(out, wind.getDeg());
+		}
+		if ((mask & CLOUDS_ALL) != 0) {
+			writeInt(out, clouds.getAll());
+		}
+		if ((mask & DT) != 0) {
+			writeInt(out, response.getDt());
+		}
+		if ((mask & SYS_TYPE) != 0) {
+			writeInt(out, sys.getType());
+		}
+		if ((mask & SYS_ID) != 0) {
+			writeInt(out, sys.getId());
+		}
+		if ((mask & SYS_MESSAGE) != 0) {
+			writeDouble(out, sys.getMessage());
+		}
+		if ((mask & COUNTRY) != 0) {
+			writeCountry(out, sys.getCountry());
+		}
+		if ((mask & SUNRISE) != 0) {
+			writeInt(out, sys.getSunrise());
+		}
+		if ((mask & SUNSET) != 0) {
+			writeInt(out, sys.getSunset());
+		}
+		if ((mask & ID) != 0) {
+			writeInt(out, response.getId());
+		}
+		if ((mask & NAME) != 0) {
+			writeString(out, response.getName());
+		}
+		if ((mask & COD) != 0) {
+			writeInt(out, response.getCod());
+		}
+	}
+
+	/**
+	 * @return the encoded response in a right-sized array
+	 */
+	public static byte[] encode(WeatherResponse response) {
+		ByteBuffer buffer = ByteBuffer.allocate(256);
+		while (true) {
+			try {
+				encode(response, buffer);
+				byte[] encoded = new byte[buffer.position()];
+				System.arraycopy(buffer.array(), 0, encoded, 0, encoded.length);
+				return encoded;
+			} catch (BufferOverflowException e) {
+				buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+			}
+		}
+	}
+
+	public static WeatherResponse decode(ByteBuffer in) {
+		return decode(in, new WeatherResponse());
+	}
+
+	public static WeatherResponse decode(byte[] encoded) {
+		return decode(ByteBuffer.wrap(encoded));
+	}
+
+	/**
+	 * Reads one response from the buffer's position into the given one, reusing its nested objects and
+	 * weather entries where present, in a new weather list; fields absent from the encoding are set to null.
+	 * @throws IllegalArgumentException when the version or a table code is unknown, or a length is corrupt
+	 * @throws java.nio.BufferUnderflowException when the encoding is truncated
+	 */
+	public static WeatherResponse decode(ByteBuffer in, WeatherResponse into) {
+		byte version = in.get();
+		if (version < 1 || version > VERSION) {
+			throw new IllegalArgumentException("Unsupported encoding version " + version);
+		}
+		int mask = readVarint(in);
+
+		Coord coord = null;
+		if ((mask & COORD) != 0) {
+			coord = into.getCoord() == null ? new Coord() : into.getCoord();
+			coord.setLon((mask & COORD_LON) != 0 ? readDouble(in) : null);
+			coord.setLat((mask & COORD_LAT) != 0 ? readDouble(in) : null);
+		}
+		into.setCoord(coord);
+		into.setWeather((mask & WEATHER) != 0 ? readWeather(in, into.getWeather()) : null);
+		into.setBase((mask & BASE) != 0 ? readCoded(in, BASES) : null);
+
+		Main main = null;
+		if ((mask & MAIN) != 0) {
+			main = into.getMain() == null ? new Main() : into.getMain();
+			main.setTemp((mask & TEMP) != 0 ? readDouble(in) : null);
+			main.setPressure((mask & PRESSURE) != 0 ? readInt(in) : null);
+			main.setHumidity((mask & HUMIDITY) != 0 ? readInt(in) : null);
+			main.setTempMin((mask & TEMP_MIN) != 0 ? readDouble(in) : null);
+			main.setTempMax((mask & TEMP_MAX) != 0 ? readDouble(in) : null);
+		}
+		into.setMain(main);
+		into.setVisibility((mask & VISIBILITY) != 0 ? readInt(in) : null);
+
+		Wind wind = null;
+		if ((mask & WIND) != 0) {
+			wind = into.getWind() == null ? new Wind() : into.getWind();
+			wind.setSpeed((mask & WIND_SPEED) != 0 ? readDouble(in) : null);
+			wind.setDeg((mask & WIND_DEG) != 0 ? readInt(in) : null);
+		}
+		into.setWind(wind);
+
+		Clouds clouds = null;
+		if ((mask & CLOUDS) != 0) {
+			clouds = into.getClouds() == null ? new Clouds() : into.getClouds();
+			clouds.setAll((mask & CLOUDS_ALL) != 0 ? readInt(in) : null);
+		}
+		into.setClouds(clouds);
+		into.setDt((mask & DT) != 0 ? readInt(in) : null);
+
+		Sys sys = null;
+		if ((mask & SYS) != 0) {
+			sys = into.getSys() == null ? new Sys() : into.getSys();
+			sys.setType((mask & SYS_TYPE) != 0 ? readInt(in) : null);
+			sys.setId((mask & SYS_ID) != 0 ? readInt(in) : null);
+			sys.setMessage((mask & SYS_MESSAGE) != 0 ? readDouble(in) : null);
+			sys.setCountry((mask & COUNTRY) != 0 ? readCountry(in) : null);
+			sys.setSunrise((mask & SUNRISE) != 0 ? readInt(in) : null);
+			sys.setSunset((mask & SUNSET) != 0 ? readInt(in) : null);
+		}
+		into.setSys(sys);
+		into.setId((mask & ID) != 0 ? readInt(in) : null);
+		into.setName((mask & NAME) != 0 ? readString(in) : null);
+		into.setCod((mask & COD) != 0 ? readInt(in) : null);
+		return into;
+	}
+
+	private static int bit(Object value, int bit) {
+		return value == null ? 0 : bit;
+	}
+
+	private static void writeWeather(ByteBuffer out, List<Weather> weather) {
+		writeVarint(out, weather.size());
+		for (Weather entry : weather) {
+			if (entry == null) {
+				out.put((byte) 0);
+				continue;
+			}
+			int flags = NOT_NULL | bit(entry.getId(), WEATHER_ID) | bit(entry.getMain(), WEATHER_MAIN)
+					| bit(entry.getDescription(), DESCRIPTION) | bit(entry.getIcon(), ICON);
+			out.put((byte) flags);
+			if ((flags & WEATHER_ID) != 0) {
+				writeInt(out, entry.getId());
+			}
+			if ((flags & WEATHER_MAIN) != 0) {
+				writeCoded(out, entry.getMain(), MAINS);
+			}
+			if ((flags & DESCRIPTION) != 0) {
+				writeString(out, entry.getDescription());
+			}
+			if ((flags & ICON) != 0) {
+				writeCoded(out, entry.getIcon(), ICONS);
+			}
+		}
+	}
+
+	/**
+	 * Reuses the entries of the given list, but not the list itself, which may be immutable.
+	 */
+	private static List<Weather> readWeather(ByteBuffer in, List<Weather> reuse) {
+		int size = readVarint(in);
+		// every entry takes at least its flags byte
+		if (size < 0 || size > in.remaining()) {
+			throw new IllegalArgumentException("Corrupt weather list size " + size);
+		}
+		List<Weather> weather = new ArrayList<Weather>(size);
+		for (int i = 0; i < size; i++) {
+			int flags = in.get();
+			Weather entry = null;
+			if ((flags & NOT_NULL) != 0) {
+				entry = reuse != null && i < reuse.size() && reuse.get(i) != null ? reuse.get(i) : new Weather();
+				entry.setId((flags & WEATHER_ID) != 0 ? readInt(in) : null);
+				entry.setMain((flags & WEATHER_MAIN) != 0 ? readCoded(in, MAINS) : null);
+				entry.setDescription((flags & DESCRIPTION) != 0 ? WeatherStrings.canonical(readString(in)) : null);
+				entry.setIcon((flags & ICON) != 0 ? readCoded(in, ICONS) : null);
+			}
+			weather.add(entry);
+		}
+		return weather;
+	}
+
+	/**
+	 * Table index plus one, or zero followed by the literal string.
+	 */
+	private static void writeCoded(ByteBuffer out, String value, String[] table) {
+		for (int i = 0; i < table.length; i++) {
+			if (table[i].equals(value)) {
+				writeVarint(out, i + 1);
+				return;
+			}
+		}
+		writeVarint(out, 0);
+		writeString(out, value);
+	}
+
+	private static String readCoded(ByteBuffer in, String[] table) {
+		int code = readVarint(in);
+		if (code == 0) {
+			return WeatherStrings.canonical(readString(in));
+		}
+		if (code > table.length) {
+			throw new IllegalArgumentException("Unknown code " + code);
+		}
+		return table[code - 1];
+	}
+
+	/**
+	 * Packed letters plus one, or zero followed by the literal string.
+	 */
+	private static void writeCountry(ByteBuffer out, String country) {
+		if (country.length() == 2 && isUpperLetter(country.charAt(0)) && isUpperLetter(country.charAt(1))) {
+			writeVarint(out, (country.charAt(0) - 'A') * 26 + country.charAt(1) - 'A' + 1);
+		} else {
+			writeVarint(out, 0);
+			writeString(out, country);
+		}
+	}
+
+	private static String readCountry(ByteBuffer in) {
+		return readCoded(in, COUNTRIES);
+	}
+
+	private static boolean isUpperLetter(char c) {
+		return c >= 'A' && c <= 'Z';
+	}
+
+	/**
+	 * UTF-8 written by hand, so no byte array is produced; unpaired surrogates become '?' like
+	 * {@link String#getBytes} does.
+	 */
+	private static void writeString(ByteBuffer out, String value) {
+		int length = value.length();
+		writeVarint(out, utf8Length(value));
+		for (int i = 0; i < length; i++) {
+			char c = value.charAt(i);
+			if (c < 0x80) {
+				out.put((byte) c);
+			} else if (c < 0x800) {
+				out.put((byte) (0xC0 | c >> 6));
+				out.put((byte) (0x80 | c & 0x3F));
+			} else if (isSurrogatePair(value, i)) {
+				int codePoint = Character.toCodePoint(c, value.charAt(++i));
+				out.put((byte) (0xF0 | codePoint >> 18));
+				out.put((byte) (0x80 | codePoint >> 12 & 0x3F));
+				out.put((byte) (0x80 | codePoint >> 6 & 0x3F));
+				out.put((byte) (0x80 | codePoint & 0x3F));
+			} else if (Character.isSurrogate(c)) {
+				out.put((byte) '?');
+			} else {
+				out.put((byte) (0xE0 | c >> 12));
+				out.put((byte) (0x80 | c >> 6 & 0x3F));
+				out.put((byte) (0x80 | c & 0x3F));
+			}
+		}
+	}
+
+	private static int utf8Length(String value) {
+		int length = value.length();
+		int utf8Length = 0;
+		for (int i = 0; i < length; i++) {
+			char c = value.charAt(i);
+			if (c < 0x80) {
+				utf8Length++;
+			} else if (c < 0x800) {
+				utf8Length += 2;
+			} else if (isSurrogatePair(value, i)) {
+				utf8Length += 4;
+				i++;
+			} else if (Character.isSurrogate(c)) {
+				utf8Length++;
+			} else {
+				utf8Length += 3;
+			}
+		}
+		return utf8Length;
+	}
+
+	private static boolean isSurrogatePair(String value, int i) {
+		return Character.isHighSurrogate(value.charAt(i)) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1));
+	}
+
+	private static String readString(ByteBuffer in) {
+		int length = readVarint(in);
+		if (length < 0 || length > in.remaining()) {
+			throw new IllegalArgumentException("Corrupt string length " + length);
+		}
+		String value;
+		if (in.hasArray()) {
+			value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+			in.position(in.position() + length);
+		} else {
+			byte[] bytes = new byte[length];
+			in.get(bytes);
+			value = new String(bytes, StandardCharsets.UTF_8);
+		}
+		return value;
+	}
+
+	private static void writeInt(ByteBuffer out, int value) {
+		writeVarint(out, value << 1 ^ value >> 31);
+	}
+
+	private static Integer readInt(ByteBuffer in) {
+		int zigzag = readVarint(in);
+		return zigzag >>> 1 ^ -(zigzag & 1);
+	}
+
+	private static void writeVarint(ByteBuffer out, int value) {
+		while ((value & ~0x7F) != 0) {
+			out.put((byte) (value & 0x7F | 0x80));
+			value >>>= 7;
+		}
+		out.put((byte) value);
+	}
+
+	private static int readVarint(ByteBuffer in) {
+		int value = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			byte b = in.get();
+			value |= (b & 0x7F) << shift;
+			if (b >= 0) {
+				return value;
+			}
+		}
+		throw new IllegalArgumentException("Malformed varint");
+	}
+
+	private static void writeDouble(ByteBuffer out, double value) {
+		long bits = Double.doubleToRawLongBits(value);
+		out.putLong(out.order() == ByteOrder.BIG_ENDIAN ? bits : Long.reverseBytes(bits));
+	}
+
+	private static Double readDouble(ByteBuffer in) {
+		long bits = in.getLong();
+		return Double.longBitsToDouble(in.order() == ByteOrder.BIG_ENDIAN ? bits : Long.reverseBytes(bits));
+	}
+
+}
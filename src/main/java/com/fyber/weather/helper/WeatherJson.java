@@ -0,0 +1,81 @@
+package com.fyber.weather.helper;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+
+import com.fyber.weather.domain.GroupResponse;
+import com.fyber.weather.domain.WeatherResponse;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.MalformedJsonException;
+
+/**
+ * Shared, thread-safe Gson setup for the domain model, using the hand-written adapters of
+ * {@link WeatherTypeAdapterFactory}. Bodies are decoded straight from the response stream,
+ * without materializing an intermediate String or JSON tree.
+ */
+public final class WeatherJson {
+
+	private static final Gson GSON = new GsonBuilder()
+			.registerTypeAdapterFactory(new WeatherTypeAdapterFactory())
+			.create();
+
+	private static final TypeAdapter<WeatherResponse> WEATHER_RESPONSE	= GSON.getAdapter(WeatherResponse.class);
+	private static final TypeAdapter<GroupResponse> GROUP_RESPONSE		= GSON.getAdapter(GroupResponse.class);
+
+	private WeatherJson() {
+	}
+
+	public static Gson gson() {
+		return GSON;
+	}
+
+	public static TypeAdapter<WeatherResponse> weatherResponseAdapter() {
+		return WEATHER_RESPONSE;
+	}
+
+	public static TypeAdapter<GroupResponse> groupResponseAdapter() {
+		return GROUP_RESPONSE;
+	}
+
+	/**
+	 * Decodes one UTF-8 JSON document from the stream. The stream is not closed.
+	 * @throws JsonParseException when the body is not JSON, ends early or does not match the target type;
+	 * other IOExceptions come from the stream itself
+	 */
+	public static <T> T read(InputStream in, Class<T> type) throws IOException {
+		return read(new InputStreamReader(in, StandardCharsets.UTF_8), type);
+	}
+
+	public static <T> T read(Reader reader, Class<T> type) throws IOException {
+		JsonReader jsonReader = new JsonReader(reader);
+		try {
+			return adapter(type).read(jsonReader);
+		} catch (IllegalStateException e) {
+			throw new JsonParseException(e);
+		} catch (MalformedJsonException | EOFException e) {
+			// Gson reports broken syntax as IOException, which would pass for a transport failure
+			throw new JsonSyntaxException(e);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	public static <T> TypeAdapter<T> adapter(Class<T> type) {
+		if (type == WeatherResponse.class) {
+			return (TypeAdapter<T>) WEATHER_RESPONSE;
+		}
+		if (type == GroupResponse.class) {
+			return (TypeAdapter<T>) GROUP_RESPONSE;
+		}
+		return GSON.getAdapter(type);
+	}
+
+}
@@ -0,0 +1,278 @@
+package com.fyber.weather.helper;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+import com.fyber.weather.domain.WeatherResponse;
+
+/**
+ * Keeps a watch list of city IDs warm in a {@link ResponseCache} by refreshing them in the background,
+ * so readers only ever hit memory.
+ * Every watched city is refreshed once per poll interval, give or take the jitter, which scatters
+ * refreshes over the interval instead of bursting them. Newly watched cities start out scattered as
+ * well, so a cold start does not send every watched city on the first tick. Cities that fall due together are fetched as
+ * /group calls of up to {@link BatchingWeatherClient#UPSTREAM_ID_LIMIT} IDs, topped up with cities due
+ * within the jitter window so batches go out full. Refreshes are fetched in standard units and cached
+ * under the same keys {@link CachingWeatherClient} uses, so one entry serves every unit system.
+ * <p>
+ * Fresh responses are published to subscribers on the thread that completed the refresh. A failed
+ * refresh leaves the cached entry alone and is retried after a tenth of the interval.
+ */
+public class WeatherPoller implements Closeable {
+
+	private final WeatherSource source;
+	private final ResponseCache<WeatherResponse> cache;
+	private final long intervalMillis;
+	private final long jitterMillis;
+	private final long tickMillis;
+	private final LongSupplier clock;
+	private final ScheduledExecutorService scheduler;
+
+	private final Map<Integer, Watch> watched = new HashMap<Integer, Watch>();
+	private final PriorityQueue<Watch> queue = new PriorityQueue<Watch>((a, b) -> Long.compare(a.due, b.due));
+	private final List<Consumer<WeatherResponse>> subscribers = new CopyOnWriteArrayList<Consumer<WeatherResponse>>();
+
+	private final AtomicLong refreshes		= new AtomicLong();
+	private final AtomicLong refreshedCities	= new AtomicLong();
+	private final AtomicLong failures		= new AtomicLong();
+	private final AtomicLong subscriberErrors	= new AtomicLong();
+
+	public WeatherPoller(WeatherSource source, ResponseCache<WeatherResponse> cache, ClientConfig clientConfig) {
+		this(source, cache, clientConfig.getPollIntervalMillis(), clientConfig.getPollJitterPercent(), System::currentTimeMillis);
+	}
+
+	/**
+	 * @param clock wall clock in milliseconds, replaceable for tests
+	 */
+	public WeatherPoller(WeatherSource source, ResponseCache<WeatherResponse> cache, long intervalMillis, int jitterPercent,
+			LongSupplier clock) {
+		if (intervalMillis <= 0) {
+			throw new IllegalArgumentException("intervalMillis must be positive");
+		}
+		if (jitterPercent < 0 || jitterPercent >= 100) {
+			throw new IllegalArgumentException("jitterPercent must be between 0 and 99");
+		}
+		this.source = source;
+		this.cache = cache;
+		this.intervalMillis = intervalMillis;
+		this.jitterMillis = intervalMillis * jitterPercent / 100;
+		this.tickMillis = Math.max(10, Math.min(1000, intervalMillis / 100));
+		this.clock = clock;
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "weather-poller");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Starts polling; the first batch of cities not cached yet is fetched on the first tick.
+	 */
+	public WeatherPoller start() {
+		scheduler.scheduleWithFixedDelay(this::poll, 0, tickMillis, TimeUnit.MILLISECONDS);
+		return this;
+	}
+
+	/**
+	 * Adds cities to the watch list. Cities already cached are first refreshed at a random point of the
+	 * interval. The others are fetched in full batches spread evenly over the interval, the first one
+	 * right away.
+	 */
+	public void watch(int... cityIds) {
+		long now = clock.getAsLong();
+		synchronized (watched) {
+			List<Watch> added = new ArrayList<Watch>();
+			List<Watch> cold = new ArrayList<Watch>();
+			for (int cityId : cityIds) {
+				if (watched.containsKey(cityId)) {
+					continue;
+				}
+				Watch watch = new Watch(cityId);
+				if (cache.getIfPresent(key(cityId)) == null) {
+					cold.add(watch);
+				} else {
+					watch.due = now + ThreadLocalRandom.current().nextLong(intervalMillis);
+				}
+				watched.put(cityId, watch);
+				added.add(watch);
+			}
+			int batches = (cold.size() + BatchingWeatherClient.UPSTREAM_ID_LIMIT - 1) / BatchingWeatherClient.UPSTREAM_ID_LIMIT;
+			for (int i = 0; i < cold.size(); i++) {
+				cold.get(i).due = now + intervalMillis * (i / BatchingWeatherClient.UPSTREAM_ID_LIMIT) / batches;
+			}
+			// queued only now that their due time is final
+			queue.addAll(added);
+		}
+	}
+
+	public void unwatch(int... cityIds) {
+		synchronized (watched) {
+			for (int cityId : cityIds) {
+				Watch watch = watched.remove(cityId);
+				if (watch != null) {
+					queue.remove(watch);
+				}
+			}
+		}
+	}
+
+	public Set<Integer> getWatched() {
+		synchronized (watched) {
+			return new HashSet<Integer>(watched.keySet());
+		}
+	}
+
+	/**
+	 * @param subscriber called with every refreshed response, in standard units
+	 */
+	public void subscribe(Consumer<WeatherResponse> subscriber) {
+		subscribers.add(subscriber);
+	}
+
+	public void unsubscribe(Consumer<WeatherResponse> subscriber) {
+		subscribers.remove(subscriber);
+	}
+
+	/**
+	 * @param units null or "standard", "metric" or "imperial"
+	 * @return the last polled response for the city, possibly expired, or null when there is none yet
+	 */
+	public WeatherResponse latest(int cityId, String units) {
+		if (!UnitConverter.isConvertible(units)) {
+			throw new IllegalArgumentException("Unsupported units " + units);
+		}
+		return UnitConverter.convert(cache.getStale(key(cityId)), units);
+	}
+
+	private void poll() {
+		long now = clock.getAsLong();
+		List<Watch> due = new ArrayList<Watch>();
+		synchronized (watched) {
+			while (!queue.isEmpty() && queue.peek().due <= now) {
+				due.add(queue.poll());
+			}
+			while (due.size() % BatchingWeatherClient.UPSTREAM_ID_LIMIT != 0 && !queue.isEmpty()
+					&& queue.peek().due <= now + jitterMillis) {
+				due.add(queue.poll());
+			}
+		}
+		for (int from = 0; from < due.size(); from += BatchingWeatherClient.UPSTREAM_ID_LIMIT) {
+			refresh(due.subList(from, Math.min(due.size(), from + BatchingWeatherClient.UPSTREAM_ID_LIMIT)), now);
+		}
+	}
+
+	private void refresh(List<Watch> batch, long started) {
+		int[] cityIds = new int[batch.size()];
+		for (int i = 0; i < cityIds.length; i++) {
+			cityIds[i] = batch.get(i).cityId;
+		}
+		List<Watch> watches = new ArrayList<Watch>(batch);
+		refreshes.incrementAndGet();
+		CompletableFuture<List<WeatherResponse>> group;
+		try {
+			group = source.groupAsync(WeatherQuery.group(cityIds));
+		} catch (RuntimeException e) {
+			group = new CompletableFuture<List<WeatherResponse>>();
+			group.completeExceptionally(e);
+		}
+		group.whenComplete((responses, error) -> {
+			if (error != null) {
+				failures.incrementAndGet();
+				reschedule(watches, clock.getAsLong() + intervalMillis / 10);
+				return;
+			}
+			for (WeatherResponse response : responses) {
+				if (response.getId() == null) {
+					continue;
+				}
+				cache.put(key(response.getId()), response);
+				refreshedCities.incrementAndGet();
+				publish(response);
+			}
+			reschedule(watches, started + intervalMillis);
+		});
+	}
+
+	private void publish(WeatherResponse response) {
+		for (Consumer<WeatherResponse> subscriber : subscribers) {
+			try {
+				subscriber.accept(response);
+			} catch (RuntimeException e) {
+				subscriberErrors.incrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Queues the cities again around the given time, unless they were unwatched in the meantime.
+	 */
+	private void reschedule(List<Watch> watches, long at) {
+		synchronized (watched) {
+			for (Watch watch : watches) {
+				if (watched.get(watch.cityId) != watch) {
+					continue;
+				}
+				long jitter = jitterMillis == 0 ? 0 : ThreadLocalRandom.current().nextLong(-jitterMillis, jitterMillis + 1);
+				watch.due = at + jitter;
+				queue.add(watch);
+			}
+		}
+	}
+
+	private static WeatherQuery key(int cityId) {
+		return WeatherQuery.byId(cityId);
+	}
+
+	@Override
+	public void close() {
+		scheduler.shutdownNow();
+	}
+
+	/**
+	 * @return number of /group calls sent
+	 */
+	public long getRefreshCount() {
+		return refreshes.get();
+	}
+
+	public long getRefreshedCityCount() {
+		return refreshedCities.get();
+	}
+
+	public long getFailureCount() {
+		return failures.get();
+	}
+
+	/**
+	 * @return subscriber calls that threw; the exception is swallowed so other subscribers still run
+	 */
+	public long getSubscriberErrorCount() {
+		return subscriberErrors.get();
+	}
+
+	private static final class Watch {
+
+		private final int cityId;
+		private long due;
+
+		private Watch(int cityId) {
+			this.cityId = cityId;
+		}
+	}
+
+}
@@ -0,0 +1,136 @@
+package com.fyber.weather.helper;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Immutable, normalized description of a call against the weather API.
+ * Two queries asking for the same data are equal, so instances can be used as keys.
+ */
+public final class WeatherQuery {
+
+	public static final String WEATHER_PATH	= "weather";
+	public static final String GROUP_PATH	= "group";
+
+	private final String path;
+	private final int[] cityIds;
+	private final String name;
+	private final String units;
+	private final Map<String, String> parameters;
+
+	private WeatherQuery(String path, int[] cityIds, String name, String units) {
+		this.path = path;
+		this.cityIds = cityIds;
+		this.name = name;
+		this.units = units;
+
+		Map<String, String> params = new LinkedHashMap<String, String>();
+		if (cityIds != null) {
+			params.put("id", join(cityIds));
+		}
+		if (name != null) {
+			params.put("q", name);
+		}
+		if (units != null) {
+			params.put("units", units);
+		}
+		this.parameters = Collections.unmodifiableMap(params);
+	}
+
+	/**
+	 * Current weather for a single city ID, as listed in city.list.json.gz
+	 */
+	public static WeatherQuery byId(int cityId) {
+		return new WeatherQuery(WEATHER_PATH, new int[] { cityId }, null, null);
+	}
+
+	/**
+	 * Current weather by city name, optionally narrowed by country code
+	 */
+	public static WeatherQuery byName(String city, String country) {
+		if (city == null || city.trim().isEmpty()) {
+			throw new IllegalArgumentException("city must not be empty");
+		}
+		String q = city.trim();
+		if (country != null && !country.trim().isEmpty()) {
+			q = q + "," + country.trim();
+		}
+		return new WeatherQuery(WEATHER_PATH, null, q, null);
+	}
+
+	/**
+	 * Current weather for several city IDs in one round trip
+	 */
+	public static WeatherQuery group(int... cityIds) {
+		if (cityIds == null || cityIds.length == 0) {
+			throw new IllegalArgumentException("at least one city ID is required");
+		}
+		return new WeatherQuery(GROUP_PATH, cityIds.clone(), null, null);
+	}
+
+	/**
+	 * @return a copy of this query asking for the given unit system, or the API default when null
+	 */
+	public WeatherQuery withUnits(String units) {
+		return new WeatherQuery(path, cityIds, name, units);
+	}
+
+	public String getPath() {
+		return path;
+	}
+
+	public boolean isGroup() {
+		return GROUP_PATH.equals(path);
+	}
+
+	public int[] getCityIds() {
+		return cityIds == null ? null : cityIds.clone();
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getUnits() {
+		return units;
+	}
+
+	public Map<String, String> getParameters() {
+		return parameters;
+	}
+
+	private static String join(int[] ids) {
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < ids.length; i++) {
+			if (i > 0) {
+				builder.append(',');
+			}
+			builder.append(ids[i]);
+		}
+		return builder.toString();
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if (this == other) {
+			return true;
+		}
+		if (!(other instanceof WeatherQuery)) {
+			return false;
+		}
+		WeatherQuery that = (WeatherQuery) other;
+		return path.equals(that.path) && parameters.equals(that.parameters);
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * path.hashCode() + parameters.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return path + parameters;
+	}
+
+}
@@ -0,0 +1,24 @@
+package com.fyber.weather.helper;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import com.fyber.weather.domain.WeatherResponse;
+
+/**
+ * Anything able to answer weather queries asynchronously: the HTTP client itself, or a layer
+ * such as a cache stacked in front of it.
+ */
+public interface WeatherSource {
+
+	/**
+	 * @param query a single-city /weather query
+	 */
+	CompletableFuture<WeatherResponse> currentAsync(WeatherQuery query);
+
+	/**
+	 * @param query a /group query; results come back in the upstream order
+	 */
+	CompletableFuture<List<WeatherResponse>> groupAsync(WeatherQuery query);
+
+}
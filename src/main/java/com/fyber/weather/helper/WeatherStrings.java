@@ -0,0 +1,87 @@
+package com.fyber.weather.helper;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dictionary of the low-cardinality strings of the domain model: station base, country code and the
+ * condition group, description and icon of a {@link com.fyber.weather.domain.Weather}. Every distinct
+ * value is kept once and handed out in place of equal copies, so the thousands of cached and stored
+ * responses share a few hundred String instances instead of holding five each.
+ * <p>
+ * Seeded with the values OpenWeatherMap documents, in the same instances {@link WeatherCodec} decodes
+ * to, and learns new ones as they show up, up to {@link #CAPACITY}; past that, values are returned
+ * as they are so a misbehaving upstream cannot grow it without bound.
+ */
+public final class WeatherStrings {
+
+	public static final int CAPACITY = 4096;
+
+	/** see https://openweathermap.org/weather-conditions */
+	private static final String[] DESCRIPTIONS = { "thunderstorm with light rain", "thunderstorm with rain",
+			"thunderstorm with heavy rain", "light thunderstorm", "thunderstorm", "heavy thunderstorm",
+			"ragged thunderstorm", "thunderstorm with light drizzle", "thunderstorm with drizzle",
+			"thunderstorm with heavy drizzle", "light intensity drizzle", "drizzle", "heavy intensity drizzle",
+			"light intensity drizzle rain", "drizzle rain", "heavy intensity drizzle rain", "shower rain and drizzle",
+			"heavy shower rain and drizzle", "shower drizzle", "light rain", "moderate rain", "heavy intensity rain",
+			"very heavy rain", "extreme rain", "freezing rain", "light intensity shower rain", "shower rain",
+			"heavy intensity shower rain", "ragged shower rain", "light snow", "snow", "heavy snow", "sleet",
+			"light shower sleet", "shower sleet", "light rain and snow", "rain and snow", "light shower snow",
+			"shower snow", "heavy shower snow", "mist", "smoke", "haze", "sand/dust whirls", "fog", "sand", "dust",
+			"volcanic ash", "squalls", "tornado", "clear sky", "few clouds", "scattered clouds", "broken clouds",
+			"overcast clouds" };
+
+	private static final ConcurrentHashMap<String, String> DICTIONARY = new ConcurrentHashMap<String, String>(1024);
+
+	static {
+		seed(WeatherCodec.MAINS);
+		seed(WeatherCodec.ICONS);
+		seed(WeatherCodec.BASES);
+		seed(WeatherCodec.COUNTRIES);
+		seed(DESCRIPTIONS);
+	}
+
+	private WeatherStrings() {
+	}
+
+	private static void seed(String[] values) {
+		for (String value : values) {
+			DICTIONARY.putIfAbsent(value, value);
+		}
+	}
+
+	/**
+	 * @return the shared instance equal to the value, the value itself when it is new, or null for null
+	 */
+	public static String canonical(String value) {
+		if (value == null) {
+			return null;
+		}
+		String shared = DICTIONARY.get(value);
+		if (shared != null) {
+			return shared;
+		}
+		if (DICTIONARY.size() >= CAPACITY) {
+			return value;
+		}
+		shared = DICTIONARY.putIfAbsent(value, value);
+		return shared == null ? value : shared;
+	}
+
+	/**
+	 * @return the shared two-letter country code, without building a String for upper case letters
+	 */
+	public static String country(char first, char second) {
+		if (first >= 'A' && first <= 'Z' && second >= 'A' && second <= 'Z') {
+			return WeatherCodec.COUNTRIES[(first - 'A') * 26 + second - 'A'];
+		}
+		return canonical(new String(new char[] { first, second }));
+	}
+
+	/**
+	 * @return number of distinct values held
+	 */
+	public static int size() {
+		return DICTIONARY.size();
+	}
+
+}
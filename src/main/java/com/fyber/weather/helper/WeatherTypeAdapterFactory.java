@@ -0,0 +1,546 @@
+package com.fyber.weather.helper;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fyber.weather.domain.Clouds;
+import com.fyber.weather.domain.Coord;
+import com.fyber.weather.domain.GroupResponse;
+import com.fyber.weather.domain.Main;
+import com.fyber.weather.domain.Sys;
+import com.fyber.weather.domain.Weather;
+import com.fyber.weather.domain.WeatherResponse;
+import com.fyber.weather.domain.Wind;
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Hand-written streaming adapters for the domain model, replacing Gson's reflective adapter.
+ * Field names are dispatched on their first character and confirmed with equals, so no String
+ * hash is computed per field. Reading and writing mirror the reflective behaviour: unknown
+ * fields are skipped, JSON nulls map to null and null fields are not written. Low-cardinality
+ * strings are replaced by their {@link WeatherStrings} instance as they are read, so decoded
+ * responses do not keep copies of their own.
+ */
+public class WeatherTypeAdapterFactory implements TypeAdapterFactory {
+
+	static final TypeAdapter<Coord> COORD					= new CoordAdapter().nullSafe();
+	static final TypeAdapter<Weather> WEATHER				= new WeatherAdapter().nullSafe();
+	static final TypeAdapter<Main> MAIN						= new MainAdapter().nullSafe();
+	static final TypeAdapter<Wind> WIND						= new WindAdapter().nullSafe();
+	static final TypeAdapter<Clouds> CLOUDS					= new CloudsAdapter().nullSafe();
+	static final TypeAdapter<Sys> SYS						= new SysAdapter().nullSafe();
+	static final TypeAdapter<WeatherResponse> WEATHER_RESPONSE	= new WeatherResponseAdapter().nullSafe();
+	static final TypeAdapter<GroupResponse> GROUP_RESPONSE	= new GroupResponseAdapter().nullSafe();
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+		Class<? super T> raw = type.getRawType();
+		if (raw == WeatherResponse.class) {
+			return (TypeAdapter<T>) WEATHER_RESPONSE;
+		}
+		if (raw == GroupResponse.class) {
+			return (TypeAdapter<T>) GROUP_RESPONSE;
+		}
+		if (raw == Main.class) {
+			return (TypeAdapter<T>) MAIN;
+		}
+		if (raw == Weather.class) {
+			return (TypeAdapter<T>) WEATHER;
+		}
+		if (raw == Coord.class) {
+			return (TypeAdapter<T>) COORD;
+		}
+		if (raw == Wind.class) {
+			return (TypeAdapter<T>) WIND;
+		}
+		if (raw == Clouds.class) {
+			return (TypeAdapter<T>) CLOUDS;
+		}
+		if (raw == Sys.class) {
+			return (TypeAdapter<T>) SYS;
+		}
+		return null;
+	}
+
+	static Integer readInteger(JsonReader in) throws IOException {
+		if (in.peek() == JsonToken.NULL) {
+			in.nextNull();
+			return null;
+		}
+		try {
+			return in.nextInt();
+		} catch (NumberFormatException e) {
+			// like Gson's reflective adapters, so callers only ever see JsonParseException
+			throw new JsonSyntaxException(e);
+		}
+	}
+
+	static Double readDouble(JsonReader in) throws IOException {
+		if (in.peek() == JsonToken.NULL) {
+			in.nextNull();
+			return null;
+		}
+		try {
+			return in.nextDouble();
+		} catch (NumberFormatException e) {
+			throw new JsonSyntaxException(e);
+		}
+	}
+
+	static String readString(JsonReader in) throws IOException {
+		JsonToken token = in.peek();
+		if (token == JsonToken.NULL) {
+			in.nextNull();
+			return null;
+		}
+		if (token == JsonToken.BOOLEAN) {
+			return Boolean.toString(in.nextBoolean());
+		}
+		return in.nextString();
+	}
+
+	static String readCanonical(JsonReader in) throws IOException {
+		return WeatherStrings.canonical(readString(in));
+	}
+
+	static <T> List<T> readList(JsonReader in, TypeAdapter<T> adapter) throws IOException {
+		if (in.peek() == JsonToken.NULL) {
+			in.nextNull();
+			return null;
+		}
+		List<T> list = new ArrayList<T>();
+		in.beginArray();
+		while (in.hasNext()) {
+			list.add(adapter.read(in));
+		}
+		in.endArray();
+		return list;
+	}
+
+	static void writeNumber(JsonWriter out, String name, Number value) throws IOException {
+		if (value != null) {
+			out.name(name).value(value);
+		}
+	}
+
+	static void writeString(JsonWriter out, String name, String value) throws IOException {
+		if (value != null) {
+			out.name(name).value(value);
+		}
+	}
+
+	static <T> void writeObject(JsonWriter out, String name, T value, TypeAdapter<T> adapter) throws IOException {
+		if (value != null) {
+			out.name(name);
+			adapter.write(out, value);
+		}
+	}
+
+	static <T> void writeList(JsonWriter out, String name, List<T> values, TypeAdapter<T> adapter) throws IOException {
+		if (values != null) {
+			out.name(name).beginArray();
+			for (T value : values) {
+				adapter.write(out, value);
+			}
+			out.endArray();
+		}
+	}
+
+	static final class CoordAdapter extends TypeAdapter<Coord> {
+
+		@Override
+		public Coord read(JsonReader in) throws IOException {
+			Coord coord = new Coord();
+			in.beginObject();
+			while (in.hasNext()) {
+				String name = in.nextName();
+				if ("lon".equals(name)) {
+					coord.setLon(readDouble(in));
+				} else if ("lat".equals(name)) {
+					coord.setLat(readDouble(in));
+				} else {
+					in.skipValue();
+				}
+			}
+			in.endObject();
+			return coord;
+		}
+
+		@Override
+		public void write(JsonWriter out, Coord coord) throws IOException {
+			out.beginObject();
+			writeNumber(out, "lon", coord.getLon());
+			writeNumber(out, "lat", coord.getLat());
+			out.endObject();
+		}
+	}
+
+	static final class WeatherAdapter extends TypeAdapter<Weather> {
+
+		@Override
+		public Weather read(JsonReader in) throws IOException {
+			Weather weather = new Weather();
+			in.beginObject();
+			while (in.hasNext()) {
+				String name = in.nextName();
+				switch (name.isEmpty() ? 0 : name.charAt(0)) {
+				case 'i':
+					if ("id".equals(name)) {
+						weather.setId(readInteger(in));
+						continue;
+					}
+					if ("icon".equals(name)) {
+						weather.setIcon(readCanonical(in));
+						continue;
+					}
+					break;
+				case 'm':
+					if ("main".equals(name)) {
+						weather.setMain(readCanonical(in));
+						continue;
+					}
+					break;
+				case 'd':
+					if ("description".equals(name)) {
+						weather.setDescription(readCanonical(in));
+						continue;
+					}
+					break;
+				default:
+					break;
+				}
+				in.skipValue();
+			}
+			in.endObject();
+			return weather;
+		}
+
+		@Override
+		public void write(JsonWriter out, Weather weather) throws IOException {
+			out.beginObject();
+			writeNumber(out, "id", weather.getId());
+			writeString(out, "main", weather.getMain());
+			writeString(out, "description", weather.getDescription());
+			writeString(out, "icon", weather.getIcon());
+			out.endObject();
+		}
+	}
+
+	static final class MainAdapter extends TypeAdapter<Main> {
+
+		@Override
+		public Main read(JsonReader in) throws IOException {
+			Main main = new Main();
+			in.beginObject();
+			while (in.hasNext()) {
+				String name = in.nextName();
+				switch (name.isEmpty() ? 0 : name.charAt(0)) {
+				case 't':
+					if ("temp".equals(name)) {
+						main.setTemp(readDouble(in));
+						continue;
+					}
+					if ("temp_min".equals(name)) {
+						main.setTempMin(readDouble(in));
+						continue;
+					}
+					if ("temp_max".equals(name)) {
+						main.setTempMax(readDouble(in));
+						continue;
+					}
+					break;
+				case 'p':
+					if ("pressure".equals(name)) {
+						main.setPressure(readInteger(in));
+						continue;
+					}
+					break;
+				case 'h':
+					if ("humidity".equals(name)) {
+						main.setHumidity(readInteger(in));
+						continue;
+					}
+					break;
+				default:
+					break;
+				}
+				in.skipValue();
+			}
+			in.endObject();
+			return main;
+		}
+
+		@Override
+		public void write(JsonWriter out, Main main) throws IOException {
+			out.beginObject();
+			writeNumber(out, "temp", main.getTemp());
+			writeNumber(out, "pressure", main.getPressure());
+			writeNumber(out, "humidity", main.getHumidity());
+			writeNumber(out, "temp_min", main.getTempMin());
+			writeNumber(out, "temp_max", main.getTempMax());
+			out.endObject();
+		}
+	}
+
+	static final class WindAdapter extends TypeAdapter<Wind> {
+
+		@Override
+		public Wind read(JsonReader in) throws IOException {
+			Wind wind = new Wind();
+			in.beginObject();
+			while (in.hasNext()) {
+				String name = in.nextName();
+				if ("speed".equals(name)) {
+					wind.setSpeed(readDouble(in));
+				} else if ("deg".equals(name)) {
+					wind.setDeg(readInteger(in));
+				} else {
+					in.skipValue();
+				}
+			}
+			in.endObject();
+			return wind;
+		}
+
+		@Override
+		public void write(JsonWriter out, Wind wind) throws IOException {
+			out.beginObject();
+			writeNumber(out, "speed", wind.getSpeed());
+			writeNumber(out, "deg", wind.getDeg());
+			out.endObject();
+		}
+	}
+
+	static final class CloudsAdapter extends TypeAdapter<Clouds> {
+
+		@Override
+		public Clouds read(JsonReader in) throws IOException {
+			Clouds clouds = new Clouds();
+			in.beginObject();
+			while (in.hasNext()) {
+				String name = in.nextName();
+				if ("all".equals(name)) {
+					clouds.setAll(readInteger(in));
+				} else {
+					in.skipValue();
+				}
+			}
+			in.endObject();
+			return clouds;
+		}
+
+		@Override
+		public void write(JsonWriter out, Clouds clouds) throws IOException {
+			out.beginObject();
+			writeNumber(out, "all", clouds.getAll());
+			out.endObject();
+		}
+	}
+
+	static final class SysAdapter extends TypeAdapter<Sys> {
+
+		@Override
+		public Sys read(JsonReader in) throws IOException {
+			Sys sys = new Sys();
+			in.beginObject();
+			while (in.hasNext()) {
+				String name = in.nextName();
+				switch (name.isEmpty() ? 0 : name.charAt(0)) {
+				case 't':
+					if ("type".equals(name)) {
+						sys.setType(readInteger(in));
+						continue;
+					}
+					break;
+				case 'i':
+					if ("id".equals(name)) {
+						sys.setId(readInteger(in));
+						continue;
+					}
+					break;
+				case 'm':
+					if ("message".equals(name)) {
+						sys.setMessage(readDouble(in));
+						continue;
+					}
+					break;
+				case 'c':
+					if ("country".equals(name)) {
+						sys.setCountry(readCanonical(in));
+						continue;
+					}
+					break;
+				case 's':
+					if ("sunrise".equals(name)) {
+						sys.setSunrise(readInteger(in));
+						continue;
+					}
+					if ("sunset".equals(name)) {
+						sys.setSunset(readInteger(in));
+						continue;
+					}
+					break;
+				default:
+					break;
+				}
+				in.skipValue();
+			}
+			in.endObject();
+			return sys;
+		}
+
+		@Override
+		public void write(JsonWriter out, Sys sys) throws IOException {
+			out.beginObject();
+			writeNumber(out, "type", sys.getType());
+			writeNumber(out, "id", sys.getId());
+			writeNumber(out, "message", sys.getMessage());
+			writeString(out, "country", sys.getCountry());
+			writeNumber(out, "sunrise", sys.getSunrise());
+			writeNumber(out, "sunset", sys.getSunset());
+			out.endObject();
+		}
+	}
+
+	static final class WeatherResponseAdapter extends TypeAdapter<WeatherResponse> {
+
+		@Override
+		public WeatherResponse read(JsonReader in) throws IOException {
+			WeatherResponse response = new WeatherResponse();
+			in.beginObject();
+			while (in.hasNext()) {
+				String name = in.nextName();
+				switch (name.isEmpty() ? 0 : name.charAt(0)) {
+				case 'c':
+					if ("coord".equals(name)) {
+						response.setCoord(COORD.read(in));
+						continue;
+					}
+					if ("clouds".equals(name)) {
+						response.setClouds(CLOUDS.read(in));
+						continue;
+					}
+					if ("cod".equals(name)) {
+						response.setCod(readInteger(in));
+						continue;
+					}
+					break;
+				case 'w':
+					if ("weather".equals(name)) {
+						response.setWeather(readList(in, WEATHER));
+						continue;
+					}
+					if ("wind".equals(name)) {
+						response.setWind(WIND.read(in));
+						continue;
+					}
+					break;
+				case 'b':
+					if ("base".equals(name)) {
+						response.setBase(readCanonical(in));
+						continue;
+					}
+					break;
+				case 'm':
+					if ("main".equals(name)) {
+						response.setMain(MAIN.read(in));
+						continue;
+					}
+					break;
+				case 'v':
+					if ("visibility".equals(name)) {
+						response.setVisibility(readInteger(in));
+						continue;
+					}
+					break;
+				case 'd':
+					if ("dt".equals(name)) {
+						response.setDt(readInteger(in));
+						continue;
+					}
+					break;
+				case 's':
+					if ("sys".equals(name)) {
+						response.setSys(SYS.read(in));
+						continue;
+					}
+					break;
+				case 'i':
+					if ("id".equals(name)) {
+						response.setId(readInteger(in));
+						continue;
+					}
+					break;
+				case 'n':
+					if ("name".equals(name)) {
+						response.setName(readString(in));
+						continue;
+					}
+					break;
+				default:
+					break;
+				}
+				in.skipValue();
+			}
+			in.endObject();
+			return response;
+		}
+
+		@Override
+		public void write(JsonWriter out, WeatherResponse response) throws IOException {
+			out.beginObject();
+			writeObject(out, "coord", response.getCoord(), COORD);
+			writeList(out, "weather", response.getWeather(), WEATHER);
+			writeString(out, "base", response.getBase());
+			writeObject(out, "main", response.getMain(), MAIN);
+			writeNumber(out, "visibility", response.getVisibility());
+			writeObject(out, "wind", response.getWind(), WIND);
+			writeObject(out, "clouds", response.getClouds(), CLOUDS);
+			writeNumber(out, "dt", response.getDt());
+			writeObject(out, "sys", response.getSys(), SYS);
+			writeNumber(out, "id", response.getId());
+			writeString(out, "name", response.getName());
+			writeNumber(out, "cod", response.getCod());
+			out.endObject();
+		}
+	}
+
+	static final class GroupResponseAdapter extends TypeAdapter<GroupResponse> {
+
+		@Override
+		public GroupResponse read(JsonReader in) throws IOException {
+			GroupResponse group = new GroupResponse();
+			in.beginObject();
+			while (in.hasNext()) {
+				String name = in.nextName();
+				if ("cnt".equals(name)) {
+					group.setCnt(readInteger(in));
+				} else if ("list".equals(name)) {
+					group.setList(readList(in, WEATHER_RESPONSE));
+				} else {
+					in.skipValue();
+				}
+			}
+			in.endObject();
+			return group;
+		}
+
+		@Override
+		public void write(JsonWriter out, GroupResponse group) throws IOException {
+			out.beginObject();
+			writeNumber(out, "cnt", group.getCnt());
+			writeList(out, "list", group.getList(), WEATHER_RESPONSE);
+			out.endObject();
+		}
+	}
+
+}
@@ -0,0 +1,514 @@
+package com.fyber.weather.stub;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.fyber.weather.domain.Clouds;
+import com.fyber.weather.domain.Coord;
+import com.fyber.weather.domain.GroupResponse;
+import com.fyber.weather.domain.Main;
+import com.fyber.weather.domain.Sys;
+import com.fyber.weather.domain.Weather;
+import com.fyber.weather.domain.WeatherResponse;
+import com.fyber.weather.domain.Wind;
+import com.fyber.weather.helper.ClientConfig;
+import com.fyber.weather.helper.TokenBucket;
+import com.fyber.weather.helper.UnitConverter;
+import com.fyber.weather.helper.WeatherJson;
+import com.google.gson.JsonElement;
+import com.google.gson.stream.JsonWriter;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * In-process stand-in for the OpenWeatherMap /weather and /group endpoints, so tests and benchmarks
+ * run offline and deterministically. Cities come from recorded fixtures or are generated, and are
+ * stored in Kelvin; metric and imperial answers are derived from them the way the API does.
+ * Latency, error rate and a throughput cap can be injected to exercise the client under load.
+ * Error answers mirror the real ones: 401 "Invalid API key." for a missing or wrong key,
+ * 502 "Not found city" for unknown names and IDs, 429 once the throughput cap is exceeded.
+ * Without -Dsun.net.httpserver.nodelay=true the separate header and body writes meet the client's
+ * delayed ACK, adding ~40ms per answer; the surefire configuration and the benchmark launchers set it.
+ */
+public class StubWeatherServer implements Closeable {
+
+	private static final String FIXTURE = "/stub/cities.json";
+	private static final String API_PATH = "/data/2.5/";
+	private static final double KELVIN = 273.15d;
+
+	private final ClientConfig clientConfig;
+	private final Map<Integer, WeatherResponse> cities = new ConcurrentHashMap<Integer, WeatherResponse>();
+	private final Map<String, List<Integer>> names = new ConcurrentHashMap<String, List<Integer>>();
+	private final Map<String, byte[]> rendered = new ConcurrentHashMap<String, byte[]>();
+	private final Map<Integer, AtomicLong> statuses = new ConcurrentHashMap<Integer, AtomicLong>();
+	private final AtomicLong requests = new AtomicLong();
+	/** client ends of the TCP connections requests came in on */
+	private final Set<InetSocketAddress> connections = ConcurrentHashMap.newKeySet();
+
+	private HttpServer server;
+	private ExecutorService handlers;
+	private ScheduledExecutorService delays;
+
+	private volatile long latencyMillis;
+	private volatile long latencyJitterMillis;
+	private volatile double errorRate;
+	private volatile int errorStatus = 500;
+	private volatile TokenBucket throughputCap;
+	private final AtomicInteger scriptedLeft = new AtomicInteger();
+	private volatile Answer scripted;
+	private final AtomicInteger delaysLeft = new AtomicInteger();
+	private final AtomicInteger breaksLeft = new AtomicInteger();
+	private volatile long extraDelayMillis;
+
+	/**
+	 * Accepts the API key and auth header of the given configuration, which is pointed at this server by {@link #start()}.
+	 */
+	public StubWeatherServer(ClientConfig clientConfig) {
+		this.clientConfig = clientConfig;
+	}
+
+	/**
+	 * Starts a server loaded with the bundled fixtures on a free local port.
+	 */
+	public static StubWeatherServer start(ClientConfig clientConfig) throws IOException {
+		StubWeatherServer server = new StubWeatherServer(clientConfig);
+		server.loadFixtures();
+		server.start();
+		return server;
+	}
+
+	/**
+	 * Binds a free local port and sets the base URL of the client configuration to it.
+	 */
+	public synchronized void start() throws IOException {
+		start(0);
+	}
+
+	public synchronized void start(int port) throws IOException {
+		if (server != null) {
+			throw new IllegalStateException("Stub server already started");
+		}
+		AtomicInteger threads = new AtomicInteger();
+		handlers = Executors.newCachedThreadPool(runnable -> daemon(runnable, "stub-weather-" + threads.incrementAndGet()));
+		delays = Executors.newSingleThreadScheduledExecutor(runnable -> daemon(runnable, "stub-weather-delay"));
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 1024);
+		server.setExecutor(handlers);
+		server.createContext("/", this::handle);
+		server.start();
+		clientConfig.setBaseURL(getBaseURL());
+	}
+
+	private static Thread daemon(Runnable runnable, String name) {
+		Thread thread = new Thread(runnable, name);
+		thread.setDaemon(true);
+		return thread;
+	}
+
+	@Override
+	public synchronized void close() {
+		if (server != null) {
+			server.stop(0);
+			handlers.shutdownNow();
+			delays.shutdownNow();
+			server = null;
+		}
+	}
+
+	public String getBaseURL() {
+		if (server == null) {
+			throw new IllegalStateException("Stub server not started");
+		}
+		return "http://127.0.0.1:" + server.getAddress().getPort() + API_PATH;
+	}
+
+	/**
+	 * Loads the bundled recorded /group answer for Berlin, Hamburg, Köln and Garching.
+	 */
+	public void loadFixtures() throws IOException {
+		try (InputStream in = StubWeatherServer.class.getResourceAsStream(FIXTURE)) {
+			loadFixture(in);
+		}
+	}
+
+	/**
+	 * Loads cities from a recorded /weather or /group answer in standard units.
+	 */
+	public void loadFixture(InputStream in) throws IOException {
+		JsonElement json = WeatherJson.gson().fromJson(new InputStreamReader(in, StandardCharsets.UTF_8), JsonElement.class);
+		if (json.isJsonObject() && json.getAsJsonObject().has("list")) {
+			for (WeatherResponse city : WeatherJson.gson().fromJson(json, GroupResponse.class).getList()) {
+				addCity(city);
+			}
+		} else {
+			addCity(WeatherJson.gson().fromJson(json, WeatherResponse.class));
+		}
+	}
+
+	/**
+	 * Generates cities with IDs from firstId on, reproducible for a given seed.
+	 */
+	public void addSyntheticCities(int firstId, int count, long seed) {
+		Random random = new Random(seed);
+		for (int i = 0; i < count; i++) {
+			int id = firstId + i;
+			WeatherResponse city = new WeatherResponse();
+			city.setId(id);
+			city.setName("City " + id);
+			city.setBase("stations");
+			city.setDt(1485789600 + random.nextInt(3600));
+			city.setVisibility(10000);
+			Coord coord = new Coord();
+			coord.setLon(Math.round((random.nextDouble() * 360 - 180) * 100) / 100d);
+			coord.setLat(Math.round((random.nextDouble() * 180 - 90) * 100) / 100d);
+			city.setCoord(coord);
+			Weather weather = new Weather();
+			weather.setId(800);
+			weather.setMain("Clear");
+			weather.setDescription("clear sky");
+			weather.setIcon("01d");
+			city.setWeather(Collections.singletonList(weather));
+			Main main = new Main();
+			double temp = Math.round((KELVIN - 20 + random.nextDouble() * 50) * 100) / 100d;
+			main.setTemp(temp);
+			main.setTempMin(temp - 1);
+			main.setTempMax(temp + 1);
+			main.setPressure(980 + random.nextInt(60));
+			main.setHumidity(random.nextInt(101));
+			city.setMain(main);
+			Wind wind = new Wind();
+			wind.setSpeed(Math.round(random.nextDouble() * 200) / 10d);
+			wind.setDeg(random.nextInt(360));
+			city.setWind(wind);
+			Clouds clouds = new Clouds();
+			clouds.setAll(random.nextInt(101));
+			city.setClouds(clouds);
+			Sys sys = new Sys();
+			sys.setCountry("ZZ");
+			sys.setSunrise(1485759115);
+			sys.setSunset(1485791446);
+			city.setSys(sys);
+			addCity(city);
+		}
+	}
+
+	public void addCity(WeatherResponse city) {
+		if (city.getId() == null) {
+			throw new IllegalArgumentException("City fixture without id");
+		}
+		cities.put(city.getId(), city);
+		if (city.getName() != null) {
+			names.computeIfAbsent(normalize(city.getName()), key -> new CopyOnWriteArrayList<Integer>()).add(city.getId());
+		}
+		if (city.getSys() != null && city.getSys().getCountry() != null) {
+			String country = city.getSys().getCountry();
+			names.computeIfAbsent(normalize(country), key -> new CopyOnWriteArrayList<Integer>()).add(city.getId());
+			String countryName = new Locale("", country).getDisplayCountry(Locale.ENGLISH);
+			if (!countryName.equalsIgnoreCase(country)) {
+				names.computeIfAbsent(normalize(countryName), key -> new CopyOnWriteArrayList<Integer>()).add(city.getId());
+			}
+		}
+		rendered.clear();
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		requests.incrementAndGet();
+		connections.add(exchange.getRemoteAddress());
+		int status;
+		byte[] body;
+		try {
+			Answer answer = answer(exchange);
+			status = answer.status;
+			body = answer.body;
+		} catch (RuntimeException e) {
+			status = 500;
+			body = error(500, "Internal error: " + e.getMessage());
+		}
+		long delay = latencyMillis + (latencyJitterMillis > 0 ? ThreadLocalRandom.current().nextLong(latencyJitterMillis + 1) : 0);
+		if (delaysLeft.getAndUpdate(left -> Math.max(0, left - 1)) > 0) {
+			delay += extraDelayMillis;
+		}
+		boolean broken = breaksLeft.getAndUpdate(left -> Math.max(0, left - 1)) > 0;
+		int finalStatus = status;
+		byte[] finalBody = body;
+		if (delay > 0) {
+			delays.schedule(() -> respond(exchange, finalStatus, finalBody, broken), delay, TimeUnit.MILLISECONDS);
+		} else {
+			respond(exchange, status, body, broken);
+		}
+	}
+
+	/**
+	 * @param broken send only half of the declared body, leaving the client waiting for the rest
+	 */
+	private void respond(HttpExchange exchange, int status, byte[] body, boolean broken) {
+		statuses.computeIfAbsent(status, key -> new AtomicLong()).incrementAndGet();
+		try {
+			exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+			exchange.sendResponseHeaders(status, body.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(body, 0, broken ? body.length / 2 : body.length);
+			}
+		} catch (IOException e) {
+			// the client went away, e.g. after a timeout or a cancelled hedge
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private Answer answer(HttpExchange exchange) {
+		String path = exchange.getRequestURI().getPath();
+		Map<String, String> params = parameters(exchange.getRequestURI().getRawQuery());
+
+		TokenBucket cap = throughputCap;
+		if (cap != null && cap.reserve(0) != 0) {
+			return new Answer(429, error(429, "Your account is temporarily blocked due to exceeding of requests limitation of your subscription type."));
+		}
+		String key = params.containsKey("appid") ? params.get("appid") : exchange.getRequestHeaders().getFirst(clientConfig.getAuthHeader());
+		if (key == null || !key.equals(clientConfig.getApiKey())) {
+			return new Answer(401, error(401, "Invalid API key. Please see http://openweathermap.org/faq#error401 for more info."));
+		}
+		if (scriptedLeft.getAndUpdate(left -> Math.max(0, left - 1)) > 0) {
+			return scripted;
+		}
+		if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+			return new Answer(errorStatus, error(errorStatus, "Injected error"));
+		}
+
+		String units = params.get("units");
+		if (path.endsWith("/weather")) {
+			WeatherResponse city = find(params);
+			if (city == null) {
+				return new Answer(502, error(502, "Error: Not found city"));
+			}
+			return new Answer(200, render(city, units));
+		}
+		if (path.endsWith("/group")) {
+			String ids = params.get("id");
+			if (ids == null || ids.isEmpty()) {
+				return new Answer(400, error(400, "Nothing to geocode"));
+			}
+			return new Answer(200, group(ids.split(","), units));
+		}
+		return new Answer(404, error(404, "Internal error"));
+	}
+
+	private WeatherResponse find(Map<String, String> params) {
+		if (params.containsKey("id")) {
+			try {
+				return cities.get(Integer.valueOf(params.get("id").trim()));
+			} catch (NumberFormatException e) {
+				return null;
+			}
+		}
+		String q = params.get("q");
+		if (q == null) {
+			return null;
+		}
+		int comma = q.indexOf(',');
+		String name = comma < 0 ? q : q.substring(0, comma);
+		String country = comma < 0 ? null : q.substring(comma + 1).trim();
+		List<Integer> ids = names.get(normalize(name));
+		if (ids == null) {
+			return null;
+		}
+		for (Integer id : ids) {
+			WeatherResponse city = cities.get(id);
+			if (country == null || (city.getSys() != null && country.equalsIgnoreCase(city.getSys().getCountry()))) {
+				return city;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Unknown IDs are skipped, the same way the API does.
+	 */
+	private byte[] group(String[] ids, String units) {
+		List<WeatherResponse> list = new ArrayList<WeatherResponse>(ids.length);
+		for (String id : ids) {
+			try {
+				WeatherResponse city = cities.get(Integer.valueOf(id.trim()));
+				if (city != null) {
+					list.add(convert(city, units, false));
+				}
+			} catch (NumberFormatException e) {
+				// skipped like an unknown ID
+			}
+		}
+		GroupResponse group = new GroupResponse();
+		group.setCnt(list.size());
+		group.setList(list);
+		return WeatherJson.gson().toJson(group).getBytes(StandardCharsets.UTF_8);
+	}
+
+	private byte[] render(WeatherResponse city, String units) {
+		return rendered.computeIfAbsent(city.getId() + "|" + units,
+				key -> WeatherJson.gson().toJson(convert(city, units, true)).getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Copies the Kelvin and m/s fixture into the requested units; "metric" is Celsius and m/s,
+	 * "imperial" Fahrenheit and mph.
+	 */
+	private static WeatherResponse convert(WeatherResponse city, String units, boolean withCod) {
+		WeatherResponse copy = WeatherJson.gson().fromJson(WeatherJson.gson().toJson(city), WeatherResponse.class);
+		copy.setCod(withCod ? Integer.valueOf(200) : null);
+		return UnitConverter.convert(copy, units);
+	}
+
+	private static byte[] error(int status, String message) {
+		StringWriter out = new StringWriter();
+		try (JsonWriter writer = new JsonWriter(out)) {
+			writer.beginObject().name("cod").value(status).name("message").value(message).endObject();
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return out.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static Map<String, String> parameters(String rawQuery) {
+		if (rawQuery == null || rawQuery.isEmpty()) {
+			return Collections.emptyMap();
+		}
+		Map<String, String> params = new LinkedHashMap<String, String>();
+		for (String pair : rawQuery.split("&")) {
+			int eq = pair.indexOf('=');
+			String name = decode(eq < 0 ? pair : pair.substring(0, eq));
+			String value = eq < 0 ? "" : decode(pair.substring(eq + 1));
+			params.put(name, value);
+		}
+		return params;
+	}
+
+	private static String decode(String value) {
+		try {
+			return URLDecoder.decode(value, "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static String normalize(String name) {
+		return name.trim().toLowerCase(Locale.ROOT);
+	}
+
+	/**
+	 * Delays every answer by latencyMillis plus a uniformly distributed jitter of up to jitterMillis.
+	 * Delayed answers do not hold a handler thread.
+	 */
+	public void setLatency(long latencyMillis, long jitterMillis) {
+		this.latencyMillis = latencyMillis;
+		this.latencyJitterMillis = jitterMillis;
+	}
+
+	/**
+	 * Answers the given share of authenticated requests, between 0 and 1, with the given status instead.
+	 */
+	public void setErrorRate(double errorRate, int errorStatus) {
+		this.errorRate = errorRate;
+		this.errorStatus = errorStatus;
+	}
+
+	/**
+	 * Answers the next count authenticated requests with the given status, then serves normally again.
+	 */
+	public void failNext(int count, int status) {
+		answerNext(count, status, new String(error(status, "Injected error"), StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Answers the next count authenticated requests with the given status and body, e.g. a proxy's HTML page,
+	 * then serves normally again.
+	 */
+	public void answerNext(int count, int status, String body) {
+		this.scripted = new Answer(status, body.getBytes(StandardCharsets.UTF_8));
+		this.scriptedLeft.set(count);
+	}
+
+	/**
+	 * Delays the next count answers by delayMillis on top of the configured latency.
+	 */
+	public void delayNext(int count, long delayMillis) {
+		this.extraDelayMillis = delayMillis;
+		this.delaysLeft.set(count);
+	}
+
+	/**
+	 * Stalls the next count answers halfway through the body, as a failing network or proxy would; the
+	 * client gives up on its socket timeout.
+	 */
+	public void breakNext(int count) {
+		this.breaksLeft.set(count);
+	}
+
+	/**
+	 * Caps the accepted requests per second, answering the excess with 429; 0 or less removes the cap.
+	 */
+	public void setThroughputCap(int requestsPerSecond) {
+		this.throughputCap = requestsPerSecond > 0 ? new TokenBucket(requestsPerSecond * 60, requestsPerSecond) : null;
+	}
+
+	public long getRequestCount() {
+		return requests.get();
+	}
+
+	/**
+	 * @return TCP connections requests have been received on so far
+	 */
+	public int getConnectionCount() {
+		return connections.size();
+	}
+
+	/**
+	 * @return answers sent so far, by status code
+	 */
+	public Map<Integer, Long> getStatusCounts() {
+		Map<Integer, Long> counts = new HashMap<Integer, Long>();
+		for (Map.Entry<Integer, AtomicLong> entry : statuses.entrySet()) {
+			counts.put(entry.getKey(), entry.getValue().get());
+		}
+		return counts;
+	}
+
+	public int getCityCount() {
+		return cities.size();
+	}
+
+	private static final class Answer {
+
+		private final int status;
+		private final byte[] body;
+
+		private Answer(int status, byte[] body) {
+			this.status = status;
+			this.body = body;
+		}
+	}
+
+}
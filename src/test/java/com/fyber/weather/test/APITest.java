@@ -3,24 +3,22 @@ package com.fyber.weather.test;
 import static com.jayway.restassured.RestAssured.*;
 import static org.hamcrest.Matchers.equalTo;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.io.IOException;
 
 import org.apache.commons.lang3.SystemUtils;
 
 import static org.hamcrest.Matchers.containsString;
 
+import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
 import com.fyber.weather.domain.WeatherResponse;
 import com.fyber.weather.helper.ClientConfig;
-import com.google.gson.Gson;
+import com.fyber.weather.helper.WeatherClient;
+import com.fyber.weather.helper.WeatherClientException;
+import com.fyber.weather.stub.StubWeatherServer;
 import com.jayway.restassured.response.Response;
-import com.mashape.unirest.http.HttpResponse;
-import com.mashape.unirest.http.JsonNode;
-import com.mashape.unirest.http.Unirest;
-import com.mashape.unirest.http.exceptions.UnirestException;
 
 import static org.assertj.core.api.Assertions.*;
 
@@ -29,10 +27,27 @@ import groovyjarjarantlr.collections.List;
 public class APITest {
 	
 	private static ClientConfig clientConfig;
+	private static WeatherClient weatherClient;
+	private static StubWeatherServer stubServer;
 	
+	/**
+	 * Runs against the local stub server unless -Dweather.live=true is set
+	 */
 	@BeforeClass
-	public static void setupClient(){
+	public static void setupClient() throws IOException {
 		clientConfig = new ClientConfig();
+		if (!Boolean.getBoolean("weather.live")) {
+			stubServer = StubWeatherServer.start(clientConfig);
+		}
+		weatherClient = new WeatherClient(clientConfig);
+	}
+	
+	@AfterClass
+	public static void closeClient() throws IOException {
+		weatherClient.close();
+		if (stubServer != null) {
+			stubServer.close();
+		}
 	}
 	
 	/**
@@ -275,23 +290,16 @@ public class APITest {
 	 */
 	
 	@Test
-	public void shouldAuthenticateAndReturnWeatherInKelvinForBerlinAsCityIDWhenAPIKeyIsValidAndRequestParamsAreValid() throws UnirestException {
-		
-		String cityID = "2950159";
+	public void shouldAuthenticateAndReturnWeatherInKelvinForBerlinAsCityIDWhenAPIKeyIsValidAndRequestParamsAreValid() throws WeatherClientException {
 		
 		//given
-		HttpResponse<JsonNode> jsonResponse = Unirest.get(clientConfig.getBaseURL().concat("/weather"))
-											  .header(clientConfig.getAuthHeader(), clientConfig.getApiKey())
-											  .queryString("id", cityID)
-											  .asJson();
-		
-		Gson gson = new Gson();
+		int cityID = 2950159;
 		
 		//when
-		WeatherResponse weatherResponse= gson.fromJson(jsonResponse.getBody().toString(), WeatherResponse.class);
+		WeatherResponse weatherResponse = weatherClient.current(cityID);
 		
 		//then
-		assertThat(jsonResponse.getStatus()).isEqualTo(200);
+		assertThat(weatherResponse.getCod()).isEqualTo(200);
 		assertThat(weatherResponse.getMain().getTemp()).isNotNull().isBetween(213d, 333d);
 		
 	}
@@ -303,28 +311,16 @@ public class APITest {
 	 */
 	
 	@Test
-	public void shouldAuthenticateAndReturnWeatherInFahrenheitForBerlinAsCityIDWhenAPIKeyIsValidAndRequestParamsAreValid() throws UnirestException {
-		
-		String cityID = "2950159";
-		
-		Map<String, Object> mapParameters = new HashMap();
-		
-		mapParameters.put("id", cityID);
-		mapParameters.put("units", clientConfig.getImperialUnit());
+	public void shouldAuthenticateAndReturnWeatherInFahrenheitForBerlinAsCityIDWhenAPIKeyIsValidAndRequestParamsAreValid() throws WeatherClientException {
 		
 		//given
-		HttpResponse<JsonNode> jsonResponse = Unirest.get(clientConfig.getBaseURL().concat("weather"))
-											  .header(clientConfig.getAuthHeader(), clientConfig.getApiKey())
-											  .queryString(mapParameters)
-											  .asJson();
-		
-		Gson gson = new Gson();
+		int cityID = 2950159;
 		
 		//when
-		WeatherResponse weatherResponse= gson.fromJson(jsonResponse.getBody().toString(), WeatherResponse.class);
+		WeatherResponse weatherResponse = weatherClient.current(cityID, clientConfig.getImperialUnit());
 		
 		//then
-		assertThat(jsonResponse.getStatus()).isEqualTo(200);
+		assertThat(weatherResponse.getCod()).isEqualTo(200);
 		assertThat(weatherResponse.getMain().getTemp()).isNotNull().isBetween(-76d, 140d);
 		
 	}
@@ -336,28 +332,16 @@ public class APITest {
 	 */
 	
 	@Test
-	public void shouldAuthenticateAndReturnWeatherInCelsiusForBerlinAsCityIDWhenAPIKeyIsValidAndRequestParamsAreValid() throws UnirestException {
-		
-		String cityID = "2950159";
-		
-		Map<String, Object> mapParameters = new HashMap();
-		
-		mapParameters.put("id", cityID);
-		mapParameters.put("units", clientConfig.getMetricUnit());
+	public void shouldAuthenticateAndReturnWeatherInCelsiusForBerlinAsCityIDWhenAPIKeyIsValidAndRequestParamsAreValid() throws WeatherClientException {
 		
 		//given
-		HttpResponse<JsonNode> jsonResponse = Unirest.get(clientConfig.getBaseURL().concat("weather"))
-											  .header(clientConfig.getAuthHeader(), clientConfig.getApiKey())
-											  .queryString(mapParameters)
-											  .asJson();
-		
-		Gson gson = new Gson();
+		int cityID = 2950159;
 		
 		//when
-		WeatherResponse weatherResponse= gson.fromJson(jsonResponse.getBody().toString(), WeatherResponse.class);
+		WeatherResponse weatherResponse = weatherClient.current(cityID, clientConfig.getMetricUnit());
 		
 		//then
-		assertThat(jsonResponse.getStatus()).isEqualTo(200);
+		assertThat(weatherResponse.getCod()).isEqualTo(200);
 		assertThat(weatherResponse.getMain().getTemp()).isNotNull().isBetween(-60d, 60d);
 		
 	}
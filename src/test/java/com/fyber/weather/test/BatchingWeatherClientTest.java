@@ -0,0 +1,95 @@
+package com.fyber.weather.test;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import org.junit.Test;
+
+import com.fyber.weather.domain.WeatherResponse;
+import com.fyber.weather.helper.BatchingWeatherClient;
+import com.fyber.weather.helper.WeatherClientException;
+import com.fyber.weather.helper.WeatherQuery;
+import com.fyber.weather.helper.WeatherSource;
+
+public class BatchingWeatherClientTest {
+
+	private final List<WeatherQuery> groupCalls = new ArrayList<WeatherQuery>();
+
+	/**
+	 * Answers /group queries with one response per known ID, skipping 0 like the upstream skips unknown IDs
+	 */
+	private final WeatherSource upstream = new WeatherSource() {
+
+		@Override
+		public CompletableFuture<WeatherResponse> currentAsync(WeatherQuery query) {
+			throw new AssertionError("single-city lookups must be batched: " + query);
+		}
+
+		@Override
+		public synchronized CompletableFuture<List<WeatherResponse>> groupAsync(WeatherQuery query) {
+			groupCalls.add(query);
+			List<WeatherResponse> responses = new ArrayList<WeatherResponse>();
+			for (int cityId : query.getCityIds()) {
+				if (cityId != 0) {
+					WeatherResponse response = new WeatherResponse();
+					response.setId(cityId);
+					responses.add(response);
+				}
+			}
+			return CompletableFuture.completedFuture(responses);
+		}
+	};
+
+	/**
+	 * Tests if lookups issued within the batching window go out as one /group request
+	 * @result Expects one group call carrying all three IDs and each caller getting its own city
+	 */
+
+	@Test
+	public void shouldCoalesceLookupsWithinWindowIntoOneGroupRequest() {
+
+		//given
+		BatchingWeatherClient client = new BatchingWeatherClient(upstream, 20, 50);
+
+		//when
+		CompletableFuture<WeatherResponse> berlin = client.currentAsync(2950159);
+		CompletableFuture<WeatherResponse> hamburg = client.currentAsync(2911288);
+		CompletableFuture<WeatherResponse> berlinAgain = client.currentAsync(2950159);
+
+		//then
+		assertThat(berlin.join().getId()).isEqualTo(2950159);
+		assertThat(hamburg.join().getId()).isEqualTo(2911288);
+		assertThat(berlinAgain.join().getId()).isEqualTo(2950159);
+		assertThat(groupCalls).hasSize(1);
+		assertThat(groupCalls.get(0).getCityIds()).containsExactly(2950159, 2911288);
+
+	}
+
+	/**
+	 * Tests if a batch is sent as soon as it reaches the configured size, and unknown IDs fail individually
+	 * @result Expects the full batch to be sent without waiting and the unknown ID to fail with 502
+	 */
+
+	@Test
+	public void shouldSendFullBatchImmediatelyAndFailUnknownCities() {
+
+		//given
+		BatchingWeatherClient client = new BatchingWeatherClient(upstream, 2, 60000);
+
+		//when
+		CompletableFuture<WeatherResponse> unknown = client.currentAsync(0);
+		CompletableFuture<WeatherResponse> koln = client.currentAsync(2886241);
+
+		//then
+		assertThat(koln.join().getId()).isEqualTo(2886241);
+		assertThatThrownBy(unknown::join).isInstanceOf(CompletionException.class)
+			.hasCauseInstanceOf(WeatherClientException.class);
+		assertThat(((WeatherClientException) unknown.handle((response, error) -> error).join()).getStatusCode()).isEqualTo(502);
+
+	}
+
+}
@@ -0,0 +1,106 @@
+package com.fyber.weather.test;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fyber.weather.domain.WeatherResponse;
+import com.fyber.weather.helper.BufferPool;
+import com.fyber.weather.helper.ClientConfig;
+import com.fyber.weather.helper.WeatherClient;
+import com.fyber.weather.helper.WeatherClientException;
+import com.fyber.weather.helper.WeatherJson;
+import com.fyber.weather.stub.StubWeatherServer;
+
+public class BufferPoolTest {
+
+	private ClientConfig clientConfig;
+	private StubWeatherServer stubServer;
+	private WeatherClient weatherClient;
+
+	@Before
+	public void startServer() throws IOException {
+		clientConfig = new ClientConfig();
+		clientConfig.setMaxRetries(0);
+		// small enough for every body, and some multi-byte names, to span several buffers
+		clientConfig.setBodyBufferSize(64);
+		stubServer = StubWeatherServer.start(clientConfig);
+		stubServer.addSyntheticCities(1000, 20, 42L);
+		weatherClient = new WeatherClient(clientConfig);
+	}
+
+	@After
+	public void stopServer() throws IOException {
+		weatherClient.close();
+		stubServer.close();
+	}
+
+	/**
+	 * Tests if released buffers are handed out again and the idle pool stays within its bound
+	 * @result Expects the same cleared buffer back, foreign buffers ignored and no more than two idle buffers
+	 */
+
+	@Test
+	public void shouldReuseReleasedBuffersUpToBound() {
+
+		//given
+		BufferPool pool = new BufferPool(128, 2);
+		ByteBuffer first = pool.acquire();
+		first.putInt(42);
+
+		//when
+		pool.release(first);
+		ByteBuffer again = pool.acquire();
+		ByteBuffer[] many = { again, pool.acquire(), pool.acquire() };
+		for (ByteBuffer buffer : many) {
+			pool.release(buffer);
+		}
+		pool.release(ByteBuffer.allocate(128));
+
+		//then
+		assertThat(again).isSameAs(first);
+		assertThat(again.position()).isZero();
+		assertThat(again.isDirect()).isTrue();
+		assertThat(pool.getAllocatedCount()).isEqualTo(3);
+		assertThat(pool.getReusedCount()).isEqualTo(1);
+		assertThat(pool.getPooledCount()).isEqualTo(2);
+
+	}
+
+	/**
+	 * Tests if async responses decoded from pooled buffers equal the blocking, stream-decoded ones and return every buffer
+	 * @result Expects identical JSON for both paths, all buffers back in the pool and most acquisitions served by reuse
+	 */
+
+	@Test
+	public void shouldDecodeAsyncBodiesFromPooledBuffers() throws WeatherClientException {
+
+		//given
+		int[] cityIds = new int[20];
+		for (int i = 0; i < cityIds.length; i++) {
+			cityIds[i] = 1000 + i;
+		}
+		List<WeatherResponse> expected = weatherClient.group(cityIds);
+		BufferPool pool = weatherClient.getBufferPool();
+
+		//when
+		for (int round = 0; round < 20; round++) {
+			List<WeatherResponse> group = weatherClient.groupAsync(cityIds).join();
+			WeatherResponse cologne = weatherClient.currentAsync("Regierungsbezirk Köln", "DE").join();
+
+			//then
+			assertThat(WeatherJson.gson().toJson(group)).isEqualTo(WeatherJson.gson().toJson(expected));
+			assertThat(cologne.getName()).isEqualTo("Regierungsbezirk Köln");
+		}
+		assertThat(pool.getPooledCount()).isEqualTo((int) pool.getAllocatedCount());
+		assertThat(pool.getReusedCount()).isGreaterThan(pool.getAllocatedCount() * 10);
+
+	}
+
+}
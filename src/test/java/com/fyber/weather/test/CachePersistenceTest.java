@@ -0,0 +1,232 @@
+package com.fyber.weather.test;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fyber.weather.domain.GroupResponse;
+import com.fyber.weather.domain.WeatherResponse;
+import com.fyber.weather.helper.CachePersistence;
+import com.fyber.weather.helper.CachingWeatherClient;
+import com.fyber.weather.helper.ResponseCache;
+import com.fyber.weather.helper.WeatherJson;
+import com.fyber.weather.helper.WeatherQuery;
+import com.fyber.weather.helper.WeatherSource;
+
+public class CachePersistenceTest {
+
+	private static final List<WeatherResponse> CITIES = WeatherJson.gson().fromJson(
+			WeatherJsonTest.fixture("group-germany.json"), GroupResponse.class).getList();
+
+	private final AtomicLong now = new AtomicLong(1485789600000L);
+	private final AtomicInteger upstreamCalls = new AtomicInteger();
+	private Path directory;
+
+	private final WeatherSource upstream = new WeatherSource() {
+
+		@Override
+		public CompletableFuture<WeatherResponse> currentAsync(WeatherQuery query) {
+			upstreamCalls.incrementAndGet();
+			return CompletableFuture.completedFuture(city(query.getCityIds()[0]));
+		}
+
+		@Override
+		public CompletableFuture<List<WeatherResponse>> groupAsync(WeatherQuery query) {
+			upstreamCalls.incrementAndGet();
+			return CompletableFuture.completedFuture(Arrays.stream(query.getCityIds()).mapToObj(CachePersistenceTest::city).collect(Collectors.toList()));
+		}
+	};
+
+	private static WeatherResponse city(int cityId) {
+		return CITIES.stream().filter(city -> city.getId() == cityId).findFirst().get();
+	}
+
+	@Before
+	public void createDirectory() throws IOException {
+		directory = Files.createTempDirectory("cache-persistence");
+	}
+
+	@After
+	public void deleteDirectory() throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			for (Object file : files.toArray()) {
+				Files.delete((Path) file);
+			}
+		}
+		Files.delete(directory);
+	}
+
+	private ResponseCache<WeatherResponse> newCache() {
+		return new ResponseCache<WeatherResponse>(100, 600000, now::get);
+	}
+
+	private static String json(WeatherResponse response) {
+		return WeatherJson.gson().toJson(response);
+	}
+
+	/**
+	 * Tests if a restarted cache is restored from the log and serves without going upstream
+	 * @result Expects the live entries back with their data and expiry, the invalidated and expired ones
+	 * gone, and no upstream call after the restart
+	 */
+
+	@Test
+	public void shouldRestoreFromLogWithoutUpstreamCalls() throws IOException {
+
+		//given
+		ResponseCache<WeatherResponse> cache = newCache();
+		try (CachePersistence persistence = CachePersistence.open(cache, directory)) {
+			CachingWeatherClient client = new CachingWeatherClient(upstream, cache);
+			client.groupAsync(2950159, 2911288, 2886241).join();
+			cache.put(WeatherQuery.byId(2922582), city(2922582), 1000);
+			cache.invalidate(WeatherQuery.byId(2886241));
+			assertThat(persistence.getRecordCount()).isEqualTo(5);
+		}
+		now.addAndGet(2000);
+		upstreamCalls.set(0);
+
+		//when
+		ResponseCache<WeatherResponse> restarted = newCache();
+		try (CachePersistence persistence = CachePersistence.open(restarted, directory)) {
+			CachingWeatherClient client = new CachingWeatherClient(upstream, restarted);
+			List<WeatherResponse> group = client.groupAsync(2950159, 2911288).join();
+
+			//then
+			assertThat(upstreamCalls.get()).isZero();
+			assertThat(group).extracting(CachePersistenceTest::json).containsExactly(json(city(2950159)), json(city(2911288)));
+			assertThat(restarted.getIfPresent(WeatherQuery.byId(2886241))).isNull();
+			assertThat(restarted.getIfPresent(WeatherQuery.byId(2922582))).isNull();
+			assertThat(persistence.getRestoredCount()).isEqualTo(3);
+		}
+		now.addAndGet(600000);
+		assertThat(restarted.getIfPresent(WeatherQuery.byId(2950159))).isNull();
+
+	}
+
+	/**
+	 * Tests if a checkpoint writes a snapshot, drops the old log and restores together with the new log
+	 * @result Expects one snapshot and one log file after the checkpoint, and entries from both to come back
+	 */
+
+	@Test
+	public void shouldRestoreSnapshotAndNewerLog() throws IOException {
+
+		//given
+		ResponseCache<WeatherResponse> cache = newCache();
+		try (CachePersistence persistence = CachePersistence.open(cache, directory)) {
+			cache.put(WeatherQuery.byId(2950159), city(2950159));
+			cache.put(WeatherQuery.byId(2911288).withUnits("metric"), city(2911288));
+
+			//when
+			persistence.checkpoint();
+			cache.put(WeatherQuery.byId(2886241), city(2886241));
+			cache.invalidate(WeatherQuery.byId(2950159));
+
+			//then
+			assertThat(persistence.getCheckpointCount()).isEqualTo(1);
+		}
+		try (Stream<Path> files = Files.list(directory)) {
+			assertThat(files.map(file -> file.getFileName().toString())).containsExactlyInAnyOrder("cache.snapshot", "cache-1.wal");
+		}
+
+		//when
+		ResponseCache<WeatherResponse> restarted = newCache();
+		try (CachePersistence persistence = CachePersistence.open(restarted, directory)) {
+
+			//then
+			assertThat(persistence.getRestoredCount()).isEqualTo(3);
+			assertThat(restarted.size()).isEqualTo(2);
+			assertThat(restarted.getIfPresent(WeatherQuery.byId(2911288).withUnits("metric")).getName()).isEqualTo(city(2911288).getName());
+			assertThat(restarted.getIfPresent(WeatherQuery.byId(2886241))).isNotNull();
+			assertThat(restarted.getIfPresent(WeatherQuery.byId(2950159))).isNull();
+		}
+
+	}
+
+	/**
+	 * Tests if a record torn by a crash ends the replay and is cut off so logging can continue
+	 * @result Expects the complete records to be restored, the torn tail to be truncated and a later put to
+	 * survive the next restart
+	 */
+
+	@Test
+	public void shouldTruncateTornRecord() throws IOException {
+
+		//given
+		ResponseCache<WeatherResponse> cache = newCache();
+		try (CachePersistence persistence = CachePersistence.open(cache, directory)) {
+			cache.put(WeatherQuery.byId(2950159), city(2950159));
+			cache.put(WeatherQuery.byId(2911288), city(2911288));
+			assertThat(persistence.getRecordCount()).isEqualTo(2);
+		}
+		Path log = directory.resolve("cache-0.wal");
+		long complete = Files.size(log);
+		Files.write(log, new byte[] { 0, 0, 1, 0, 12, 34, 56, 78, 1, 2, 3 }, StandardOpenOption.APPEND);
+
+		//when
+		ResponseCache<WeatherResponse> restarted = newCache();
+		try (CachePersistence persistence = CachePersistence.open(restarted, directory)) {
+			restarted.put(WeatherQuery.byId(2886241), city(2886241));
+
+			//then
+			assertThat(persistence.getRestoredCount()).isEqualTo(2);
+		}
+		assertThat(Files.size(log)).isGreaterThan(complete);
+		ResponseCache<WeatherResponse> again = newCache();
+		try (CachePersistence persistence = CachePersistence.open(again, directory)) {
+			assertThat(persistence.getRestoredCount()).isEqualTo(3);
+			assertThat(again.size()).isEqualTo(3);
+		}
+
+	}
+
+	/**
+	 * Tests if a log left without a complete header by a crash counts as empty instead of failing the restore
+	 * @result Expects the entries of the older log back, and the empty log to be rewritten with a header so
+	 * a later put survives the next restart
+	 */
+
+	@Test
+	public void shouldTreatLogWithoutHeaderAsEmpty() throws IOException {
+
+		//given
+		ResponseCache<WeatherResponse> cache = newCache();
+		try (CachePersistence persistence = CachePersistence.open(cache, directory)) {
+			cache.put(WeatherQuery.byId(2950159), city(2950159));
+			cache.put(WeatherQuery.byId(2911288), city(2911288));
+			assertThat(persistence.getRecordCount()).isEqualTo(2);
+		}
+		Path empty = directory.resolve("cache-2.wal");
+		Files.createFile(empty);
+
+		//when
+		ResponseCache<WeatherResponse> restarted = newCache();
+		try (CachePersistence persistence = CachePersistence.open(restarted, directory)) {
+			restarted.put(WeatherQuery.byId(2886241), city(2886241));
+
+			//then
+			assertThat(persistence.getRestoredCount()).isEqualTo(2);
+		}
+		assertThat(Files.size(empty)).isGreaterThan(16);
+		ResponseCache<WeatherResponse> again = newCache();
+		try (CachePersistence persistence = CachePersistence.open(again, directory)) {
+			assertThat(persistence.getRestoredCount()).isEqualTo(3);
+		}
+
+	}
+
+}
@@ -0,0 +1,141 @@
+package com.fyber.weather.test;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+
+import com.fyber.weather.domain.WeatherResponse;
+import com.fyber.weather.helper.CachingWeatherClient;
+import com.fyber.weather.helper.ResponseCache;
+import com.fyber.weather.helper.WeatherQuery;
+import com.fyber.weather.helper.WeatherSource;
+
+public class CachingWeatherClientTest {
+
+	private final List<WeatherQuery> groupCalls = new ArrayList<WeatherQuery>();
+	private final List<CompletableFuture<List<WeatherResponse>>> pending = new ArrayList<CompletableFuture<List<WeatherResponse>>>();
+
+	/**
+	 * Records /group queries and leaves them pending until {@link #answer} is called
+	 */
+	private final WeatherSource upstream = new WeatherSource() {
+
+		@Override
+		public CompletableFuture<WeatherResponse> currentAsync(WeatherQuery query) {
+			throw new AssertionError("unexpected single-city lookup: " + query);
+		}
+
+		@Override
+		public CompletableFuture<List<WeatherResponse>> groupAsync(WeatherQuery query) {
+			groupCalls.add(query);
+			CompletableFuture<List<WeatherResponse>> response = new CompletableFuture<List<WeatherResponse>>();
+			pending.add(response);
+			return response;
+		}
+	};
+
+	private void answer(int call) {
+		List<WeatherResponse> responses = new ArrayList<WeatherResponse>();
+		for (int cityId : groupCalls.get(call).getCityIds()) {
+			WeatherResponse response = new WeatherResponse();
+			response.setId(cityId);
+			responses.add(response);
+		}
+		pending.get(call).complete(responses);
+	}
+
+	/**
+	 * Tests if a group lookup counts its cached cities as hits and each expired one as a single expiration
+	 * @result Expects one hit for the fresh city and one expiration and one miss for the expired one
+	 */
+
+	@Test
+	public void shouldCountGroupHitsAndExpirationsOnce() {
+
+		//given
+		AtomicLong now = new AtomicLong();
+		ResponseCache<WeatherResponse> cache = new ResponseCache<WeatherResponse>(100, 1000, now::get);
+		CachingWeatherClient client = new CachingWeatherClient(upstream, cache);
+		client.groupAsync(2950159);
+		answer(0);
+		now.set(500);
+		client.groupAsync(2911288);
+		answer(1);
+		now.set(1200);
+		long missesBefore = cache.getMissCount();
+
+		//when
+		client.groupAsync(2950159, 2911288);
+
+		//then
+		assertThat(groupCalls.get(2).getCityIds()).containsExactly(2950159);
+		assertThat(cache.getHitCount()).isEqualTo(1);
+		assertThat(cache.getExpirationCount()).isEqualTo(1);
+		assertThat(cache.getMissCount() - missesBefore).isEqualTo(1);
+
+	}
+
+	private static int[] ids(List<WeatherResponse> responses) {
+		return responses.stream().mapToInt(WeatherResponse::getId).toArray();
+	}
+
+	/**
+	 * Tests if the missing cities of a large group lookup are fetched in /group calls the upstream accepts
+	 * @result Expects three calls of 20, 20 and 5 IDs and all 45 cities in the requested order
+	 */
+
+	@Test
+	public void shouldFetchMissesInGroupsOfAtMostTwenty() {
+
+		//given
+		CachingWeatherClient client = new CachingWeatherClient(upstream, new ResponseCache<WeatherResponse>(100, 600000));
+		int[] cityIds = IntStream.range(0, 45).map(i -> 3000 - i).toArray();
+
+		//when
+		CompletableFuture<List<WeatherResponse>> group = client.groupAsync(cityIds);
+		for (int call = 0; call < groupCalls.size(); call++) {
+			answer(call);
+		}
+
+		//then
+		assertThat(groupCalls).extracting(query -> query.getCityIds().length).containsExactly(20, 20, 5);
+		assertThat(ids(group.join())).containsExactly(cityIds);
+
+	}
+
+	/**
+	 * Tests if overlapping group lookups share the fetch of cities already in flight
+	 * @result Expects the second lookup to fetch only the city the first one did not ask for, and both to
+	 * complete once their calls are answered
+	 */
+
+	@Test
+	public void shouldShareInFlightCitiesBetweenGroupLookups() {
+
+		//given
+		ResponseCache<WeatherResponse> cache = new ResponseCache<WeatherResponse>(100, 600000);
+		CachingWeatherClient client = new CachingWeatherClient(upstream, cache);
+
+		//when
+		CompletableFuture<List<WeatherResponse>> first = client.groupAsync(2950159, 2911288);
+		CompletableFuture<List<WeatherResponse>> second = client.groupAsync(2911288, 2886241, 2950159);
+
+		//then
+		assertThat(groupCalls).hasSize(2);
+		assertThat(groupCalls.get(1).getCityIds()).containsExactly(2886241);
+		assertThat(cache.getCoalescedCount()).isEqualTo(2);
+		answer(1);
+		assertThat(second).isNotDone();
+		answer(0);
+		assertThat(ids(first.join())).containsExactly(2950159, 2911288);
+		assertThat(ids(second.join())).containsExactly(2911288, 2886241, 2950159);
+
+	}
+
+}
@@ -0,0 +1,111 @@
+package com.fyber.weather.test;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import com.fyber.weather.helper.CallRejectedException;
+import com.fyber.weather.helper.CircuitBreaker;
+
+public class CircuitBreakerTest {
+
+	private final AtomicLong now = new AtomicLong();
+
+	private CircuitBreaker breaker() {
+		return new CircuitBreaker("weather", 10, 4, 50, 1000, 80, 30000, 1, now::get);
+	}
+
+	/**
+	 * Tests if the circuit opens once the failure rate over the window reaches the threshold
+	 * @result Expects the circuit to stay closed below the minimum calls, then open and reject calls
+	 */
+
+	@Test
+	public void shouldOpenOnFailureRateAndRejectCalls() throws CallRejectedException {
+
+		//given
+		CircuitBreaker breaker = breaker();
+
+		//when
+		for (int i = 0; i < 3; i++) {
+			breaker.acquire();
+			breaker.onFailure();
+		}
+
+		//then
+		assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+
+		//when
+		breaker.acquire();
+		breaker.onSuccess(10);
+
+		//then
+		assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+		assertThatThrownBy(breaker::acquire).isInstanceOf(CallRejectedException.class);
+		assertThat(breaker.getRejectedCount()).isEqualTo(1);
+
+	}
+
+	/**
+	 * Tests if slow successful calls open the circuit as well
+	 * @result Expects the circuit to open after four calls slower than the threshold
+	 */
+
+	@Test
+	public void shouldOpenOnSlowCallRate() throws CallRejectedException {
+
+		//given
+		CircuitBreaker breaker = breaker();
+
+		//when
+		for (int i = 0; i < 4; i++) {
+			breaker.acquire();
+			breaker.onSuccess(1500);
+		}
+
+		//then
+		assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+
+	}
+
+	/**
+	 * Tests if a successful probe after the open period closes the circuit and a failed one re-opens it
+	 * @result Expects OPEN, then HALF_OPEN after 30s, then OPEN on failure and CLOSED on success
+	 */
+
+	@Test
+	public void shouldProbeAfterOpenPeriod() throws CallRejectedException {
+
+		//given
+		CircuitBreaker breaker = breaker();
+		for (int i = 0; i < 4; i++) {
+			breaker.acquire();
+			breaker.onFailure();
+		}
+
+		//when
+		now.addAndGet(30000);
+
+		//then
+		assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+
+		//when
+		breaker.acquire();
+		breaker.onFailure();
+
+		//then
+		assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+
+		//when
+		now.addAndGet(30000);
+		breaker.acquire();
+		breaker.onSuccess(10);
+
+		//then
+		assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+
+	}
+
+}
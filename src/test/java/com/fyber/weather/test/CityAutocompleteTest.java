@@ -0,0 +1,122 @@
+package com.fyber.weather.test;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.fyber.weather.domain.City;
+import com.fyber.weather.helper.CityAutocomplete;
+
+public class CityAutocompleteTest {
+
+	private static final CityAutocomplete AUTOCOMPLETE = CityAutocomplete.of(Arrays.asList(
+			new City(2950159, "Berlin", "DE", 13.41, 52.52),
+			new City(4183849, "Berlin", "US", -71.19, 44.47),
+			new City(2867714, "München", "DE", 11.58, 48.14),
+			new City(2922582, "Garching bei München", "DE", 11.65, 48.25),
+			new City(2869120, "Münchberg", "DE", 11.78, 50.19),
+			new City(2911288, "Hamburg-Mitte", "DE", 10.0, 53.55),
+			new City(2886242, "Köln", "DE", 6.95, 50.93),
+			new City(2812482, "Weißenfels", "DE", 11.97, 51.2),
+			new City(2643743, "London", "GB", -0.13, 51.51)));
+
+	/**
+	 * Tests if prefixes match regardless of case, diacritics, punctuation and word position
+	 * @result Expects München before Münchberg before Garching bei München for "münch", the same answer for
+	 * "MUNCH", and folded forms like "koln", "weissen" and "hamburg mitte" to match
+	 */
+
+	@Test
+	public void shouldCompleteFoldedPrefixes() {
+
+		//when
+		int[] munch = AUTOCOMPLETE.complete("münch", 10);
+
+		//then
+		assertThat(munch).containsExactly(2867714, 2869120, 2922582);
+		assertThat(AUTOCOMPLETE.complete("  MUNCH", 10)).containsExactly(munch);
+		assertThat(AUTOCOMPLETE.complete("munchen", 10)).containsExactly(2867714, 2922582);
+		assertThat(AUTOCOMPLETE.complete("koln", 10)).containsExactly(2886242);
+		assertThat(AUTOCOMPLETE.complete("weissen", 10)).containsExactly(2812482);
+		assertThat(AUTOCOMPLETE.complete("hamburg mitte", 10)).containsExactly(2911288);
+		assertThat(AUTOCOMPLETE.complete("bei mün", 10)).containsExactly(2922582);
+		assertThat(AUTOCOMPLETE.complete("munch", 1)).containsExactly(2867714);
+		assertThat(AUTOCOMPLETE.complete("", 10)).isEmpty();
+
+	}
+
+	/**
+	 * Tests if a trailing country code narrows the candidates
+	 * @result Expects both Berlins without a country and only the American one for "berl, us"
+	 */
+
+	@Test
+	public void shouldFilterByCountry() {
+
+		//then
+		assertThat(AUTOCOMPLETE.complete("berl", 10)).containsExactly(2950159, 4183849);
+		assertThat(AUTOCOMPLETE.complete("berl, us", 10)).containsExactly(4183849);
+		assertThat(AUTOCOMPLETE.complete("berl,FR", 10)).isEmpty();
+
+	}
+
+	/**
+	 * Tests if typos are tolerated once the query is long enough, ranked after exact prefixes
+	 * @result Expects "Berlni" and "Garchin bie Munchen" to find their cities with one and two edits,
+	 * "Lodnon" to find London, and short queries to stay exact
+	 */
+
+	@Test
+	public void shouldCompleteWithTypos() {
+
+		//given
+		CityAutocomplete.Lookup lookup = AUTOCOMPLETE.newLookup(5);
+
+		//when
+		int found = AUTOCOMPLETE.complete("Berlni", lookup);
+
+		//then
+		assertThat(found).isEqualTo(2);
+		assertThat(lookup.cityId(0)).isEqualTo(2950159);
+		assertThat(lookup.editDistance(0)).isEqualTo(1);
+		assertThat(AUTOCOMPLETE.complete("Garchin bie Munchen", 5)).containsExactly(2922582);
+		assertThat(AUTOCOMPLETE.complete("Lodnon", 5)).containsExactly(2643743);
+		assertThat(AUTOCOMPLETE.complete("hambrug", 5)).containsExactly(2911288);
+		assertThat(AUTOCOMPLETE.complete("muc", 5)).isEmpty();
+
+	}
+
+	/**
+	 * Tests if lookups through a reused Lookup do not allocate
+	 * @result Expects less than 64 KB allocated by the thread for 20000 prefix and fuzzy lookups
+	 */
+
+	@Test
+	public void shouldNotAllocatePerLookup() {
+
+		//given
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		CityAutocomplete.Lookup lookup = AUTOCOMPLETE.newLookup(5);
+		String[] queries = { "münch", "berl, us", "Garchin bie Munchen", "Lodnon" };
+		for (int i = 0; i < 20000; i++) {
+			AUTOCOMPLETE.complete(queries[i % queries.length], lookup);
+		}
+
+		//when
+		long before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+		int found = 0;
+		for (int i = 0; i < 20000; i++) {
+			found += AUTOCOMPLETE.complete(queries[i % queries.length], lookup);
+		}
+		long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+
+		//then
+		assertThat(found).isPositive();
+		assertThat(allocated).isLessThan(64 * 1024);
+
+	}
+
+}
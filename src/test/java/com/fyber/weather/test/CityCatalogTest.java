@@ -0,0 +1,122 @@
+package com.fyber.weather.test;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fyber.weather.domain.City;
+import com.fyber.weather.helper.CityCatalog;
+import com.fyber.weather.helper.WeatherQuery;
+
+public class CityCatalogTest {
+
+	private Path directory;
+	private Path indexFile;
+
+	@Before
+	public void createDirectory() throws IOException {
+		directory = Files.createTempDirectory("city-catalog");
+		indexFile = directory.resolve("city.idx");
+	}
+
+	@After
+	public void deleteDirectory() throws IOException {
+		Files.deleteIfExists(indexFile);
+		Files.deleteIfExists(directory);
+	}
+
+	private static InputStream gzipped(String json) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+			gzip.write(json.getBytes(StandardCharsets.UTF_8));
+		}
+		return new ByteArrayInputStream(bytes.toByteArray());
+	}
+
+	/**
+	 * Tests if a gzipped catalogue is indexed and cities are found by ID after mapping the index
+	 * @result Expects Köln region 2886241 with name, country and coordinates, unknown IDs to be absent
+	 * and the first entry to win for a duplicate ID
+	 */
+
+	@Test
+	public void shouldIndexGzippedCatalogueAndFindCitiesById() throws IOException {
+
+		//given
+		CityCatalog.build(gzipped(WeatherJsonTest.fixture("city.list.json")), indexFile);
+
+		//when
+		CityCatalog catalog = CityCatalog.open(indexFile);
+
+		//then
+		assertThat(catalog.size()).isEqualTo(7);
+		assertThat(catalog.get(2886241)).isEqualTo(new City(2886241, "Regierungsbezirk Köln", "DE", 7.16667, 50.833328));
+		assertThat(catalog.get(707860).getName()).isEqualTo("Hurzuf");
+		assertThat(catalog.get(2950159).getName()).isEqualTo("Berlin");
+		assertThat(catalog.get(6255148).getCountry()).isEmpty();
+		assertThat(catalog.get(1)).isNull();
+		assertThat(catalog.contains(2922582)).isTrue();
+
+	}
+
+	/**
+	 * Tests if names are matched case and accent insensitively, optionally narrowed by country
+	 * @result Expects both Berlins without a country, one with DE, and folded names to match
+	 */
+
+	@Test
+	public void shouldFindIdsByFoldedNameAndCountry() throws IOException {
+
+		//given
+		CityCatalog.build(new ByteArrayInputStream(WeatherJsonTest.fixture("city.list.json").getBytes(StandardCharsets.UTF_8)), indexFile);
+		CityCatalog catalog = CityCatalog.open(indexFile);
+
+		//then
+		assertThat(catalog.idsByName("Berlin")).containsExactly(2950159, 4183849);
+		assertThat(catalog.idsByName("berlin", "de")).containsExactly(2950159);
+		assertThat(catalog.idsByName("Regierungsbezirk Koln")).containsExactly(2886241);
+		assertThat(catalog.idsByName(" GARCHING BEI MUNCHEN ")).containsExactly(2922582);
+		assertThat(catalog.idsByName("Atlantis")).isEmpty();
+		assertThat(catalog.idsByName("Berlin duplicate")).isEmpty();
+
+	}
+
+	/**
+	 * Tests if name queries are turned into ID queries only when the name is unambiguous
+	 * @result Expects "Berlin,DE" to resolve to 2950159 keeping the units, and plain "Berlin" to stay a name query
+	 */
+
+	@Test
+	public void shouldResolveUnambiguousNameQueriesToIds() throws IOException {
+
+		//given
+		Path catalogue = directory.resolve("city.list.json");
+		Files.write(catalogue, WeatherJsonTest.fixture("city.list.json").getBytes(StandardCharsets.UTF_8));
+
+		try {
+			//when
+			CityCatalog catalog = CityCatalog.load(catalogue, indexFile);
+			WeatherQuery resolved = catalog.resolve(WeatherQuery.byName("Berlin", "DE").withUnits("metric"));
+			WeatherQuery ambiguous = catalog.resolve(WeatherQuery.byName("Berlin", null));
+
+			//then
+			assertThat(resolved).isEqualTo(WeatherQuery.byId(2950159).withUnits("metric"));
+			assertThat(ambiguous).isEqualTo(WeatherQuery.byName("Berlin", null));
+		} finally {
+			Files.deleteIfExists(catalogue);
+		}
+
+	}
+
+}
@@ -0,0 +1,61 @@
+package com.fyber.weather.test;
+
+import static org.assertj.core.api.Assertions.*;
+
+import org.junit.Test;
+
+import com.fyber.weather.domain.CompactWeather;
+import com.fyber.weather.domain.GroupResponse;
+import com.fyber.weather.domain.WeatherResponse;
+import com.fyber.weather.helper.WeatherJson;
+import com.google.gson.Gson;
+
+public class CompactWeatherTest {
+
+	private final Gson gson = WeatherJson.gson();
+
+	/**
+	 * Tests if converting to the compact form and back keeps every field of the /group fixture
+	 * @result Expects the rebuilt responses to serialize to the original JSON
+	 */
+
+	@Test
+	public void shouldRoundTripEveryFieldThroughCompactForm() {
+
+		//given
+		GroupResponse group = gson.fromJson(WeatherJsonTest.fixture("group-germany.json"), GroupResponse.class);
+
+		for (WeatherResponse response : group.getList()) {
+
+			//when
+			WeatherResponse rebuilt = CompactWeather.from(response).toResponse();
+
+			//then
+			assertThat(gson.toJson(rebuilt)).isEqualTo(gson.toJson(response));
+		}
+
+	}
+
+	/**
+	 * Tests if missing values are reported through presence bits rather than defaults
+	 * @result Expects wind degree to be absent while wind speed and temperature are present
+	 */
+
+	@Test
+	public void shouldTrackMissingValuesWithPresenceBits() {
+
+		//given
+		GroupResponse group = gson.fromJson(WeatherJsonTest.fixture("group-germany.json"), GroupResponse.class);
+
+		//when
+		CompactWeather garching = CompactWeather.from(group.getList().get(3));
+
+		//then
+		assertThat(garching.has(CompactWeather.WIND_DEG)).isFalse();
+		assertThat(garching.has(CompactWeather.WIND_SPEED | CompactWeather.TEMP)).isTrue();
+		assertThat(garching.getTemp()).isEqualTo(274.39d);
+		assertThat(garching.toResponse().getWind().getDeg()).isNull();
+
+	}
+
+}
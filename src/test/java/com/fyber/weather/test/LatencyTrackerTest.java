@@ -0,0 +1,37 @@
+package com.fyber.weather.test;
+
+import static org.assertj.core.api.Assertions.*;
+
+import org.junit.Test;
+
+import com.fyber.weather.helper.LatencyTracker;
+
+public class LatencyTrackerTest {
+
+	private static final int MIN_SAMPLES = 32;
+
+	/**
+	 * Tests if percentiles become available as soon as the minimum number of samples is recorded
+	 * @result Expects no percentile one sample short of the minimum, and the median of 1 to 32 ms at the minimum
+	 */
+
+	@Test
+	public void shouldAnswerPercentileAtMinimumSamples() {
+
+		//given
+		LatencyTracker tracker = new LatencyTracker();
+		for (int latency = 1; latency < MIN_SAMPLES; latency++) {
+			tracker.record(latency);
+		}
+		assertThat(tracker.percentile(50)).isEqualTo(-1);
+
+		//when
+		tracker.record(MIN_SAMPLES);
+
+		//then
+		assertThat(tracker.percentile(50)).isEqualTo(16);
+		assertThat(tracker.percentile(100)).isEqualTo(MIN_SAMPLES);
+
+	}
+
+}
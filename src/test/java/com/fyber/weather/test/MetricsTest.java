@@ -0,0 +1,143 @@
+package com.fyber.weather.test;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import com.fyber.weather.helper.ClientConfig;
+import com.fyber.weather.helper.LogHistogram;
+import com.fyber.weather.helper.RateLimiter;
+import com.fyber.weather.helper.SimpleMetricsRegistry;
+import com.fyber.weather.helper.WeatherClient;
+import com.fyber.weather.helper.WeatherClientException;
+import com.fyber.weather.stub.StubWeatherServer;
+
+public class MetricsTest {
+
+	/**
+	 * Tests if the histogram percentiles stay within the bucket precision
+	 * @result Expects p50 and p99 of 1..10000 within 12.5% of 5000 and 9900, and the exact max
+	 */
+
+	@Test
+	public void shouldEstimatePercentilesWithinBucketPrecision() {
+
+		//given
+		LogHistogram histogram = new LogHistogram();
+
+		//when
+		for (int i = 1; i <= 10000; i++) {
+			histogram.record(i);
+		}
+
+		//then
+		assertThat(histogram.getCount()).isEqualTo(10000);
+		assertThat(histogram.getMax()).isEqualTo(10000);
+		assertThat(histogram.getMean()).isEqualTo(5000.5d);
+		assertThat(histogram.percentile(50)).isBetween(5000L, 5625L);
+		assertThat(histogram.percentile(99)).isBetween(9900L, 10000L);
+		assertThat(histogram.percentile(100)).isEqualTo(10000);
+
+	}
+
+	/**
+	 * Tests if blocking and async calls report their timings per endpoint and status
+	 * @result Expects request, ttfb, body read, deserialization and payload size for weather/200, a 502 request,
+	 * connection lease times for both pools and pool gauges
+	 */
+
+	@Test
+	public void shouldRecordTimingsPerEndpointAndStatus() throws IOException, WeatherClientException {
+
+		//given
+		ClientConfig clientConfig = new ClientConfig();
+		SimpleMetricsRegistry registry = new SimpleMetricsRegistry();
+
+		try (StubWeatherServer stubServer = StubWeatherServer.start(clientConfig);
+				WeatherClient weatherClient = new WeatherClient(clientConfig, new RateLimiter(clientConfig), registry)) {
+
+			//when
+			weatherClient.current(2950159);
+			weatherClient.currentAsync(2950159).join();
+			assertThatThrownBy(() -> weatherClient.current("InvalidCity", null));
+
+			//then
+			assertThat(stubServer.getRequestCount()).isEqualTo(3);
+			assertThat(registry.histogram("weather.client.request", "endpoint", "weather", "status", "200").getCount()).isEqualTo(2);
+			assertThat(registry.histogram("weather.client.ttfb", "endpoint", "weather", "status", "200").getCount()).isEqualTo(2);
+			assertThat(registry.histogram("weather.client.body.read", "endpoint", "weather", "status", "200").getCount()).isEqualTo(2);
+			assertThat(registry.histogram("weather.client.deserialization", "endpoint", "weather", "status", "200").getCount()).isEqualTo(2);
+			assertThat(registry.histogram("weather.client.payload.size", "endpoint", "weather", "status", "200").getMax()).isBetween(400L, 500L);
+			assertThat(registry.histogram("weather.client.request", "endpoint", "weather", "status", "502").getCount()).isEqualTo(1);
+			assertThat(registry.histogram("weather.client.deserialization", "endpoint", "weather", "status", "502").getCount()).isZero();
+			assertThat(registry.histogram("weather.client.connection.acquire", "pool", "sync").getCount()).isEqualTo(2);
+			assertThat(registry.histogram("weather.client.connection.acquire", "pool", "async").getCount()).isEqualTo(1);
+			assertThat(registry.gaugeValue("weather.client.pool.leased", "pool", "sync")).isZero();
+			assertThat(registry.gaugeValue("weather.client.bulkhead.in_flight", "endpoint", "weather")).isZero();
+			assertThat(registry.getGaugeValues()).containsKey("weather.client.pool.available{pool=async}");
+		}
+
+	}
+
+	/**
+	 * Tests if a client without rate limit can be built and still reports its metrics
+	 * @result Expects the request to reach the server and be recorded, pool gauges and no rate limit gauge
+	 */
+
+	@Test
+	public void shouldRecordMetricsWithoutRateLimit() throws IOException, WeatherClientException {
+
+		//given
+		ClientConfig clientConfig = new ClientConfig();
+		clientConfig.setRateLimitPerMinute(0);
+		SimpleMetricsRegistry registry = new SimpleMetricsRegistry();
+
+		try (StubWeatherServer stubServer = StubWeatherServer.start(clientConfig);
+				WeatherClient weatherClient = new WeatherClient(clientConfig, new RateLimiter(clientConfig), registry)) {
+
+			//when
+			weatherClient.current(2950159);
+
+			//then
+			assertThat(stubServer.getRequestCount()).isEqualTo(1);
+			assertThat(registry.histogram("weather.client.request", "endpoint", "weather", "status", "200").getCount()).isEqualTo(1);
+			assertThat(registry.getGaugeValues()).containsKey("weather.client.pool.leased{pool=sync}");
+			assertThat(registry.getGaugeValues()).doesNotContainKey("weather.client.rate_limit.available");
+		}
+
+	}
+
+	/**
+	 * Tests if an exchange whose body breaks off after the status was received is recorded once
+	 * @result Expects the failed call to be counted a single time, under its 200 status, and not again as an I/O error
+	 */
+
+	@Test
+	public void shouldRecordBrokenBodyOnce() throws IOException, WeatherClientException {
+
+		//given
+		ClientConfig clientConfig = new ClientConfig();
+		clientConfig.setMaxRetries(0);
+		clientConfig.setSocketTimeout(500);
+		SimpleMetricsRegistry registry = new SimpleMetricsRegistry();
+
+		try (StubWeatherServer stubServer = StubWeatherServer.start(clientConfig);
+				WeatherClient weatherClient = new WeatherClient(clientConfig, new RateLimiter(clientConfig), registry)) {
+			stubServer.breakNext(2);
+
+			//when
+			assertThatThrownBy(() -> weatherClient.current(2950159)).isInstanceOf(WeatherClientException.class);
+			assertThatThrownBy(() -> weatherClient.currentAsync(2950159).join()).hasCauseInstanceOf(WeatherClientException.class);
+
+			//then
+			assertThat(stubServer.getRequestCount()).isEqualTo(2);
+			long ok = registry.histogram("weather.client.request", "endpoint", "weather", "status", "200").getCount();
+			long ioError = registry.histogram("weather.client.request", "endpoint", "weather", "status", "IO_ERROR").getCount();
+			assertThat(ok + ioError).isEqualTo(2);
+		}
+
+	}
+
+}
@@ -0,0 +1,318 @@
+package com.fyber.weather.test;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fyber.weather.domain.Clouds;
+import com.fyber.weather.domain.Coord;
+import com.fyber.weather.domain.Main;
+import com.fyber.weather.domain.Sys;
+import com.fyber.weather.domain.Weather;
+import com.fyber.weather.domain.WeatherResponse;
+import com.fyber.weather.domain.Wind;
+import com.fyber.weather.helper.ObservationStore;
+import com.fyber.weather.helper.ObservationStore.Aggregate;
+import com.fyber.weather.helper.ObservationStore.Column;
+import com.fyber.weather.helper.WeatherJson;
+
+public class ObservationStoreTest {
+
+	private static final int BERLIN = 2950159;
+	private static final int START = 1485789600;
+	private static final int DAY = 86400;
+
+	private Path directory;
+
+	@Before
+	public void createDirectory() throws IOException {
+		directory = Files.createTempDirectory("observations");
+	}
+
+	@After
+	public void deleteDirectory() throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			for (Object file : files.toArray()) {
+				Files.delete((Path) file);
+			}
+		}
+		Files.delete(directory);
+	}
+
+	/**
+	 * 30 days of ten-minute polls of a city, with temperature and wind on a random walk, the values the
+	 * API updates less often than it is polled repeated, and clouds missing now and then.
+	 */
+	private static List<WeatherResponse> history(int cityId, long seed) {
+		Random random = new Random(seed);
+		List<WeatherResponse> history = new ArrayList<WeatherResponse>();
+		double temp = 284.15;
+		double speed = 4.6;
+		int pressure = 1012;
+		for (int i = 0; i < 30 * 144; i++) {
+			if (i % 2 == 0) {
+				temp = Math.round((temp + random.nextGaussian() * 0.3) * 100) / 100d;
+				speed = Math.max(0, Math.round((speed + random.nextGaussian() * 0.5) * 10) / 10d);
+				pressure += random.nextInt(3) - 1;
+			}
+			Main main = new Main();
+			main.setTemp(temp);
+			main.setTempMin(temp - 1);
+			main.setTempMax(temp + 1);
+			main.setPressure(pressure);
+			main.setHumidity(60 + i / 6 % 30);
+			Wind wind = new Wind();
+			wind.setSpeed(speed);
+			wind.setDeg(240 + i / 12 % 8 * 10);
+			Weather weather = new Weather();
+			weather.setId(800);
+			weather.setMain("Clear");
+			weather.setDescription("clear sky");
+			weather.setIcon("01d");
+			Coord coord = new Coord();
+			coord.setLon(13.41);
+			coord.setLat(52.52);
+			Sys sys = new Sys();
+			sys.setCountry("DE");
+			sys.setSunrise(1485759115);
+			sys.setSunset(1485791446);
+			WeatherResponse response = new WeatherResponse();
+			response.setId(cityId);
+			response.setName("Berlin");
+			response.setDt(START + i * 600);
+			response.setCoord(coord);
+			response.setWeather(Collections.singletonList(weather));
+			response.setBase("stations");
+			response.setMain(main);
+			response.setVisibility(10000);
+			response.setWind(wind);
+			if (i % 50 != 0) {
+				Clouds clouds = new Clouds();
+				clouds.setAll(i / 36 % 5 * 20);
+				response.setClouds(clouds);
+			}
+			response.setSys(sys);
+			history.add(response);
+		}
+		return history;
+	}
+
+	/**
+	 * Tests if range scans return exactly what was appended, also after reopening the store
+	 * @result Expects every temperature and cloud cover of a 30 day range back in dt order, missing values
+	 * skipped, and appends after reopening to continue the open block
+	 */
+
+	@Test
+	public void shouldScanWhatWasAppended() throws IOException {
+
+		//given
+		List<WeatherResponse> history = history(BERLIN, 1L);
+		try (ObservationStore store = ObservationStore.open(directory)) {
+			for (WeatherResponse response : history.subList(0, 3000)) {
+				store.append(response);
+			}
+		}
+
+		//when
+		List<String> temps = new ArrayList<String>();
+		List<String> clouds = new ArrayList<String>();
+		try (ObservationStore store = ObservationStore.open(directory)) {
+			for (WeatherResponse response : history.subList(3000, history.size())) {
+				store.append(response);
+			}
+			store.scan(BERLIN, START + DAY, START + 20L * DAY, Column.TEMP, (dt, value) -> temps.add(dt + "=" + value));
+			store.scan(BERLIN, 0, Long.MAX_VALUE, Column.CLOUDS, (dt, value) -> clouds.add(dt + "=" + value));
+
+			//then
+			assertThat(store.count(BERLIN)).isEqualTo(history.size());
+			assertThat(store.getCityIds()).containsExactly(BERLIN);
+		}
+		List<String> expectedTemps = new ArrayList<String>();
+		List<String> expectedClouds = new ArrayList<String>();
+		for (WeatherResponse response : history) {
+			if (response.getDt() >= START + DAY && response.getDt() <= START + 20L * DAY) {
+				expectedTemps.add(response.getDt() + "=" + response.getMain().getTemp());
+			}
+			if (response.getClouds() != null) {
+				expectedClouds.add(response.getDt() + "=" + response.getClouds().getAll().doubleValue());
+			}
+		}
+		assertThat(temps).containsExactlyElementsOf(expectedTemps);
+		assertThat(clouds).containsExactlyElementsOf(expectedClouds);
+
+	}
+
+	/**
+	 * Tests if downsampled aggregates match the raw values, whether taken from block summaries or decoded
+	 * @result Expects daily count, min, max and mean of the pressure and a 30 day mean temperature equal
+	 * to those computed from the responses
+	 */
+
+	@Test
+	public void shouldDownsampleLikeRawValues() throws IOException {
+
+		//given
+		List<WeatherResponse> history = history(BERLIN, 2L);
+		try (ObservationStore store = ObservationStore.open(directory)) {
+			for (WeatherResponse response : history) {
+				store.accept(response);
+			}
+
+			//when
+			List<Aggregate> daily = store.downsample(BERLIN, START, START + 30L * DAY - 1, DAY, Column.PRESSURE);
+			Aggregate month = store.aggregate(BERLIN, START, START + 30L * DAY, Column.TEMP);
+
+			//then
+			assertThat(daily).hasSize(30);
+			for (int day = 0; day < 30; day++) {
+				List<WeatherResponse> ofDay = history.subList(day * 144, (day + 1) * 144);
+				Aggregate aggregate = daily.get(day);
+				assertThat(aggregate.getStart()).isEqualTo(START + (long) day * DAY);
+				assertThat(aggregate.getCount()).isEqualTo(144);
+				assertThat(aggregate.getMin()).isEqualTo(ofDay.stream().mapToDouble(r -> r.getMain().getPressure()).min().getAsDouble());
+				assertThat(aggregate.getMax()).isEqualTo(ofDay.stream().mapToDouble(r -> r.getMain().getPressure()).max().getAsDouble());
+				assertThat(aggregate.getMean()).isCloseTo(ofDay.stream().mapToDouble(r -> r.getMain().getPressure()).average().getAsDouble(), within(1e-9));
+			}
+			assertThat(month.getCount()).isEqualTo(history.size());
+			assertThat(month.getMean()).isCloseTo(history.stream().mapToDouble(r -> r.getMain().getTemp()).average().getAsDouble(), within(1e-9));
+			assertThat(store.aggregate(BERLIN, 0, START - 1, Column.TEMP).getCount()).isZero();
+			assertThat(store.downsample(4183849, 0, Long.MAX_VALUE / 2, DAY, Column.TEMP)).isEmpty();
+		}
+
+	}
+
+	/**
+	 * Tests if the store is at least ten times smaller than the JSON rows it replaces
+	 * @result Expects 30 days of observations to take less than a tenth of their JSON size
+	 */
+
+	@Test
+	public void shouldCompressTenfoldOverJson() throws IOException {
+
+		//given
+		List<WeatherResponse> history = history(BERLIN, 3L);
+		long json = 0;
+		for (WeatherResponse response : history) {
+			json += WeatherJson.gson().toJson(response).getBytes(StandardCharsets.UTF_8).length + 1;
+		}
+
+		//when
+		long stored;
+		try (ObservationStore store = ObservationStore.open(directory)) {
+			for (WeatherResponse response : history) {
+				store.append(response);
+			}
+			stored = store.getDataSize();
+		}
+
+		//then
+		assertThat(stored * 10).isLessThan(json);
+
+	}
+
+	/**
+	 * Tests if observations out of dt order or without ID are skipped
+	 * @result Expects a repeated and an older dt and a response without ID to be rejected and counted
+	 */
+
+	@Test
+	public void shouldSkipOutOfOrderObservations() throws IOException {
+
+		//given
+		List<WeatherResponse> history = history(BERLIN, 4L);
+		WeatherResponse anonymous = history(BERLIN, 4L).get(5);
+		anonymous.setId(null);
+
+		try (ObservationStore store = ObservationStore.open(directory)) {
+
+			//when
+			boolean first = store.append(history.get(1));
+			boolean repeated = store.append(history.get(1));
+			boolean older = store.append(history.get(0));
+			boolean withoutId = store.append(anonymous);
+
+			//then
+			assertThat(first).isTrue();
+			assertThat(repeated).isFalse();
+			assertThat(older).isFalse();
+			assertThat(withoutId).isFalse();
+			assertThat(store.getAppendedCount()).isEqualTo(1);
+			assertThat(store.getSkippedCount()).isEqualTo(3);
+			assertThat(store.count(BERLIN)).isEqualTo(1);
+		}
+
+	}
+
+	/**
+	 * Tests if a crash part way through writing an append, also one that seals a block, leaves the stored points intact
+	 * @result Expects every partially written file to reopen with the points before the append and to accept appends again
+	 */
+
+	@Test
+	public void shouldRecoverFromPartiallyWrittenAppend() throws IOException {
+
+		//given
+		List<WeatherResponse> history = history(BERLIN, 5L);
+		Path file = directory.resolve(BERLIN + ".obs");
+
+		for (int stored : new int[] { 200, ObservationStore.BLOCK_POINTS }) {
+			Files.deleteIfExists(file);
+			try (ObservationStore store = ObservationStore.open(directory)) {
+				for (WeatherResponse response : history.subList(0, stored)) {
+					store.append(response);
+				}
+			}
+			byte[] before = Files.readAllBytes(file);
+			try (ObservationStore store = ObservationStore.open(directory)) {
+				store.append(history.get(stored));
+			}
+			byte[] after = Files.readAllBytes(file);
+			// everything the append wrote past the file header, in file order; the header write commits it
+			List<Integer> written = new ArrayList<Integer>();
+			for (int offset = 24; offset < after.length; offset++) {
+				if (offset >= before.length || before[offset] != after[offset]) {
+					written.add(offset);
+				}
+			}
+			List<String> expected = new ArrayList<String>();
+			for (WeatherResponse response : history.subList(0, stored)) {
+				expected.add(response.getDt() + "=" + response.getMain().getTemp());
+			}
+
+			for (int crash = 0; crash <= written.size(); crash += Math.max(1, written.size() / 16)) {
+				byte[] partial = Arrays.copyOf(before, after.length);
+				for (int offset : written.subList(0, crash)) {
+					partial[offset] = after[offset];
+				}
+				Files.write(file, partial);
+
+				//when
+				List<String> temps = new ArrayList<String>();
+				try (ObservationStore store = ObservationStore.open(directory)) {
+					store.scan(BERLIN, 0, Long.MAX_VALUE, Column.TEMP, (dt, value) -> temps.add(dt + "=" + value));
+
+					//then
+					assertThat(temps).containsExactlyElementsOf(expected);
+					assertThat(store.append(history.get(stored))).isTrue();
+					assertThat(store.count(BERLIN)).isEqualTo(stored + 1);
+				}
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,236 @@
+package com.fyber.weather.test;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fyber.weather.domain.WeatherResponse;
+import com.fyber.weather.helper.CircuitBreaker;
+import com.fyber.weather.helper.ClientConfig;
+import com.fyber.weather.helper.Futures;
+import com.fyber.weather.helper.RateLimiter;
+import com.fyber.weather.helper.RequestPolicy;
+import com.fyber.weather.helper.SimpleMetricsRegistry;
+import com.fyber.weather.helper.WeatherClient;
+import com.fyber.weather.helper.WeatherClientException;
+import com.fyber.weather.stub.StubWeatherServer;
+
+public class RequestPolicyTest {
+
+	private ClientConfig clientConfig;
+	private StubWeatherServer stubServer;
+	private WeatherClient weatherClient;
+	private RequestPolicy policy;
+
+	@Before
+	public void startServer() throws IOException {
+		clientConfig = new ClientConfig();
+		stubServer = StubWeatherServer.start(clientConfig);
+		weatherClient = new WeatherClient(clientConfig);
+		policy = new RequestPolicy(clientConfig);
+		policy.setBackoffMillis(10);
+		policy.setMaxBackoffMillis(20);
+		weatherClient.setPolicy("weather", policy);
+	}
+
+	@After
+	public void stopServer() throws IOException {
+		weatherClient.close();
+		stubServer.close();
+	}
+
+	/**
+	 * Tests if retryable errors are retried until the server answers
+	 * @result Expects Berlin after two 503 answers and three requests in total
+	 */
+
+	@Test
+	public void shouldRetryUntilSuccess() throws WeatherClientException {
+
+		//given
+		policy.setMaxRetries(2);
+		stubServer.failNext(2, 503);
+
+		//when
+		WeatherResponse berlin = weatherClient.current(2950159);
+
+		//then
+		assertThat(berlin.getName()).isEqualTo("Berlin");
+		assertThat(stubServer.getRequestCount()).isEqualTo(3);
+		assertThat(stubServer.getStatusCounts()).containsEntry(503, 2L);
+
+	}
+
+	/**
+	 * Tests if an attempt is not allowed to wait for data past the total timeout, even with a longer socket timeout
+	 * @result Expects a socket timeout well before the slow answer arrives, and no retry after the deadline
+	 */
+
+	@Test
+	public void shouldStopWaitingAtDeadline() {
+
+		//given
+		policy.setMaxRetries(2);
+		policy.setSocketTimeout(10000);
+		policy.setTotalTimeoutMillis(300);
+		stubServer.setLatency(2000, 0);
+		long start = System.currentTimeMillis();
+
+		//when
+		Throwable thrown = catchThrowable(() -> weatherClient.current(2950159));
+
+		//then
+		assertThat(thrown).isInstanceOf(WeatherClientException.class).hasCauseInstanceOf(SocketTimeoutException.class);
+		assertThat(System.currentTimeMillis() - start).isLessThan(1500);
+		assertThat(stubServer.getRequestCount()).isEqualTo(1);
+
+	}
+
+	/**
+	 * Tests if a hedge answers a call whose first attempt is stuck on a slow answer
+	 * @result Expects Berlin long before the slow answer is due, from the second of two requests
+	 */
+
+	@Test
+	public void shouldAnswerFromHedgeWhenFirstAttemptIsSlow() {
+
+		//given
+		policy.setHedgePercentile(95);
+		policy.setHedgeMinDelayMillis(50);
+		policy.setHedgeBudgetPercent(100);
+		stubServer.delayNext(1, 3000);
+		long start = System.currentTimeMillis();
+
+		//when
+		WeatherResponse berlin = weatherClient.currentAsync(2950159).join();
+
+		//then
+		assertThat(berlin.getName()).isEqualTo("Berlin");
+		assertThat(System.currentTimeMillis() - start).isLessThan(1500);
+		assertThat(stubServer.getRequestCount()).isEqualTo(2);
+		assertThat(weatherClient.getLatencyTracker("weather").getHedgeCount()).isEqualTo(1);
+
+	}
+
+	/**
+	 * Tests if callers waiting for a rate limit permit leave the bulkhead to the calls being sent
+	 * @result Expects two callers queued behind the limit of a single-permit bulkhead to both succeed, with
+	 * the bulkhead empty while they wait
+	 */
+
+	@Test
+	public void shouldWaitForRateLimitBeforeTakingBulkhead() throws Exception {
+
+		//given
+		ClientConfig limited = new ClientConfig();
+		limited.setBaseURL(clientConfig.getBaseURL());
+		limited.setRateLimitPerMinute(120);
+		limited.setRateLimitBurst(1);
+		limited.setBulkheadMaxConcurrent(1);
+		ExecutorService callers = Executors.newFixedThreadPool(2);
+
+		try (WeatherClient limitedClient = new WeatherClient(limited, new RateLimiter(limited))) {
+			limitedClient.current(2950159);
+
+			//when
+			Future<WeatherResponse> second = callers.submit(() -> limitedClient.current(2950159));
+			Future<WeatherResponse> third = callers.submit(() -> limitedClient.current(2950159));
+			Thread.sleep(200);
+
+			//then
+			assertThat(limitedClient.getBulkhead("weather").getInFlight()).isZero();
+			assertThat(second.get().getName()).isEqualTo("Berlin");
+			assertThat(third.get().getName()).isEqualTo("Berlin");
+			assertThat(limitedClient.getBulkhead("weather").getRejectedCount()).isZero();
+		} finally {
+			callers.shutdown();
+		}
+
+	}
+
+	/**
+	 * Tests if cancelling an async call, or failing it through Futures.within, aborts its exchange and frees its permit
+	 * @result Expects the bulkhead permit back right away and no async connection left leased, long before the slow
+	 * answers are due
+	 */
+
+	@Test
+	public void shouldAbortExchangeAndReleaseBulkheadOnCancelOrTimeout() throws Exception {
+
+		//given
+		SimpleMetricsRegistry registry = new SimpleMetricsRegistry();
+		stubServer.setLatency(5000, 0);
+
+		try (WeatherClient client = new WeatherClient(clientConfig, new RateLimiter(clientConfig), registry)) {
+			CompletableFuture<WeatherResponse> cancelled = client.currentAsync(2950159);
+			CompletableFuture<WeatherResponse> timedOut = Futures.within(client.currentAsync(2911288), 200, TimeUnit.MILLISECONDS);
+			awaitRequests(2);
+			assertThat(client.getBulkhead("weather").getInFlight()).isEqualTo(2);
+			assertThat(registry.gaugeValue("weather.client.pool.leased", "pool", "async")).isEqualTo(2);
+
+			//when
+			cancelled.cancel(true);
+
+			//then
+			assertThatThrownBy(cancelled::join).isInstanceOf(CancellationException.class);
+			assertThatThrownBy(timedOut::join).isInstanceOf(CompletionException.class).hasCauseInstanceOf(TimeoutException.class);
+			assertThat(client.getBulkhead("weather").getInFlight()).isZero();
+			long deadline = System.currentTimeMillis() + 2000;
+			while (registry.gaugeValue("weather.client.pool.leased", "pool", "async") > 0 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+			assertThat(registry.gaugeValue("weather.client.pool.leased", "pool", "async")).isZero();
+		}
+
+	}
+
+	/**
+	 * Tests if a 200 answer that is not JSON, such as a proxy's error page, fails as a malformed response
+	 * @result Expects a single attempt despite retries being allowed, and the failure not counted by a breaker
+	 * that opens on the first counted failure
+	 */
+
+	@Test
+	public void shouldNotRetryOrCountMalformedBody() throws IOException {
+
+		//given
+		ClientConfig strict = new ClientConfig();
+		strict.setBaseURL(clientConfig.getBaseURL());
+		strict.setMaxRetries(2);
+		strict.setBreakerMinimumCalls(1);
+		stubServer.answerNext(1, 200, "<html>");
+
+		try (WeatherClient strictClient = new WeatherClient(strict)) {
+
+			//when
+			Throwable thrown = catchThrowable(() -> strictClient.current(2950159));
+
+			//then
+			assertThat(thrown).isInstanceOf(WeatherClientException.class).hasMessageStartingWith("Malformed response");
+			assertThat(stubServer.getRequestCount()).isEqualTo(1);
+			assertThat(strictClient.getCircuitBreaker("weather").getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+		}
+
+	}
+
+	private void awaitRequests(long count) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 2000;
+		while (stubServer.getRequestCount() < count && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+	}
+
+}
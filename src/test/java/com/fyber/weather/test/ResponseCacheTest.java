@@ -0,0 +1,160 @@
+package com.fyber.weather.test;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import com.fyber.weather.helper.ResponseCache;
+import com.fyber.weather.helper.WeatherQuery;
+
+public class ResponseCacheTest {
+
+	private final AtomicLong now = new AtomicLong(1000);
+	private final AtomicInteger loads = new AtomicInteger();
+
+	private CompletableFuture<String> load(WeatherQuery query) {
+		loads.incrementAndGet();
+		return CompletableFuture.completedFuture(query.toString());
+	}
+
+	/**
+	 * Tests if entries are served until their TTL elapses and reloaded afterwards
+	 * @result Expects one load before expiry and a second one after it
+	 */
+
+	@Test
+	public void shouldServeCachedValueUntilTTLExpires() {
+
+		//given
+		ResponseCache<String> cache = new ResponseCache<String>(10, 600000, now::get);
+		WeatherQuery berlin = WeatherQuery.byId(2950159);
+
+		//when
+		cache.get(berlin, this::load).join();
+		now.addAndGet(599999);
+		cache.get(berlin, this::load).join();
+
+		//then
+		assertThat(loads.get()).isEqualTo(1);
+		assertThat(cache.getHitCount()).isEqualTo(1);
+
+		//when
+		now.addAndGet(1);
+		cache.get(berlin, this::load).join();
+
+		//then
+		assertThat(loads.get()).isEqualTo(2);
+		assertThat(cache.getExpirationCount()).isEqualTo(1);
+
+	}
+
+	/**
+	 * Tests if the least recently used entry is evicted once the cache is full
+	 * @result Expects Hamburg to be evicted while the recently read Berlin stays cached
+	 */
+
+	@Test
+	public void shouldEvictLeastRecentlyUsedEntry() {
+
+		//given
+		ResponseCache<String> cache = new ResponseCache<String>(2, 600000, now::get);
+		WeatherQuery berlin = WeatherQuery.byId(2950159);
+		WeatherQuery hamburg = WeatherQuery.byId(2911288);
+		WeatherQuery koln = WeatherQuery.byId(2886241);
+
+		//when
+		cache.put(berlin, "berlin");
+		cache.put(hamburg, "hamburg");
+		cache.getIfPresent(berlin);
+		cache.put(koln, "koln");
+
+		//then
+		assertThat(cache.getIfPresent(hamburg)).isNull();
+		assertThat(cache.getIfPresent(berlin)).isEqualTo("berlin");
+		assertThat(cache.getEvictionCount()).isEqualTo(1);
+
+	}
+
+	/**
+	 * Tests if concurrent misses for the same query share one upstream load
+	 * @result Expects a single load and both callers receiving its value
+	 */
+
+	@Test
+	public void shouldCoalesceConcurrentMisses() {
+
+		//given
+		ResponseCache<String> cache = new ResponseCache<String>(10, 600000, now::get);
+		WeatherQuery berlin = WeatherQuery.byId(2950159).withUnits("metric");
+		CompletableFuture<String> upstream = new CompletableFuture<String>();
+
+		//when
+		CompletableFuture<String> first = cache.get(berlin, query -> {
+			loads.incrementAndGet();
+			return upstream;
+		});
+		CompletableFuture<String> second = cache.get(WeatherQuery.byId(2950159).withUnits("metric"), this::load);
+		upstream.complete("berlin");
+
+		//then
+		assertThat(first.join()).isEqualTo("berlin");
+		assertThat(second.join()).isEqualTo("berlin");
+		assertThat(loads.get()).isEqualTo(1);
+		assertThat(cache.getCoalescedCount()).isEqualTo(1);
+
+	}
+
+	/**
+	 * Tests if the listener is told about changes in order while other threads keep using the cache
+	 * @result Expects a lookup from another thread to finish while the listener handles a put, and the
+	 * listener to see put, remove and clear in the order they were made
+	 */
+
+	@Test
+	public void shouldNotifyListenerInOrderOutsideCacheLock() throws Exception {
+
+		//given
+		ResponseCache<String> cache = new ResponseCache<String>(10, 600000, now::get);
+		WeatherQuery berlin = WeatherQuery.byId(2950159);
+		List<String> seen = new ArrayList<String>();
+		cache.setListener(new ResponseCache.Listener<String>() {
+
+			@Override
+			public void onPut(WeatherQuery key, String value, long expiresAt) {
+				seen.add("put " + value);
+				// would wait forever if the cache lock were still held
+				seen.add("lookup " + CompletableFuture.supplyAsync(() -> cache.getIfPresent(key)).join());
+			}
+
+			@Override
+			public void onRemove(WeatherQuery key) {
+				seen.add("remove");
+			}
+
+			@Override
+			public void onClear() {
+				seen.add("clear");
+			}
+		});
+
+		//when
+		CompletableFuture<Void> changes = CompletableFuture.runAsync(() -> {
+			cache.put(berlin, "Berlin");
+			cache.invalidate(berlin);
+			cache.clear();
+		});
+
+		//then
+		changes.get(5, TimeUnit.SECONDS);
+		assertThat(seen).containsExactly("put Berlin", "lookup Berlin", "remove", "clear");
+
+	}
+
+}
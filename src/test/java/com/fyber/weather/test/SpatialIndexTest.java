@@ -0,0 +1,159 @@
+package com.fyber.weather.test;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Test;
+
+import com.fyber.weather.domain.Coord;
+import com.fyber.weather.domain.WeatherResponse;
+import com.fyber.weather.helper.SpatialIndex;
+import com.fyber.weather.helper.WeatherQuery;
+import com.fyber.weather.helper.WeatherSource;
+
+public class SpatialIndexTest {
+
+	private static WeatherResponse city(int id, double lat, double lon) {
+		Coord coord = new Coord();
+		coord.setLat(lat);
+		coord.setLon(lon);
+		WeatherResponse response = new WeatherResponse();
+		response.setId(id);
+		response.setCoord(coord);
+		return response;
+	}
+
+	private static List<WeatherResponse> randomCities(int count, long seed) {
+		Random random = new Random(seed);
+		List<WeatherResponse> cities = new ArrayList<WeatherResponse>();
+		for (int id = 1; id <= count; id++) {
+			cities.add(city(id, random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180));
+		}
+		return cities;
+	}
+
+	/**
+	 * Tests if k-nearest answers match a brute force scan by great-circle distance
+	 * @result Expects the same 10 IDs in the same order for 200 random query points over 5000 cities
+	 */
+
+	@Test
+	public void shouldFindNearestCitiesLikeBruteForce() {
+
+		//given
+		List<WeatherResponse> cities = randomCities(5000, 7L);
+		SpatialIndex index = SpatialIndex.of(cities);
+		Random random = new Random(11L);
+
+		for (int query = 0; query < 200; query++) {
+			double lat = random.nextDouble() * 180 - 90;
+			double lon = random.nextDouble() * 360 - 180;
+
+			//when
+			int[] nearest = index.nearest(lat, lon, 10);
+
+			//then
+			int[] expected = cities.stream()
+					.sorted(Comparator.comparingDouble(c -> SpatialIndex.distanceKm(lat, lon, c.getCoord().getLat(), c.getCoord().getLon())))
+					.limit(10).mapToInt(WeatherResponse::getId).toArray();
+			assertThat(nearest).containsExactly(expected);
+		}
+
+	}
+
+	/**
+	 * Tests if the nearest city is found across the antimeridian and bounding boxes may wrap around it
+	 * @result Expects Fiji's neighbour across 180° to win over a farther city on the same side, and the wrapped box
+	 * to hold exactly the two cities near the antimeridian
+	 */
+
+	@Test
+	public void shouldHandleAntimeridian() {
+
+		//given
+		SpatialIndex index = SpatialIndex.of(Arrays.asList(
+				city(1, -17.8, 179.9),
+				city(2, -17.8, -179.9),
+				city(3, -17.8, 175.0),
+				city(4, 52.52, 13.41)));
+
+		//then
+		assertThat(index.nearest(-17.8, -179.95, 2)).containsExactly(2, 1);
+		assertThat(index.within(-20, 179, -15, -179)).containsExactlyInAnyOrder(1, 2);
+		assertThat(index.within(50, 10, 55, 15)).containsExactly(4);
+		assertThat(index.nearest(0, 0, 10)).hasSize(4);
+
+	}
+
+	/**
+	 * Tests if bounding box answers match a brute force scan
+	 * @result Expects the same IDs for a box over central Europe in 5000 random cities
+	 */
+
+	@Test
+	public void shouldFindCitiesWithinBoxLikeBruteForce() {
+
+		//given
+		List<WeatherResponse> cities = randomCities(5000, 3L);
+		SpatialIndex index = SpatialIndex.of(cities);
+
+		//when
+		int[] within = index.within(-30, -40, 45, 60);
+
+		//then
+		int[] expected = cities.stream()
+				.filter(c -> c.getCoord().getLat() >= -30 && c.getCoord().getLat() <= 45 && c.getCoord().getLon() >= -40 && c.getCoord().getLon() <= 60)
+				.mapToInt(WeatherResponse::getId).toArray();
+		assertThat(within).containsExactlyInAnyOrder(expected);
+
+	}
+
+	/**
+	 * Tests if spatial results are fetched as /group requests of at most 20 IDs
+	 * @result Expects 45 IDs to go out as three group queries of 20, 20 and 5 and come back in order
+	 */
+
+	@Test
+	public void shouldFetchIdsInGroupBatches() {
+
+		//given
+		List<WeatherQuery> queries = new ArrayList<WeatherQuery>();
+		WeatherSource source = new WeatherSource() {
+
+			@Override
+			public CompletableFuture<WeatherResponse> currentAsync(WeatherQuery query) {
+				throw new AssertionError();
+			}
+
+			@Override
+			public synchronized CompletableFuture<List<WeatherResponse>> groupAsync(WeatherQuery query) {
+				queries.add(query);
+				List<WeatherResponse> responses = new ArrayList<WeatherResponse>();
+				for (int id : query.getCityIds()) {
+					responses.add(city(id, 0, 0));
+				}
+				return CompletableFuture.completedFuture(responses);
+			}
+		};
+		int[] ids = new int[45];
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = 1000 + i;
+		}
+
+		//when
+		List<WeatherResponse> responses = SpatialIndex.fetch(source, ids, "metric").join();
+
+		//then
+		assertThat(queries).extracting(query -> query.getCityIds().length).containsExactly(20, 20, 5);
+		assertThat(queries).extracting(WeatherQuery::getUnits).containsOnly("metric");
+		assertThat(responses).extracting(WeatherResponse::getId).containsExactly(Arrays.stream(ids).boxed().toArray(Integer[]::new));
+
+	}
+
+}
@@ -0,0 +1,203 @@
+package com.fyber.weather.test;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fyber.weather.domain.WeatherResponse;
+import com.fyber.weather.helper.ClientConfig;
+import com.fyber.weather.helper.WeatherClient;
+import com.fyber.weather.helper.WeatherClientException;
+import com.fyber.weather.stub.StubWeatherServer;
+
+public class StubWeatherServerTest {
+
+	private ClientConfig clientConfig;
+	private StubWeatherServer stubServer;
+	private WeatherClient weatherClient;
+
+	@Before
+	public void startServer() throws IOException {
+		clientConfig = new ClientConfig();
+		clientConfig.setMaxRetries(0);
+		stubServer = StubWeatherServer.start(clientConfig);
+		weatherClient = new WeatherClient(clientConfig);
+	}
+
+	@After
+	public void stopServer() throws IOException {
+		weatherClient.close();
+		stubServer.close();
+	}
+
+	/**
+	 * Tests if the stub serves the recorded fixtures by ID, by name and by name and country
+	 * @result Expects cod 200 and Berlin for all three lookups
+	 */
+
+	@Test
+	public void shouldServeRecordedCityByIdAndName() throws WeatherClientException {
+
+		//when
+		WeatherResponse byId = weatherClient.current(2950159);
+		WeatherResponse byName = weatherClient.current("Berlin", "DE");
+
+		//then
+		assertThat(clientConfig.getBaseURL()).startsWith("http://127.0.0.1:");
+		assertThat(byId.getCod()).isEqualTo(200);
+		assertThat(byId.getName()).isEqualTo("Berlin");
+		assertThat(byName.getId()).isEqualTo(2950159);
+
+	}
+
+	/**
+	 * Tests if metric and imperial answers are derived from the Kelvin fixture
+	 * @result Expects 284.15K to be served as 11C and 51.8F
+	 */
+
+	@Test
+	public void shouldConvertUnits() throws WeatherClientException {
+
+		//when
+		WeatherResponse metric = weatherClient.current(2950159, clientConfig.getMetricUnit());
+		WeatherResponse imperial = weatherClient.current(2950159, clientConfig.getImperialUnit());
+
+		//then
+		assertThat(metric.getMain().getTemp()).isEqualTo(11d);
+		assertThat(imperial.getMain().getTemp()).isEqualTo(51.8d);
+		assertThat(imperial.getWind().getSpeed()).isEqualTo(10.29d);
+
+	}
+
+	/**
+	 * Tests if /group skips unknown IDs and serves synthetic cities
+	 * @result Expects two cities out of three requested IDs
+	 */
+
+	@Test
+	public void shouldServeGroupSkippingUnknownIds() throws WeatherClientException {
+
+		//given
+		stubServer.addSyntheticCities(1000, 10, 42L);
+
+		//when
+		List<WeatherResponse> group = weatherClient.group(2950159, 1005, 999);
+
+		//then
+		assertThat(group).extracting(WeatherResponse::getId).containsExactly(2950159, 1005);
+
+	}
+
+	/**
+	 * Tests if an invalid key answers 401 and an unknown city 502, like the real API
+	 * @result Expects "Invalid API key." with 401 and "Not found city" with 502
+	 */
+
+	@Test
+	public void shouldAnswerInvalidKeyAndUnknownCityLikeTheApi() throws IOException {
+
+		//given
+		ClientConfig badKeyConfig = new ClientConfig();
+		badKeyConfig.setBaseURL(clientConfig.getBaseURL());
+		badKeyConfig.setApiKey(clientConfig.getBadApiKey());
+
+		//when
+		try (WeatherClient badKeyClient = new WeatherClient(badKeyConfig)) {
+
+			//then
+			assertThatThrownBy(() -> badKeyClient.current(2950159))
+					.isInstanceOf(WeatherClientException.class)
+					.hasMessageContaining("Invalid API key.")
+					.extracting("statusCode").containsExactly(401);
+		}
+		assertThatThrownBy(() -> weatherClient.current("InvalidCity", null))
+				.isInstanceOf(WeatherClientException.class)
+				.hasMessageContaining("Not found city")
+				.extracting("statusCode").containsExactly(502);
+
+	}
+
+	/**
+	 * Tests if injected errors and the throughput cap are applied
+	 * @result Expects 503 while the error rate is 1, then 429 once the per-second cap is used up
+	 */
+
+	@Test
+	public void shouldInjectErrorsAndCapThroughput() throws WeatherClientException {
+
+		//given
+		stubServer.setErrorRate(1, 503);
+
+		//then
+		assertThatThrownBy(() -> weatherClient.current(2950159))
+				.extracting("statusCode").containsExactly(503);
+
+		//given
+		stubServer.setErrorRate(0, 503);
+		stubServer.setThroughputCap(1);
+
+		//when
+		weatherClient.current(2950159);
+
+		//then
+		assertThatThrownBy(() -> weatherClient.current(2950159))
+				.extracting("statusCode").containsExactly(429);
+		assertThat(stubServer.getStatusCounts()).containsEntry(429, 1L);
+
+	}
+
+	/**
+	 * Tests if pooled keep-alive connections are reused and stay within the per-route limit
+	 * @result Expects 20 sequential requests over one connection, and 80 requests from eight threads over no
+	 * more than the four connections allowed
+	 */
+
+	@Test
+	public void shouldReuseConnectionsWithinPoolLimit() throws Exception {
+
+		//given
+		ClientConfig pooled = new ClientConfig();
+		pooled.setBaseURL(clientConfig.getBaseURL());
+		pooled.setMaxConnectionsPerRoute(4);
+		pooled.setRateLimitPerMinute(0);
+		ExecutorService callers = Executors.newFixedThreadPool(8);
+
+		try (WeatherClient pooledClient = new WeatherClient(pooled)) {
+
+			//when
+			for (int i = 0; i < 20; i++) {
+				pooledClient.current(2950159);
+			}
+
+			//then
+			assertThat(stubServer.getRequestCount()).isEqualTo(20);
+			assertThat(stubServer.getConnectionCount()).isEqualTo(1);
+
+			//when
+			List<Future<?>> calls = new ArrayList<Future<?>>();
+			for (int i = 0; i < 80; i++) {
+				calls.add(callers.submit(() -> pooledClient.current(2950159)));
+			}
+			for (Future<?> call : calls) {
+				call.get();
+			}
+
+			//then
+			assertThat(stubServer.getRequestCount()).isEqualTo(100);
+			assertThat(stubServer.getConnectionCount()).isBetween(1, 4);
+		} finally {
+			callers.shutdown();
+		}
+
+	}
+
+}
@@ -0,0 +1,64 @@
+package com.fyber.weather.test;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import com.fyber.weather.helper.TokenBucket;
+
+public class TokenBucketTest {
+
+	private final AtomicLong nanos = new AtomicLong();
+
+	/**
+	 * Tests if a 60 calls per minute bucket lets the burst through and then spaces calls one second apart
+	 * @result Expects two immediate permits, then waits of one and two seconds for queued calls
+	 */
+
+	@Test
+	public void shouldQueueCallsBeyondBurstAtConfiguredRate() {
+
+		//given
+		TokenBucket bucket = new TokenBucket(60, 2, nanos::get);
+		long maxWait = TimeUnit.MINUTES.toNanos(1);
+
+		//then
+		assertThat(bucket.reserve(maxWait)).isZero();
+		assertThat(bucket.reserve(maxWait)).isZero();
+		assertThat(bucket.reserve(maxWait)).isEqualTo(TimeUnit.SECONDS.toNanos(1));
+		assertThat(bucket.reserve(maxWait)).isEqualTo(TimeUnit.SECONDS.toNanos(2));
+		assertThat(bucket.getDelayedCount()).isEqualTo(2);
+		assertThat(bucket.getTotalWaitNanos()).isEqualTo(TimeUnit.SECONDS.toNanos(3));
+
+	}
+
+	/**
+	 * Tests if fail-fast mode rejects calls once the bucket is empty and accepts them again after refill
+	 * @result Expects a rejection while empty and a permit one second later
+	 */
+
+	@Test
+	public void shouldRejectWhenEmptyInFailFastMode() {
+
+		//given
+		TokenBucket bucket = new TokenBucket(60, 1, nanos::get);
+
+		//when
+		bucket.reserve(0);
+
+		//then
+		assertThat(bucket.reserve(0)).isEqualTo(-1);
+		assertThat(bucket.getRejectedCount()).isEqualTo(1);
+
+		//when
+		nanos.addAndGet(TimeUnit.SECONDS.toNanos(1));
+
+		//then
+		assertThat(bucket.reserve(0)).isZero();
+
+	}
+
+}
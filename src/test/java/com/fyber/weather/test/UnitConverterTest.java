@@ -0,0 +1,130 @@
+package com.fyber.weather.test;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.fyber.weather.domain.Main;
+import com.fyber.weather.domain.WeatherResponse;
+import com.fyber.weather.domain.Wind;
+import com.fyber.weather.helper.CachingWeatherClient;
+import com.fyber.weather.helper.ClientConfig;
+import com.fyber.weather.helper.ResponseCache;
+import com.fyber.weather.helper.UnitConverter;
+import com.fyber.weather.helper.WeatherClient;
+import com.fyber.weather.helper.WeatherQuery;
+import com.fyber.weather.stub.StubWeatherServer;
+
+public class UnitConverterTest {
+
+	/**
+	 * Tests if temperatures and wind speeds are converted exactly and rounded like the API
+	 * @result Expects decimal results without binary noise, half up rounding to two decimals and null to stay null
+	 */
+
+	@Test
+	public void shouldConvertExactly() {
+
+		//then
+		assertThat(UnitConverter.celsius(284.15)).isEqualTo(11d);
+		assertThat(UnitConverter.fahrenheit(284.15)).isEqualTo(51.8d);
+		assertThat(UnitConverter.celsius(273.15)).isEqualTo(0d);
+		assertThat(UnitConverter.fahrenheit(255.37)).isEqualTo(0d);
+		assertThat(UnitConverter.celsius(0d)).isEqualTo(-273.15d);
+		assertThat(UnitConverter.fahrenheit(0d)).isEqualTo(-459.67d);
+		assertThat(UnitConverter.celsius(288.71)).isEqualTo(15.56d);
+		assertThat(UnitConverter.fahrenheit(288.71)).isEqualTo(60.01d);
+		assertThat(UnitConverter.fahrenheit(273.4)).isEqualTo(32.45d);
+		assertThat(UnitConverter.milesPerHour(4.6)).isEqualTo(10.29d);
+		assertThat(UnitConverter.milesPerHour(1.5)).isEqualTo(3.36d);
+		assertThat(UnitConverter.milesPerHour(0d)).isEqualTo(0d);
+		assertThat(UnitConverter.celsius(null)).isNull();
+		assertThat(UnitConverter.milesPerHour(null)).isNull();
+
+	}
+
+	/**
+	 * Tests if a converted response is a copy that leaves the standard one untouched
+	 * @result Expects converted main and wind, shared other fields and the original to keep Kelvin and m/s
+	 */
+
+	@Test
+	public void shouldConvertCopyOfResponse() {
+
+		//given
+		Main main = new Main();
+		main.setTemp(284.15);
+		main.setTempMin(283.15);
+		main.setTempMax(285.15);
+		main.setPressure(1012);
+		Wind wind = new Wind();
+		wind.setSpeed(4.6);
+		wind.setDeg(240);
+		WeatherResponse standard = new WeatherResponse();
+		standard.setId(2950159);
+		standard.setName("Berlin");
+		standard.setMain(main);
+		standard.setWind(wind);
+
+		//when
+		WeatherResponse imperial = UnitConverter.convert(standard, UnitConverter.IMPERIAL);
+		WeatherResponse metric = UnitConverter.convert(standard, UnitConverter.METRIC);
+
+		//then
+		assertThat(imperial.getMain().getTemp()).isEqualTo(51.8d);
+		assertThat(imperial.getMain().getTempMin()).isEqualTo(50d);
+		assertThat(imperial.getMain().getTempMax()).isEqualTo(53.6d);
+		assertThat(imperial.getMain().getPressure()).isEqualTo(1012);
+		assertThat(imperial.getWind().getSpeed()).isEqualTo(10.29d);
+		assertThat(imperial.getWind().getDeg()).isEqualTo(240);
+		assertThat(imperial.getName()).isEqualTo("Berlin");
+		assertThat(metric.getMain().getTempMin()).isEqualTo(10d);
+		assertThat(metric.getWind().getSpeed()).isEqualTo(4.6d);
+		assertThat(standard.getMain().getTemp()).isEqualTo(284.15d);
+		assertThat(standard.getWind().getSpeed()).isEqualTo(4.6d);
+		assertThat(UnitConverter.convert(standard, null)).isSameAs(standard);
+		assertThat(UnitConverter.convert(standard, UnitConverter.STANDARD)).isSameAs(standard);
+
+	}
+
+	/**
+	 * Tests if the caching client serves Kelvin, Celsius and Fahrenheit from a single upstream call per city
+	 * @result Expects one request for the single city and one for the group, with values equal to what the
+	 * upstream answers when asked for each unit system
+	 */
+
+	@Test
+	public void shouldServeEveryUnitSystemFromOneCacheEntry() throws IOException {
+
+		//given
+		ClientConfig clientConfig = new ClientConfig();
+		clientConfig.setMaxRetries(0);
+		try (StubWeatherServer stubServer = StubWeatherServer.start(clientConfig);
+				WeatherClient weatherClient = new WeatherClient(clientConfig)) {
+			CachingWeatherClient cachingClient = new CachingWeatherClient(weatherClient, new ResponseCache<WeatherResponse>(clientConfig));
+
+			//when
+			WeatherResponse kelvin = cachingClient.currentAsync(2950159).join();
+			WeatherResponse celsius = cachingClient.currentAsync(2950159, clientConfig.getMetricUnit()).join();
+			WeatherResponse fahrenheit = cachingClient.currentAsync(2950159, clientConfig.getImperialUnit()).join();
+			List<WeatherResponse> group = cachingClient.groupAsync(WeatherQuery.group(2911288, 2950159)
+					.withUnits(clientConfig.getImperialUnit())).join();
+
+			//then
+			assertThat(stubServer.getRequestCount()).isEqualTo(2);
+			assertThat(kelvin.getMain().getTemp()).isEqualTo(284.15d);
+			assertThat(celsius.getMain().getTemp()).isEqualTo(weatherClient.currentAsync(2950159, clientConfig.getMetricUnit()).join().getMain().getTemp());
+			WeatherResponse upstream = weatherClient.currentAsync(2950159, clientConfig.getImperialUnit()).join();
+			assertThat(fahrenheit.getMain().getTemp()).isEqualTo(upstream.getMain().getTemp());
+			assertThat(fahrenheit.getWind().getSpeed()).isEqualTo(upstream.getWind().getSpeed());
+			assertThat(group).extracting(WeatherResponse::getId).containsExactly(2911288, 2950159);
+			assertThat(group.get(1).getMain().getTemp()).isEqualTo(upstream.getMain().getTemp());
+			assertThat(cachingClient.getCache().size()).isEqualTo(2);
+		}
+
+	}
+
+}
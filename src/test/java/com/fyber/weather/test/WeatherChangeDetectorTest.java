@@ -0,0 +1,181 @@
+package com.fyber.weather.test;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.fyber.weather.domain.Main;
+import com.fyber.weather.domain.Weather;
+import com.fyber.weather.domain.WeatherDelta;
+import com.fyber.weather.domain.WeatherDelta.Field;
+import com.fyber.weather.domain.WeatherResponse;
+import com.fyber.weather.helper.WeatherChangeDetector;
+
+public class WeatherChangeDetectorTest {
+
+	private static WeatherResponse observation(int cityId, int dt, double temp, int condition) {
+		Main main = new Main();
+		main.setTemp(temp);
+		main.setHumidity(80);
+		Weather weather = new Weather();
+		weather.setId(condition);
+		WeatherResponse response = new WeatherResponse();
+		response.setId(cityId);
+		response.setDt(dt);
+		response.setMain(main);
+		response.setWeather(Collections.singletonList(weather));
+		return response;
+	}
+
+	/**
+	 * Subscriber that records deltas and requests a fixed amount up front.
+	 */
+	private static final class Recorder implements WeatherChangeDetector.Subscriber {
+
+		private final List<WeatherDelta> received = new ArrayList<WeatherDelta>();
+		private final long initialDemand;
+		private WeatherChangeDetector.Subscription subscription;
+
+		private Recorder(long initialDemand) {
+			this.initialDemand = initialDemand;
+		}
+
+		@Override
+		public void onSubscribe(WeatherChangeDetector.Subscription subscription) {
+			this.subscription = subscription;
+			if (initialDemand > 0) {
+				subscription.request(initialDemand);
+			}
+		}
+
+		@Override
+		public void onNext(WeatherDelta delta) {
+			received.add(delta);
+		}
+	}
+
+	/**
+	 * Tests if only changed fields are emitted and repeated observations are skipped
+	 * @result Expects the first observation in full, nothing for a repeated dt or identical values, then
+	 * a temperature delta of +1.5 and a condition change from 800 to 500
+	 */
+
+	@Test
+	public void shouldEmitOnlyChanges() {
+
+		//given
+		WeatherChangeDetector detector = new WeatherChangeDetector();
+		Recorder recorder = new Recorder(Long.MAX_VALUE);
+		detector.subscribe(recorder, 100);
+
+		//when
+		detector.accept(observation(2950159, 1000, 284.15, 800));
+
+		//then
+		assertThat(recorder.received).extracting(WeatherDelta::getField).containsExactly(Field.TEMP, Field.HUMIDITY, Field.CONDITION);
+		assertThat(recorder.received).extracting(WeatherDelta::getPrevious).containsExactly(null, null, null);
+
+		//when
+		recorder.received.clear();
+		detector.accept(observation(2950159, 1000, 290.0, 500));
+		detector.accept(observation(2950159, 1600, 284.15, 800));
+		detector.accept(observation(2950159, 2200, 285.65, 500));
+
+		//then
+		assertThat(recorder.received).containsExactly(
+				new WeatherDelta(2950159, 2200, Field.TEMP, 284.15, 285.65),
+				new WeatherDelta(2950159, 2200, Field.CONDITION, 800, 500));
+		assertThat(recorder.received.get(0).getChange()).isCloseTo(1.5, within(1e-9));
+		assertThat(recorder.received.get(1).getChange()).isNull();
+		assertThat(detector.getReceivedCount()).isEqualTo(4);
+		assertThat(detector.getUnchangedCount()).isEqualTo(2);
+		assertThat(detector.getEmittedCount()).isEqualTo(5);
+
+	}
+
+	/**
+	 * Tests if changes below the threshold are held back until they add up
+	 * @result Expects three 0.3K steps to produce a single delta once the drift reaches 0.5K
+	 */
+
+	@Test
+	public void shouldApplyThresholdAgainstLastReportedValue() {
+
+		//given
+		WeatherChangeDetector detector = new WeatherChangeDetector().withThreshold(Field.TEMP, 0.5);
+		Recorder recorder = new Recorder(Long.MAX_VALUE);
+		detector.accept(observation(2950159, 1000, 284.0, 800));
+		detector.subscribe(recorder, 100);
+
+		//when
+		detector.accept(observation(2950159, 1600, 284.3, 800));
+		detector.accept(observation(2950159, 2200, 284.6, 800));
+		detector.accept(observation(2950159, 2800, 284.9, 800));
+
+		//then
+		assertThat(recorder.received).containsExactly(new WeatherDelta(2950159, 2200, Field.TEMP, 284.0, 284.6));
+
+	}
+
+	/**
+	 * Tests if deltas are only delivered on demand and a slow subscriber gets conflated, bounded buffers
+	 * @result Expects two deliveries for a demand of two, later steps of the same city merged into one net
+	 * change, a change back to the delivered value cancelling out, the oldest deltas dropped past capacity
+	 * and nothing after cancel
+	 */
+
+	@Test
+	public void shouldApplyBackpressure() {
+
+		//given
+		WeatherChangeDetector detector = new WeatherChangeDetector();
+		for (int cityId = 1; cityId <= 4; cityId++) {
+			detector.accept(observation(cityId, 1000, 280.0, 800));
+		}
+		Recorder recorder = new Recorder(2);
+		WeatherChangeDetector.Subscription subscription = detector.subscribe(recorder, 3);
+
+		//when
+		detector.accept(observation(1, 1600, 281.0, 800));
+		detector.accept(observation(2, 1600, 281.0, 800));
+		detector.accept(observation(3, 1600, 281.0, 800));
+		detector.accept(observation(3, 2200, 283.0, 800));
+		detector.accept(observation(4, 1600, 281.0, 800));
+		detector.accept(observation(4, 2200, 280.0, 800));
+
+		//then
+		assertThat(recorder.received).extracting(WeatherDelta::getCityId).containsExactly(1, 2);
+		assertThat(subscription.getPendingCount()).isEqualTo(1);
+		assertThat(subscription.getConflatedCount()).isEqualTo(2);
+
+		//when
+		detector.accept(observation(5, 1000, 280.0, 800));
+
+		//then
+		assertThat(subscription.getPendingCount()).isEqualTo(3);
+		assertThat(subscription.getDroppedCount()).isEqualTo(1);
+
+		//when
+		recorder.received.clear();
+		subscription.request(Long.MAX_VALUE);
+
+		//then
+		assertThat(recorder.received).extracting(WeatherDelta::getCityId).containsExactly(5, 5, 5);
+
+		//when
+		recorder.received.clear();
+		subscription.request(1);
+		detector.accept(observation(3, 2800, 290.0, 800));
+		subscription.cancel();
+		detector.accept(observation(2, 2800, 290.0, 800));
+
+		//then
+		assertThat(recorder.received).containsExactly(new WeatherDelta(3, 2800, Field.TEMP, 283.0, 290.0));
+
+	}
+
+}
@@ -0,0 +1,193 @@
+package com.fyber.weather.test;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import com.fyber.weather.domain.GroupResponse;
+import com.fyber.weather.domain.Main;
+import com.fyber.weather.domain.Sys;
+import com.fyber.weather.domain.Weather;
+import com.fyber.weather.domain.WeatherResponse;
+import com.fyber.weather.helper.WeatherCodec;
+import com.fyber.weather.helper.WeatherJson;
+import com.google.gson.Gson;
+
+public class WeatherCodecTest {
+
+	private final Gson gson = WeatherJson.gson();
+
+	/**
+	 * Tests if encoding and decoding keeps every field of the /weather and /group fixtures, and takes fewer bytes than JSON
+	 * @result Expects the decoded responses to serialize to the original JSON from an encoding under half its size
+	 */
+
+	@Test
+	public void shouldRoundTripFixturesLikeGson() {
+
+		//given
+		GroupResponse group = gson.fromJson(WeatherJsonTest.fixture("group-germany.json"), GroupResponse.class);
+		group.getList().add(gson.fromJson(WeatherJsonTest.fixture("weather-berlin.json"), WeatherResponse.class));
+
+		for (WeatherResponse response : group.getList()) {
+
+			//when
+			byte[] encoded = WeatherCodec.encode(response);
+			WeatherResponse decoded = WeatherCodec.decode(encoded);
+
+			//then
+			String json = gson.toJson(response);
+			assertThat(gson.toJson(decoded)).isEqualTo(json);
+			assertThat(encoded.length).isLessThan(json.getBytes(StandardCharsets.UTF_8).length / 2);
+		}
+
+	}
+
+	/**
+	 * Tests if values outside the code tables, negative and extreme numbers, nulls and empty objects survive a round trip
+	 * @result Expects the decoded response to serialize to the same JSON as the original
+	 */
+
+	@Test
+	public void shouldRoundTripLiteralsNullsAndExtremes() {
+
+		//given
+		Weather unusual = new Weather();
+		unusual.setId(-1);
+		unusual.setMain("Volcano");
+		unusual.setIcon("99x");
+		unusual.setDescription("Asche über Köln 🌋");
+		WeatherResponse response = new WeatherResponse();
+		response.setWeather(Arrays.asList(unusual, null, new Weather()));
+		response.setBase("satellite");
+		response.setMain(new Main());
+		response.getMain().setTemp(-0.0d);
+		response.getMain().setPressure(Integer.MIN_VALUE);
+		response.getMain().setHumidity(Integer.MAX_VALUE);
+		response.setSys(new Sys());
+		response.getSys().setCountry("xk");
+		response.setName("São Paulo");
+
+		//when
+		WeatherResponse decoded = WeatherCodec.decode(WeatherCodec.encode(response));
+
+		//then
+		assertThat(gson.toJson(decoded)).isEqualTo(gson.toJson(response));
+		assertThat(decoded.getCoord()).isNull();
+		assertThat(decoded.getSys().getSunrise()).isNull();
+		assertThat(Double.doubleToRawLongBits(decoded.getMain().getTemp())).isEqualTo(Double.doubleToRawLongBits(-0.0d));
+
+	}
+
+	/**
+	 * Tests if decoding into an existing response reuses its objects and returns shared instances for table values
+	 * @result Expects the same nested objects to be filled again and interned strings to be identical across decodes
+	 */
+
+	@Test
+	public void shouldDecodeIntoReusedResponseWithSharedCodes() {
+
+		//given
+		GroupResponse group = gson.fromJson(WeatherJsonTest.fixture("group-germany.json"), GroupResponse.class);
+		ByteBuffer buffer = ByteBuffer.allocateDirect(512);
+		WeatherCodec.encode(group.getList().get(0), buffer);
+		WeatherCodec.encode(group.getList().get(1), buffer);
+		buffer.flip();
+		WeatherResponse reused = new WeatherResponse();
+
+		//when
+		WeatherCodec.decode(buffer, reused);
+		Main main = reused.getMain();
+		Weather weather = reused.getWeather().get(0);
+		String country = reused.getSys().getCountry();
+		WeatherCodec.decode(buffer, reused);
+
+		//then
+		assertThat(buffer.hasRemaining()).isFalse();
+		assertThat(gson.toJson(reused)).isEqualTo(gson.toJson(group.getList().get(1)));
+		assertThat(reused.getMain()).isSameAs(main);
+		assertThat(reused.getWeather().get(0)).isSameAs(weather);
+		assertThat(reused.getSys().getCountry()).isSameAs(country).isSameAs("DE");
+
+	}
+
+	/**
+	 * Tests if an encoding of a newer version is rejected and a too small buffer overflows
+	 * @result Expects IllegalArgumentException for the version and BufferOverflowException for the buffer
+	 */
+
+	@Test
+	public void shouldRejectUnknownVersionAndOverflow() {
+
+		//given
+		WeatherResponse response = gson.fromJson(WeatherJsonTest.fixture("weather-berlin.json"), WeatherResponse.class);
+		byte[] encoded = WeatherCodec.encode(response);
+		encoded[0] = WeatherCodec.VERSION + 1;
+
+		//then
+		assertThatThrownBy(() -> WeatherCodec.decode(encoded))
+				.isInstanceOf(IllegalArgumentException.class)
+				.hasMessageContaining("version");
+		assertThatThrownBy(() -> WeatherCodec.encode(response, ByteBuffer.allocate(16)))
+				.isInstanceOf(BufferOverflowException.class);
+
+	}
+
+	/**
+	 * Tests if a string length pointing past the end of the encoding is rejected, from heap and direct buffers
+	 * @result Expects IllegalArgumentException for both instead of reading past the encoding or a negative array size
+	 */
+
+	@Test
+	public void shouldRejectCorruptStringLength() {
+
+		//given
+		WeatherResponse response = new WeatherResponse();
+		response.setName("Berlin");
+		byte[] encoded = WeatherCodec.encode(response);
+		// the name is written last: its length, then the six bytes of "Berlin"
+		encoded[encoded.length - 7] = 0x7F;
+		ByteBuffer direct = ByteBuffer.allocateDirect(encoded.length);
+		direct.put(encoded).flip();
+
+		//then
+		assertThatThrownBy(() -> WeatherCodec.decode(encoded))
+				.isInstanceOf(IllegalArgumentException.class)
+				.hasMessageContaining("length");
+		assertThatThrownBy(() -> WeatherCodec.decode(direct))
+				.isInstanceOf(IllegalArgumentException.class)
+				.hasMessageContaining("length");
+
+	}
+
+	/**
+	 * Tests if decoding into a response whose weather list is immutable, such as the stub's singleton lists, works
+	 * @result Expects the decoded weather in a new list that reuses the existing entry
+	 */
+
+	@Test
+	public void shouldDecodeIntoImmutableWeatherList() {
+
+		//given
+		WeatherResponse response = gson.fromJson(WeatherJsonTest.fixture("weather-berlin.json"), WeatherResponse.class);
+		byte[] encoded = WeatherCodec.encode(response);
+		Weather existing = new Weather();
+		WeatherResponse into = new WeatherResponse();
+		into.setWeather(Collections.singletonList(existing));
+
+		//when
+		WeatherCodec.decode(ByteBuffer.wrap(encoded), into);
+
+		//then
+		assertThat(gson.toJson(into)).isEqualTo(gson.toJson(response));
+		assertThat(into.getWeather().get(0)).isSameAs(existing);
+
+	}
+
+}
@@ -0,0 +1,115 @@
+package com.fyber.weather.test;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Scanner;
+
+import org.junit.Test;
+
+import com.fyber.weather.domain.GroupResponse;
+import com.fyber.weather.domain.WeatherResponse;
+import com.fyber.weather.helper.WeatherJson;
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+
+public class WeatherJsonTest {
+
+	private final Gson reflectiveGson = new Gson();
+
+	static String fixture(String name) {
+		try (Scanner scanner = new Scanner(WeatherJsonTest.class.getResourceAsStream("/fixtures/" + name), "UTF-8")) {
+			return scanner.useDelimiter("\\A").next();
+		}
+	}
+
+	private static InputStream stream(String json) {
+		return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Tests if the streaming adapters decode a /weather payload exactly like Gson's reflective adapter
+	 * @result Expects both decoded objects to serialize to the same JSON
+	 */
+
+	@Test
+	public void shouldDecodeWeatherResponseLikeReflectiveGson() throws IOException {
+
+		//given
+		String json = fixture("weather-berlin.json");
+
+		//when
+		WeatherResponse streamed = WeatherJson.read(stream(json), WeatherResponse.class);
+		WeatherResponse reflective = reflectiveGson.fromJson(json, WeatherResponse.class);
+
+		//then
+		assertThat(reflectiveGson.toJson(streamed)).isEqualTo(reflectiveGson.toJson(reflective));
+		assertThat(streamed.getMain().getTemp()).isEqualTo(284.15d);
+		assertThat(streamed.getSys().getCountry()).isEqualTo("DE");
+
+	}
+
+	/**
+	 * Tests if the streaming adapters decode a /group payload, including nulls and unknown fields, like Gson's reflective adapter
+	 * @result Expects both decoded objects to serialize to the same JSON and four cities in the list
+	 */
+
+	@Test
+	public void shouldDecodeGroupResponseLikeReflectiveGson() throws IOException {
+
+		//given
+		String json = fixture("group-germany.json");
+
+		//when
+		GroupResponse streamed = WeatherJson.read(stream(json), GroupResponse.class);
+		GroupResponse reflective = reflectiveGson.fromJson(json, GroupResponse.class);
+
+		//then
+		assertThat(reflectiveGson.toJson(streamed)).isEqualTo(reflectiveGson.toJson(reflective));
+		assertThat(streamed.getList()).hasSize(4);
+		assertThat(streamed.getList().get(3).getWind().getDeg()).isNull();
+
+	}
+
+	/**
+	 * Tests if the streaming adapters write the same JSON as Gson's reflective adapter
+	 * @result Expects identical serialized output for /weather and /group payloads
+	 */
+
+	@Test
+	public void shouldEncodeLikeReflectiveGson() {
+
+		//given
+		WeatherResponse weather = reflectiveGson.fromJson(fixture("weather-berlin.json"), WeatherResponse.class);
+		GroupResponse group = reflectiveGson.fromJson(fixture("group-germany.json"), GroupResponse.class);
+
+		//then
+		assertThat(WeatherJson.gson().toJson(weather)).isEqualTo(reflectiveGson.toJson(weather));
+		assertThat(WeatherJson.gson().toJson(group)).isEqualTo(reflectiveGson.toJson(group));
+
+	}
+
+	/**
+	 * Tests if a fractional value in an integer field fails like Gson's reflective adapter does
+	 * @result Expects JsonSyntaxException from both, not a bare NumberFormatException
+	 */
+
+	@Test
+	public void shouldRejectFractionalIntegerLikeReflectiveGson() {
+
+		//given
+		String json = fixture("weather-berlin.json").replace("\"deg\":250", "\"deg\":202.5");
+
+		//then
+		assertThatThrownBy(() -> WeatherJson.read(stream(json), WeatherResponse.class))
+				.isInstanceOf(JsonSyntaxException.class)
+				.hasCauseInstanceOf(NumberFormatException.class);
+		assertThatThrownBy(() -> reflectiveGson.fromJson(json, WeatherResponse.class))
+				.isInstanceOf(JsonSyntaxException.class);
+
+	}
+
+}
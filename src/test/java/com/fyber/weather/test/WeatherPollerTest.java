@@ -0,0 +1,221 @@
+package com.fyber.weather.test;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.fyber.weather.domain.Main;
+import com.fyber.weather.domain.WeatherResponse;
+import com.fyber.weather.helper.ResponseCache;
+import com.fyber.weather.helper.WeatherPoller;
+import com.fyber.weather.helper.WeatherQuery;
+import com.fyber.weather.helper.WeatherSource;
+
+public class WeatherPollerTest {
+
+	private final List<long[]> groupCalls = new CopyOnWriteArrayList<long[]>();
+	private final AtomicBoolean failing = new AtomicBoolean();
+	private LongSupplier clock = System::currentTimeMillis;
+	private WeatherPoller poller;
+
+	private final WeatherSource source = new WeatherSource() {
+
+		@Override
+		public CompletableFuture<WeatherResponse> currentAsync(WeatherQuery query) {
+			throw new AssertionError("the poller only uses /group");
+		}
+
+		@Override
+		public CompletableFuture<List<WeatherResponse>> groupAsync(WeatherQuery query) {
+			groupCalls.add(new long[] { clock.getAsLong(), query.getCityIds().length });
+			CompletableFuture<List<WeatherResponse>> result = new CompletableFuture<List<WeatherResponse>>();
+			if (failing.get()) {
+				result.completeExceptionally(new IllegalStateException("upstream down"));
+				return result;
+			}
+			List<WeatherResponse> responses = new ArrayList<WeatherResponse>();
+			for (int cityId : query.getCityIds()) {
+				Main main = new Main();
+				main.setTemp(284.15);
+				WeatherResponse response = new WeatherResponse();
+				response.setId(cityId);
+				response.setMain(main);
+				responses.add(response);
+			}
+			result.complete(responses);
+			return result;
+		}
+	};
+
+	@After
+	public void stopPoller() {
+		if (poller != null) {
+			poller.close();
+		}
+	}
+
+	private static int[] cityIds(int first, int count) {
+		int[] ids = new int[count];
+		for (int i = 0; i < count; i++) {
+			ids[i] = first + i;
+		}
+		return ids;
+	}
+
+	/**
+	 * Tests if watched cities are fetched in /group batches within the first interval and refreshed before their TTL expires
+	 * @result Expects 45 new cities to be fetched as batches of at most 20, published to subscribers, and all
+	 * of them to still be fresh in the cache after three TTLs
+	 */
+
+	@Test
+	public void shouldKeepWatchedCitiesWarm() throws InterruptedException {
+
+		//given
+		ResponseCache<WeatherResponse> cache = new ResponseCache<WeatherResponse>(1000, 500);
+		poller = new WeatherPoller(source, cache, 300, 10, System::currentTimeMillis);
+		List<WeatherResponse> published = new CopyOnWriteArrayList<WeatherResponse>();
+		poller.subscribe(published::add);
+		poller.watch(cityIds(1000, 45));
+
+		//when
+		poller.start();
+		Thread.sleep(250);
+
+		//then
+		assertThat(groupCalls).extracting(call -> call[1]).startsWith(20L, 20L, 5L);
+		assertThat(published.size()).isGreaterThanOrEqualTo(45);
+		assertThat(poller.latest(1000, "metric").getMain().getTemp()).isEqualTo(11d);
+
+		//when
+		Thread.sleep(1400);
+
+		//then
+		for (int cityId : cityIds(1000, 45)) {
+			assertThat(cache.getIfPresent(WeatherQuery.byId(cityId))).as("city " + cityId).isNotNull();
+		}
+		assertThat(poller.getRefreshedCityCount()).isBetween(45L * 4, 45L * 7);
+		assertThat(groupCalls).extracting(call -> call[1]).allMatch(size -> size <= 20);
+
+	}
+
+	/**
+	 * Tests if refreshes of already cached cities are scattered over the interval rather than sent at once
+	 * @result Expects the first round for 400 cached cities to span most of the interval in batches of 20 at most
+	 */
+
+	@Test
+	public void shouldSpreadRefreshesOverInterval() throws InterruptedException {
+
+		//given
+		ResponseCache<WeatherResponse> cache = new ResponseCache<WeatherResponse>(1000, 60000);
+		int[] cityIds = cityIds(1, 400);
+		for (WeatherResponse response : source.groupAsync(WeatherQuery.group(cityIds)).join()) {
+			cache.put(WeatherQuery.byId(response.getId()), response);
+		}
+		groupCalls.clear();
+		poller = new WeatherPoller(source, cache, 1000, 5, System::currentTimeMillis);
+		poller.watch(cityIds);
+
+		//when
+		poller.start();
+		Thread.sleep(900);
+
+		//then
+		assertThat(groupCalls.size()).isGreaterThanOrEqualTo(15);
+		assertThat(groupCalls).extracting(call -> call[1]).allMatch(size -> size <= 20);
+		long first = groupCalls.get(0)[0];
+		long last = groupCalls.get(groupCalls.size() - 1)[0];
+		assertThat(last - first).isGreaterThan(600);
+
+	}
+
+	/**
+	 * Tests if cities not cached yet are ramped up over the first interval instead of all fetched on the first tick
+	 * @result Expects 200 new cities to go out as ten full batches, one at the start and the others spread
+	 * evenly over the interval of the fake clock
+	 */
+
+	@Test
+	public void shouldSpreadFirstFetchesOfUncachedCities() throws InterruptedException {
+
+		//given
+		AtomicLong now = new AtomicLong(1000000);
+		clock = now::get;
+		ResponseCache<WeatherResponse> cache = new ResponseCache<WeatherResponse>(1000, 60000, now::get);
+		poller = new WeatherPoller(source, cache, 2000, 0, now::get);
+		poller.watch(cityIds(1, 200));
+
+		//when
+		poller.start();
+		Thread.sleep(100);
+
+		//then
+		assertThat(groupCalls).extracting(call -> call[1]).containsExactly(20L);
+
+		//when
+		while (now.get() < 1000000 + 1900) {
+			now.addAndGet(100);
+			Thread.sleep(30);
+		}
+
+		//then
+		assertThat(groupCalls).extracting(call -> call[1]).containsOnly(20L).hasSize(10);
+		for (int batch = 0; batch < 10; batch++) {
+			assertThat(groupCalls.get(batch)[0] - 1000000).as("batch " + batch).isBetween(batch * 200L, batch * 200L + 100);
+		}
+
+	}
+
+	/**
+	 * Tests if failed refreshes keep the cached entry and are retried, and unwatched cities stop being polled
+	 * @result Expects the failures to be counted, the stale entry to stay readable, polling to resume once
+	 * upstream recovers and to stop after unwatching
+	 */
+
+	@Test
+	public void shouldRetryFailuresAndStopOnUnwatch() throws InterruptedException {
+
+		//given
+		ResponseCache<WeatherResponse> cache = new ResponseCache<WeatherResponse>(10, 60000);
+		poller = new WeatherPoller(source, cache, 1000, 0, System::currentTimeMillis);
+		poller.subscribe(response -> {
+			throw new IllegalStateException("broken subscriber");
+		});
+		poller.watch(2950159);
+		poller.start();
+		Thread.sleep(100);
+		failing.set(true);
+
+		//when
+		Thread.sleep(1400);
+
+		//then
+		assertThat(poller.getFailureCount()).isGreaterThanOrEqualTo(2);
+		assertThat(poller.latest(2950159, null)).isNotNull();
+		assertThat(poller.getSubscriberErrorCount()).isEqualTo(1);
+
+		//when
+		failing.set(false);
+		Thread.sleep(200);
+		poller.unwatch(2950159);
+		int calls = groupCalls.size();
+		Thread.sleep(1200);
+
+		//then
+		assertThat(poller.getSubscriberErrorCount()).isEqualTo(2);
+		assertThat(groupCalls).hasSize(calls);
+		assertThat(poller.getWatched()).isEmpty();
+
+	}
+
+}
@@ -0,0 +1,74 @@
+package com.fyber.weather.test;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.junit.Test;
+
+import com.fyber.weather.domain.GroupResponse;
+import com.fyber.weather.domain.Weather;
+import com.fyber.weather.domain.WeatherResponse;
+import com.fyber.weather.helper.WeatherCodec;
+import com.fyber.weather.helper.WeatherJson;
+import com.fyber.weather.helper.WeatherStrings;
+
+public class WeatherStringsTest {
+
+	/**
+	 * Tests if separately decoded responses, from JSON and from the binary codec, share their low-cardinality strings
+	 * @result Expects base, country, condition, description and icon to be the very same instances
+	 */
+
+	@Test
+	public void shouldShareLowCardinalityStringsAcrossDecodedResponses() throws IOException {
+
+		//given
+		String json = WeatherJsonTest.fixture("weather-berlin.json");
+
+		//when
+		WeatherResponse first = WeatherJson.read(new StringReader(json), WeatherResponse.class);
+		WeatherResponse second = WeatherJson.read(new StringReader(json), WeatherResponse.class);
+		WeatherResponse third = WeatherCodec.decode(WeatherCodec.encode(first));
+		GroupResponse group = WeatherJson.read(new StringReader(WeatherJsonTest.fixture("group-germany.json")), GroupResponse.class);
+
+		//then
+		for (WeatherResponse other : new WeatherResponse[] { second, third }) {
+			Weather weather = other.getWeather().get(0);
+			assertThat(other.getBase()).isSameAs(first.getBase());
+			assertThat(other.getSys().getCountry()).isSameAs(first.getSys().getCountry());
+			assertThat(weather.getMain()).isSameAs(first.getWeather().get(0).getMain());
+			assertThat(weather.getDescription()).isSameAs(first.getWeather().get(0).getDescription());
+			assertThat(weather.getIcon()).isSameAs(first.getWeather().get(0).getIcon());
+		}
+		assertThat(group.getList().get(0).getSys().getCountry()).isSameAs(first.getSys().getCountry());
+		assertThat(second.getName()).isEqualTo(first.getName()).isNotSameAs(first.getName());
+
+	}
+
+	/**
+	 * Tests if a value outside the seeded dictionary is learned on first sight
+	 * @result Expects later equal copies to be replaced by the first instance and the dictionary to grow by one
+	 */
+
+	@Test
+	public void shouldLearnUnseenValues() {
+
+		//given
+		String first = new String("volcanic eruption nearby");
+		int size = WeatherStrings.size();
+
+		//when
+		String canonical = WeatherStrings.canonical(first);
+		String again = WeatherStrings.canonical(new String("volcanic eruption nearby"));
+
+		//then
+		assertThat(canonical).isSameAs(first);
+		assertThat(again).isSameAs(first);
+		assertThat(WeatherStrings.size()).isEqualTo(size + 1);
+		assertThat(WeatherStrings.country('D', 'E')).isSameAs(WeatherStrings.canonical(new String("DE")));
+
+	}
+
+}